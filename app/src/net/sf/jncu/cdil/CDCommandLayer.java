@@ -15,23 +15,17 @@
  */
 package net.sf.jncu.cdil;
 
-import net.sf.jncu.protocol.BaseDockCommand;
-import net.sf.jncu.protocol.BaseDockCommandFromNewton;
-import net.sf.jncu.protocol.DockCommand;
+import net.sf.jncu.protocol.DockCommandDecoder;
 import net.sf.jncu.protocol.DockCommandFromNewton;
 import net.sf.jncu.protocol.DockCommandListener;
 import net.sf.jncu.protocol.DockCommandToNewton;
-import net.sf.jncu.protocol.v2_0.DockCommandFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Vector;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -42,6 +36,11 @@ import java.util.concurrent.TimeoutException;
  */
 public abstract class CDCommandLayer<P extends CDPacket, L extends CDPacketLayer<P>> extends Thread implements CDPacketListener<P> {
 
+    /**
+     * Maximum number of bytes to read at a time.
+     */
+    protected static final int BUFFER_SIZE = 4096;
+
     /**
      * The packet layer.
      */
@@ -54,6 +53,10 @@ public abstract class CDCommandLayer<P extends CDPacket, L extends CDPacketLayer
      * Still listening for incoming commands?
      */
     protected boolean running;
+    /**
+     * Decoder of incoming commands.
+     */
+    protected final DockCommandDecoder decoder;
 
     /**
      * Creates a new command layer.
@@ -65,6 +68,32 @@ public abstract class CDCommandLayer<P extends CDPacket, L extends CDPacketLayer
         setName("CDCommandLayer-" + getId());
         this.packetLayer = packetLayer;
         packetLayer.addPacketListener(this);
+        this.decoder = new DockCommandDecoder(new DockCommandListener() {
+            @Override
+            public void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+                fireCommandReceiving(command, progress, total);
+            }
+
+            @Override
+            public void commandReceived(DockCommandFromNewton command) {
+                fireCommandReceived(command);
+            }
+
+            @Override
+            public void commandSending(DockCommandToNewton command, int progress, int total) {
+                fireCommandSending(command, progress, total);
+            }
+
+            @Override
+            public void commandSent(DockCommandToNewton command) {
+                fireCommandSent(command);
+            }
+
+            @Override
+            public void commandEOF() {
+                fireCommandEOF();
+            }
+        });
     }
 
     /**
@@ -208,143 +237,49 @@ public abstract class CDCommandLayer<P extends CDPacket, L extends CDPacketLayer
         running = true;
 
         InputStream in;
-        DockCommand cmd = null;
-        boolean hasCommand;
-        int length = 0;
-        final byte[] lengthBytes = new byte[DockCommand.LENGTH_WORD];
-        byte[] data = null;
-        int offset = 0;
-        int available;
+        final byte[] buf = new byte[BUFFER_SIZE];
         int count;
-        final Vector<InputStream> v = new Vector<InputStream>();
 
         try {
             do {
-                hasCommand = false;
-
                 in = getInput();
-                while (running && !isInterrupted() && (in.available() == 0)) {
-                    synchronized (in) {
-                        try {
-                            in.wait(1000);
-                        } catch (InterruptedException ie) {
-                            // Probably received some data, or closed.
-                        }
-                    }
-                }
+                awaitInput(in);
 
                 if (running && !isInterrupted()) {
-                    if (cmd == null) {
-                        if (BaseDockCommand.isCommand(in)) {
-                            cmd = DockCommandFactory.getInstance().create(in);
-                            length = BaseDockCommandFromNewton.ntohl(in);
-                            if (length == 0x6e657774) { // 'newt'
-                                // This command was not sent properly, and
-                                // instead we started receiving the next
-                                // command.
-                                cmd = null;
-                                lengthBytes[0] = (byte) ((length >> 24) & 0xFF);
-                                lengthBytes[1] = (byte) ((length >> 16) & 0xFF);
-                                lengthBytes[2] = (byte) ((length >> 8) & 0xFF);
-                                lengthBytes[3] = (byte) ((length >> 0) & 0xFF);
-                                v.clear();
-                                v.add(new ByteArrayInputStream(lengthBytes));
-                                v.add(in);
-                                in = new SequenceInputStream(v.elements());
-                                if (BaseDockCommand.isCommand(in)) {
-                                    cmd = DockCommandFactory.getInstance().create(in);
-                                    length = BaseDockCommandFromNewton.ntohl(in);
-                                } else {
-                                    continue;
-                                }
-                            }
-                            // Need to put the length back into the command
-                            // stream for decoding.
-                            lengthBytes[0] = (byte) ((length >> 24) & 0xFF);
-                            lengthBytes[1] = (byte) ((length >> 16) & 0xFF);
-                            lengthBytes[2] = (byte) ((length >> 8) & 0xFF);
-                            lengthBytes[3] = (byte) ((length >> 0) & 0xFF);
-                            v.clear();
-                            v.add(new ByteArrayInputStream(lengthBytes));
-                        }
-                    }
-                    available = in.available();
-                    if (cmd != null) {
-                        hasCommand = true;
-
-                        if (cmd instanceof DockCommandFromNewton) {
-                            DockCommandFromNewton cmdFromNewton = (DockCommandFromNewton) cmd;
-                            if (((offset == 0) && (available < length)) || (offset > 0)) {
-                                if (data == null) {
-                                    data = new byte[length];
-                                    offset = 0;
-                                }
-                                count = in.read(data, offset, Math.min(available, length - offset));
-                                if (count > 0) {
-                                    offset += count;
-                                    fireCommandReceiving(cmdFromNewton, offset, length);
-                                }
-                            }
-                            if (((offset == 0) && (available >= length)) || (offset == length)) {
-                                if (data != null) {
-                                    if (offset < length)
-                                        in.read(data, offset, length - offset);
-                                    v.add(new ByteArrayInputStream(data));
-                                }
-                                v.add(in);
-                                in = new SequenceInputStream(v.elements());
-                                cmdFromNewton.decode(in);
-
-                                fireCommandReceived(cmdFromNewton);
-                                cmd = null;
-                                length = 0;
-                                data = null;
-                                offset = 0;
-                                v.clear();
-                            }
-                        } else if (cmd instanceof DockCommandToNewton) {
-                            DockCommandToNewton cmdToNewton = (DockCommandToNewton) cmd;
-                            if (((offset == 0) && (available < length)) || (offset > 0)) {
-                                count = (int) in.skip(Math.min(available, length - offset));
-                                if (count >= 0) {
-                                    offset += count;
-                                    fireCommandSending(cmdToNewton, offset, length);
-                                }
-                            }
-                            if (((offset == 0) && (available >= length)) || (offset == length)) {
-                                // Commands are 4-byte aligned.
-                                switch (length & 3) {
-                                    case 1:
-                                        length++;
-                                    case 2:
-                                        length++;
-                                    case 3:
-                                        length++;
-                                        break;
-                                }
-                                in.skip(length);
-
-                                fireCommandSent(cmdToNewton);
-                                cmd = null;
-                                length = 0;
-                                data = null;
-                                offset = 0;
-                                v.clear();
-                            }
-                        }
-                    }
+                    count = in.read(buf, 0, Math.max(1, Math.min(buf.length, in.available())));
+                    if (count < 0)
+                        throw new EOFException();
+                    decoder.decode(buf, 0, count);
                 }
-                yield();
-            } while (running && hasCommand && !isInterrupted());
+            } while (running && !isInterrupted());
         } catch (EOFException eofe) {
             // eofe.printStackTrace();
             fireCommandEOF();
         } catch (IOException ioe) {
-            ioe.printStackTrace();
+            if (running)
+                ioe.printStackTrace();
         }
         running = false;
     }
 
+    /**
+     * Wait until the input has data available, or the layer is closed.
+     *
+     * @param in the input.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void awaitInput(InputStream in) throws IOException {
+        while (running && !isInterrupted() && (in.available() == 0)) {
+            synchronized (in) {
+                try {
+                    in.wait(1000);
+                } catch (InterruptedException ie) {
+                    // Probably received some data, or closed.
+                }
+            }
+        }
+    }
+
     /**
      * Sets the timeout period for CD_Read and CD_Write calls in a pipe.<br>
      * <tt>DIL_Error CD_SetTimeout(CD_Handle pipe, long timeoutInSecs)</tt>
@@ -34,6 +34,7 @@ public class CDLayer {
 
     private static CDLayer instance;
     private final List<String> serialPorts = new ArrayList<String>();
+    private boolean tcpAvailable;
     private CDState state = CDState.UNKNOWN;
     private final List<CDStateListener> stateListeners = new ArrayList<CDStateListener>();
 
@@ -141,7 +142,9 @@ public class CDLayer {
      */
     public void checkTCP() throws CDILNotInitializedException, PlatformException, ServiceNotSupportedException {
         checkInitialized();
-        throw new ServiceNotSupportedException();
+        if (!tcpAvailable) {
+            throw new ServiceNotSupportedException();
+        }
     }
 
     /**
@@ -301,6 +304,7 @@ public class CDLayer {
      * Initialise TCP.
      */
     protected void initTCP() throws PlatformException {
+        tcpAvailable = true;
     }
 
     /**
@@ -326,6 +330,7 @@ public class CDLayer {
      * Dispose TCP.
      */
     protected void disposeTCP() {
+        tcpAvailable = false;
     }
 
     /**
@@ -18,6 +18,7 @@ package net.sf.jncu.cdil;
 import net.sf.jncu.protocol.DockCommandFromNewton;
 import net.sf.jncu.protocol.DockCommandListener;
 import net.sf.jncu.protocol.DockCommandToNewton;
+import net.sf.jncu.protocol.v2_0.session.DockingEndpoint;
 import net.sf.jncu.protocol.v2_0.session.DockingProtocol;
 import net.sf.jncu.protocol.v2_0.session.DockingState;
 
@@ -33,7 +34,7 @@ import java.util.concurrent.TimeoutException;
  *
  * @author moshew
  */
-public abstract class CDPipe<P extends CDPacket, L extends CDPacketLayer<P>> extends Thread implements CDStateListener, CDPacketListener<P>, DockCommandListener {
+public abstract class CDPipe<P extends CDPacket, L extends CDPacketLayer<P>> extends Thread implements CDStateListener, CDPacketListener<P>, DockCommandListener, DockingEndpoint {
 
     protected static final long PING_TIME = 10000L;
 
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Track MNP packets that are waiting for acknowledgement.<br>
+ * The sender waits on the tracker until either the window opens, a packet is
+ * acknowledged, or the earliest re-send deadline is reached.
+ *
+ * @author moshew
+ */
+public class MNPAcknowledgementTracker {
+
+    /**
+     * Time to wait for an acknowledgement before re-sending, in milliseconds.
+     */
+    public static final long ACKNOWLEDGE_TIMEOUT = 5000L;
+    /**
+     * Maximum number of times to re-send a packet.
+     */
+    public static final int RETRY = 5;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    /**
+     * Packets that were sent but not yet acknowledged, in order of sending.
+     */
+    private final LinkedList<Outstanding> outstanding = new LinkedList<Outstanding>();
+    private final MNPWindowStatistics statistics = new MNPWindowStatistics();
+    private int sequenceAcknowledged = -1;
+    private int maxOutstanding = MNPLinkAcknowledgementPacket.CREDIT;
+    private int credit = MNPLinkAcknowledgementPacket.CREDIT;
+    private long acknowledgeTimeout = ACKNOWLEDGE_TIMEOUT;
+
+    /**
+     * Packet that is waiting for acknowledgement.
+     *
+     * @author moshew
+     */
+    private static class Outstanding {
+
+        public final MNPPacket packet;
+        public final int sequence;
+        public long deadline;
+        public int retry = RETRY;
+        public boolean resend;
+
+        public Outstanding(MNPPacket packet, int sequence) {
+            this.packet = packet;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Creates a new tracker.
+     */
+    public MNPAcknowledgementTracker() {
+        super();
+    }
+
+    /**
+     * Acquire the tracker lock.
+     */
+    public void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Release the tracker lock.
+     */
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Wake up the waiting sender.
+     */
+    public void signal() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until signalled, or until the earliest deadline of the outstanding
+     * packets. Returns immediately if a packet is waiting to be re-sent. The
+     * caller must hold the lock.
+     *
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    public void await() throws InterruptedException {
+        if (outstanding.isEmpty()) {
+            changed.await();
+        } else {
+            long delay = nextDelay(System.nanoTime());
+            if (delay > 0L) {
+                changed.awaitNanos(delay);
+            }
+        }
+    }
+
+    /**
+     * Get the time until the earliest re-send deadline. Deadlines are compared
+     * by their difference from {@code now}, so that {@link System#nanoTime()}
+     * may wrap around.
+     *
+     * @param now the current time in nanoseconds.
+     * @return the delay in nanoseconds - {@code 0} to re-send now.
+     */
+    private long nextDelay(long now) {
+        long delay = Long.MAX_VALUE;
+        for (Outstanding pending : outstanding) {
+            if (pending.resend) {
+                return 0L;
+            }
+            delay = Math.min(delay, pending.deadline - now);
+        }
+        return Math.max(0L, delay);
+    }
+
+    /**
+     * Track a packet that was sent for the first time.
+     *
+     * @param packet   the packet.
+     * @param sequence the sequence to be acknowledged.
+     */
+    public void add(MNPPacket packet, int sequence) {
+        lock.lock();
+        try {
+            Outstanding pending = new Outstanding(packet, sequence);
+            pending.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acknowledgeTimeout);
+            outstanding.add(pending);
+            statistics.packetSent(outstanding.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Is the window open for another packet?<br>
+     * Only link transfers are limited by the credit, so a zero credit blocks
+     * them until a later acknowledgement opens the window.
+     *
+     * @param packetType the type of the next packet.
+     * @return {@code true} if can send.
+     */
+    public boolean isOpen(byte packetType) {
+        lock.lock();
+        try {
+            final int count = outstanding.size();
+            // Link request must wait for the window to empty, and vice versa.
+            if (packetType == MNPPacket.LR) {
+                return count == 0;
+            }
+            if ((count > 0) && (outstanding.getFirst().packet.getType() == MNPPacket.LR)) {
+                return false;
+            }
+            if (packetType != MNPPacket.LT) {
+                return true;
+            }
+            return count < getWindow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the packets that need to be re-sent, because they have timed out or
+     * were requested by a duplicate acknowledgement.
+     *
+     * @return the list of packets - {@code null} otherwise.
+     * @throws TimeoutException if a packet was re-sent too many times.
+     */
+    public List<MNPPacket> takeResend() throws TimeoutException {
+        List<MNPPacket> resend = null;
+        lock.lock();
+        try {
+            final long now = System.nanoTime();
+            for (Outstanding pending : outstanding) {
+                if (pending.resend || (now - pending.deadline >= 0L)) {
+                    if (pending.resend) {
+                        pending.resend = false;
+                    } else {
+                        statistics.timeout();
+                    }
+                    pending.retry--;
+                    if (pending.retry < 0) {
+                        throw new TimeoutException();
+                    }
+                    pending.deadline = now + TimeUnit.MILLISECONDS.toNanos(acknowledgeTimeout);
+                    statistics.packetResent();
+                    if (resend == null) {
+                        resend = new ArrayList<MNPPacket>();
+                    }
+                    resend.add(pending.packet);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return resend;
+    }
+
+    /**
+     * Is the packet with the given sequence covered by an acknowledgement?
+     * Acknowledgements are cumulative, and sequences wrap around after
+     * {@code 0xFF}.
+     *
+     * @param sequence             the sent packet sequence.
+     * @param sequenceAcknowledged the acknowledged sequence.
+     * @return {@code true} if acknowledged.
+     */
+    private static boolean isAcknowledged(int sequence, int sequenceAcknowledged) {
+        return ((sequenceAcknowledged - sequence) & 0xFF) < 0x80;
+    }
+
+    /**
+     * Received a link acknowledgement packet.<br>
+     * Releases all the packets up to and including the acknowledged sequence.
+     * A repeated acknowledgement with the same credit means that the next
+     * packet was lost, so mark it for re-sending. A repeated acknowledgement
+     * with a new credit only updates the window.
+     *
+     * @param packet the packet.
+     * @return the list of acknowledged packets - {@code null} otherwise.
+     */
+    public List<MNPPacket> acknowledge(MNPLinkAcknowledgementPacket packet) {
+        final int sequence = packet.getSequence();
+        List<MNPPacket> acknowledged = null;
+
+        lock.lock();
+        try {
+            final int creditPrevious = this.credit;
+            this.credit = packet.getCredit();
+
+            Iterator<Outstanding> it = outstanding.iterator();
+            Outstanding pending;
+            while (it.hasNext()) {
+                pending = it.next();
+                if (!isAcknowledged(pending.sequence, sequence)) {
+                    break;
+                }
+                it.remove();
+                statistics.packetAcknowledged();
+                if (acknowledged == null) {
+                    acknowledged = new ArrayList<MNPPacket>();
+                }
+                acknowledged.add(pending.packet);
+            }
+
+            if ((acknowledged == null) && (sequence == sequenceAcknowledged) && (credit == creditPrevious) && !outstanding.isEmpty()) {
+                statistics.duplicateAcknowledgement();
+                outstanding.getFirst().resend = true;
+            }
+            sequenceAcknowledged = sequence;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Received a link request packet.<br>
+     * Negotiate the maximum number of outstanding packets, and acknowledge our
+     * own pending link request.
+     *
+     * @param packet the packet.
+     * @return the acknowledged link request - {@code null} otherwise.
+     */
+    public MNPPacket acknowledge(MNPLinkRequestPacket packet) {
+        MNPPacket acknowledged = null;
+
+        lock.lock();
+        try {
+            int max = packet.getMaxOutstanding() & 0xFF;
+            if (max > 0) {
+                setMaxOutstanding(Math.min(max, MNPLinkAcknowledgementPacket.CREDIT));
+            }
+            this.credit = MNPLinkAcknowledgementPacket.CREDIT;
+            this.sequenceAcknowledged = 0;
+
+            if (!outstanding.isEmpty() && (outstanding.getFirst().packet.getType() == MNPPacket.LR)) {
+                acknowledged = outstanding.removeFirst().packet;
+                statistics.packetAcknowledged();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Forget all outstanding packets.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            outstanding.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum number of outstanding packets, as negotiated by the link
+     * request.
+     *
+     * @return the maximum number of packets.
+     */
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * Set the maximum number of outstanding packets.
+     *
+     * @param maxOutstanding the maximum number of packets.
+     */
+    public void setMaxOutstanding(int maxOutstanding) {
+        this.maxOutstanding = Math.max(1, maxOutstanding);
+    }
+
+    /**
+     * Get the current window size, limited by the credit of the last
+     * acknowledgement.
+     *
+     * @return the number of packets allowed to be outstanding - {@code 0} if
+     * the receiver has no room.
+     */
+    public int getWindow() {
+        return Math.max(0, Math.min(maxOutstanding, credit));
+    }
+
+    /**
+     * Get the acknowledgement timeout.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public long getAcknowledgeTimeout() {
+        return acknowledgeTimeout;
+    }
+
+    /**
+     * Set the acknowledgement timeout.
+     *
+     * @param acknowledgeTimeout the timeout in milliseconds.
+     */
+    public void setAcknowledgeTimeout(long acknowledgeTimeout) {
+        this.acknowledgeTimeout = acknowledgeTimeout;
+    }
+
+    /**
+     * Get the window statistics.
+     *
+     * @return a snapshot of the statistics.
+     */
+    public MNPWindowStatistics getStatistics() {
+        lock.lock();
+        try {
+            return statistics.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -16,14 +16,14 @@
 package net.sf.jncu.cdil.mnp;
 
 import net.sf.jncu.cdil.CDCommandLayer;
+import net.sf.jncu.io.RingBuffer;
 import net.sf.jncu.protocol.DockCommandToNewton;
 
-import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
@@ -36,13 +36,13 @@ import java.util.concurrent.TimeoutException;
 public class MNPCommandLayer extends CDCommandLayer<MNPPacket, MNPPacketLayer> {
 
     /**
-     * Stream for packets to populate commands.
+     * Buffer for packets to populate commands.
      */
-    private OutputStream packetsToCommands;
+    private final RingBuffer packetsToCommands = new RingBuffer();
     /**
      * Stream of commands that have been populated from packets.
      */
-    private InputStream in;
+    private final InputStream in = packetsToCommands.getInputStream();
     /**
      * Queue of outgoing commands.
      */
@@ -78,13 +78,6 @@ public class MNPCommandLayer extends CDCommandLayer<MNPPacket, MNPPacketLayer> {
     public MNPCommandLayer(MNPPacketLayer packetLayer) {
         super(packetLayer);
         setName("MNPCommandLayer-" + getId());
-        PipedOutputStream pipeSource = new PipedOutputStream();
-        try {
-            this.packetsToCommands = pipeSource;
-            this.in = new BufferedInputStream(new PipedInputStream(pipeSource), 1024);
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-        }
     }
 
     @Override
@@ -98,41 +91,36 @@ public class MNPCommandLayer extends CDCommandLayer<MNPPacket, MNPPacketLayer> {
     }
 
     @Override
-    public void close() {
-        try {
-            packetsToCommands.close();
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
+    protected void awaitInput(InputStream in) throws IOException {
+        if (in == this.in) {
+            try {
+                packetsToCommands.awaitAvailable();
+            } catch (InterruptedIOException iioe) {
+                // Closed, so let the caller check the interrupted status.
+                interrupt();
+            }
+        } else {
+            super.awaitInput(in);
         }
+    }
+
+    @Override
+    public void close() {
+        packetsToCommands.closeWrite();
         interrupt();
         super.close();
     }
 
     @Override
     public void write(DockCommandToNewton cmd) throws IOException, TimeoutException {
-        final InputStream payload = cmd.getCommandPayload();
-        if (payload == null)
-            return;
-        int length = cmd.getCommandPayloadLength();
-        int progress = 0;
-        int seq;
-        CommandPiece piece;
+        TransferOutputStream out = new TransferOutputStream(cmd);
         try {
-            Iterable<MNPLinkTransferPacket> packets = MNPPacketFactory.getInstance().createTransferPackets(payload, length);
-            for (MNPLinkTransferPacket packet : packets) {
-                seq = packet.getSequence();
-                progress += packet.getData().length;
-                piece = new CommandPiece(cmd, packet);
-                piece.progress = progress;
-                queueOut.put(seq, piece);
-                packetLayer.sendQueued(packet);
-            }
-        } finally {
-            try {
-                payload.close();
-            } catch (Exception e) {
-                // ignore
-            }
+            cmd.writeCommandPayload(out);
+            out.close();
+        } catch (IOException ioe) {
+            if (ioe.getCause() instanceof TimeoutException)
+                throw (TimeoutException) ioe.getCause();
+            throw ioe;
         }
     }
 
@@ -205,15 +193,107 @@ public class MNPCommandLayer extends CDCommandLayer<MNPPacket, MNPPacketLayer> {
         final byte[] payload = packet.getData();
 
         try {
-            packetsToCommands.write(payload);
-            packetsToCommands.flush();
-            synchronized (in) {
-                in.notifyAll();
-            }
+            packetsToCommands.write(payload, 0, payload.length);
         } catch (IOException ioe) {
             ioe.printStackTrace();
-            if ("Read end dead".equals(ioe.getMessage()))
+            if (packetsToCommands.isClosed())
                 fireCommandEOF();
         }
     }
+
+    /**
+     * Writes the command payload straight into LT packets, and sends each
+     * packet as soon as it is full.
+     *
+     * @author moshew
+     */
+    private class TransferOutputStream extends OutputStream {
+
+        private final DockCommandToNewton command;
+        private int length = -1;
+        private int progress;
+        /**
+         * The data of the next packet.
+         */
+        private byte[] buf;
+        private int count;
+
+        /**
+         * Creates a new stream.
+         *
+         * @param command the command.
+         */
+        public TransferOutputStream(DockCommandToNewton command) {
+            super();
+            this.command = command;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if ((buf == null) || (count == buf.length))
+                nextPacket();
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int n;
+            while (len > 0) {
+                if ((buf == null) || (count == buf.length))
+                    nextPacket();
+                n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Newton would wait forever for the missing bytes.
+            if ((length >= 0) && (progress + count < length))
+                throw new EOFException("payload shorter than " + length + " bytes");
+            if ((buf != null) && (count > 0))
+                sendPacket();
+        }
+
+        /**
+         * Send the full packet, and start the next packet.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        private void nextPacket() throws IOException {
+            if (buf != null)
+                sendPacket();
+            // The length is known once the command starts writing.
+            if (length < 0)
+                length = command.getCommandPayloadLength();
+            final int remaining = length - progress;
+            if (remaining <= 0)
+                throw new IOException("payload longer than " + length + " bytes");
+            buf = new byte[Math.min(remaining, MNPLinkTransferPacket.MAX_DATA_LENGTH)];
+            count = 0;
+        }
+
+        /**
+         * Send the packet.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        private void sendPacket() throws IOException {
+            MNPLinkTransferPacket packet = MNPPacketFactory.getInstance().createLTSend();
+            packet.setData(buf, 0, count);
+            buf = null;
+            progress += count;
+            CommandPiece piece = new CommandPiece(command, packet);
+            piece.progress = progress;
+            queueOut.put(packet.getSequence(), piece);
+            try {
+                packetLayer.sendQueued(packet);
+            } catch (TimeoutException te) {
+                throw new IOException(te);
+            }
+        }
+    }
 }
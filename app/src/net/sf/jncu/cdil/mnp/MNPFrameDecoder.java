@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+import net.sf.util.zip.CRC16;
+import net.sf.util.zip.ChecksumException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes MNP frames from a stream.<br>
+ * Bytes are read from the stream in bulk into a reusable buffer, and any bytes
+ * beyond the end of a frame are kept for the next frame. Therefore a decoder
+ * must always be used with the same stream. Alternatively, bytes can be pushed
+ * into the decoder as they arrive with {@link #decode(ByteBuffer)}. Not
+ * thread-safe.
+ *
+ * @author moshew
+ */
+public class MNPFrameDecoder {
+
+    private static final byte[] PACKET_HEAD = MNPPacketLayer.PACKET_HEAD;
+    private static final byte[] PACKET_TAIL = MNPPacketLayer.PACKET_TAIL;
+    private static final byte DELIMITER_ESCAPE = MNPPacketLayer.DELIMITER_ESCAPE;
+
+    private static final int STATE_HEAD = 0;
+    private static final int STATE_BODY = 1;
+    private static final int STATE_ESCAPE = 2;
+    private static final int STATE_FCS_LO = 3;
+    private static final int STATE_FCS_HI = 4;
+    private static final int STATE_DONE = 5;
+
+    private final InputStream in;
+    private final CRC16 crc = new CRC16();
+    /**
+     * Bytes read from the stream.
+     */
+    private final ByteBuffer input;
+    /**
+     * Unescaped payload.
+     */
+    private ByteBuffer payload;
+    private int state;
+    private int stateHead;
+    private int fcs;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param in the input.
+     */
+    public MNPFrameDecoder(InputStream in) {
+        this(in, 1024);
+    }
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param in   the input.
+     * @param size the input buffer size.
+     */
+    public MNPFrameDecoder(InputStream in, int size) {
+        super();
+        this.in = in;
+        this.input = ByteBuffer.allocate(size);
+        this.input.flip();
+        this.payload = ByteBuffer.allocate(MNPLinkTransferPacket.MAX_DATA_LENGTH + 8);
+    }
+
+    /**
+     * Creates a new decoder for pushed bytes.
+     *
+     * @see #decode(ByteBuffer)
+     */
+    public MNPFrameDecoder() {
+        this(null, 0);
+    }
+
+    /**
+     * Get the input stream.
+     *
+     * @return the input.
+     */
+    public InputStream getInput() {
+        return in;
+    }
+
+    /**
+     * Decode the next frame.
+     *
+     * @return the payload, from position {@code 0} to its limit. The buffer is
+     * reused by the next call.
+     * @throws EOFException      if end of stream is reached.
+     * @throws ChecksumException if the frame is malformed.
+     * @throws IOException       if an I/O error occurs.
+     */
+    public ByteBuffer decode() throws IOException {
+        reset();
+
+        try {
+            while (state != STATE_DONE) {
+                if (!input.hasRemaining()) {
+                    fill();
+                }
+                scan(input);
+            }
+        } catch (ChecksumException ce) {
+            state = STATE_HEAD;
+            throw ce;
+        }
+
+        return done();
+    }
+
+    /**
+     * Decode the next frame from pushed bytes, without blocking. A frame can be
+     * split across several calls.
+     *
+     * @param src the bytes, which must be backed by an array. The bytes are
+     *            consumed until the end of the frame, so call again while
+     *            there are remaining bytes.
+     * @return the payload, from position {@code 0} to its limit - or
+     * {@code null} if the frame is not yet complete. The buffer is reused
+     * by the next call.
+     * @throws ChecksumException if the frame is malformed.
+     */
+    public ByteBuffer decode(ByteBuffer src) throws ChecksumException {
+        if (state == STATE_DONE) {
+            reset();
+        }
+        try {
+            scan(src);
+        } catch (ChecksumException ce) {
+            reset();
+            throw ce;
+        }
+        if (state != STATE_DONE) {
+            return null;
+        }
+        return done();
+    }
+
+    /**
+     * Prepare for the next frame.
+     */
+    private void reset() {
+        state = STATE_HEAD;
+        stateHead = 0;
+        payload.clear();
+        crc.reset();
+    }
+
+    /**
+     * The frame has been scanned, so verify it.
+     *
+     * @return the payload.
+     * @throws ChecksumException if the checksum does not match.
+     */
+    private ByteBuffer done() throws ChecksumException {
+        if (fcs != crc.getValue()) {
+            throw new ChecksumException("CRC mismatch");
+        }
+        payload.flip();
+        return payload;
+    }
+
+    /**
+     * Scan the available input bytes.
+     *
+     * @param in the input bytes.
+     * @throws ChecksumException if the frame is malformed.
+     */
+    private void scan(ByteBuffer in) throws ChecksumException {
+        final byte[] a = in.array();
+        final int base = in.arrayOffset();
+        int pos = base + in.position();
+        final int limit = base + in.limit();
+        byte b;
+
+        while ((pos < limit) && (state != STATE_DONE)) {
+            switch (state) {
+                case STATE_HEAD:
+                    b = a[pos++];
+                    if (b == PACKET_HEAD[stateHead]) {
+                        stateHead++;
+                        if (stateHead == PACKET_HEAD.length) {
+                            state = STATE_BODY;
+                        }
+                    } else {
+                        stateHead = (b == PACKET_HEAD[0]) ? 1 : 0;
+                    }
+                    break;
+                case STATE_BODY:
+                    // Copy the run up to the next escape character.
+                    int end = pos;
+                    while ((end < limit) && (a[end] != DELIMITER_ESCAPE)) {
+                        end++;
+                    }
+                    append(a, pos, end - pos);
+                    pos = end;
+                    if (pos < limit) {
+                        pos++;
+                        state = STATE_ESCAPE;
+                    }
+                    break;
+                case STATE_ESCAPE:
+                    b = a[pos++];
+                    if (b == DELIMITER_ESCAPE) {
+                        append(a, pos - 1, 1);
+                        state = STATE_BODY;
+                    } else if (b == PACKET_TAIL[1]) {
+                        crc.update(PACKET_TAIL, 1, PACKET_TAIL.length - 1);
+                        state = STATE_FCS_LO;
+                    } else {
+                        in.position(pos - base);
+                        throw new ChecksumException("Unexpected byte");
+                    }
+                    break;
+                case STATE_FCS_LO:
+                    fcs = a[pos++] & 0xFF;
+                    state = STATE_FCS_HI;
+                    break;
+                case STATE_FCS_HI:
+                    fcs |= (a[pos++] & 0xFF) << 8;
+                    state = STATE_DONE;
+                    break;
+            }
+        }
+        in.position(pos - base);
+    }
+
+    /**
+     * Append unescaped bytes to the payload.
+     *
+     * @param b      the bytes.
+     * @param offset the offset.
+     * @param length the length.
+     */
+    private void append(byte[] b, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (payload.remaining() < length) {
+            ByteBuffer grow = ByteBuffer.allocate((payload.capacity() + length) << 1);
+            payload.flip();
+            grow.put(payload);
+            payload = grow;
+        }
+        payload.put(b, offset, length);
+        crc.update(b, offset, length);
+    }
+
+    /**
+     * Fill the input buffer from the stream. Blocks until at least one byte is
+     * available.
+     *
+     * @throws EOFException if end of stream is reached.
+     * @throws IOException  if an I/O error occurs.
+     */
+    private void fill() throws IOException {
+        int count;
+        try {
+            count = in.read(input.array(), 0, input.capacity());
+        } catch (IOException ioe) {
+            // PipedInputStream throws IOException instead of returning -1.
+            if ((in.available() == 0) && (in instanceof PipedInputStream))
+                throw new EOFException(ioe.getMessage());
+            throw ioe;
+        }
+        if (count < 0)
+            throw new EOFException();
+        input.position(0);
+        input.limit(count);
+    }
+}
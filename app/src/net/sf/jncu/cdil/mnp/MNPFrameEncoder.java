@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+import net.sf.util.zip.CRC16;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes MNP packet payloads into frames.<br>
+ * The frame is built in a reusable buffer so that it can be written to the
+ * port in a single call. Not thread-safe.
+ *
+ * @author moshew
+ */
+public class MNPFrameEncoder {
+
+    private static final byte[] PACKET_HEAD = MNPPacketLayer.PACKET_HEAD;
+    private static final byte[] PACKET_TAIL = MNPPacketLayer.PACKET_TAIL;
+    private static final byte DELIMITER_ESCAPE = MNPPacketLayer.DELIMITER_ESCAPE;
+    /**
+     * Length of the frame check sequence.
+     */
+    private static final int FCS_LENGTH = 2;
+
+    private final CRC16 crc = new CRC16();
+    private ByteBuffer frame;
+    private byte[] payload;
+
+    /**
+     * Creates a new encoder.
+     */
+    public MNPFrameEncoder() {
+        super();
+        ensureFrame(MNPLinkTransferPacket.MAX_DATA_LENGTH + 8);
+    }
+
+    /**
+     * Make sure that the frame buffer can hold a payload.
+     *
+     * @param length the payload length.
+     */
+    private void ensureFrame(int length) {
+        // Worst case is every byte escaped.
+        final int capacity = PACKET_HEAD.length + (length << 1) + PACKET_TAIL.length + FCS_LENGTH;
+        if ((frame == null) || (frame.capacity() < capacity)) {
+            frame = ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * Encode a payload into a frame.
+     *
+     * @param payload the payload.
+     * @param offset  the payload offset.
+     * @param length  the payload length.
+     * @return the frame, from position {@code 0} to its limit. The buffer is
+     * reused by the next call.
+     */
+    public ByteBuffer encode(byte[] payload, int offset, int length) {
+        ensureFrame(length);
+        final byte[] f = frame.array();
+        int n = 0;
+
+        /* Write header. */
+        System.arraycopy(PACKET_HEAD, 0, f, n, PACKET_HEAD.length);
+        n += PACKET_HEAD.length;
+
+        /* Write up to tail, doubling the escape character. */
+        crc.reset();
+        crc.update(payload, offset, length);
+        final int end = offset + length;
+        int start = offset;
+        int run;
+        for (int o = offset; o < end; o++) {
+            if (payload[o] == DELIMITER_ESCAPE) {
+                run = o + 1 - start;
+                System.arraycopy(payload, start, f, n, run);
+                n += run;
+                f[n++] = DELIMITER_ESCAPE;
+                start = o + 1;
+            }
+        }
+        run = end - start;
+        System.arraycopy(payload, start, f, n, run);
+        n += run;
+
+        System.arraycopy(PACKET_TAIL, 0, f, n, PACKET_TAIL.length);
+        n += PACKET_TAIL.length;
+        crc.update(PACKET_TAIL, 1, PACKET_TAIL.length - 1);
+
+        /* Write the FCS. */
+        final int fcs = (int) crc.getValue();
+        f[n++] = (byte) fcs;
+        f[n++] = (byte) (fcs >> 8);
+
+        frame.clear();
+        frame.limit(n);
+        return frame;
+    }
+
+    /**
+     * Encode a payload into a frame.
+     *
+     * @param payload the payload.
+     * @return the frame, from position {@code 0} to its limit. The buffer is
+     * reused by the next call.
+     * @throws IOException if an I/O error occurs.
+     */
+    public ByteBuffer encode(InputStream payload) throws IOException {
+        byte[] buf = this.payload;
+        if (buf == null) {
+            buf = new byte[MNPLinkTransferPacket.MAX_DATA_LENGTH + 8];
+        }
+        int length = 0;
+        int count;
+        while ((count = payload.read(buf, length, buf.length - length)) >= 0) {
+            length += count;
+            if (length == buf.length) {
+                byte[] grow = new byte[buf.length << 1];
+                System.arraycopy(buf, 0, grow, 0, length);
+                buf = grow;
+            }
+        }
+        this.payload = buf;
+        return encode(buf, 0, length);
+    }
+}
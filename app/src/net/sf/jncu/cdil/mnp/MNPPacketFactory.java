@@ -36,9 +36,11 @@ public class MNPPacketFactory {
     private byte sequence;
 
     /**
-     * Creates a new factory.
+     * Creates a new factory, with its own sequence for sending.<br>
+     * Use the shared {@link #getInstance()} unless several links are open at
+     * the same time.
      */
-    protected MNPPacketFactory() {
+    public MNPPacketFactory() {
         super();
     }
 
@@ -19,14 +19,14 @@ import net.sf.jncu.cdil.CDPacketFilter;
 import net.sf.jncu.cdil.CDPacketLayer;
 import net.sf.jncu.cdil.CDPacketListener;
 import net.sf.lang.ControlCharacter;
-import net.sf.util.zip.CRC16;
-import net.sf.util.zip.ChecksumException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -61,6 +61,14 @@ public class MNPPacketLayer extends CDPacketLayer<MNPPacket> implements CDPacket
      * Current LR/LT sequence id to Newton.
      */
     private int sequenceSending = Integer.MIN_VALUE;
+    /**
+     * Frame encoder.
+     */
+    private final MNPFrameEncoder encoder = new MNPFrameEncoder();
+    /**
+     * Frame decoders for each input.
+     */
+    private final Map<InputStream, MNPFrameDecoder> decoders = new WeakHashMap<InputStream, MNPFrameDecoder>();
 
     /**
      * Creates a new packet layer.
@@ -100,89 +108,31 @@ public class MNPPacketLayer extends CDPacketLayer<MNPPacket> implements CDPacket
      * @throws IOException  if an I/O error occurs.
      */
     protected byte[] read(InputStream in) throws EOFException, IOException {
-        int delimiterLength = PACKET_HEAD.length;
-        int state = 0;
-        int b;
-
-        /* Read header. */
-        while (state < delimiterLength) {
-            b = readByte(in);
-            if (b == PACKET_HEAD[state]) {
-                state++;
-            } else {
-                state = 0;
+        MNPFrameDecoder decoder;
+        synchronized (decoders) {
+            decoder = decoders.get(in);
+            if (decoder == null) {
+                decoder = new MNPFrameDecoder(in);
+                decoders.put(in, decoder);
             }
         }
-
-        /* Read up to tail. */
-        boolean isEscape = false;
-        CRC16 crc = new CRC16();
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        delimiterLength = PACKET_TAIL.length;
-        state = 0;
-        while (state < delimiterLength) {
-            b = readByte(in);
-            if (b == DELIMITER_ESCAPE) {
-                if (isEscape) {
-                    buf.write(b);
-                    crc.update(b);
-                    state = 0;
-                } else if (b == PACKET_TAIL[state]) {
-                    state++;
-                }
-                isEscape = !isEscape;
-            } else if (b == PACKET_TAIL[state]) {
-                state++;
-            } else if (state == 0) {
-                buf.write(b);
-                crc.update(b);
-            } else {
-                throw new ChecksumException("Unexpected byte");
-            }
-        }
-        buf.close();
-        byte[] payload = buf.toByteArray();
-        crc.update(PACKET_TAIL, 1, PACKET_TAIL.length - 1);
-
-        /* Read the FCS. */
-        b = readByte(in);
-        long crcWord = b;
-        b = readByte(in);
-        crcWord = (b << 8) | crcWord;
-        if (crcWord != crc.getValue()) {
-            throw new ChecksumException("CRC mismatch");
-        }
-
+        ByteBuffer frame = decoder.decode();
+        byte[] payload = new byte[frame.remaining()];
+        frame.get(payload);
         return payload;
     }
 
     @Override
     protected void write(byte[] payload, int offset, int length) throws IOException {
-        int b;
-        CRC16 crc = new CRC16();
         OutputStream out = getOutput();
         if (out == null)
             return;
 
-        /* Write header. */
-        out.write(PACKET_HEAD);
-
-        /* Write up to tail. */
-        for (int i = 0, o = offset; i < length; i++, o++) {
-            b = payload[o] & 0xFF;
-            out.write(b);
-            if (b == DELIMITER_ESCAPE) {
-                out.write(b);
-            }
-            crc.update(b);
+        // Both the sender and the receiver (for acknowledgements) write frames.
+        synchronized (encoder) {
+            ByteBuffer frame = encoder.encode(payload, offset, length);
+            out.write(frame.array(), 0, frame.limit());
         }
-        out.write(PACKET_TAIL);
-        crc.update(PACKET_TAIL, 1, PACKET_TAIL.length - 1);
-
-        /* Write the FCS. */
-        b = (int) crc.getValue();
-        out.write(b & 0xFF);
-        out.write((b >> 8) & 0xFF);
     }
 
     /**
@@ -192,32 +142,14 @@ public class MNPPacketLayer extends CDPacketLayer<MNPPacket> implements CDPacket
      * @throws IOException if an I/O error occurs.
      */
     protected void write(InputStream payload) throws IOException {
-        int b;
-        CRC16 crc = new CRC16();
         OutputStream out = getOutput();
         if (out == null)
             return;
 
-        /* Write header. */
-        out.write(PACKET_HEAD);
-
-        /* Write up to tail. */
-        b = payload.read();
-        while (b != -1) {
-            out.write(b);
-            if (b == DELIMITER_ESCAPE) {
-                out.write(b);
-            }
-            crc.update(b);
-            b = payload.read();
+        synchronized (encoder) {
+            ByteBuffer frame = encoder.encode(payload);
+            out.write(frame.array(), 0, frame.limit());
         }
-        out.write(PACKET_TAIL);
-        crc.update(PACKET_TAIL, 1, PACKET_TAIL.length - 1);
-
-        /* Write the FCS. */
-        b = (int) crc.getValue();
-        out.write(b & 0xFF);
-        out.write((b >> 8) & 0xFF);
     }
 
     @Override
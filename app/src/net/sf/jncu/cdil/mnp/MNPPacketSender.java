@@ -16,12 +16,16 @@
 package net.sf.jncu.cdil.mnp;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeoutException;
 
 /**
- * Send queued MNP packets.
+ * Send queued MNP packets.<br>
+ * Link transfer packets are sent through a sliding window, so that up to the
+ * negotiated number of packets are outstanding before waiting for
+ * acknowledgement.
  *
  * @author moshew
  */
@@ -30,9 +34,8 @@ public class MNPPacketSender extends Thread implements MNPPacketListener {
     protected final MNPPipe pipe;
     protected final MNPPacketLayer packetLayer;
     protected final BlockingQueue<MNPPacket> queueSend = new LinkedBlockingQueue<MNPPacket>();
-    protected boolean running = false;
-    private int sequenceAcknowledged = -1;
-    private MNPPacket packetAcknowledge = null;
+    protected final MNPAcknowledgementTracker tracker = new MNPAcknowledgementTracker();
+    protected volatile boolean running = false;
 
     /**
      * Creates a new packet sender.
@@ -62,92 +65,121 @@ public class MNPPacketSender extends Thread implements MNPPacketListener {
         } catch (InterruptedException ie) {
             throw new TimeoutException(ie.getMessage());
         }
+        tracker.signal();
     }
 
     /**
      * Send packets while waiting for more to become available. Possibly re-send
-     * multiple times until acknowledged. Packets are queued until the first
-     * packet is sent.
+     * multiple times until acknowledged. Sleeps until a packet is queued, a
+     * packet is acknowledged, or a re-send deadline is reached.
      *
      * @throws TimeoutException if timeout occurs.
      */
     private void runSend() throws TimeoutException {
-        MNPPacket packet;
-        MNPPacket next = null;
-        long timeout; // Enough time to wait for acknowledgement.
-        long now;
-        int retry;
-        boolean allowSend;
-        boolean resend = true;
-        int sequenceToAcknowledge;
+        MNPPacket next;
+        List<MNPPacket> resend;
 
         while (running && !isInterrupted()) {
+            next = null;
+            resend = null;
+
+            tracker.lock();
             try {
-                next = queueSend.take();
+                while (running) {
+                    resend = tracker.takeResend();
+                    if (resend != null) {
+                        break;
+                    }
+                    next = queueSend.peek();
+                    if ((next != null) && tracker.isOpen(next.getType())) {
+                        next = queueSend.poll();
+                        break;
+                    }
+                    next = null;
+                    tracker.await();
+                }
             } catch (InterruptedException ie) {
                 if (!queueSend.isEmpty())
                     ie.printStackTrace();
+            } finally {
+                tracker.unlock();
             }
 
+            if (resend != null) {
+                resendPackets(resend);
+            }
             if (next != null) {
-                packetAcknowledge = null;
-                // LA and LD packets don't need acknowledgement.
-                switch (next.getType()) {
-                    case MNPPacket.LR:
-                        sequenceToAcknowledge = 0;
-                        packetAcknowledge = next;
-                        break;
-                    case MNPPacket.LT:
-                        sequenceToAcknowledge = ((MNPLinkTransferPacket) next).getSequence();
-                        packetAcknowledge = next;
-                        break;
-                    default:
-                        sequenceToAcknowledge = -1;
-                        break;
-                }
-                retry = 5;
-                resend = true;
-                packet = next;
-
-                do {
-                    allowSend = (pipe == null) || pipe.allowSend();
-                    if (allowSend) {
-                        try {
-                            timeout = System.currentTimeMillis() + 5000L;
-                            packetLayer.send(packet);
-                            // TODO move this section to #packetSent
-                            if (sequenceToAcknowledge >= 0) {
-                                // Wait for acknowledgement.
-                                do {
-                                    yield();
-                                    resend &= (sequenceAcknowledged < sequenceToAcknowledge);
-                                    resend &= running;
-                                    now = System.currentTimeMillis();
-                                } while (resend && (now < timeout));
-                            } else {
-                                resend = false;
-                            }
-                        } catch (IOException ioe) {
-                            ioe.printStackTrace();
-                            packetEOF();
-                        }
-                    }
-                    allowSend = (pipe == null) || pipe.allowSend();
-
-                    resend &= running;
-                    resend &= allowSend;
-                    resend &= !isInterrupted();
-                    if (resend) {
-                        retry--;
-                        if (retry < 0) {
-                            throw new TimeoutException();
-                        }
-                    }
-                } while (resend);
+                sendPacket(next);
             }
         }
     }
 
+    /**
+     * Send a packet for the first time.<br>
+     * LR and LT packets wait for acknowledgement; LA and LD packets don't need
+     * acknowledgement.
+     *
+     * @param packet the packet.
+     */
+    private void sendPacket(MNPPacket packet) {
+        if (!allowSend()) {
+            return;
+        }
+
+        // Track before sending in case the acknowledgement arrives first.
+        switch (packet.getType()) {
+            case MNPPacket.LR:
+                tracker.add(packet, 0);
+                break;
+            case MNPPacket.LT:
+                tracker.add(packet, ((MNPLinkTransferPacket) packet).getSequence());
+                break;
+        }
+        transmit(packet);
+    }
+
+    /**
+     * Re-send outstanding packets that have timed out, or that were requested
+     * by a duplicate acknowledgement.
+     *
+     * @param packets the packets to re-send.
+     */
+    private void resendPackets(List<MNPPacket> packets) {
+        if (!allowSend()) {
+            tracker.clear();
+            return;
+        }
+        for (MNPPacket packet : packets) {
+            transmit(packet);
+        }
+    }
+
+    /**
+     * Write the packet to the packet layer.
+     *
+     * @param packet the packet.
+     */
+    private void transmit(MNPPacket packet) {
+        try {
+            packetLayer.send(packet);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            packetEOF();
+        } catch (TimeoutException te) {
+            te.printStackTrace();
+            packetEOF();
+        }
+    }
+
+    /**
+     * Can send packets?
+     *
+     * @return {@code true} if allowed.
+     */
+    private boolean allowSend() {
+        return running && ((pipe == null) || pipe.allowSend());
+    }
+
     @Override
     public void packetAcknowledged(MNPPacket packet) {
         // Nothing to do.
@@ -163,17 +195,16 @@ public class MNPPacketSender extends Thread implements MNPPacketListener {
         final byte packetType = packet.getType();
 
         if (packetType == MNPPacket.LA) {
-            MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) packet;
-            sequenceAcknowledged = Math.max(sequenceAcknowledged, ack.getSequence());
-            if (packetAcknowledge != null) {
-                packetLayer.runAcknowledged(packetAcknowledge);
-                packetAcknowledge = null;
+            List<MNPPacket> acknowledged = tracker.acknowledge((MNPLinkAcknowledgementPacket) packet);
+            if (acknowledged != null) {
+                for (MNPPacket p : acknowledged) {
+                    packetLayer.runAcknowledged(p);
+                }
             }
         } else if (packetType == MNPPacket.LR) {
-            sequenceAcknowledged = Math.max(sequenceAcknowledged, 0);
-            if (packetAcknowledge != null) {
-                packetLayer.runAcknowledged(packetAcknowledge);
-                packetAcknowledge = null;
+            MNPPacket acknowledged = tracker.acknowledge((MNPLinkRequestPacket) packet);
+            if (acknowledged != null) {
+                packetLayer.runAcknowledged(acknowledged);
             }
         }
     }
@@ -194,8 +225,8 @@ public class MNPPacketSender extends Thread implements MNPPacketListener {
     public void cancel() {
         running = false;
         packetLayer.removePacketListener(this);
-        queueSend.clear();
-        // Kill "queueSend.take();"
+        clear();
+        // Kill "tracker.await();"
         interrupt();
     }
 
@@ -217,6 +248,52 @@ public class MNPPacketSender extends Thread implements MNPPacketListener {
      */
     public void clear() {
         queueSend.clear();
+        tracker.clear();
+    }
+
+    /**
+     * Get the maximum number of outstanding packets, as negotiated by the link
+     * request.
+     *
+     * @return the maximum number of packets.
+     */
+    public int getMaxOutstanding() {
+        return tracker.getMaxOutstanding();
+    }
+
+    /**
+     * Set the maximum number of outstanding packets.
+     *
+     * @param maxOutstanding the maximum number of packets.
+     */
+    public void setMaxOutstanding(int maxOutstanding) {
+        tracker.setMaxOutstanding(maxOutstanding);
     }
 
+    /**
+     * Get the acknowledgement timeout.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public long getAcknowledgeTimeout() {
+        return tracker.getAcknowledgeTimeout();
+    }
+
+    /**
+     * Set the acknowledgement timeout.
+     *
+     * @param acknowledgeTimeout the timeout in milliseconds.
+     */
+    public void setAcknowledgeTimeout(long acknowledgeTimeout) {
+        tracker.setAcknowledgeTimeout(acknowledgeTimeout);
+    }
+
+    /**
+     * Get the window statistics.
+     *
+     * @return a snapshot of the statistics.
+     */
+    public MNPWindowStatistics getStatistics() {
+        return tracker.getStatistics();
+    }
 }
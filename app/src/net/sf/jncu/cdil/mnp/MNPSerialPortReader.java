@@ -15,14 +15,13 @@
  */
 package net.sf.jncu.cdil.mnp;
 
-import java.io.BufferedInputStream;
+import net.sf.jncu.io.RingBuffer;
+
 import java.io.Closeable;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 
@@ -63,9 +62,9 @@ public class MNPSerialPortReader extends Thread implements Closeable {
         super();
         setName("MNPSerialPortReader-" + getId());
         this.port = port;
-        PipedOutputStream pipeSource = new PipedOutputStream();
-        this.data = pipeSource;
-        this.in = new BufferedInputStream(new PipedInputStream(pipeSource), 1024);
+        RingBuffer buffer = new RingBuffer();
+        this.data = buffer.getOutputStream();
+        this.in = buffer.getInputStream();
         this.listener = createPortListener(port, data);
         try {
             port.addEventListener(listener);
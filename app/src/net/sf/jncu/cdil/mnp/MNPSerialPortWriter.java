@@ -143,6 +143,18 @@ public class MNPSerialPortWriter extends Thread implements Closeable {
                 throw new IOException(se.getCause());
             }
         }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if ((off == 0) && (len == b.length)) {
+                write(b);
+                return;
+            }
+            // The port only writes whole arrays.
+            byte[] buf = new byte[len];
+            System.arraycopy(b, off, buf, 0, len);
+            write(buf);
+        }
     }
 
     /**
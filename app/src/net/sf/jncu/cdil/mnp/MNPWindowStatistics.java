@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+/**
+ * Statistics of the MNP sliding window transmitter.<br>
+ * A window starts when the first packet is sent while nothing is outstanding,
+ * and ends when all of its packets have been acknowledged.
+ *
+ * @author moshew
+ */
+public class MNPWindowStatistics implements Cloneable {
+
+    private int windows;
+    private int packetsSent;
+    private int packetsResent;
+    private int packetsAcknowledged;
+    private int duplicateAcknowledgements;
+    private int timeouts;
+    private int peakOutstanding;
+    private long outstandingTotal;
+    private int windowPackets;
+    private int windowPacketsMax;
+
+    /**
+     * Creates new statistics.
+     */
+    public MNPWindowStatistics() {
+        super();
+    }
+
+    /**
+     * A packet was sent for the first time.
+     *
+     * @param outstanding the number of packets outstanding, including this
+     *                    packet.
+     */
+    void packetSent(int outstanding) {
+        if (outstanding == 1) {
+            windows++;
+            windowPackets = 0;
+        }
+        packetsSent++;
+        windowPackets++;
+        windowPacketsMax = Math.max(windowPacketsMax, windowPackets);
+        peakOutstanding = Math.max(peakOutstanding, outstanding);
+        outstandingTotal += outstanding;
+    }
+
+    /**
+     * A packet was re-sent.
+     */
+    void packetResent() {
+        packetsResent++;
+    }
+
+    /**
+     * A packet was acknowledged.
+     */
+    void packetAcknowledged() {
+        packetsAcknowledged++;
+    }
+
+    /**
+     * A duplicate acknowledgement was received.
+     */
+    void duplicateAcknowledgement() {
+        duplicateAcknowledgements++;
+    }
+
+    /**
+     * An acknowledgement was not received in time.
+     */
+    void timeout() {
+        timeouts++;
+    }
+
+    /**
+     * Get the number of windows.
+     *
+     * @return the number of windows.
+     */
+    public int getWindows() {
+        return windows;
+    }
+
+    /**
+     * Get the number of packets sent, excluding re-sends.
+     *
+     * @return the number of packets.
+     */
+    public int getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Get the number of packets re-sent.
+     *
+     * @return the number of packets.
+     */
+    public int getPacketsResent() {
+        return packetsResent;
+    }
+
+    /**
+     * Get the number of packets acknowledged.
+     *
+     * @return the number of packets.
+     */
+    public int getPacketsAcknowledged() {
+        return packetsAcknowledged;
+    }
+
+    /**
+     * Get the number of duplicate acknowledgements.
+     *
+     * @return the number of acknowledgements.
+     */
+    public int getDuplicateAcknowledgements() {
+        return duplicateAcknowledgements;
+    }
+
+    /**
+     * Get the number of acknowledgement timeouts.
+     *
+     * @return the number of timeouts.
+     */
+    public int getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Get the most packets that were outstanding at the same time.
+     *
+     * @return the number of packets.
+     */
+    public int getPeakOutstanding() {
+        return peakOutstanding;
+    }
+
+    /**
+     * Get the most packets that were sent within a single window.
+     *
+     * @return the number of packets.
+     */
+    public int getWindowPacketsMax() {
+        return windowPacketsMax;
+    }
+
+    /**
+     * Get the average number of packets sent per window.
+     *
+     * @return the average.
+     */
+    public float getWindowPacketsAverage() {
+        return (windows == 0) ? 0f : ((float) packetsSent / windows);
+    }
+
+    /**
+     * Get the average number of outstanding packets at the time of sending.
+     *
+     * @return the average.
+     */
+    public float getOutstandingAverage() {
+        return (packetsSent == 0) ? 0f : ((float) outstandingTotal / packetsSent);
+    }
+
+    @Override
+    public MNPWindowStatistics clone() {
+        try {
+            return (MNPWindowStatistics) super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new InternalError(cnse.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "windows=" + windows + ", sent=" + packetsSent + ", resent=" + packetsResent + ", acknowledged=" + packetsAcknowledged + ", duplicates="
+                + duplicateAcknowledgements + ", timeouts=" + timeouts + ", peak=" + peakOutstanding + ", average=" + getOutstandingAverage();
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import net.sf.jncu.cdil.tcp.TCPPipe;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Docking server that serves many Newton devices at once.<br>
+ * A single thread selects over all the sockets, and serial ports post their
+ * bytes to it. Received commands are handled by a fixed pool of worker
+ * threads, instead of the three or four threads per device of a
+ * {@link net.sf.jncu.cdil.CDPipe}.
+ *
+ * @author moshew
+ */
+public class DockingServer extends Thread {
+
+    /**
+     * Period to check the transport timers, in milliseconds.
+     */
+    protected static final long TICK = 100L;
+    /**
+     * Size of the socket read buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final int workersCount;
+    /**
+     * Tasks to run on the server thread.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final List<DockingSession> sessions = new CopyOnWriteArrayList<DockingSession>();
+    private final List<DockingServerListener> listeners = new CopyOnWriteArrayList<DockingServerListener>();
+    private final ByteBuffer bufferRead = ByteBuffer.allocate(BUFFER_SIZE);
+    private volatile boolean closed;
+
+    /**
+     * Creates a new server with one worker per processor.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public DockingServer() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new server.
+     *
+     * @param workersCount the number of worker threads.
+     * @throws IOException if an I/O error occurs.
+     */
+    public DockingServer(int workersCount) throws IOException {
+        super();
+        setName("DockingServer-" + getId());
+        this.selector = Selector.open();
+        this.workersCount = workersCount;
+        final String name = getName();
+        this.workers = Executors.newFixedThreadPool(workersCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the worker threads.
+     *
+     * @return the workers.
+     */
+    ExecutorService getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Get the number of worker threads.
+     *
+     * @return the number of workers.
+     */
+    public int getWorkersCount() {
+        return workersCount;
+    }
+
+    /**
+     * Get the open sessions.
+     *
+     * @return the list of sessions.
+     */
+    public List<DockingSession> getSessions() {
+        return new ArrayList<DockingSession>(sessions);
+    }
+
+    /**
+     * Add a server listener.
+     *
+     * @param listener the listener to add.
+     */
+    public void addListener(DockingServerListener listener) {
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+
+    /**
+     * Remove a server listener.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeListener(DockingServerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Listen for Newton devices docking over TCP.
+     *
+     * @param port the port, or {@code 0} for any free port.
+     * @return the bound port.
+     * @throws IOException if an I/O error occurs.
+     * @see TCPPipe#PORT_DOCK
+     */
+    public int listen(int port) throws IOException {
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.socket().setReuseAddress(true);
+        channel.socket().bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.register(selector, SelectionKey.OP_ACCEPT);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        });
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Listen for a Newton device docking over a serial port.
+     *
+     * @param portName the serial port name.
+     * @param baud     the baud rate.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void openSerial(String portName, int baud) throws IOException {
+        open(new SerialTransport(this, portName, baud));
+    }
+
+    /**
+     * Open a session for the transport.
+     *
+     * @param transport the transport.
+     */
+    public void open(final DockingTransport transport) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                openSession(transport);
+            }
+        });
+    }
+
+    /**
+     * Run the task on the server thread.
+     *
+     * @param task the task.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long tickLast = System.currentTimeMillis();
+        long now;
+
+        try {
+            while (!closed) {
+                runTasks();
+                selector.select(isTicking() ? TICK : 0L);
+                if (closed)
+                    break;
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handle(key);
+                }
+                now = System.currentTimeMillis();
+                if (now - tickLast >= TICK) {
+                    tickLast = now;
+                    tick();
+                }
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        } finally {
+            for (DockingSession session : sessions) {
+                session.closed();
+            }
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ioe) {
+                    // Ignore.
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Run the pending tasks.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handle a selected key.
+     *
+     * @param key the key.
+     */
+    private void handle(SelectionKey key) {
+        if (!key.isValid())
+            return;
+        if (key.isAcceptable()) {
+            accept((ServerSocketChannel) key.channel());
+            return;
+        }
+        SocketTransport transport = (SocketTransport) key.attachment();
+        try {
+            if (key.isReadable())
+                transport.read(bufferRead);
+            if (key.isValid() && key.isWritable())
+                transport.flush();
+        } catch (EOFException eofe) {
+            transport.getSession().closed();
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            transport.getSession().closed();
+        }
+    }
+
+    /**
+     * Accept a socket connection.
+     *
+     * @param server the server socket.
+     */
+    private void accept(ServerSocketChannel server) {
+        SocketChannel channel;
+        try {
+            while ((channel = server.accept()) != null) {
+                SocketTransport transport = new SocketTransport(channel);
+                transport.register(selector);
+                openSession(transport);
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Open a session for the transport, on the server thread.
+     *
+     * @param transport the transport.
+     */
+    private void openSession(DockingTransport transport) {
+        final DockingSession session = new DockingSession(this, transport);
+        transport.setSession(session);
+        sessions.add(session);
+        session.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (DockingServerListener listener : listeners) {
+                    listener.sessionOpened(session);
+                }
+            }
+        });
+        try {
+            transport.opened();
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            session.closed();
+        }
+    }
+
+    /**
+     * Remove the session.
+     *
+     * @param session the session.
+     * @return {@code true} if the session was open.
+     */
+    boolean remove(DockingSession session) {
+        return sessions.remove(session);
+    }
+
+    /**
+     * Do any transports need ticks?
+     *
+     * @return {@code true} if ticking.
+     */
+    private boolean isTicking() {
+        for (DockingSession session : sessions) {
+            if (session.getTransport().isTicking())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check the transport timers.
+     */
+    private void tick() {
+        DockingTransport transport;
+        for (DockingSession session : sessions) {
+            transport = session.getTransport();
+            if (!transport.isTicking())
+                continue;
+            try {
+                transport.tick();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                session.closed();
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners that the session is connected.
+     *
+     * @param session the session.
+     */
+    void fireSessionConnected(DockingSession session) {
+        for (DockingServerListener listener : listeners) {
+            listener.sessionConnected(session);
+        }
+    }
+
+    /**
+     * Notify the listeners that the session is disconnected.
+     *
+     * @param session the session.
+     */
+    void fireSessionDisconnected(DockingSession session) {
+        for (DockingServerListener listener : listeners) {
+            listener.sessionDisconnected(session);
+        }
+    }
+
+    /**
+     * Close the server, and disconnect all the sessions.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+}
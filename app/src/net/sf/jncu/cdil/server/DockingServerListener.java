@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+/**
+ * Docking server listener.<br>
+ * Events are fired on the worker threads, so listeners may block.
+ *
+ * @author moshew
+ */
+public interface DockingServerListener {
+
+    /**
+     * A Newton device has opened a session, and docking has begun.
+     *
+     * @param session the session.
+     */
+    void sessionOpened(DockingSession session);
+
+    /**
+     * A Newton device has docked.
+     *
+     * @param session the session.
+     */
+    void sessionConnected(DockingSession session);
+
+    /**
+     * A Newton device has disconnected.
+     *
+     * @param session the session.
+     */
+    void sessionDisconnected(DockingSession session);
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import net.sf.jncu.cdil.BadPipeStateException;
+import net.sf.jncu.cdil.CDILNotInitializedException;
+import net.sf.jncu.cdil.CDPacket;
+import net.sf.jncu.cdil.CDPacketLayer;
+import net.sf.jncu.cdil.CDState;
+import net.sf.jncu.cdil.PipeDisconnectedException;
+import net.sf.jncu.cdil.PlatformException;
+import net.sf.jncu.protocol.DockCommandDecoder;
+import net.sf.jncu.protocol.DockCommandFromNewton;
+import net.sf.jncu.protocol.DockCommandListener;
+import net.sf.jncu.protocol.DockCommandToNewton;
+import net.sf.jncu.protocol.v1_0.session.DDisconnect;
+import net.sf.jncu.protocol.v2_0.session.DockingEndpoint;
+import net.sf.jncu.protocol.v2_0.session.DockingProtocol;
+import net.sf.jncu.protocol.v2_0.session.DockingState;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Docking session with one Newton device.<br>
+ * Received bytes are decoded into commands, and the commands handled, on the
+ * worker threads, one task at a time, so that each session sees its commands in
+ * order.
+ *
+ * @author moshew
+ */
+public class DockingSession implements DockingEndpoint {
+
+    private final DockingServer server;
+    private final DockingTransport transport;
+    private final DockingProtocol<CDPacket, CDPacketLayer<CDPacket>> docking;
+    private final List<DockCommandListener> listeners = new CopyOnWriteArrayList<DockCommandListener>();
+    private volatile CDState state = CDState.LISTENING;
+    private int timeout = 30;
+    /**
+     * Decoder of incoming commands. Only used by the session tasks.
+     */
+    private final DockCommandDecoder decoder;
+    /**
+     * Tasks to run on the worker threads.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable runTasks = new Runnable() {
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            scheduled.set(false);
+            // Maybe a task was added after the queue was drained?
+            if (!tasks.isEmpty())
+                schedule();
+        }
+    };
+
+    /**
+     * Creates a new session.
+     *
+     * @param server    the server.
+     * @param transport the transport.
+     */
+    DockingSession(DockingServer server, DockingTransport transport) {
+        super();
+        this.server = server;
+        this.transport = transport;
+        this.docking = new DockingProtocol<CDPacket, CDPacketLayer<CDPacket>>(this);
+        this.decoder = new DockCommandDecoder(new DockCommandListener() {
+            @Override
+            public void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+                DockingSession.this.commandReceiving(command, progress, total);
+            }
+
+            @Override
+            public void commandReceived(DockCommandFromNewton command) {
+                DockingSession.this.commandReceived(command);
+            }
+
+            @Override
+            public void commandSending(DockCommandToNewton command, int progress, int total) {
+            }
+
+            @Override
+            public void commandSent(DockCommandToNewton command) {
+            }
+
+            @Override
+            public void commandEOF() {
+            }
+        });
+    }
+
+    /**
+     * Get the server.
+     *
+     * @return the server.
+     */
+    public DockingServer getServer() {
+        return server;
+    }
+
+    /**
+     * Get the transport.
+     *
+     * @return the transport.
+     */
+    public DockingTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the CD state.
+     *
+     * @return the state.
+     */
+    public CDState getCDState() {
+        return state;
+    }
+
+    /**
+     * Get the docking state.
+     *
+     * @return the state.
+     */
+    public DockingState getDockingState() {
+        return docking.getState();
+    }
+
+    /**
+     * Is the session connected?
+     *
+     * @return {@code true} if docked.
+     */
+    public boolean isConnected() {
+        return state == CDState.CONNECTED;
+    }
+
+    @Override
+    public void addCommandListener(DockCommandListener listener) {
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+
+    @Override
+    public void removeCommandListener(DockCommandListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the timeout period.
+     *
+     * @param timeoutInSecs the timeout in seconds.
+     */
+    public void setTimeout(int timeoutInSecs) {
+        this.timeout = timeoutInSecs;
+    }
+
+    /**
+     * Submit a task to run on a worker thread, after all the previous tasks
+     * for this session.
+     *
+     * @param task the task.
+     */
+    void submit(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * Schedule the tasks to run on a worker thread.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true))
+            server.getWorkers().execute(runTasks);
+    }
+
+    /**
+     * The transport link has been established, so start docking.
+     */
+    void linkConnected() {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    docking.setState(DockingState.HANDSHAKE_LR);
+                    docking.setState(DockingState.HANDSHAKE_RTDK);
+                } catch (PipeDisconnectedException pde) {
+                    pde.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Bytes were received from the Newton device.<br>
+     * Called on the server thread.
+     *
+     * @param data the bytes.
+     */
+    void received(ByteBuffer data) {
+        final byte[] b = new byte[data.remaining()];
+        data.get(b);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decoder.decode(b, 0, b.length);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                    decoder.reset();
+                }
+            }
+        });
+    }
+
+    /**
+     * Notify the listeners that the command is being received.
+     *
+     * @param command  the command.
+     * @param progress the number of bytes received.
+     * @param total    the total number of bytes to receive.
+     */
+    private void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+        for (DockCommandListener listener : listeners) {
+            listener.commandReceiving(command, progress, total);
+        }
+    }
+
+    /**
+     * Notify the listeners that the command was received.
+     *
+     * @param command the command.
+     */
+    private void commandReceived(DockCommandFromNewton command) {
+        for (DockCommandListener listener : listeners) {
+            listener.commandReceived(command);
+        }
+        if (state == CDState.CONNECTED)
+            processCommand(command);
+    }
+
+    /**
+     * Process the command once docked.
+     *
+     * @param command the received command.
+     */
+    protected void processCommand(DockCommandFromNewton command) {
+        if (DDisconnect.COMMAND.equals(command.getCommand())) {
+            disconnectQuiet();
+        }
+    }
+
+    @Override
+    public void write(final DockCommandToNewton cmd) throws CDILNotInitializedException, PlatformException, BadPipeStateException, PipeDisconnectedException, TimeoutException {
+        if (state == CDState.DISCONNECTED)
+            throw new PipeDisconnectedException();
+
+        final byte[] payload;
+        try {
+            // Get the payload first so that the length is known.
+            InputStream in = cmd.getCommandPayload();
+            payload = new byte[cmd.getCommandPayloadLength()];
+            int offset = 0;
+            int count;
+            while ((offset < payload.length) && ((count = in.read(payload, offset, payload.length - offset)) >= 0)) {
+                offset += count;
+            }
+            in.close();
+            // Newton would wait forever for the missing bytes.
+            if (offset < payload.length)
+                throw new EOFException("payload shorter than " + payload.length + " bytes");
+        } catch (IOException ioe) {
+            throw new PipeDisconnectedException(ioe);
+        }
+
+        server.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.send(payload);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                    closed();
+                }
+            }
+        });
+
+        // The bytes are queued in order, so the command is as good as sent.
+        for (DockCommandListener listener : listeners) {
+            listener.commandSending(cmd, payload.length, payload.length);
+            listener.commandSent(cmd);
+        }
+    }
+
+    @Override
+    public void notifyConnected() throws BadPipeStateException {
+        if (state != CDState.LISTENING) {
+            throw new BadPipeStateException();
+        }
+        state = CDState.CONNECT_PENDING;
+        removeCommandListener(docking);
+        state = CDState.CONNECTED;
+        server.fireSessionConnected(this);
+    }
+
+    @Override
+    public void disconnect() throws CDILNotInitializedException, PlatformException, BadPipeStateException, PipeDisconnectedException, TimeoutException {
+        if (state == CDState.DISCONNECTED)
+            return;
+        state = CDState.DISCONNECT_PENDING;
+        server.execute(new Runnable() {
+            @Override
+            public void run() {
+                closed();
+            }
+        });
+    }
+
+    /**
+     * Disconnect quietly.
+     */
+    public void disconnectQuiet() {
+        try {
+            disconnect();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The Newton device has disconnected, or the session was closed.<br>
+     * Called on the server thread.
+     */
+    void closed() {
+        if (!server.remove(this))
+            return;
+        state = CDState.DISCONNECTED;
+        transport.close();
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                for (DockCommandListener listener : listeners) {
+                    listener.commandEOF();
+                }
+                server.fireSessionDisconnected(DockingSession.this);
+            }
+        });
+    }
+}
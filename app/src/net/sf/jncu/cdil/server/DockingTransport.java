@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Link between a docking session and its Newton device.<br>
+ * All methods are called on the server thread, so they must never block.
+ *
+ * @author moshew
+ */
+public abstract class DockingTransport {
+
+    private DockingSession session;
+
+    /**
+     * Creates a new transport.
+     */
+    protected DockingTransport() {
+        super();
+    }
+
+    /**
+     * Get the session.
+     *
+     * @return the session.
+     */
+    public DockingSession getSession() {
+        return session;
+    }
+
+    /**
+     * Set the session.
+     *
+     * @param session the session.
+     */
+    void setSession(DockingSession session) {
+        this.session = session;
+    }
+
+    /**
+     * The session has been opened.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void opened() throws IOException {
+    }
+
+    /**
+     * Bytes were received from the Newton device.
+     *
+     * @param data the bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected abstract void receive(ByteBuffer data) throws IOException;
+
+    /**
+     * Send the bytes of dock commands to the Newton device.
+     *
+     * @param data the bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected abstract void send(byte[] data) throws IOException;
+
+    /**
+     * Does the transport have timers that need to be checked periodically?
+     *
+     * @return {@code true} to receive ticks.
+     * @see #tick()
+     */
+    protected boolean isTicking() {
+        return false;
+    }
+
+    /**
+     * Check the timers, for example to re-send packets.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void tick() throws IOException {
+    }
+
+    /**
+     * Close the transport and release resources.
+     */
+    protected abstract void close();
+}
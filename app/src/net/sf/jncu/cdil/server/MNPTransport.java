@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import net.sf.jncu.cdil.mnp.MNPAcknowledgementTracker;
+import net.sf.jncu.cdil.mnp.MNPFrameDecoder;
+import net.sf.jncu.cdil.mnp.MNPFrameEncoder;
+import net.sf.jncu.cdil.mnp.MNPLinkAcknowledgementPacket;
+import net.sf.jncu.cdil.mnp.MNPLinkRequestPacket;
+import net.sf.jncu.cdil.mnp.MNPLinkTransferPacket;
+import net.sf.jncu.cdil.mnp.MNPPacket;
+import net.sf.jncu.cdil.mnp.MNPPacketFactory;
+import net.sf.util.zip.ChecksumException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * MNP transport. Handles the MNP link without any threads of its own: frames
+ * are decoded as bytes arrive, and re-sent when the server ticks. The link is
+ * closed if the Newton is silent for longer than the session timeout.
+ *
+ * @author moshew
+ */
+public abstract class MNPTransport extends DockingTransport {
+
+    private final MNPFrameDecoder decoder = new MNPFrameDecoder();
+    private final MNPFrameEncoder encoder = new MNPFrameEncoder();
+    private final MNPPacketFactory factory = new MNPPacketFactory();
+    private final MNPAcknowledgementTracker tracker = new MNPAcknowledgementTracker();
+    /**
+     * Packets waiting for the window to open.
+     */
+    private final Deque<MNPLinkTransferPacket> queueOut = new ArrayDeque<MNPLinkTransferPacket>();
+    /**
+     * Sequence of the last transfer packet received in order.
+     */
+    private int sequenceReceived;
+    private boolean linked;
+    /**
+     * Time when bytes were last received, in nanoseconds.
+     */
+    private long receivedLast;
+
+    /**
+     * Creates a new transport.
+     */
+    protected MNPTransport() {
+        super();
+    }
+
+    @Override
+    protected void receive(ByteBuffer data) throws IOException {
+        ByteBuffer payload;
+        byte[] b;
+        MNPPacket packet;
+
+        receivedLast = System.nanoTime();
+        while (data.hasRemaining()) {
+            try {
+                payload = decoder.decode(data);
+            } catch (ChecksumException ce) {
+                // Newton will re-send.
+                continue;
+            }
+            if (payload == null)
+                break;
+            b = new byte[payload.remaining()];
+            payload.get(b);
+            packet = factory.createLinkPacket(b);
+            if (packet != null)
+                packetReceived(packet);
+        }
+    }
+
+    /**
+     * Received a packet.
+     *
+     * @param packet the packet.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void packetReceived(MNPPacket packet) throws IOException {
+        switch (packet.getType()) {
+            case MNPPacket.LA:
+                packetReceivedLA((MNPLinkAcknowledgementPacket) packet);
+                break;
+            case MNPPacket.LD:
+                // Newton has already disconnected, so don't reply.
+                linked = false;
+                getSession().closed();
+                break;
+            case MNPPacket.LR:
+                packetReceivedLR((MNPLinkRequestPacket) packet);
+                break;
+            case MNPPacket.LT:
+                packetReceivedLT((MNPLinkTransferPacket) packet);
+                break;
+        }
+    }
+
+    /**
+     * Received a link request packet, so reply with our own request.
+     *
+     * @param packet the packet.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void packetReceivedLR(MNPLinkRequestPacket packet) throws IOException {
+        if (linked)
+            return;
+        factory.resetSequence();
+        tracker.clear();
+        tracker.acknowledge(packet);
+        queueOut.clear();
+        sequenceReceived = 0;
+
+        MNPLinkRequestPacket reply = (MNPLinkRequestPacket) factory.createLinkPacket(MNPPacket.LR);
+        reply.setDataPhaseOpt(packet.getDataPhaseOpt());
+        reply.setFramingMode(packet.getFramingMode());
+        reply.setTransmitted(packet.getTransmitted());
+        tracker.add(reply, 0);
+        write(reply);
+    }
+
+    /**
+     * Received a link acknowledgement packet.
+     *
+     * @param packet the packet.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void packetReceivedLA(MNPLinkAcknowledgementPacket packet) throws IOException {
+        List<MNPPacket> acknowledged = tracker.acknowledge(packet);
+        if (!linked && (acknowledged != null) && (acknowledged.get(0).getType() == MNPPacket.LR)) {
+            linked = true;
+            getSession().linkConnected();
+        }
+        drain();
+    }
+
+    /**
+     * Received a link transfer packet, so pass its data to the session and
+     * acknowledge it.
+     *
+     * @param packet the packet.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void packetReceivedLT(MNPLinkTransferPacket packet) throws IOException {
+        final int sequence = packet.getSequence() & 0xFF;
+        if (sequence == ((sequenceReceived + 1) & 0xFF)) {
+            sequenceReceived = sequence;
+            getSession().received(ByteBuffer.wrap(packet.getData()));
+        }
+        // Acknowledge the last packet in order, so that a lost packet is
+        // re-sent.
+        MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) factory.createLinkPacket(MNPPacket.LA);
+        ack.setSequence(sequenceReceived);
+        write(ack);
+    }
+
+    @Override
+    protected void send(byte[] data) throws IOException {
+        for (MNPLinkTransferPacket packet : factory.createTransferPackets(data)) {
+            queueOut.add(packet);
+        }
+        drain();
+    }
+
+    /**
+     * Send the queued packets while the window is open.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void drain() throws IOException {
+        MNPLinkTransferPacket packet;
+        while (!queueOut.isEmpty() && tracker.isOpen(MNPPacket.LT)) {
+            packet = queueOut.poll();
+            tracker.add(packet, packet.getSequence());
+            write(packet);
+        }
+    }
+
+    @Override
+    protected boolean isTicking() {
+        return true;
+    }
+
+    @Override
+    protected void tick() throws IOException {
+        int timeout = getSession().getTimeout();
+        if (linked && (timeout > 0) && (System.nanoTime() - receivedLast >= TimeUnit.SECONDS.toNanos(timeout))) {
+            getSession().closed();
+            return;
+        }
+
+        List<MNPPacket> resend;
+        try {
+            resend = tracker.takeResend();
+        } catch (TimeoutException te) {
+            getSession().closed();
+            return;
+        }
+        if (resend != null) {
+            for (MNPPacket packet : resend) {
+                write(packet);
+            }
+        }
+    }
+
+    /**
+     * Get the acknowledgement tracker.
+     *
+     * @return the tracker.
+     */
+    public MNPAcknowledgementTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Encode and write a packet.
+     *
+     * @param packet the packet.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void write(MNPPacket packet) throws IOException {
+        byte[] payload = packet.serialize();
+        writeFrame(encoder.encode(payload, 0, payload.length));
+    }
+
+    /**
+     * Write a frame to the device.
+     *
+     * @param frame the frame, from position {@code 0} to its limit. The buffer
+     *              is reused after this call returns.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected abstract void writeFrame(ByteBuffer frame) throws IOException;
+
+    @Override
+    protected void close() {
+        queueOut.clear();
+        tracker.clear();
+        if (linked) {
+            linked = false;
+            try {
+                write(factory.createLinkPacket(MNPPacket.LD));
+            } catch (IOException ioe) {
+                // Newton is gone anyway.
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serial port transport.<br>
+ * Serial ports cannot be registered with a selector, so the bytes that jSSC
+ * reads on its own event thread are posted to the server thread. Writing to
+ * the port blocks for as long as the frame takes at the baud rate, so frames
+ * are queued and written by a small pool of threads that is shared by all the
+ * ports. Each port writes one frame at a time, so that a long transfer does
+ * not hold up the other ports.
+ *
+ * @author moshew
+ */
+public class SerialTransport extends MNPTransport implements SerialPortEventListener {
+
+    /**
+     * Marks the end of the frames, after which the port is closed.
+     */
+    private static final byte[] CLOSE = new byte[0];
+    /**
+     * Number of threads that write to the ports.
+     */
+    private static final int WRITERS_COUNT = 2;
+    /**
+     * Threads that write to the ports.
+     */
+    private static final ExecutorService WRITERS = Executors.newFixedThreadPool(WRITERS_COUNT, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SerialTransport-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final DockingServer server;
+    private final SerialPort port;
+    /**
+     * Frames waiting to be written.
+     */
+    private final Queue<byte[]> queueOut = new ConcurrentLinkedQueue<byte[]>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable runWrite = new Runnable() {
+        @Override
+        public void run() {
+            writeNext();
+        }
+    };
+    private volatile boolean writing;
+    private boolean closed;
+
+    /**
+     * Creates a new transport, and opens the port.
+     *
+     * @param server   the server.
+     * @param portName the serial port name.
+     * @param baud     the baud rate.
+     * @throws IOException if an I/O error occurs.
+     */
+    public SerialTransport(DockingServer server, String portName, int baud) throws IOException {
+        super();
+        this.server = server;
+        this.port = new SerialPort(portName);
+        try {
+            port.openPort();
+            port.setParams(baud, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        } catch (SerialPortException se) {
+            throw new IOException(se);
+        }
+    }
+
+    /**
+     * Get the serial port.
+     *
+     * @return the port.
+     */
+    public SerialPort getPort() {
+        return port;
+    }
+
+    @Override
+    protected void opened() throws IOException {
+        try {
+            port.addEventListener(this, SerialPort.MASK_RXCHAR);
+        } catch (SerialPortException se) {
+            throw new IOException(se);
+        }
+        writing = true;
+        if (!queueOut.isEmpty())
+            schedule();
+    }
+
+    /**
+     * Schedule the next frame to be written, unless already scheduled.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true))
+            WRITERS.execute(runWrite);
+    }
+
+    /**
+     * Write the next queued frame to the port, or close the port once the
+     * transport is closed.
+     */
+    private void writeNext() {
+        byte[] b = queueOut.poll();
+        if (b == CLOSE) {
+            // Stay scheduled so that nothing more is written.
+            queueOut.clear();
+            closePort();
+            return;
+        }
+        if (b != null) {
+            try {
+                port.writeBytes(b);
+            } catch (SerialPortException se) {
+                se.printStackTrace();
+                queueOut.clear();
+                closePort();
+                server.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        getSession().closed();
+                    }
+                });
+                return;
+            }
+        }
+        scheduled.set(false);
+        // Let the other ports write before the next frame.
+        if (!queueOut.isEmpty())
+            schedule();
+    }
+
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        if (!event.isRXCHAR())
+            return;
+        int count = event.getEventValue();
+        if (count == 0)
+            return;
+
+        try {
+            final byte[] buf = port.readBytes(count);
+            if (buf == null)
+                return;
+            server.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        receive(ByteBuffer.wrap(buf));
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                        getSession().closed();
+                    }
+                }
+            });
+        } catch (SerialPortException se) {
+            se.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void writeFrame(ByteBuffer frame) throws IOException {
+        if (closed)
+            return;
+        byte[] b = new byte[frame.remaining()];
+        frame.get(b);
+        queueOut.add(b);
+        if (writing)
+            schedule();
+    }
+
+    @Override
+    protected void close() {
+        super.close();
+        if (closed)
+            return;
+        closed = true;
+        try {
+            port.removeEventListener();
+        } catch (SerialPortException se) {
+            // Listener was never added.
+        }
+        if (writing) {
+            // Let the writer finish sending the disconnect before closing.
+            queueOut.add(CLOSE);
+            schedule();
+        } else {
+            closePort();
+        }
+    }
+
+    /**
+     * Close the port.
+     */
+    private void closePort() {
+        if (!port.isOpened())
+            return;
+        try {
+            port.closePort();
+        } catch (SerialPortException se) {
+            se.printStackTrace();
+        }
+    }
+}
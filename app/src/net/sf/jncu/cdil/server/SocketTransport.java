@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * TCP socket transport. Dock commands are sent as is, without any framing.
+ *
+ * @author moshew
+ */
+public class SocketTransport extends DockingTransport {
+
+    private final SocketChannel channel;
+    private SelectionKey key;
+    /**
+     * Data waiting for the socket to become writable.
+     */
+    private final Deque<ByteBuffer> queueOut = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Creates a new transport.
+     *
+     * @param channel the connected socket channel.
+     */
+    public SocketTransport(SocketChannel channel) {
+        super();
+        this.channel = channel;
+    }
+
+    /**
+     * Get the socket channel.
+     *
+     * @return the channel.
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Register the channel for reading.
+     *
+     * @param selector the selector.
+     * @throws IOException if an I/O error occurs.
+     */
+    void register(Selector selector) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    @Override
+    protected void opened() throws IOException {
+        // The socket is already reliable, so start docking straight away.
+        getSession().linkConnected();
+    }
+
+    /**
+     * Read from the socket.
+     *
+     * @param buffer the buffer to read into.
+     * @throws EOFException if the socket was closed.
+     * @throws IOException  if an I/O error occurs.
+     */
+    void read(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int count = channel.read(buffer);
+        if (count < 0)
+            throw new EOFException();
+        if (count > 0) {
+            buffer.flip();
+            receive(buffer);
+        }
+    }
+
+    @Override
+    protected void receive(ByteBuffer data) throws IOException {
+        getSession().received(data);
+    }
+
+    @Override
+    protected void send(byte[] data) throws IOException {
+        queueOut.add(ByteBuffer.wrap(data));
+        flush();
+    }
+
+    /**
+     * Write as much pending data as the socket accepts without blocking.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void flush() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = queueOut.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining())
+                break;
+            queueOut.poll();
+        }
+        if (key.isValid()) {
+            key.interestOps(queueOut.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    @Override
+    protected void close() {
+        queueOut.clear();
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // Ignore.
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.tcp;
+
+import net.sf.jncu.cdil.CDCommandLayer;
+import net.sf.jncu.io.RingBuffer;
+import net.sf.jncu.protocol.DockCommandToNewton;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * TCP command layer.<br>
+ * Dock commands are written straight to the socket, and a command is sent as
+ * soon as it has been written.
+ *
+ * @author moshew
+ */
+public class TCPCommandLayer extends CDCommandLayer<TCPPacket, TCPPacketLayer> {
+
+    /**
+     * Buffer for packets to populate commands.
+     */
+    private final RingBuffer packetsToCommands = new RingBuffer();
+    /**
+     * Stream of commands that have been populated from packets.
+     */
+    private final InputStream in = packetsToCommands.getInputStream();
+    /**
+     * Lock so that the chunks of different commands are not interleaved.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Creates a new command layer.
+     *
+     * @param packetLayer the packet layer.
+     */
+    public TCPCommandLayer(TCPPacketLayer packetLayer) {
+        super(packetLayer);
+        setName("TCPCommandLayer-" + getId());
+    }
+
+    @Override
+    protected InputStream getInput() {
+        return in;
+    }
+
+    @Override
+    protected OutputStream getOutput() throws IOException {
+        return packetLayer.getOutput();
+    }
+
+    @Override
+    protected void awaitInput(InputStream in) throws IOException {
+        if (in == this.in) {
+            try {
+                packetsToCommands.awaitAvailable();
+            } catch (InterruptedIOException iioe) {
+                // Closed, so let the caller check the interrupted status.
+                interrupt();
+            }
+        } else {
+            super.awaitInput(in);
+        }
+    }
+
+    @Override
+    public void close() {
+        packetsToCommands.closeWrite();
+        interrupt();
+        super.close();
+    }
+
+    @Override
+    public void write(DockCommandToNewton cmd) throws IOException, TimeoutException {
+        final ChunkOutputStream out = new ChunkOutputStream(cmd);
+        try {
+            synchronized (writeLock) {
+                cmd.writeCommandPayload(out);
+                out.close();
+            }
+        } catch (IOException ioe) {
+            if (ioe.getCause() instanceof TimeoutException)
+                throw (TimeoutException) ioe.getCause();
+            throw ioe;
+        }
+        final int length = out.length;
+        if (length <= 0)
+            return;
+        fireCommandSending(cmd, length, length);
+        fireCommandSent(cmd);
+    }
+
+    @Override
+    public void packetReceived(TCPPacket packet) {
+        super.packetReceived(packet);
+
+        final byte[] payload = packet.getData();
+
+        try {
+            packetsToCommands.write(payload, 0, payload.length);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            if (packetsToCommands.isClosed())
+                fireCommandEOF();
+        }
+    }
+
+    /**
+     * Writes the command payload straight into packets, and sends each packet
+     * as soon as it is full.
+     *
+     * @author moshew
+     */
+    private class ChunkOutputStream extends OutputStream {
+
+        private final DockCommandToNewton command;
+        private int length = -1;
+        private int progress;
+        /**
+         * The data of the next packet.
+         */
+        private byte[] buf;
+        private int count;
+
+        /**
+         * Creates a new stream.
+         *
+         * @param command the command.
+         */
+        public ChunkOutputStream(DockCommandToNewton command) {
+            super();
+            this.command = command;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if ((buf == null) || (count == buf.length))
+                nextChunk();
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int n;
+            while (len > 0) {
+                if ((buf == null) || (count == buf.length))
+                    nextChunk();
+                n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Newton would wait forever for the missing bytes.
+            if ((length >= 0) && (progress + count < length))
+                throw new EOFException("payload shorter than " + length + " bytes");
+            if (buf != null)
+                sendChunk();
+        }
+
+        /**
+         * Send the full chunk, and start the next chunk.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        private void nextChunk() throws IOException {
+            if (buf != null)
+                sendChunk();
+            // The length is known once the command starts writing.
+            if (length < 0)
+                length = command.getCommandPayloadLength();
+            final int remaining = length - progress;
+            if (remaining <= 0)
+                throw new IOException("payload longer than " + length + " bytes");
+            buf = new byte[Math.min(remaining, TCPPacketLayer.MAX_DATA_LENGTH)];
+            count = 0;
+        }
+
+        /**
+         * Send the chunk.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        private void sendChunk() throws IOException {
+            try {
+                packetLayer.send(new TCPPacket(buf));
+            } catch (TimeoutException te) {
+                throw new IOException(te);
+            }
+            buf = null;
+            progress += count;
+            if (progress < length)
+                fireCommandSending(command, progress, length);
+        }
+    }
+}
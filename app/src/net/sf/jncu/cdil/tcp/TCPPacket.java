@@ -24,6 +24,8 @@ import net.sf.jncu.cdil.CDPacket;
  */
 public class TCPPacket extends CDPacket {
 
+    private byte[] data;
+
     /**
      * Constructs a new packet.
      */
@@ -31,10 +33,38 @@ public class TCPPacket extends CDPacket {
         super();
     }
 
+    /**
+     * Constructs a new packet.
+     *
+     * @param data the data.
+     */
+    public TCPPacket(byte[] data) {
+        super();
+        setData(data);
+    }
+
+    /**
+     * Get the data.
+     *
+     * @return the data.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Set the data.
+     *
+     * @param data the data.
+     */
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
     @Override
     public byte[] serialize() {
-        // TODO Auto-generated method stub
-        return null;
+        // Commands are written to the socket without any framing.
+        return data;
     }
 
 }
@@ -21,14 +21,25 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.Socket;
 
 /**
- * Transfer Control Protocol (TCP) packet layer.
+ * Transfer Control Protocol (TCP) packet layer.<br>
+ * The socket already guarantees delivery, so a packet is just a chunk of the
+ * dock command stream, without any framing, checksums or acknowledgements.
  *
  * @author Moshe
  */
 public class TCPPacketLayer extends CDPacketLayer<TCPPacket> {
 
+    /**
+     * Maximum number of bytes per packet.
+     */
+    public static final int MAX_DATA_LENGTH = 8192;
+
+    private final byte[] buffer = new byte[MAX_DATA_LENGTH];
+    private boolean eof;
+
     /**
      * Constructs a new packet layer.
      *
@@ -36,30 +47,71 @@ public class TCPPacketLayer extends CDPacketLayer<TCPPacket> {
      */
     public TCPPacketLayer(TCPPipe pipe) {
         super(pipe);
+        setName("TCPPacketLayer-" + getId());
+    }
+
+    /**
+     * Get the connected socket.
+     *
+     * @return the socket.
+     * @throws IOException if not connected.
+     */
+    protected Socket getSocket() throws IOException {
+        Socket socket = ((TCPPipe) pipe).getSocket();
+        if (socket == null)
+            throw new IOException("Socket not connected");
+        return socket;
     }
 
     @Override
     protected InputStream getInput() throws IOException {
-        // TODO Auto-generated method stub
-        return null;
+        return getSocket().getInputStream();
     }
 
     @Override
     protected OutputStream getOutput() throws IOException {
-        // TODO Auto-generated method stub
-        return null;
+        return getSocket().getOutputStream();
     }
 
     @Override
     protected TCPPacket createPacket(byte[] payload) {
-        // TODO Auto-generated method stub
-        return null;
+        return new TCPPacket(payload);
     }
 
     @Override
     protected byte[] read() throws IOException {
-        // TODO Auto-generated method stub
-        return null;
+        final Socket socket = getSocket();
+        int count;
+        try {
+            count = socket.getInputStream().read(buffer);
+        } catch (IOException ioe) {
+            // Socket closed while reading.
+            if (!socket.isClosed())
+                throw ioe;
+            count = -1;
+        }
+        if (count < 0) {
+            eof = true;
+            throw new EOFException();
+        }
+        byte[] payload = new byte[count];
+        System.arraycopy(buffer, 0, payload, 0, count);
+        return payload;
+    }
+
+    @Override
+    protected boolean isConnected() {
+        return !eof && super.isConnected();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            getSocket().close();
+        } catch (IOException ioe) {
+            // Ignore.
+        }
     }
 
 }
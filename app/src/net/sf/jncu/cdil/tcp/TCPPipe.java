@@ -18,16 +18,37 @@ package net.sf.jncu.cdil.tcp;
 import net.sf.jncu.cdil.CDCommandLayer;
 import net.sf.jncu.cdil.CDLayer;
 import net.sf.jncu.cdil.CDPipe;
+import net.sf.jncu.cdil.CDState;
+import net.sf.jncu.cdil.PipeDisconnectedException;
+import net.sf.jncu.cdil.PlatformException;
 import net.sf.jncu.cdil.ServiceNotSupportedException;
+import net.sf.jncu.protocol.DockCommandFromNewton;
+import net.sf.jncu.protocol.v1_0.session.DDisconnect;
+import net.sf.jncu.protocol.v2_0.session.DockingState;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Transfer Control Protocol (TCP) pipe.
+ * <p>
+ * Newton devices with a network card dock over TCP/IP by connecting to the
+ * desktop. Dock commands are sent as is, without MNP framing.
  *
  * @author moshew
  */
 public class TCPPipe extends CDPipe<TCPPacket, TCPPacketLayer> {
 
+    /**
+     * The TCP port that Newton devices connect to for docking.
+     */
+    public static final int PORT_DOCK = 3679;
+
     protected final int port;
+    private final ServerSocket server;
+    private volatile Socket socket;
 
     /**
      * Creates a new TCP pipe.
@@ -42,7 +63,101 @@ public class TCPPipe extends CDPipe<TCPPacket, TCPPacketLayer> {
     public TCPPipe(CDLayer layer, int port) throws ServiceNotSupportedException {
         super(layer);
         setName("TCPPipe-" + getId());
-        this.port = port;
+        try {
+            this.server = new ServerSocket(port);
+        } catch (IOException ioe) {
+            throw new ServiceNotSupportedException(ioe);
+        }
+        this.port = server.getLocalPort();
+    }
+
+    /**
+     * Get the TCP port to listen on.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the connected socket.
+     *
+     * @return the socket - {@code null} if not connected yet.
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            this.socket = socket;
+        } catch (IOException ioe) {
+            // Closed while listening?
+            if (!server.isClosed())
+                ioe.printStackTrace();
+            return;
+        } finally {
+            // Free the port for the next pipe.
+            closeServer();
+        }
+        try {
+            // There is no link request, so the Newton starts docking straight away.
+            docking.setState(DockingState.HANDSHAKE_LR);
+            docking.setState(DockingState.HANDSHAKE_RTDK);
+        } catch (PipeDisconnectedException pde) {
+            pde.printStackTrace();
+            return;
+        }
+        super.run();
+    }
+
+    @Override
+    protected void acceptImpl() throws PlatformException, PipeDisconnectedException, TimeoutException {
+        super.acceptImpl();
+        if (getDockingState() == DockingState.HANDSHAKE_DONE) {
+            layer.setState(this, CDState.CONNECTED);
+        }
+    }
+
+    @Override
+    protected void disconnectImpl() {
+        closeServer();
+        super.disconnectImpl();
+    }
+
+    /**
+     * Stop listening for connections.
+     */
+    private void closeServer() {
+        try {
+            server.close();
+        } catch (IOException ioe) {
+            // Ignore.
+        }
+    }
+
+    @Override
+    public void commandReceived(DockCommandFromNewton command) {
+        super.commandReceived(command);
+
+        if (getDockingState() == DockingState.HANDSHAKE_DONE) {
+            processCommand(command);
+        }
+    }
+
+    @Override
+    protected void processCommand(DockCommandFromNewton command) {
+        super.processCommand(command);
+
+        final String cmd = command.getCommand();
+
+        if (DDisconnect.COMMAND.equals(cmd)) {
+            disconnectQuiet();
+        }
     }
 
     @Override
@@ -52,7 +167,7 @@ public class TCPPipe extends CDPipe<TCPPacket, TCPPacketLayer> {
 
     @Override
     protected CDCommandLayer<TCPPacket, TCPPacketLayer> createCommandLayer(TCPPacketLayer packetLayer) {
-        return null;
+        return new TCPCommandLayer(packetLayer);
     }
 
 }
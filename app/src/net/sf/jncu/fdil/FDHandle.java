@@ -43,6 +43,11 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
     protected static final int MASK_28 = 0x0FFFFFFF;
     protected static final int MASK_30 = 0x3FFFFFFF;
 
+    /**
+     * <tt>sizeof(FD_Handle)</tt>
+     */
+    protected static final int SIZEOF_HANDLE = 4;
+
     /**
      * The {@code ref} field is the same long as in the non-debug
      * <tt>FD_Handle</tt>.
@@ -97,15 +102,26 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
 //	 */
 //	private final FDHandle oClass;
 
-    private int pointer;
+    /**
+     * Index into the object table.
+     */
+    private final int index;
+    /**
+     * Generation of the table entry, to detect stale handles.
+     */
+    private final int generation;
 
     /**
      * Creates a new handle.
      *
-     * @param obj the object to handle.
+     * @param obj        the object to handle.
+     * @param index      the index into the object table.
+     * @param generation the generation of the table entry.
      */
-    public FDHandle(NSOFObject obj) {
+    public FDHandle(NSOFObject obj, int index, int generation) {
         super();
+        this.index = index;
+        this.generation = generation;
         this.ref = generateRef(obj);
         this.flags = generateFlags(obj);
 //		this.oClass = generateClass(obj);
@@ -139,6 +155,24 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
         return size;
     }
 
+    /**
+     * Get the index into the object table.
+     *
+     * @return the index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the generation of the table entry.
+     *
+     * @return the generation.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
 //	/**
 //	 * Get the symbol object for the class.
 //	 * 
@@ -150,7 +184,7 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
 
     @Override
     public int hashCode() {
-        return ref;
+        return (31 * index) + generation;
     }
 
     @Override
@@ -163,13 +197,11 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
 
     @Override
     public int compareTo(FDHandle that) {
-        int n = this.ref - that.ref;
+        int n = this.index - that.index;
         if (n == 0)
-            n = this.flags - that.flags;
+            n = this.generation - that.generation;
         if (n == 0)
-            n = this.pointer - that.pointer;
-        if (n == 0)
-            n = this.size - that.size;
+            n = this.ref - that.ref;
         return n;
     }
 
@@ -216,7 +248,7 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
             }
         } else if (obj instanceof NSOFPointer) {
             type = TYPE_POINTER;
-            value = (++pointer) << 2;
+            value = (index & MASK_30) << 2;
         }
         return value | type;
     }
@@ -271,10 +303,13 @@ public class FDHandle extends Object implements Comparable<FDHandle>, FDConstant
             return 4;
         }
         if (obj instanceof NSOFArray) {
-            return ((NSOFArray) obj).length();
+            return ((NSOFArray) obj).length() * SIZEOF_HANDLE;
         }
         if (obj instanceof NSOFFrame) {
-            return ((NSOFFrame) obj).size();
+            return ((NSOFFrame) obj).size() * SIZEOF_HANDLE;
+        }
+        if (obj instanceof NSOFLargeBinary) {
+            return ((NSOFLargeBinary) obj).getLength();
         }
         if (obj instanceof NSOFBinaryObject) {
             byte[] data = ((NSOFBinaryObject) obj).getValue();
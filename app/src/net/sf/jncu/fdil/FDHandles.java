@@ -15,25 +15,89 @@
  */
 package net.sf.jncu.fdil;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
  * FDIL handles manager.
+ * <p>
+ * The objects are kept in a table indexed by handle. Each table entry has a
+ * generation that changes when its object is disposed, so that stale handles
+ * are detected even after the entry is reused.
  *
  * @author moshe
  */
 public class FDHandles {
 
+    /**
+     * Initial number of table entries.
+     */
+    private static final int CAPACITY = 64;
+    /**
+     * Size of a handle: <tt>ref</tt>, <tt>flags</tt>, <tt>size</tt> and
+     * <tt>oClass</tt>.
+     */
+    private static final int HANDLE_SIZE = 16;
+    /**
+     * Size of a table entry: object, generation, next free entry, and size.
+     */
+    private static final int ENTRY_SIZE = 16;
+
     private static FDHandles instance;
 
-    private final Map<FDHandle, NSOFObject> cache = new HashMap<FDHandle, NSOFObject>();
+    private NSOFObject[] objects;
+    /**
+     * The handle of each object.
+     */
+    private FDHandle[] entries;
+    private int[] generations;
+    /**
+     * Next free entry, for free entries.
+     */
+    private int[] next;
+    /**
+     * Allocated size of each object.
+     */
+    private int[] sizes;
+    /**
+     * Number of entries that have been used.
+     */
+    private int top;
+    /**
+     * First free entry - {@code -1} otherwise.
+     */
+    private int free = -1;
+    private long allocated;
+    /**
+     * The live handles of each object.
+     */
+    private final Map<NSOFObject, Handles> handles = new IdentityHashMap<NSOFObject, Handles>();
+
+    /**
+     * The live handles of an object.
+     */
+    private static class Handles {
+        /**
+         * The last handle created for the object that is still live.
+         */
+        FDHandle last;
+        /**
+         * Number of live handles.
+         */
+        int count;
+    }
 
     /**
      * Creates a new handles pool.
      */
     public FDHandles() {
         super();
+        this.objects = new NSOFObject[CAPACITY];
+        this.entries = new FDHandle[CAPACITY];
+        this.generations = new int[CAPACITY];
+        this.next = new int[CAPACITY];
+        this.sizes = new int[CAPACITY];
     }
 
     /**
@@ -48,8 +112,15 @@ public class FDHandles {
         return instance;
     }
 
+    /**
+     * Remove all the handles.
+     */
     public void clear() {
-        cache.clear();
+        for (int i = 0; i < top; i++) {
+            if (objects[i] != null)
+                free(i);
+        }
+        handles.clear();
     }
 
     /**
@@ -59,19 +130,47 @@ public class FDHandles {
      * @return the FDIL object - {@code null} otherwise.
      */
     public NSOFObject get(FDHandle obj) {
-        return cache.get(obj);
+        int i = obj.getIndex();
+        if ((i < 0) || (i >= top) || (generations[i] != obj.getGeneration()))
+            return null;
+        return objects[i];
     }
 
     /**
-     * Create an FDIL object handle.<br>
-     * <em>If another object has the same handle, then it is written over.</em>
+     * Create an FDIL object handle.
      *
      * @param o the FDIL object.
      * @return the handle.
      */
     public FDHandle create(NSOFObject o) {
-        FDHandle obj = new FDHandle(o);
-        cache.put(obj, o);
+        int i = free;
+        if (i >= 0) {
+            free = next[i];
+        } else {
+            i = top;
+            if (i == objects.length) {
+                int capacity = i << 1;
+                objects = Arrays.copyOf(objects, capacity);
+                entries = Arrays.copyOf(entries, capacity);
+                generations = Arrays.copyOf(generations, capacity);
+                next = Arrays.copyOf(next, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            top++;
+        }
+        FDHandle obj = new FDHandle(o, i, generations[i]);
+        objects[i] = o;
+        entries[i] = obj;
+        int size = HANDLE_SIZE + obj.getSize();
+        sizes[i] = size;
+        allocated += size;
+        Handles live = handles.get(o);
+        if (live == null) {
+            live = new Handles();
+            handles.put(o, live);
+        }
+        live.last = obj;
+        live.count++;
         return obj;
     }
 
@@ -81,25 +180,59 @@ public class FDHandles {
      * @param obj the FDIL object handle.
      */
     public void remove(FDHandle obj) {
-        cache.remove(obj);
+        NSOFObject o = get(obj);
+        if (o == null)
+            return;
+        free(obj.getIndex());
+        Handles live = handles.get(o);
+        if (--live.count == 0) {
+            handles.remove(o);
+        } else if (live.last == obj) {
+            live.last = findOlder(o);
+        }
     }
 
     /**
-     * Find a FDIL handle for an object (that supposedly exists in the cache).
+     * Find another live handle for the object.
      *
      * @param o the FDIL object.
      * @return the handle - {@code null} otherwise.
      */
-    public FDHandle find(NSOFObject o) {
-        NSOFObject val;
-        for (FDHandle obj : cache.keySet()) {
-            val = cache.get(obj);
-            if (o == val)
-                return obj;
+    private FDHandle findOlder(NSOFObject o) {
+        for (int i = top - 1; i >= 0; i--) {
+            if (objects[i] == o)
+                return entries[i];
         }
         return null;
     }
 
+    /**
+     * Free the table entry.
+     *
+     * @param i the index.
+     */
+    private void free(int i) {
+        objects[i] = null;
+        entries[i] = null;
+        generations[i]++;
+        allocated -= sizes[i];
+        sizes[i] = 0;
+        next[i] = free;
+        free = i;
+    }
+
+    /**
+     * Find a FDIL handle for an object (that supposedly exists in the cache).
+     *
+     * @param o the FDIL object.
+     * @return the last handle created for the object that is still live -
+     * {@code null} otherwise.
+     */
+    public FDHandle find(NSOFObject o) {
+        Handles live = handles.get(o);
+        return (live == null) ? null : live.last;
+    }
+
     /**
      * Disposes of an object’s allocated memory.
      *
@@ -111,6 +244,14 @@ public class FDHandles {
         if (o == null)
             throw new PointerObjectIsFreeException();
         remove(obj);
-        System.gc();
+    }
+
+    /**
+     * Get the amount of memory allocated for the objects and the table.
+     *
+     * @return the size in bytes.
+     */
+    public long getAllocatedMemory() {
+        return allocated + ((long) objects.length * ENTRY_SIZE);
     }
 }
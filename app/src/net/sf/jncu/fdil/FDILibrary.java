@@ -29,11 +29,8 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -101,7 +98,6 @@ import java.util.TreeMap;
 public class FDILibrary implements FDConstants {
 
     private static FDHandles handles;
-    private static long usedMemory;
     private static Charset charset;
     private static Map<NSOFSymbol, FDHandle> symbols;
     private static FDLargeBinaryProcs blobProcs;
@@ -120,10 +116,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeInt(int val) throws FDILNotInitializedException, ValueOutOfRangeException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFInteger i = new NSOFInteger(val);
         FDHandle obj = handles.create(i);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -181,7 +175,6 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeImmediate(int type, int value) throws FDILNotInitializedException, ValueOutOfRangeException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFImmediate i = NSOFNil.NIL;
         switch (type) {
             case FD_IMMED_BOOLEAN:
@@ -203,7 +196,6 @@ public class FDILibrary implements FDConstants {
                 i = new NSOFImmediate(value, NSOFImmediate.IMMEDIATE_INTEGER);
         }
         FDHandle obj = handles.create(i);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -262,10 +254,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeChar(byte val) throws FDILNotInitializedException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFCharacter c = new NSOFAsciiCharacter(val);
         FDHandle obj = handles.create(c);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -279,10 +269,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeChar(char val) throws FDILNotInitializedException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFCharacter c = new NSOFAsciiCharacter(val);
         FDHandle obj = handles.create(c);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -296,10 +284,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeWideChar(char val) throws FDILNotInitializedException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFCharacter c = new NSOFUnicodeCharacter(val);
         FDHandle obj = handles.create(c);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -313,10 +299,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeWideChar(int val) throws FDILNotInitializedException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFCharacter c = new NSOFUnicodeCharacter(val);
         FDHandle obj = handles.create(c);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -629,7 +613,6 @@ public class FDILibrary implements FDConstants {
         checkInitialized();
         if (size < 0)
             throw new ValueOutOfRangeException();
-        long memBefore = Runtime.getRuntime().totalMemory();
         byte[] val = new byte[size];
         NSOFBinaryObject b = new NSOFBinaryObject(val);
         b.setObjectClass(cls);
@@ -640,7 +623,6 @@ public class FDILibrary implements FDConstants {
         } catch (ExpectedPointerObjectException upe) {
             upe.printStackTrace();
         }
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -708,10 +690,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeReal(double val) throws FDILNotInitializedException, ValueOutOfRangeException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFReal r = new NSOFReal(val);
         FDHandle obj = handles.create(r);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -779,7 +759,6 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeSymbol(final byte[] str) throws FDILNotInitializedException, NullPointerException, SymbolTooLongException, IllegalCharInSymbolException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         int length = 0;
         for (int i = 0; i < length; i++) {
             if (str[i] == 0) {
@@ -788,13 +767,12 @@ public class FDILibrary implements FDConstants {
             }
         }
         String val = new String(str, 0, length, charset);
-        NSOFSymbol s = new NSOFSymbol(val);
+        NSOFSymbol s = NSOFSymbol.valueOf(val);
         FDHandle obj = symbols.get(s);
         if (obj == null) {
             obj = handles.create(s);
             symbols.put(s, obj);
         }
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -819,15 +797,13 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeSymbol(final char[] str) throws FDILNotInitializedException, NullPointerException, SymbolTooLongException, IllegalCharInSymbolException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         String val = new String(str);
-        NSOFSymbol s = new NSOFSymbol(val);
+        NSOFSymbol s = NSOFSymbol.valueOf(val);
         FDHandle obj = symbols.get(s);
         if (obj == null) {
             obj = handles.create(s);
             symbols.put(s, obj);
         }
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -852,14 +828,12 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeSymbol(final String str) throws FDILNotInitializedException, NullPointerException, SymbolTooLongException, IllegalCharInSymbolException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
-        NSOFSymbol s = new NSOFSymbol(str);
+        NSOFSymbol s = NSOFSymbol.valueOf(str);
         FDHandle obj = symbols.get(s);
         if (obj == null) {
             obj = handles.create(s);
             symbols.put(s, obj);
         }
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -914,7 +888,6 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeString(final byte[] str) throws FDILNotInitializedException, NullPointerException, ExpectedStringException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         int length = 0;
         for (int i = 0; i < length; i++) {
             if (str[i] == 0) {
@@ -925,7 +898,6 @@ public class FDILibrary implements FDConstants {
         String val = new String(str, 0, length, charset);
         NSOFString s = new NSOFString(val);
         FDHandle obj = handles.create(s);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -986,10 +958,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeWideString(final CharSequence unicodeStr) throws FDILNotInitializedException, NullPointerException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFString s = new NSOFString(unicodeStr.toString());
         FDHandle obj = handles.create(s);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -1218,7 +1188,6 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeLargeBinary(int size, String objClass, int compressed) throws FDILNotInitializedException, ValueOutOfRangeException, CreatingStoreException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFLargeBinary b = new NSOFLargeBinary();
         b.setObjectClass(objClass);
         switch (compressed) {
@@ -1230,10 +1199,14 @@ public class FDILibrary implements FDConstants {
                 b.setCompanderName(NSOFLargeBinary.COMPANDER_LZ);
                 break;
         }
-        if (blobProcs != null)
-            blobProcs.create(b);
+        try {
+            if (blobProcs != null)
+                b.setLargeBinaryProcs(blobProcs);
+            b.setLength(size);
+        } catch (IOException ioe) {
+            throw new CreatingStoreException(ioe.getMessage());
+        }
         FDHandle obj = handles.create(b);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -1280,8 +1253,11 @@ public class FDILibrary implements FDConstants {
         NSOFLargeBinary l = (NSOFLargeBinary) handles.get(obj);
         if (l == null)
             throw new NullPointerException();
-        byte[] val = l.getValue();
-        System.arraycopy(val, offset, buffer, 0, count);
+        try {
+            l.read(offset, buffer, 0, count);
+        } catch (IOException ioe) {
+            throw new ReadingFromStoreException(ioe.getMessage());
+        }
     }
 
     /**
@@ -1311,9 +1287,16 @@ public class FDILibrary implements FDConstants {
         NSOFLargeBinary l = (NSOFLargeBinary) handles.get(obj);
         if (l == null)
             throw new NullPointerException();
-        byte[] val = l.getValue();
+        byte[] page = new byte[Math.min(count, NSOFLargeBinary.PAGE_SIZE)];
+        int n;
         try {
-            buffer.write(val, 0, count);
+            while (count > 0) {
+                n = Math.min(count, page.length);
+                l.read(offset, page, 0, n);
+                buffer.write(page, 0, n);
+                offset += n;
+                count -= n;
+            }
         } catch (IOException ioe) {
             throw new ReadingFromStoreException(ioe.getMessage());
         }
@@ -1346,14 +1329,11 @@ public class FDILibrary implements FDConstants {
         NSOFLargeBinary l = (NSOFLargeBinary) handles.get(obj);
         if (l == null)
             throw new NullPointerException();
-        byte[] val = l.getValue();
-        if (offset + count > val.length) {
-            byte[] val2 = new byte[offset + count];
-            System.arraycopy(val, 0, val2, 0, val.length);
-            val = val2;
-            l.setValue(val);
+        try {
+            l.write(offset, buffer, 0, count);
+        } catch (IOException ioe) {
+            throw new WritingToStoreException(ioe.getMessage());
         }
-        System.arraycopy(buffer, 0, val, offset, count);
     }
 
     /**
@@ -1383,27 +1363,21 @@ public class FDILibrary implements FDConstants {
         NSOFLargeBinary l = (NSOFLargeBinary) handles.get(obj);
         if (l == null)
             throw new NullPointerException();
-        byte[] val = l.getValue();
-        if (offset + count > val.length) {
-            byte[] val2 = new byte[offset + count];
-            System.arraycopy(val, 0, val2, 0, val.length);
-            val = val2;
-            l.setValue(val);
-        }
+        byte[] page = new byte[Math.min(count, NSOFLargeBinary.PAGE_SIZE)];
         int r;
-        while (count >= 0) {
-            try {
-                r = buffer.read(val, offset, count);
-                if (r == -1) {
-                    if (count > 0)
-                        throw new WritingToStoreException();
-                    break;
-                }
+        try {
+            while (count > 0) {
+                r = buffer.read(page, 0, Math.min(count, page.length));
+                if (r == -1)
+                    throw new WritingToStoreException();
+                l.write(offset, page, 0, r);
                 offset += r;
                 count -= r;
-            } catch (IOException ioe) {
-                throw new WritingToStoreException(ioe.getMessage());
             }
+        } catch (WritingToStoreException wtse) {
+            throw wtse;
+        } catch (IOException ioe) {
+            throw new WritingToStoreException(ioe.getMessage());
         }
     }
 
@@ -1442,12 +1416,11 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeArray(int size, String cls) throws FDILNotInitializedException, ValueOutOfRangeException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFArray o = null;
         if (cls == null)
             o = new NSOFArray(size);
         else {
-            NSOFSymbol oClass = new NSOFSymbol(cls);
+            NSOFSymbol oClass = NSOFSymbol.valueOf(cls);
             if (NSOFPlainArray.CLASS_PLAIN_ARRAY.equals(oClass)) {
                 o = new NSOFPlainArray(size);
             } else {
@@ -1456,7 +1429,6 @@ public class FDILibrary implements FDConstants {
             }
         }
         FDHandle obj = handles.create(o);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -1604,10 +1576,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeFrame() throws FDILNotInitializedException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFFrame f = new NSOFFrame();
         FDHandle obj = handles.create(f);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -1648,7 +1618,7 @@ public class FDILibrary implements FDConstants {
         if (!isFrame(frame))
             throw new ExpectedFrameException();
         NSOFFrame f = (NSOFFrame) handles.get(frame);
-        NSOFSymbol s = new NSOFSymbol(slotName);
+        NSOFSymbol s = NSOFSymbol.valueOf(slotName);
         NSOFObject i = handles.get(item);
         NSOFObject p = f.put(s, i);
         return handles.find(p);
@@ -1703,7 +1673,7 @@ public class FDILibrary implements FDConstants {
         if (!isFrame(frame))
             throw new ExpectedFrameException();
         NSOFFrame f = (NSOFFrame) handles.get(frame);
-        NSOFSymbol s = new NSOFSymbol(slotName);
+        NSOFSymbol s = NSOFSymbol.valueOf(slotName);
         NSOFObject r = f.remove(s);
         return handles.find(r);
     }
@@ -1731,7 +1701,9 @@ public class FDILibrary implements FDConstants {
         if (!isFrame(frame))
             throw new ExpectedFrameException();
         NSOFFrame f = (NSOFFrame) handles.get(frame);
-        return handles.create(f.get(pos));
+        if ((pos < 0) || (pos >= f.size()))
+            throw new ValueOutOfRangeException();
+        return handles.create(f.getSlotValue(pos));
     }
 
     /**
@@ -1758,8 +1730,9 @@ public class FDILibrary implements FDConstants {
         if (!isFrame(frame))
             throw new ExpectedFrameException();
         NSOFFrame f = (NSOFFrame) handles.get(frame);
-        List<NSOFSymbol> names = new ArrayList<NSOFSymbol>(f.getNames());
-        return handles.create(names.get(pos));
+        if ((pos < 0) || (pos >= f.size()))
+            throw new ValueOutOfRangeException();
+        return handles.create(f.getSlotName(pos));
     }
 
     /**
@@ -1776,10 +1749,8 @@ public class FDILibrary implements FDConstants {
      */
     public static FDHandle makeMagicPointer(int val) throws FDILNotInitializedException, ValueOutOfRangeException {
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         NSOFMagicPointer p = new NSOFMagicPointer(val);
         FDHandle obj = handles.create(p);
-        usedMemory += Runtime.getRuntime().totalMemory() - memBefore;
         return obj;
     }
 
@@ -1848,7 +1819,6 @@ public class FDILibrary implements FDConstants {
             symbols.clear();
         symbols = null;
         blobProcs = null;
-        usedMemory = 0;
     }
 
     /**
@@ -1944,16 +1914,12 @@ public class FDILibrary implements FDConstants {
         if (obj == null)
             return;// Nothing to dispose.
         checkInitialized();
-        long memBefore = Runtime.getRuntime().totalMemory();
         if (isLargeBinary(obj)) {
             NSOFLargeBinary l = (NSOFLargeBinary) handles.get(obj);
-            if (blobProcs != null)
-                blobProcs.destroy(l);
+            if (l != null)
+                l.dispose();
         }
         handles.dispose(obj);
-        // Theoretically we are using less memory after disposal.
-        long memDisposed = Math.min(0, Runtime.getRuntime().totalMemory() - memBefore);
-        usedMemory = Math.max(0, usedMemory + memDisposed);
     }
 
     /**
@@ -1998,16 +1964,13 @@ public class FDILibrary implements FDConstants {
             dispose(obj);
         } else if (p instanceof NSOFFrame) {
             NSOFFrame f = (NSOFFrame) p;
-            Set<NSOFSymbol> names = f.getNames();
             NSOFObject item;
-            for (NSOFSymbol name : names) {
-                item = f.remove(name);
+            while (!f.isEmpty()) {
+                item = f.remove(f.getSlotName(f.size() - 1));
                 if (item != NSOFNil.NIL)
                     deepDispose(handles.find(item));
             }
         } else if (p instanceof NSOFString) {
-            NSOFString s = (NSOFString) p;
-            s.setValue((String) null);
             dispose(obj);
         }
     }
@@ -2215,7 +2178,7 @@ public class FDILibrary implements FDConstants {
         if ((cls == null) || (cls.length() == 0))
             return true;
 
-        NSOFSymbol oClass = new NSOFSymbol(cls);
+        NSOFSymbol oClass = NSOFSymbol.valueOf(cls);
         NSOFSymbol oSuperclass = o.getObjectClass();
 
         // Every class is a subclass of itself.
@@ -2255,7 +2218,7 @@ public class FDILibrary implements FDConstants {
      */
     public static long allocatedMemory() throws FDILNotInitializedException {
         checkInitialized();
-        return usedMemory;
+        return handles.getAllocatedMemory();
     }
 
     /**
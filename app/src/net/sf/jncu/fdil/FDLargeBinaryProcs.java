@@ -31,7 +31,10 @@ package net.sf.jncu.fdil;
  * communicate. It is a pointer to a <tt>void *</tt>. Typically, your
  * <tt>Create</tt> function allocates some memory for use by all your storage
  * functions, and sets the void * that cookie points to this memory block. This
- * memory is then usually freed by your <tt>Destroy</tt> function.
+ * memory is then usually freed by your <tt>Destroy</tt> function. Here the
+ * cookie is the object returned by {@link #create()}.
+ * <p>
+ * Pages are at most {@link NSOFLargeBinary#PAGE_SIZE} bytes long.
  *
  * @author moshe
  */
@@ -43,18 +46,21 @@ public interface FDLargeBinaryProcs {
      * <tt>FD_Unflatten</tt>.<br>
      * <tt>DIL_Error (*Create) (void** cookie);</tt>
      *
-     * @param cookie
+     * @return the cookie.
+     * @throws CreatingStoreException if the store cannot be created.
      */
-    void create(Object cookie);
+    Object create() throws CreatingStoreException;
 
     /**
-     * <br>
+     * The <tt>SetNumPages</tt> function is called when the size of the large
+     * binary object changes.<br>
      * <tt>DIL_Error (*SetNumPages) (void** cookie, long pageCount);</tt>
      *
-     * @param cookie
-     * @param pageCount
+     * @param cookie    the cookie.
+     * @param pageCount the number of pages.
+     * @throws WritingToStoreException if the store cannot be resized.
      */
-    void setNumPages(Object cookie, int pageCount);
+    void setNumPages(Object cookie, int pageCount) throws WritingToStoreException;
 
     /**
      * Your <tt>ReadPage</tt> function should copy over the required page to the
@@ -72,11 +78,14 @@ public interface FDLargeBinaryProcs {
      * <tt>SetNumPages</tt>.<br>
      * <tt>DIL_Error (*ReadPage) (void** cookie, long pageNum, FD_PageBuff* pageBufPtr);</tt>
      *
-     * @param cookie
-     * @param pageCount
-     * @param pageBufPtr
+     * @param cookie  the cookie.
+     * @param pageNum the page number.
+     * @param pageBuf the page buffer.
+     * @return the number of bytes copied over - {@code 0} if the page was
+     * never written.
+     * @throws ReadingFromStoreException if the page cannot be read.
      */
-    void readPage(Object cookie, int pageCount, Object pageBufPtr);
+    int readPage(Object cookie, int pageNum, byte[] pageBuf) throws ReadingFromStoreException;
 
     /**
      * Your <tt>WritePage</tt> function is passed the page number to write and
@@ -85,22 +94,24 @@ public interface FDLargeBinaryProcs {
      * {@code pageBufPtr} ->fData. If an error occurs while saving the data,
      * <tt>WritePage</tt> should return a non-zero value. Otherwise, it should
      * return <tt>kDIL_NoError</tt>.
-     * <tt>WritePage is never called with a page number larger than, or equal to, that specified in a
-     * previous call to <tt>SetNumPages</tt>.<br>
+     * <tt>WritePage</tt> is never called with a page number larger than, or
+     * equal to, that specified in a previous call to <tt>SetNumPages</tt>.<br>
      * <tt>DIL_Error (*WritePage) (void** cookie, long pageNum, const FD_PageBuff* pageBufPtr);</tt>
      *
-     * @param cookie
-     * @param pageCount
-     * @param pageBufPtr
+     * @param cookie  the cookie.
+     * @param pageNum the page number.
+     * @param pageBuf the page buffer.
+     * @param length  the number of bytes in the page.
+     * @throws WritingToStoreException if the page cannot be written.
      */
-    void writePage(Object cookie, int pageCount, final Object pageBufPtr);
+    void writePage(Object cookie, int pageNum, final byte[] pageBuf, int length) throws WritingToStoreException;
 
     /**
      * The <tt>Destroy</tt> function is called when the object is no longer
      * needed. <br>
      * <tt>DIL_Error (*Destroy) (void** cookie);</tt>
      *
-     * @param cookie
+     * @param cookie the cookie.
      */
     void destroy(Object cookie);
 
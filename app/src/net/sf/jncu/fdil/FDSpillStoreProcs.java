@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Large binary store that keeps the pages in memory, and spills them to a
+ * memory-mapped temporary file once the binary grows above a threshold.
+ * <p>
+ * The file is closed and deleted as soon as it is mapped, so that only the
+ * mapping holds on to it, and the mapping is released when the store is
+ * garbage collected. Platforms that cannot delete a mapped file delete it
+ * once the store has been garbage collected instead.
+ *
+ * @author moshew
+ */
+public class FDSpillStoreProcs implements FDLargeBinaryProcs {
+
+    /**
+     * Default size above which pages are spilled to disk.
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 20;
+
+    private static final int PAGE_SIZE = NSOFLargeBinary.PAGE_SIZE;
+    /**
+     * Maximum number of pages to map at once.
+     */
+    private static final int MAX_PAGES = Integer.MAX_VALUE / PAGE_SIZE;
+
+    /**
+     * The pages of a single large binary.
+     */
+    private static class Store {
+        int numPages;
+        /**
+         * Page lengths - {@code 0} if never written.
+         */
+        int[] lengths = new int[0];
+        /**
+         * Pages in memory.
+         */
+        byte[][] pages = new byte[0][];
+        /**
+         * Pages in the mapped file - {@code null} if in memory.
+         */
+        MappedByteBuffer map;
+    }
+
+    /**
+     * Mapped file that could not be deleted while the store was using it.
+     */
+    private static class Pending extends PhantomReference<Store> {
+        final File file;
+
+        Pending(Store store, File file) {
+            super(store, queue);
+            this.file = file;
+        }
+    }
+
+    /**
+     * Stores that were garbage collected.
+     */
+    private static final ReferenceQueue<Store> queue = new ReferenceQueue<Store>();
+    /**
+     * Files to delete once their stores are garbage collected.
+     */
+    private static final Set<Pending> pending = Collections.synchronizedSet(new HashSet<Pending>());
+
+    private final int threshold;
+
+    /**
+     * Creates a new store with the default threshold.
+     */
+    public FDSpillStoreProcs() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a new store.
+     *
+     * @param threshold the size in bytes above which to spill to disk.
+     */
+    public FDSpillStoreProcs(int threshold) {
+        super();
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Object create() throws CreatingStoreException {
+        return new Store();
+    }
+
+    @Override
+    public void setNumPages(Object cookie, int pageCount) throws WritingToStoreException {
+        Store store = (Store) cookie;
+        if (pageCount > store.lengths.length) {
+            int capacity = Math.max(pageCount, Math.min(store.lengths.length << 1, MAX_PAGES));
+            store.lengths = Arrays.copyOf(store.lengths, capacity);
+            if (store.map == null) {
+                if ((long) pageCount * PAGE_SIZE > threshold) {
+                    spill(store, capacity);
+                } else {
+                    store.pages = Arrays.copyOf(store.pages, capacity);
+                }
+            } else {
+                map(store, capacity);
+            }
+        }
+        for (int i = pageCount; i < store.numPages; i++) {
+            store.lengths[i] = 0;
+            if (store.map == null)
+                store.pages[i] = null;
+        }
+        store.numPages = pageCount;
+    }
+
+    /**
+     * Move the pages to a memory-mapped file.
+     *
+     * @param store    the store.
+     * @param capacity the number of pages to map.
+     * @throws WritingToStoreException if the file cannot be created.
+     */
+    private void spill(Store store, int capacity) throws WritingToStoreException {
+        map(store, capacity);
+        byte[] page;
+        for (int i = 0; i < store.numPages; i++) {
+            page = store.pages[i];
+            if (page != null) {
+                store.map.position(i * PAGE_SIZE);
+                store.map.put(page, 0, store.lengths[i]);
+            }
+        }
+        store.pages = null;
+    }
+
+    /**
+     * Map a new temporary file, and copy the pages that are already mapped.
+     * The file is closed once mapped, so growing the store maps a new file.
+     *
+     * @param store    the store.
+     * @param capacity the number of pages to map.
+     * @throws WritingToStoreException if the file cannot be mapped.
+     */
+    private void map(Store store, int capacity) throws WritingToStoreException {
+        deletePending();
+        MappedByteBuffer map = null;
+        File file = null;
+        try {
+            file = File.createTempFile("jncu", ".vbo");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * PAGE_SIZE);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ioe) {
+            throw new WritingToStoreException(ioe.getMessage());
+        } finally {
+            if ((file != null) && !file.delete() && (map != null))
+                pending.add(new Pending(store, file));
+        }
+        if (store.map != null) {
+            ByteBuffer old = store.map.duplicate();
+            old.clear();
+            map.put(old);
+        }
+        store.map = map;
+    }
+
+    /**
+     * Delete the files of stores that were garbage collected.
+     */
+    private static void deletePending() {
+        Reference<? extends Store> ref;
+        Pending p;
+        while ((ref = queue.poll()) != null) {
+            p = (Pending) ref;
+            pending.remove(p);
+            // The mapping might not have been released yet.
+            if (!p.file.delete())
+                p.file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public int readPage(Object cookie, int pageNum, byte[] pageBuf) throws ReadingFromStoreException {
+        Store store = (Store) cookie;
+        if ((pageNum < 0) || (pageNum >= store.numPages))
+            throw new ReadingFromStoreException("page " + pageNum);
+        int length = store.lengths[pageNum];
+        if (length > 0) {
+            if (store.map == null) {
+                System.arraycopy(store.pages[pageNum], 0, pageBuf, 0, length);
+            } else {
+                ByteBuffer map = store.map;
+                map.position(pageNum * PAGE_SIZE);
+                map.get(pageBuf, 0, length);
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void writePage(Object cookie, int pageNum, byte[] pageBuf, int length) throws WritingToStoreException {
+        Store store = (Store) cookie;
+        if ((pageNum < 0) || (pageNum >= store.numPages) || (length > PAGE_SIZE))
+            throw new WritingToStoreException("page " + pageNum);
+        if (store.map == null) {
+            byte[] page = store.pages[pageNum];
+            if ((page == null) || (page.length < length)) {
+                page = new byte[length];
+                store.pages[pageNum] = page;
+            }
+            System.arraycopy(pageBuf, 0, page, 0, length);
+        } else {
+            ByteBuffer map = store.map;
+            map.position(pageNum * PAGE_SIZE);
+            map.put(pageBuf, 0, length);
+        }
+        store.lengths[pageNum] = length;
+    }
+
+    @Override
+    public void destroy(Object cookie) {
+        Store store = (Store) cookie;
+        store.numPages = 0;
+        store.lengths = new int[0];
+        store.pages = new byte[0][];
+        // The mapping is released once garbage collected.
+        store.map = null;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Frame map.<br>
+ * The ordered slot names of a frame, shared by all the frames with the same
+ * slots, like the frame maps of the Newton. A map is immutable - adding a
+ * slot transitions to the map with the additional name.<br>
+ * Each map holds its parent, so that a frame keeps the maps leading to its
+ * own map. The transitions are held weakly, so that a map is forgotten once
+ * no frame uses it or any of its descendants, and its transition is removed.
+ *
+ * @author moshew
+ */
+final class FrameMap {
+
+    /**
+     * Maximum number of slots to find by linear search.
+     */
+    private static final int LINEAR = 8;
+
+    /**
+     * The map without any slots.
+     */
+    static final FrameMap EMPTY = new FrameMap(null, new NSOFSymbol[0]);
+
+    /**
+     * Transitions whose maps were garbage collected.
+     */
+    private static final ReferenceQueue<FrameMap> queue = new ReferenceQueue<FrameMap>();
+
+    /**
+     * The map with one less slot, from which this map transitioned.
+     */
+    private final FrameMap parent;
+    private final NSOFSymbol[] names;
+    /**
+     * Slot indexes by hash, for large maps.
+     */
+    private final int[] table;
+    private final Set<NSOFSymbol> keys;
+    /**
+     * The maps with one more slot, by slot name.
+     */
+    private volatile ConcurrentMap<NSOFSymbol, Transition> transitions;
+
+    /**
+     * Transition to a map with one more slot. Remembers its key, so that it
+     * can be removed once cleared.
+     */
+    private static class Transition extends WeakReference<FrameMap> {
+        final ConcurrentMap<NSOFSymbol, Transition> transitions;
+        final NSOFSymbol name;
+
+        Transition(ConcurrentMap<NSOFSymbol, Transition> transitions, NSOFSymbol name, FrameMap map) {
+            super(map, queue);
+            this.transitions = transitions;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Creates a new map.
+     *
+     * @param parent the map from which this map transitioned - {@code null}
+     *               if not shared.
+     * @param names  the slot names.
+     */
+    private FrameMap(FrameMap parent, NSOFSymbol[] names) {
+        super();
+        this.parent = parent;
+        this.names = names;
+        this.table = (names.length > LINEAR) ? createTable(names) : null;
+        this.keys = new KeySet();
+    }
+
+    /**
+     * Create the hash table.
+     *
+     * @param names the slot names.
+     * @return the table of indexes plus one.
+     */
+    private static int[] createTable(NSOFSymbol[] names) {
+        int[] table = new int[Integer.highestOneBit(names.length) << 2];
+        final int mask = table.length - 1;
+        int i;
+        for (int n = 0; n < names.length; n++) {
+            i = names[n].hashCode() & mask;
+            while (table[i] != 0)
+                i = (i + 1) & mask;
+            table[i] = n + 1;
+        }
+        return table;
+    }
+
+    /**
+     * Get the number of slots.
+     *
+     * @return the size.
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Get the slot name.
+     *
+     * @param index the slot index.
+     * @return the name.
+     */
+    NSOFSymbol get(int index) {
+        return names[index];
+    }
+
+    /**
+     * Find the slot.
+     *
+     * @param name the slot name.
+     * @return the slot index - {@code -1} otherwise.
+     */
+    int indexOf(NSOFSymbol name) {
+        final NSOFSymbol[] names = this.names;
+        if (table == null) {
+            for (int n = 0; n < names.length; n++) {
+                if (names[n] == name)
+                    return n;
+            }
+            for (int n = 0; n < names.length; n++) {
+                if (names[n].equals(name))
+                    return n;
+            }
+            return -1;
+        }
+        final int mask = table.length - 1;
+        int i = name.hashCode() & mask;
+        int n;
+        while ((n = table[i]) != 0) {
+            if (names[n - 1].equals(name))
+                return n - 1;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the map with an additional slot.<br>
+     * The map is shared if the slot name has the same spelling as the shared
+     * map.
+     *
+     * @param name the slot name.
+     * @return the map.
+     */
+    FrameMap add(NSOFSymbol name) {
+        expunge();
+        ConcurrentMap<NSOFSymbol, Transition> transitions = this.transitions;
+        if (transitions == null) {
+            synchronized (this) {
+                transitions = this.transitions;
+                if (transitions == null) {
+                    transitions = new ConcurrentHashMap<NSOFSymbol, Transition>(4);
+                    this.transitions = transitions;
+                }
+            }
+        }
+        final int size = names.length;
+        Transition transition = transitions.get(name);
+        FrameMap map = (transition == null) ? null : transition.get();
+        if (map != null) {
+            NSOFSymbol nameShared = map.names[size];
+            if ((nameShared == name) || nameShared.getValue().equals(name.getValue()))
+                return map;
+        }
+
+        NSOFSymbol[] namesNext = new NSOFSymbol[size + 1];
+        System.arraycopy(names, 0, namesNext, 0, size);
+        namesNext[size] = name;
+        if (map != null)
+            return new FrameMap(null, namesNext);
+        FrameMap next = new FrameMap(this, namesNext);
+        // Share the map, unless another thread already did.
+        Transition transitionNext = new Transition(transitions, name, next);
+        if (transition == null)
+            transitions.putIfAbsent(name, transitionNext);
+        else
+            transitions.replace(name, transition, transitionNext);
+        return next;
+    }
+
+    /**
+     * Remove the transitions whose maps were garbage collected.
+     */
+    private static void expunge() {
+        Reference<? extends FrameMap> ref;
+        Transition transition;
+        while ((ref = queue.poll()) != null) {
+            transition = (Transition) ref;
+            transition.transitions.remove(transition.name, transition);
+        }
+    }
+
+    /**
+     * Get the map without a slot.<br>
+     * The map is not shared.
+     *
+     * @param index the slot index.
+     * @return the map.
+     */
+    FrameMap remove(int index) {
+        final int size = names.length;
+        if (size == 1)
+            return EMPTY;
+        NSOFSymbol[] namesNext = new NSOFSymbol[size - 1];
+        System.arraycopy(names, 0, namesNext, 0, index);
+        System.arraycopy(names, index + 1, namesNext, index, size - index - 1);
+        return new FrameMap(null, namesNext);
+    }
+
+    /**
+     * Get the number of shared transitions from this map, whose maps are
+     * still used.
+     *
+     * @return the number of transitions.
+     */
+    int getTransitionsCount() {
+        expunge();
+        ConcurrentMap<NSOFSymbol, Transition> transitions = this.transitions;
+        return (transitions == null) ? 0 : transitions.size();
+    }
+
+    /**
+     * Get the slot names.
+     *
+     * @return the names.
+     */
+    Set<NSOFSymbol> keySet() {
+        return keys;
+    }
+
+    /**
+     * The slot names as a set.
+     */
+    private class KeySet extends AbstractSet<NSOFSymbol> {
+
+        @Override
+        public Iterator<NSOFSymbol> iterator() {
+            return new Iterator<NSOFSymbol>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < names.length;
+                }
+
+                @Override
+                public NSOFSymbol next() {
+                    if (index >= names.length)
+                        throw new NoSuchElementException();
+                    return names[index++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof NSOFSymbol) && (indexOf((NSOFSymbol) o) >= 0);
+        }
+    }
+}
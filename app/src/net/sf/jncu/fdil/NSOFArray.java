@@ -16,7 +16,6 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -30,6 +29,8 @@ import java.util.List;
  * end of an array.
  * <p>
  * The array's slots are initialised to <tt>kFD_NIL</tt>.
+ * <p>
+ * Copies of an array share its slots until either array is changed.
  *
  * @author Moshe
  */
@@ -41,7 +42,11 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
      */
     public static final NSOFSymbol CLASS_ARRAY = new NSOFSymbol("array");
 
-    private final List<NSOFObject> value;
+    private List<NSOFObject> value;
+    /**
+     * Are the slots shared with another array?
+     */
+    private boolean shared;
 
     /**
      * Creates a new array of size {@code 0}.
@@ -106,22 +111,6 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
         return super.equals(obj);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Number of slots (xlong)
-        int length = XLong.decodeValue(in);
-        List<NSOFObject> slots = new ArrayList<NSOFObject>(length);
-
-        // Class (object)
-        setObjectClass((NSOFSymbol) decoder.inflate(in));
-
-        // Slot values in ascending order (objects)
-        for (int i = 0; i < length; i++) {
-            slots.add(decoder.inflate(in));
-        }
-        setValue(slots);
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_ARRAY);
@@ -143,6 +132,17 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
         }
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        NSOFObject[] slots = getValue();
+        int length = (slots == null) ? 0 : slots.length;
+        int size = 1 + XLong.getEncodedSize(length) + encoder.getFlattenedSize(getObjectClass());
+        for (int i = 0; i < length; i++) {
+            size += encoder.getFlattenedSize(slots[i]);
+        }
+        return size;
+    }
+
     /**
      * Get the value.
      *
@@ -161,7 +161,7 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
      * @param value the value.
      */
     public void setValue(NSOFObject[] value) {
-        this.value.clear();
+        clearValue();
         if (value != null) {
             for (NSOFObject slot : value)
                 add(slot);
@@ -174,13 +174,38 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
      * @param value the value.
      */
     public void setValue(List<NSOFObject> value) {
-        this.value.clear();
+        clearValue();
         if (value != null) {
             for (NSOFObject slot : value)
                 add(slot);
         }
     }
 
+    /**
+     * Remove all the slots.
+     */
+    private void clearValue() {
+        if (shared) {
+            this.value = new ArrayList<NSOFObject>();
+            shared = false;
+        } else {
+            this.value.clear();
+        }
+    }
+
+    /**
+     * Make the slots private to this array, before changing them.
+     *
+     * @return the slots.
+     */
+    private List<NSOFObject> own() {
+        if (shared) {
+            value = new ArrayList<NSOFObject>(value);
+            shared = false;
+        }
+        return value;
+    }
+
     /**
      * Get the array length.
      *
@@ -240,7 +265,7 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
     public NSOFObject set(int pos, NSOFObject item) {
         if (item == null)
             item = NSOFNil.NIL;
-        return value.set(pos, item);
+        return own().set(pos, item);
     }
 
     /**
@@ -251,7 +276,7 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
     public void add(NSOFObject item) {
         if (item == null)
             item = NSOFNil.NIL;
-        value.add(item);
+        own().add(item);
     }
 
     /**
@@ -261,7 +286,7 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
      * @param item the item to insert.
      */
     public void insert(int pos, NSOFObject item) {
-        value.add(pos, item);
+        own().add(pos, item);
     }
 
     /**
@@ -272,7 +297,7 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
      */
     public NSOFObject remove(int pos) {
         try {
-            return value.remove(pos);
+            return own().remove(pos);
         } catch (IndexOutOfBoundsException e) {
             throw new ValueOutOfRangeException(e.getMessage());
         }
@@ -280,11 +305,33 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
 
     @Override
     public Object clone() throws CloneNotSupportedException {
+        return snapshot();
+    }
+
+    /**
+     * Get a copy of the array, in constant time.<br>
+     * The copy shares the slots until either array is changed.
+     *
+     * @return the copy.
+     */
+    public NSOFArray snapshot() {
         NSOFArray copy = new NSOFArray();
-        copy.value.addAll(this.value);
+        copy.share(this);
         return copy;
     }
 
+    /**
+     * Share the slots of another array.
+     *
+     * @param array the source array.
+     */
+    void share(NSOFArray array) {
+        this.value = array.value;
+        this.shared = true;
+        array.shared = true;
+        setObjectClass(array.getObjectClass());
+    }
+
     @Override
     public NSOFObject deepClone() throws CloneNotSupportedException {
         NSOFArray copy = new NSOFArray(this.length());
@@ -294,11 +341,12 @@ public class NSOFArray extends NSOFPointer implements NSOFCollection {
     }
 
     /**
-     * Get the list of items.
+     * Get the list of items.<br>
+     * Changes to the list are changes to the array.
      *
      * @return the list.
      */
     public List<NSOFObject> toList() {
-        return value;
+        return own();
     }
 }
@@ -15,9 +15,7 @@
  */
 package net.sf.jncu.fdil;
 
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -59,16 +57,6 @@ public class NSOFAsciiCharacter extends NSOFCharacter {
         return "$\\" + HEX[value & 0x000F] + HEX[(value >> 4) & 0x000F];
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Character code (byte)
-        int c = in.read();
-        if (c == -1) {
-            throw new EOFException();
-        }
-        setValue((char) (c & 0xFF));
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_CHARACTER);
@@ -76,6 +64,11 @@ public class NSOFAsciiCharacter extends NSOFCharacter {
         out.write(getValue() & 0xFF);
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return 2;
+    }
+
     @Override
     public NSOFObject deepClone() throws CloneNotSupportedException {
         return new NSOFAsciiCharacter(this.getChar());
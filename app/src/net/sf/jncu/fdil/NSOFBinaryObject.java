@@ -16,7 +16,6 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -55,21 +54,6 @@ public class NSOFBinaryObject extends NSOFPointer {
         setValue(value);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Number of bytes of data (xlong)
-        int numBytesData = XLong.decodeValue(in);
-        byte[] data = new byte[numBytesData];
-
-        // Class (object)
-        NSOFSymbol symbol = (NSOFSymbol) decoder.inflate(in);
-        setObjectClass(symbol);
-
-        // Data
-        readAll(in, data);
-        setValue(data);
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_BINARY);
@@ -86,6 +70,12 @@ public class NSOFBinaryObject extends NSOFPointer {
         out.write(v);
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        byte[] v = getValue();
+        return 1 + XLong.getEncodedSize(v.length) + encoder.getFlattenedSize(getObjectClass()) + v.length;
+    }
+
     /**
      * Get the value.
      *
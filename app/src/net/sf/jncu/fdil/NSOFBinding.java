@@ -0,0 +1,626 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.jncu.util.NumberUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binds the fields of a Java class, annotated with {@link NSOFSlot}, to the
+ * slots of a frame.<br>
+ * The binding decodes and encodes the frame directly between the stream and
+ * the Java object, without building any FDIL objects.
+ * <p>
+ * Slots without a field are skipped when decoding. Fields are encoded in the
+ * order that they are declared, starting with the super class, just like
+ * {@link NSOFEncoder} would encode the equivalent frame.
+ *
+ * @param <T> the bound class.
+ * @author moshew
+ */
+public class NSOFBinding<T> {
+
+    private static final int KIND_INT = 0;
+    private static final int KIND_BOOLEAN = 1;
+    private static final int KIND_CHAR = 2;
+    private static final int KIND_LONG = 3;
+    private static final int KIND_DOUBLE = 4;
+    private static final int KIND_STRING = 5;
+
+    private static final String NAME_REAL = NSOFReal.CLASS_REAL.getValue();
+    private static final int REF_TRUE = 0x1A;
+    private static final int REF_NIL = 0x2;
+
+    /**
+     * The bindings, by class.
+     */
+    private static final ConcurrentMap<Class<?>, NSOFBinding<?>> bindings = new ConcurrentHashMap<Class<?>, NSOFBinding<?>>();
+
+    /**
+     * A field that is bound to a slot.
+     */
+    private static class Slot {
+        final String name;
+        final int kind;
+        /**
+         * The slot name, encoded as a symbol.
+         */
+        final byte[] symbol;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        Slot(String name, int kind, MethodHandle getter, MethodHandle setter) throws IOException {
+            this.name = name;
+            this.kind = kind;
+            this.getter = getter;
+            this.setter = setter;
+            NSOFOutput out = new NSOFOutput();
+            new NSOFSymbol(name).flatten(out, null);
+            this.symbol = out.toByteArray();
+        }
+    }
+
+    /**
+     * The data of strings and binaries that can be referenced by later
+     * precedents, by ID.
+     */
+    private static class Pointers {
+        byte[][] values = new byte[16][];
+
+        void put(int id, byte[] value) {
+            if (id >= values.length)
+                values = Arrays.copyOf(values, Math.max(id + 1, values.length << 1));
+            values[id] = value;
+        }
+
+        byte[] get(int id) {
+            return (id < values.length) ? values[id] : null;
+        }
+    }
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final Slot[] slots;
+    /**
+     * The slots, by name as declared.
+     */
+    private final Map<String, Slot> slotsByName = new HashMap<String, Slot>();
+    /**
+     * The slots, by lower-case name.
+     */
+    private final Map<String, Slot> slotsByKey = new HashMap<String, Slot>();
+    /**
+     * Do any of the slots read strings or binaries?
+     */
+    private final boolean pointers;
+    /**
+     * The precedent ID of the <tt>'real</tt> symbol when it is also a slot
+     * name - {@code -1} otherwise.
+     */
+    private final int realId;
+
+    /**
+     * Creates a new binding.
+     *
+     * @param type the bound class.
+     * @throws IllegalArgumentException if a field cannot be bound.
+     */
+    protected NSOFBinding(Class<T> type) {
+        super();
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        MethodHandle constructor = null;
+        try {
+            Constructor<T> c = type.getDeclaredConstructor();
+            c.setAccessible(true);
+            constructor = lookup.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException e) {
+            // Only bind existing objects.
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.constructor = constructor;
+
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass())
+            classes.add(0, c);
+        List<Slot> slots = new ArrayList<Slot>();
+        boolean pointers = false;
+        int realId = -1;
+        NSOFSlot annotation;
+        String name;
+        String key;
+        Class<?> fieldType;
+        int kind;
+        for (Class<?> c : classes) {
+            for (Field field : c.getDeclaredFields()) {
+                annotation = field.getAnnotation(NSOFSlot.class);
+                if ((annotation == null) || Modifier.isStatic(field.getModifiers()))
+                    continue;
+                name = annotation.value();
+                fieldType = field.getType();
+                if (fieldType == Integer.TYPE) {
+                    kind = KIND_INT;
+                } else if (fieldType == Boolean.TYPE) {
+                    kind = KIND_BOOLEAN;
+                } else if (fieldType == Character.TYPE) {
+                    kind = KIND_CHAR;
+                } else if (fieldType == Long.TYPE) {
+                    kind = KIND_LONG;
+                } else if (fieldType == Double.TYPE) {
+                    kind = KIND_DOUBLE;
+                } else if (fieldType == String.class) {
+                    kind = KIND_STRING;
+                } else {
+                    throw new IllegalArgumentException("unsupported type for slot " + name + ": " + fieldType);
+                }
+                key = name.toLowerCase(Locale.ENGLISH);
+                if (slotsByKey.containsKey(key))
+                    throw new IllegalArgumentException("duplicate slot " + name);
+                field.setAccessible(true);
+                Slot slot;
+                try {
+                    MethodHandle getter = lookup.unreflectGetter(field);
+                    MethodHandle setter = lookup.unreflectSetter(field);
+                    getter = getter.asType(MethodType.methodType(fieldType, Object.class));
+                    setter = setter.asType(MethodType.methodType(Void.TYPE, Object.class, fieldType));
+                    slot = new Slot(name, kind, getter, setter);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException(e);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e);
+                }
+                slotsByName.put(name, slot);
+                slotsByKey.put(key, slot);
+                if (NAME_REAL.equals(key))
+                    realId = 1 + slots.size();
+                slots.add(slot);
+                pointers |= (kind == KIND_LONG) || (kind == KIND_DOUBLE) || (kind == KIND_STRING);
+            }
+        }
+        this.slots = slots.toArray(new Slot[slots.size()]);
+        this.pointers = pointers;
+        this.realId = realId;
+    }
+
+    /**
+     * Get the binding for the class.<br>
+     * The binding is created once, and then cached.
+     *
+     * @param type the bound class.
+     * @param <T>  the bound class.
+     * @return the binding.
+     * @throws IllegalArgumentException if a field cannot be bound.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> NSOFBinding<T> forClass(Class<T> type) {
+        NSOFBinding<T> binding = (NSOFBinding<T>) bindings.get(type);
+        if (binding == null) {
+            binding = new NSOFBinding<T>(type);
+            NSOFBinding<T> old = (NSOFBinding<T>) bindings.putIfAbsent(type, binding);
+            if (old != null)
+                binding = old;
+        }
+        return binding;
+    }
+
+    /**
+     * Get the bound class.
+     *
+     * @return the class.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Get the names of the bound slots.
+     *
+     * @return the names.
+     */
+    public String[] getSlotNames() {
+        String[] names = new String[slots.length];
+        for (int i = 0; i < slots.length; i++)
+            names[i] = slots[i].name;
+        return names;
+    }
+
+    /**
+     * Create a new object.
+     *
+     * @return the object.
+     * @throws IllegalStateException if the class has no default constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance() {
+        if (constructor == null)
+            throw new IllegalStateException("no default constructor for " + type);
+        try {
+            return (T) constructor.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Decode a frame into a new object.
+     *
+     * @param in the input.
+     * @return the object.
+     * @throws IOException if a decoding error occurs.
+     */
+    public T inflate(InputStream in) throws IOException {
+        return inflate(new NSOFReader(in), newInstance());
+    }
+
+    /**
+     * Decode the next frame of the reader into the object.<br>
+     * Fields without slots in the frame are not changed.
+     *
+     * @param reader the reader, before the frame.
+     * @param target the object.
+     * @return the object.
+     * @throws IOException if a decoding error occurs.
+     */
+    public T inflate(NSOFReader reader, T target) throws IOException {
+        if (reader.next() != NSOFReader.START_FRAME)
+            throw new InvalidObjectException("expected frame");
+        final Pointers pointers = this.pointers ? new Pointers() : null;
+        Slot[] slotsById = new Slot[16];
+        Slot slot;
+        int slotId;
+        int event;
+        while (reader.next() == NSOFReader.SLOT) {
+            slotId = reader.getSlotNameId();
+            if (slotId >= slotsById.length)
+                slotsById = Arrays.copyOf(slotsById, Math.max(slotId + 1, slotsById.length << 1));
+            slot = slotsById[slotId];
+            if (slot == null) {
+                slot = findSlot(reader.getSlotName());
+                slotsById[slotId] = slot;
+            }
+
+            event = reader.next();
+            if ((event == NSOFReader.START_FRAME) || (event == NSOFReader.START_ARRAY)) {
+                if (slot != null)
+                    throw new InvalidObjectException("unexpected collection for slot " + slot.name);
+                skip(reader, pointers);
+            } else if (slot == null) {
+                record(reader, pointers);
+            } else {
+                read(reader, slot, target, pointers);
+            }
+        }
+        // Finish the document, so that the input can be read after it.
+        reader.next();
+        return target;
+    }
+
+    /**
+     * Find the slot.<br>
+     * Symbols are not case-sensitive.
+     *
+     * @param name the slot name.
+     * @return the slot - {@code null} if not bound.
+     */
+    private Slot findSlot(String name) {
+        if (name == null)
+            return null;
+        Slot slot = slotsByName.get(name);
+        if (slot == null)
+            slot = slotsByKey.get(name.toLowerCase(Locale.ENGLISH));
+        return slot;
+    }
+
+    /**
+     * Skip the current frame or array, keeping the strings and binaries that
+     * may be referenced by later precedents.
+     *
+     * @param reader   the reader.
+     * @param pointers the referenced data.
+     * @throws IOException if a decoding error occurs.
+     */
+    private void skip(NSOFReader reader, Pointers pointers) throws IOException {
+        if (pointers == null) {
+            reader.skip();
+            return;
+        }
+        final int depth = reader.getDepth();
+        int event;
+        do {
+            event = reader.next();
+            if (event == NSOFReader.VALUE)
+                record(reader, pointers);
+        } while (reader.getDepth() >= depth);
+    }
+
+    /**
+     * Keep the current string or binary that may be referenced by a later
+     * precedent.
+     *
+     * @param reader   the reader.
+     * @param pointers the referenced data.
+     * @throws IOException if a decoding error occurs.
+     */
+    private void record(NSOFReader reader, Pointers pointers) throws IOException {
+        if ((pointers == null) || (reader.getId() < 0))
+            return;
+        int dataType = reader.getDataType();
+        if ((dataType == NewtonStreamedObjectFormat.NSOF_STRING) || (dataType == NewtonStreamedObjectFormat.NSOF_BINARY))
+            pointers.put(reader.getId(), reader.getBytes());
+    }
+
+    /**
+     * Read the current value into the field.
+     *
+     * @param reader   the reader.
+     * @param slot     the slot.
+     * @param target   the object.
+     * @param pointers the referenced data.
+     * @throws IOException if a decoding error occurs.
+     */
+    private void read(NSOFReader reader, Slot slot, Object target, Pointers pointers) throws IOException {
+        final int dataType = reader.getDataType();
+        final int ref = reader.getImmediate();
+        final boolean immediate = (dataType == NewtonStreamedObjectFormat.NSOF_IMMEDIATE);
+        final boolean nil = (dataType == NewtonStreamedObjectFormat.NSOF_NIL) || (immediate && NSOFImmediate.isRefNil(ref));
+        byte[] data = null;
+        if (dataType == NewtonStreamedObjectFormat.NSOF_PRECEDENT) {
+            String symbol = reader.getSymbol(reader.getPrecedent());
+            if ((symbol != null) && (slot.kind == KIND_STRING)) {
+                setString(slot, target, symbol);
+                return;
+            }
+            if (pointers != null)
+                data = pointers.get(reader.getPrecedent());
+        } else if ((dataType == NewtonStreamedObjectFormat.NSOF_STRING) || (dataType == NewtonStreamedObjectFormat.NSOF_BINARY)) {
+            if ((pointers != null) && (reader.getId() >= 0)) {
+                data = reader.getBytes();
+                pointers.put(reader.getId(), data);
+            }
+        }
+
+        try {
+            switch (slot.kind) {
+                case KIND_INT:
+                    if (nil)
+                        return;
+                    if (!immediate || !NSOFImmediate.isRefInteger(ref))
+                        break;
+                    slot.setter.invokeExact(target, ref >> 2);
+                    return;
+                case KIND_BOOLEAN:
+                    slot.setter.invokeExact(target, !nil);
+                    return;
+                case KIND_CHAR:
+                    if (nil)
+                        return;
+                    if ((dataType == NewtonStreamedObjectFormat.NSOF_CHARACTER) || (dataType == NewtonStreamedObjectFormat.NSOF_UNICODE_CHARACTER)) {
+                        slot.setter.invokeExact(target, reader.getCharacter());
+                        return;
+                    }
+                    if (!immediate || !NSOFImmediate.isRefCharacter(ref))
+                        break;
+                    slot.setter.invokeExact(target, (char) ((ref >> 4) & 0xFFFF));
+                    return;
+                case KIND_LONG:
+                case KIND_DOUBLE:
+                    if (nil)
+                        return;
+                    double real;
+                    if (immediate && NSOFImmediate.isRefInteger(ref)) {
+                        real = ref >> 2;
+                    } else {
+                        if ((data == null) && (dataType == NewtonStreamedObjectFormat.NSOF_BINARY))
+                            data = reader.getBytes();
+                        if ((data == null) || (data.length != 8))
+                            break;
+                        real = Double.longBitsToDouble(NumberUtils.toLong(data));
+                    }
+                    if (slot.kind == KIND_LONG)
+                        slot.setter.invokeExact(target, (long) real);
+                    else
+                        slot.setter.invokeExact(target, real);
+                    return;
+                case KIND_STRING:
+                    if (nil) {
+                        slot.setter.invokeExact(target, (String) null);
+                        return;
+                    }
+                    if (dataType == NewtonStreamedObjectFormat.NSOF_SYMBOL) {
+                        slot.setter.invokeExact(target, reader.getSymbol());
+                        return;
+                    }
+                    if (data != null) {
+                        slot.setter.invokeExact(target, NSOFString.decode(data, data.length));
+                        return;
+                    }
+                    if (dataType == NewtonStreamedObjectFormat.NSOF_STRING) {
+                        slot.setter.invokeExact(target, reader.getString());
+                        return;
+                    }
+                    if (dataType == NewtonStreamedObjectFormat.NSOF_BINARY) {
+                        data = reader.getBytes();
+                        slot.setter.invokeExact(target, NSOFString.decode(data, data.length));
+                        return;
+                    }
+                    break;
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        throw new InvalidObjectException("unexpected data type " + dataType + " for slot " + slot.name);
+    }
+
+    /**
+     * Set a string field.
+     *
+     * @param slot   the slot.
+     * @param target the object.
+     * @param value  the value.
+     */
+    private static void setString(Slot slot, Object target, String value) {
+        try {
+            slot.setter.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Encode the object as a frame.
+     *
+     * @param source the object.
+     * @param out    the output.
+     * @throws IOException              if an encoding error occurs.
+     * @throws ValueOutOfRangeException if an integer field is out of range.
+     */
+    public void flatten(T source, OutputStream out) throws IOException {
+        if (out instanceof NSOFOutput) {
+            flatten(source, (NSOFOutput) out);
+            return;
+        }
+        NSOFOutput output = new NSOFOutput(out);
+        flatten(source, output);
+        output.release();
+    }
+
+    /**
+     * Encode the object as a frame.
+     *
+     * @param source the object.
+     * @param out    the output.
+     * @throws IOException if an encoding error occurs.
+     */
+    private void flatten(T source, NSOFOutput out) throws IOException {
+        final Slot[] slots = this.slots;
+        final int size = slots.length;
+        out.write(NewtonStreamedObjectFormat.VERSION);
+        out.write(NewtonStreamedObjectFormat.NSOF_FRAME);
+        out.writeXLong(size);
+
+        // The frame, and then its slot names, are the first precedents.
+        int idMax = 1;
+        for (int i = 0; i < size; i++) {
+            out.write(slots[i].symbol);
+            idMax++;
+        }
+
+        int realId = this.realId;
+        Slot slot;
+        try {
+            for (int i = 0; i < size; i++) {
+                slot = slots[i];
+                switch (slot.kind) {
+                    case KIND_INT:
+                        int n = (int) slot.getter.invokeExact((Object) source);
+                        if ((n < NSOFInteger.MIN_VALUE) || (n > NSOFInteger.MAX_VALUE))
+                            throw new ValueOutOfRangeException();
+                        out.write(NewtonStreamedObjectFormat.NSOF_IMMEDIATE);
+                        out.writeXLong(n << 2);
+                        break;
+                    case KIND_BOOLEAN:
+                        boolean b = (boolean) slot.getter.invokeExact((Object) source);
+                        out.write(NewtonStreamedObjectFormat.NSOF_IMMEDIATE);
+                        out.writeXLong(b ? REF_TRUE : REF_NIL);
+                        break;
+                    case KIND_CHAR:
+                        char c = (char) slot.getter.invokeExact((Object) source);
+                        out.write(NewtonStreamedObjectFormat.NSOF_UNICODE_CHARACTER);
+                        out.write(c >> 8);
+                        out.write(c);
+                        break;
+                    case KIND_LONG:
+                    case KIND_DOUBLE:
+                        double real;
+                        if (slot.kind == KIND_LONG)
+                            real = (long) slot.getter.invokeExact((Object) source);
+                        else
+                            real = (double) slot.getter.invokeExact((Object) source);
+                        out.write(NewtonStreamedObjectFormat.NSOF_BINARY);
+                        out.writeXLong(8);
+                        idMax++;
+                        if (realId < 0) {
+                            realId = idMax++;
+                            NSOFReal.CLASS_REAL.flatten(out, null);
+                        } else {
+                            out.write(NewtonStreamedObjectFormat.NSOF_PRECEDENT);
+                            out.writeXLong(realId);
+                        }
+                        out.write(NumberUtils.toBytes(Double.doubleToRawLongBits(real)));
+                        break;
+                    case KIND_STRING:
+                        String s = (String) slot.getter.invokeExact((Object) source);
+                        if (s == null) {
+                            out.write(NewtonStreamedObjectFormat.NSOF_NIL);
+                            break;
+                        }
+                        idMax++;
+                        out.write(NewtonStreamedObjectFormat.NSOF_STRING);
+                        if (s.isEmpty()) {
+                            out.writeXLong(0);
+                        } else {
+                            // 2-bytes per character + null-terminated
+                            out.writeXLong((s.length() << 1) + 2);
+                            out.writeUTF16BE(s);
+                            out.write(0);
+                            out.write(0);
+                        }
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Rethrow an exception from a bound field as unchecked.
+     *
+     * @param t the exception.
+     * @return the unchecked exception.
+     */
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException)
+            return (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        return new IllegalStateException(t);
+    }
+}
@@ -19,30 +19,36 @@ import net.sf.jncu.fdil.contrib.NSOFInstructions;
 import net.sf.jncu.fdil.contrib.NSOFLiterals;
 import net.sf.jncu.fdil.contrib.NSOFRawBitmap;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InvalidObjectException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Newton Streamed Object Format decoder.
+ * Newton Streamed Object Format decoder.<br>
+ * Builds the object tree from the events of a {@link NSOFReader}. Subclasses
+ * decode into other classes by overriding
+ * {@link #postInflate(NSOFObject, int)}.
  *
  * @author Moshe
  */
 public class NSOFDecoder {
 
-    private final Map<NSOFPrecedent, Precedent> precedents = new HashMap<NSOFPrecedent, Precedent>();
-
     /**
-     * {@code 0} is a legal ID.
+     * The precedents, indexed by ID.
+     */
+    private Precedent[] precedents = new Precedent[64];
+    /**
+     * Number of precedent IDs in use.
      */
-    private int idMax = 0;
+    private int precedentsCount;
+
     /**
-     * Written version header?
+     * The pull reader.
      */
-    private boolean versioned;
+    private final NSOFReader reader;
 
     /**
      * Constructs a new decoder.
@@ -58,7 +64,7 @@ public class NSOFDecoder {
      */
     public NSOFDecoder(boolean versioned) {
         super();
-        this.versioned = versioned;
+        this.reader = new NSOFReader(versioned);
     }
 
     /**
@@ -72,82 +78,183 @@ public class NSOFDecoder {
      * @throws UnknownStreamVersionException if the stream version is unknown.
      */
     public NSOFObject inflate(InputStream in) throws IOException, UnknownStreamVersionException {
-        if (!versioned) {
-            int version = in.read();
-            if (version != NewtonStreamedObjectFormat.VERSION) {
-                throw new UnknownStreamVersionException("unknown protocol version: " + version);
-            }
-            versioned = true;
-        }
-        int dataType = in.read();
-        if (dataType == -1)
-            throw new EOFException();
+        reader.setInput(in);
+        reader.next();
+        NSOFObject object = inflate(reader);
+        // Finish the document, so that the input can be read after it.
+        reader.next();
+        return object;
+    }
 
-        NSOFObject object = null;
+    /**
+     * Decode the current object of the reader, recursively.
+     *
+     * @param reader the reader.
+     * @return the decoded object.
+     * @throws IOException if a decoding error occurs.
+     */
+    private NSOFObject inflate(NSOFReader reader) throws IOException {
+        final int dataType = reader.getDataType();
+        final int id = reader.getId();
+        NSOFObject object;
         NSOFObject object2;
 
         switch (dataType) {
             case NewtonStreamedObjectFormat.NSOF_ARRAY:
-                object = new NSOFArray();
+                NSOFArray arr = new NSOFArray();
+                register(id, arr);
+                arr.setObjectClass(symbol(reader.getObjectClassId()));
+                List<NSOFObject> slots = new ArrayList<NSOFObject>(reader.getLength());
+                while (reader.next() != NSOFReader.END_ARRAY) {
+                    slots.add(inflate(reader));
+                }
+                arr.setValue(slots);
+                object = arr;
                 break;
             case NewtonStreamedObjectFormat.NSOF_BINARY:
-                object = new NSOFBinaryObject();
+                object = new NSOFBinaryObject(reader.getBytes());
+                object.setObjectClass(symbol(reader.getObjectClassId()));
                 break;
             case NewtonStreamedObjectFormat.NSOF_CHARACTER:
-                object = new NSOFAsciiCharacter();
+                object = new NSOFAsciiCharacter(reader.getCharacter());
+                break;
             case NewtonStreamedObjectFormat.NSOF_FRAME:
-                object = new NSOFFrame();
+                NSOFFrame frame = new NSOFFrame(reader.getLength());
+                register(id, frame);
+                NSOFSymbol key;
+                while (reader.next() == NSOFReader.SLOT) {
+                    key = symbol(reader.getSlotNameId());
+                    reader.next();
+                    frame.put(key, inflate(reader));
+                }
+                object = frame;
                 break;
             case NewtonStreamedObjectFormat.NSOF_IMMEDIATE:
-                object = inflateImmediate(in);
+                object = toImmediate(reader.getImmediate());
                 break;
             case NewtonStreamedObjectFormat.NSOF_LARGE_BINARY:
-                object = new NSOFLargeBinary();
+                NSOFLargeBinary lbin = new NSOFLargeBinary();
+                lbin.setObjectClass(symbol(reader.getObjectClassId()));
+                lbin.setCompressed(reader.isCompressed());
+                lbin.setCompanderName(reader.getCompanderName());
+                lbin.setCompanderArguments(reader.getCompanderArguments());
+                int length = reader.getLength();
+                lbin.setLength(length);
+                byte[] page = new byte[NSOFLargeBinary.PAGE_SIZE];
+                for (int offset = 0, count; offset < length; offset += count) {
+                    count = reader.read(page, 0, page.length);
+                    lbin.write(offset, page, 0, count);
+                }
+                object = lbin;
                 break;
             case NewtonStreamedObjectFormat.NSOF_NIL:
                 object = NSOFNil.NIL;
                 break;
             case NewtonStreamedObjectFormat.NSOF_PLAIN_ARRAY:
-                object = new NSOFPlainArray();
+                NSOFPlainArray parr = new NSOFPlainArray();
+                register(id, parr);
+                NSOFObject[] entries = new NSOFObject[reader.getLength()];
+                for (int i = 0; reader.next() != NSOFReader.END_ARRAY; i++) {
+                    entries[i] = inflate(reader);
+                }
+                parr.setValue(entries);
+                object = parr;
                 break;
             case NewtonStreamedObjectFormat.NSOF_PRECEDENT:
-                object = new NSOFPrecedent();
+                object = new NSOFPrecedent(reader.getPrecedent());
+                // Symbols of classes and slot names.
+                symbol(reader.getPrecedent());
                 break;
             case NewtonStreamedObjectFormat.NSOF_SMALL_RECT:
-                object = new NSOFSmallRect();
+                int[] rect = reader.getSmallRect();
+                object = new NSOFSmallRect(rect[0], rect[1], rect[2], rect[3]);
                 break;
             case NewtonStreamedObjectFormat.NSOF_STRING:
-                object = new NSOFString();
+                NSOFString str = new NSOFString();
+                str.setUTF16(reader.getBytes());
+                object = str;
                 break;
             case NewtonStreamedObjectFormat.NSOF_SYMBOL:
-                object = new NSOFSymbol();
+                object = symbol(id);
                 break;
             case NewtonStreamedObjectFormat.NSOF_UNICODE_CHARACTER:
-                object = new NSOFUnicodeCharacter();
+                object = new NSOFUnicodeCharacter(reader.getCharacter());
                 break;
+            default:
+                throw new InvalidObjectException("unknown data type " + dataType);
         }
-        if (object == null) {
-            throw new InvalidObjectException("unknown data type " + dataType);
-        }
-        NSOFPrecedent id = null;
-        if (object instanceof Precedent) {
-            Precedent p = (Precedent) object;
-            id = new NSOFPrecedent(this.idMax);
-            precedents.put(id, p);
-            this.idMax++;
-        }
-        object.inflate(in, this);
+        // Frames and arrays were registered before their children.
+        if ((id >= 0) && (dataType != NewtonStreamedObjectFormat.NSOF_ARRAY) && (dataType != NewtonStreamedObjectFormat.NSOF_FRAME)
+                && (dataType != NewtonStreamedObjectFormat.NSOF_PLAIN_ARRAY))
+            register(id, object);
         object2 = postInflate(object, dataType);
 
         // Replace the old precedent.
-        if ((id != null) && (object != object2) && (object2 instanceof Precedent)) {
-            Precedent p = (Precedent) object2;
-            precedents.put(id, p);
+        if ((id >= 0) && (object != object2) && (object2 instanceof Precedent)) {
+            register(id, object2);
         }
 
         return object2;
     }
 
+    /**
+     * Register the object that can be referenced by later precedents.
+     *
+     * @param id     the precedent ID.
+     * @param object the object.
+     */
+    private void register(int id, NSOFObject object) {
+        if (!(object instanceof Precedent))
+            return;
+        if (id >= precedents.length)
+            precedents = Arrays.copyOf(precedents, Math.max(id + 1, precedents.length << 1));
+        precedents[id] = (Precedent) object;
+        if (id >= precedentsCount)
+            precedentsCount = id + 1;
+    }
+
+    /**
+     * Get the object that was registered for the precedent.
+     *
+     * @param id the precedent ID.
+     * @return the object - {@code null} otherwise.
+     */
+    protected Precedent getPrecedent(int id) {
+        return ((id >= 0) && (id < precedentsCount)) ? precedents[id] : null;
+    }
+
+    /**
+     * Get the symbol that was decoded by the reader.
+     *
+     * @param id the precedent ID.
+     * @return the symbol, or {@code null} if not a symbol.
+     */
+    private NSOFSymbol symbol(int id) {
+        if (id < 0)
+            return null;
+        Precedent p = getPrecedent(id);
+        if (p instanceof NSOFSymbol)
+            return (NSOFSymbol) p;
+        if (p != null)
+            return null;
+        String name = reader.getSymbol(id);
+        if (name == null)
+            return null;
+        NSOFSymbol symbol = NSOFSymbol.valueOf(name);
+        register(id, symbol);
+        return symbol;
+    }
+
+    /**
+     * Forget all the precedents, so that the decoder can be reused for
+     * another stream.
+     */
+    public void reset() {
+        Arrays.fill(precedents, 0, precedentsCount, null);
+        precedentsCount = 0;
+        reader.reset();
+    }
+
     /**
      * Post decode the object, possibly returning a more specific object.
      *
@@ -162,7 +269,7 @@ public class NSOFDecoder {
         switch (dataType) {
             case NewtonStreamedObjectFormat.NSOF_PRECEDENT:
                 NSOFPrecedent id = (NSOFPrecedent) object;
-                Precedent p = precedents.get(id);
+                Precedent p = getPrecedent(id.getId());
                 // Avoid recursion of containers.
                 if (p instanceof NSOFCollection) {
                     if (id.getReferent() == null)
@@ -195,10 +302,10 @@ public class NSOFDecoder {
                         } while (parentClass != null);
 
                         if (NSOFString.CLASS_STRING.equals(childClass)) {
-                            byte[] b = bin.getValue();
-                            String s = new String(b, 0, b.length - 2, NSOFString.CHARSET_UTF16);
-                            object = new NSOFString(s);
-                            object.setObjectClass(nsClass);
+                            NSOFString str = new NSOFString();
+                            str.setUTF16(bin.getValue());
+                            str.setObjectClass(nsClass);
+                            object = str;
                         }
                     }
                 }
@@ -225,7 +332,16 @@ public class NSOFDecoder {
      */
     public NSOFImmediate inflateImmediate(InputStream in) throws IOException {
         // Immediate Ref (xlong)
-        int ref = XLong.decodeValue(in);
+        return toImmediate(XLong.decodeValue(in));
+    }
+
+    /**
+     * Create the Immediate object.
+     *
+     * @param ref the immediate reference.
+     * @return the immediate value.
+     */
+    private NSOFImmediate toImmediate(int ref) {
         int val = ref;
 
         NSOFImmediate imm = null;
@@ -19,8 +19,6 @@ import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Newton Streamed Object Format encoder.
@@ -29,7 +27,141 @@ import java.util.Map;
  */
 public class NSOFEncoder {
 
-    private final Map<Precedent, NSOFPrecedent> precedents = new HashMap<Precedent, NSOFPrecedent>();
+    /**
+     * Open-addressed table of objects to int values, without boxing.
+     */
+    private static class PrecedentTable {
+
+        /**
+         * Compare keys by identity, or by equality?
+         */
+        private final boolean identity;
+        private Object[] keys = new Object[64];
+        private int[] hashes = new int[64];
+        private int[] values = new int[64];
+        private int size;
+
+        /**
+         * Creates a new table.
+         *
+         * @param identity compare keys by identity?
+         */
+        public PrecedentTable(boolean identity) {
+            super();
+            this.identity = identity;
+        }
+
+        /**
+         * Find the key.
+         *
+         * @param key  the key.
+         * @param hash the key hash.
+         * @return the slot index, or {@code -1} if not found.
+         */
+        public int indexOf(Object key, int hash) {
+            final Object[] keys = this.keys;
+            final int mask = keys.length - 1;
+            int i = mix(hash) & mask;
+            Object k;
+            while ((k = keys[i]) != null) {
+                if ((k == key) || (!identity && (hashes[i] == hash) && (k.getClass() == key.getClass()) && k.equals(key)))
+                    return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Get the value at the slot.
+         *
+         * @param index the slot index.
+         * @return the value.
+         */
+        public int valueAt(int index) {
+            return values[index];
+        }
+
+        /**
+         * Put the value for the key, replacing any previous value.
+         *
+         * @param key   the key.
+         * @param hash  the key hash.
+         * @param value the value.
+         */
+        public void put(Object key, int hash, int value) {
+            int i = indexOf(key, hash);
+            if (i >= 0) {
+                values[i] = value;
+                return;
+            }
+            if ((size + 1) * 3 > keys.length * 2)
+                resize();
+            insert(key, hash, value);
+            size++;
+        }
+
+        /**
+         * Insert the key into an empty slot.
+         *
+         * @param key   the key.
+         * @param hash  the key hash.
+         * @param value the value.
+         */
+        private void insert(Object key, int hash, int value) {
+            final int mask = keys.length - 1;
+            int i = mix(hash) & mask;
+            while (keys[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            hashes[i] = hash;
+            values[i] = value;
+        }
+
+        /**
+         * Double the capacity.
+         */
+        private void resize() {
+            final Object[] keysOld = this.keys;
+            final int[] hashesOld = this.hashes;
+            final int[] valuesOld = this.values;
+            final int capacity = keysOld.length << 1;
+            this.keys = new Object[capacity];
+            this.hashes = new int[capacity];
+            this.values = new int[capacity];
+            for (int i = 0; i < keysOld.length; i++) {
+                if (keysOld[i] != null)
+                    insert(keysOld[i], hashesOld[i], valuesOld[i]);
+            }
+        }
+
+        /**
+         * Spread the hash bits.
+         *
+         * @param hash the hash.
+         * @return the mixed hash.
+         */
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Precedents of objects, by identity.
+     */
+    private final PrecedentTable precedents = new PrecedentTable(true);
+    /**
+     * Precedents of symbols, which are unique by name.
+     */
+    private final PrecedentTable symbols = new PrecedentTable(false);
+    /**
+     * Precedents of structurally equal objects.
+     */
+    private PrecedentTable structures;
+    /**
+     * Structural hash of each frame and array.
+     */
+    private PrecedentTable structureHashes;
 
     /**
      * {@code 0} is a legal ID.
@@ -40,6 +172,15 @@ public class NSOFEncoder {
      */
     private boolean versioned;
     private boolean precedentsUse = true;
+    /**
+     * Buffer for encoding to raw streams.
+     */
+    private NSOFOutput output;
+    private boolean outputBusy;
+    /**
+     * Compander for uncompressed large binaries.
+     */
+    private String companderName;
 
     /**
      * Creates a new encoder.
@@ -69,6 +210,19 @@ public class NSOFEncoder {
      * @throws IOException if an encoding error occurs.
      */
     public void flatten(NSOFObject object, OutputStream out) throws IOException {
+        if (!(out instanceof NSOFOutput) && !outputBusy) {
+            if (output == null)
+                output = new NSOFOutput();
+            output.setOutput(out);
+            outputBusy = true;
+            try {
+                flatten(object, output);
+            } finally {
+                outputBusy = false;
+                output.release();
+            }
+            return;
+        }
         if (!versioned) {
             out.write(NewtonStreamedObjectFormat.VERSION);
             versioned = true;
@@ -85,6 +239,36 @@ public class NSOFEncoder {
      * @throws IOException if an encoding error occurs.
      */
     protected void flattenImpl(NSOFObject object, OutputStream out) throws IOException {
+        resolve(object).flatten(out, this);
+    }
+
+    /**
+     * Get the number of bytes to encode the NewtonScript object, recursively,
+     * without writing them.<br>
+     * The encoder assigns precedents just like
+     * {@link #flatten(NSOFObject, OutputStream)}, so use a separate encoder
+     * for sizing than for flattening.
+     *
+     * @param object the object to encode.
+     * @return the size in bytes.
+     * @throws IOException if an encoding error occurs.
+     */
+    public int getFlattenedSize(NSOFObject object) throws IOException {
+        int size = 0;
+        if (!versioned) {
+            size++;
+            versioned = true;
+        }
+        return size + resolve(object).getFlattenedSize(this);
+    }
+
+    /**
+     * Get the object to actually encode.
+     *
+     * @param object the object to encode.
+     * @return the object, or its precedent.
+     */
+    private NSOFObject resolve(NSOFObject object) {
         if (object == null) {
             // NewtonStreamedObjectFormat.htonl(0, out);
             object = NSOFNil.NIL;
@@ -96,16 +280,11 @@ public class NSOFEncoder {
                 object = (NSOFObject) p;
         }
         if (precedentsUse && (object instanceof Precedent)) {
-            Precedent p = (Precedent) object;
-            NSOFPrecedent id = precedents.get(p);
-            if (id == null) {
-                id = new NSOFPrecedent(this.idMax++);
-                precedents.put(p, id);
-            } else {
-                object = id;
-            }
+            int id = precedent(object);
+            if (id >= 0)
+                object = new NSOFPrecedent(id);
         }
-        object.flatten(out, this);
+        return object;
     }
 
     /**
@@ -177,4 +356,122 @@ public class NSOFEncoder {
     public void setPrecedents(boolean use) {
         this.precedentsUse = use;
     }
+
+    /**
+     * Share precedents between objects that are structurally equal, and not
+     * only between the same objects?<br>
+     * Symbols always share precedents by name.
+     *
+     * @param structural {@code true} to share precedents between equal
+     *                   objects.
+     */
+    public void setStructuralPrecedents(boolean structural) {
+        if (structural) {
+            if (structures == null) {
+                structures = new PrecedentTable(false);
+                structureHashes = new PrecedentTable(true);
+            }
+        } else {
+            structures = null;
+            structureHashes = null;
+        }
+    }
+
+    /**
+     * Compress uncompressed large binaries while encoding them?
+     * <p>
+     * The compressed formats are private to this library, and are labelled
+     * with compander names that the Newton does not know, so only use this for
+     * data that stays on the desktop, such as archives. Encoding with a
+     * compander that cannot compress, such as the Newton companders, fails
+     * with {@link UnsupportedCompressionException}.
+     *
+     * @param companderName the compander name, e.g.
+     *                      {@link NSOFLargeBinary#COMPANDER_JNCU_LZ} -
+     *                      {@code null} to encode large binaries as they are.
+     */
+    public void setCompanderName(String companderName) {
+        this.companderName = companderName;
+    }
+
+    /**
+     * Get the compander for uncompressed large binaries.
+     *
+     * @return the compander name - {@code null} if not compressing.
+     */
+    public String getCompanderName() {
+        return companderName;
+    }
+
+    /**
+     * Find the precedent ID of the object, or else assign it the next ID.
+     *
+     * @param object the object.
+     * @return the existing ID - {@code -1} if the object is new.
+     */
+    private int precedent(NSOFObject object) {
+        final PrecedentTable table;
+        final int hash;
+        if (object instanceof NSOFSymbol) {
+            table = symbols;
+            hash = object.hashCode();
+        } else if (structures != null) {
+            table = structures;
+            hash = structuralHash(object);
+        } else {
+            table = precedents;
+            hash = System.identityHashCode(object);
+        }
+        int i = table.indexOf(object, hash);
+        if (i >= 0)
+            return table.valueAt(i);
+        table.put(object, hash, this.idMax++);
+        return -1;
+    }
+
+    /**
+     * Hash the object, consistent with its {@code equals}, so that each frame
+     * and array is only hashed once.
+     *
+     * @param object the object.
+     * @return the hash.
+     */
+    private int structuralHash(NSOFObject object) {
+        if (object instanceof NSOFPrecedent) {
+            Precedent p = ((NSOFPrecedent) object).getReferent();
+            if (p != null)
+                object = (NSOFObject) p;
+        }
+        if (object == null)
+            return 0;
+        if (!(object instanceof NSOFCollection) || (object instanceof NSOFSmallRect))
+            return object.hashCode();
+
+        final int identity = System.identityHashCode(object);
+        int i = structureHashes.indexOf(object, identity);
+        if (i >= 0)
+            return structureHashes.valueAt(i);
+        // Guard against cycles.
+        structureHashes.put(object, identity, 0);
+
+        int hash;
+        if (object instanceof NSOFFrame) {
+            NSOFFrame frame = (NSOFFrame) object;
+            hash = 0;
+            final int size = frame.size();
+            for (int j = 0; j < size; j++) {
+                hash += frame.getSlotName(j).hashCode() ^ structuralHash(frame.getSlotValue(j));
+            }
+        } else {
+            NSOFObject[] entries = ((NSOFArray) object).getValue();
+            hash = 1;
+            if (entries != null) {
+                for (NSOFObject entry : entries) {
+                    hash = 31 * hash + structuralHash(entry);
+                }
+            }
+        }
+        structureHashes.put(object, identity, hash);
+        return hash;
+    }
 }
@@ -16,12 +16,8 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Set;
 
 /**
@@ -32,6 +28,10 @@ import java.util.Set;
  * Rather than using an integer index to retrieve a value that's been added to a
  * frame (as you would with an array), you specify the slot name to get the slot
  * value.
+ * <p>
+ * The slot names are kept in a {@link FrameMap} that is shared by all the
+ * frames with the same slots, and the slot values in an array. Copies of a
+ * frame share its slot values until either frame is changed.
  *
  * @author Moshe
  */
@@ -44,7 +44,17 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
     public static final NSOFSymbol CLASS_FRAME = new NSOFSymbol("frame");
     public static final NSOFSymbol SLOT_CLASS = new NSOFSymbol("class");
 
-    private final Map<NSOFSymbol, NSOFObject> slots = new LinkedHashMap<NSOFSymbol, NSOFObject>();
+    private static final NSOFObject[] NO_VALUES = new NSOFObject[0];
+
+    private FrameMap map = FrameMap.EMPTY;
+    /**
+     * The slot values, in the order of the map names.
+     */
+    private NSOFObject[] values = NO_VALUES;
+    /**
+     * Are the slot values shared with another frame?
+     */
+    private boolean shared;
 
     /**
      * Constructs a new frame.
@@ -54,58 +64,63 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
         setObjectClass(CLASS_FRAME);
     }
 
+    /**
+     * Constructs a new frame.
+     *
+     * @param capacity the expected number of slots.
+     */
+    public NSOFFrame(int capacity) {
+        this();
+        if (values.length < capacity)
+            values = Arrays.copyOf(values, capacity);
+    }
+
     @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        this.slots.clear();
+    public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
+        out.write(NSOF_FRAME);
+
+        final FrameMap map = this.map;
+        final NSOFObject[] values = this.values;
+        final int size = map.size();
 
         // Number of slots (xlong)
-        final int size = XLong.decodeValue(in);
-        NSOFSymbol[] keys = new NSOFSymbol[size];
-        NSOFString str;
+        XLong.encode(size, out);
 
         // Slot tags in ascending order (symbol objects)
         for (int i = 0; i < size; i++) {
-            str = (NSOFString) decoder.inflate(in);
-            if (str instanceof NSOFSymbol) {
-                keys[i] = (NSOFSymbol) str;
-            } else {
-                keys[i] = new NSOFSymbol(str.getValue());
-            }
+            encoder.flatten(map.get(i), out);
         }
 
         // Slot values in ascending order (objects)
-        NSOFObject slot;
         for (int i = 0; i < size; i++) {
-            slot = decoder.inflate(in);
-            put(keys[i], slot);
+            encoder.flatten(values[i], out);
         }
     }
 
     @Override
-    public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
-        out.write(NSOF_FRAME);
-
-        final List<NSOFSymbol> keys = new ArrayList<NSOFSymbol>(slots.keySet());
-
-        // Number of slots (xlong)
-        XLong.encode(keys.size(), out);
-
-        // Slot tags in ascending order (symbol objects)
-        for (NSOFSymbol key : keys) {
-            encoder.flatten(key, out);
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        final FrameMap map = this.map;
+        final NSOFObject[] values = this.values;
+        final int size = map.size();
+        int length = 1 + XLong.getEncodedSize(size);
+        for (int i = 0; i < size; i++) {
+            length += encoder.getFlattenedSize(map.get(i));
         }
-
-        // Slot values in ascending order (objects)
-        NSOFObject slot;
-        for (NSOFSymbol key : keys) {
-            slot = get(key);
-            encoder.flatten(slot, out);
+        for (int i = 0; i < size; i++) {
+            length += encoder.getFlattenedSize(values[i]);
         }
+        return length;
     }
 
     @Override
     public int hashCode() {
-        return slots.hashCode();
+        final FrameMap map = this.map;
+        final int size = map.size();
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += map.get(i).hashCode() ^ values[i].hashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -113,7 +128,18 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
         if (this == obj)
             return true;
         if (obj instanceof NSOFFrame) {
-            return this.slots.equals(((NSOFFrame) obj).slots);
+            NSOFFrame that = (NSOFFrame) obj;
+            final FrameMap map = this.map;
+            final int size = map.size();
+            if (size != that.map.size())
+                return false;
+            int index;
+            for (int i = 0; i < size; i++) {
+                index = (map == that.map) ? i : that.map.indexOf(map.get(i));
+                if ((index < 0) || !this.values[i].equals(that.values[index]))
+                    return false;
+            }
+            return true;
         }
         return super.equals(obj);
     }
@@ -124,14 +150,36 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return true if this frame contains no slots.
      */
     public boolean isEmpty() {
-        return slots.isEmpty();
+        return map.size() == 0;
     }
 
     /**
      * Removes all of the slots from this frame.
      */
     public void clear() {
-        slots.clear();
+        if (shared) {
+            values = NO_VALUES;
+            shared = false;
+        } else {
+            Arrays.fill(values, 0, map.size(), null);
+        }
+        map = FrameMap.EMPTY;
+    }
+
+    /**
+     * Make the slot values private to this frame, before changing them.
+     *
+     * @param capacity the minimum number of values.
+     */
+    private void own(int capacity) {
+        int length = values.length;
+        if (length < capacity) {
+            length = Math.max(capacity, length + (length >> 1));
+        } else if (!shared) {
+            return;
+        }
+        values = Arrays.copyOf(values, length);
+        shared = false;
     }
 
     /**
@@ -145,14 +193,14 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return the replaced object or <tt>NIL</tt> if the slot does not exist.
      */
     public NSOFObject put(NSOFSymbol name, NSOFObject value) {
-        NSOFObject old = slots.put(name, (value == null) ? NSOFNil.NIL : value);
+        NSOFObject old = putSlot(name, (value == null) ? NSOFNil.NIL : value);
         if ((value != null) && SLOT_CLASS.equals(name)) {
             NSOFSymbol oClassCurrent = getObjectClass();
             NSOFSymbol oClass = null;
             if (value instanceof NSOFSymbol) {
                 oClass = (NSOFSymbol) value;
             } else if (value instanceof NSOFString) {
-                oClass = new NSOFSymbol(((NSOFString) value).getValue());
+                oClass = NSOFSymbol.valueOf(((NSOFString) value).getValue());
             }
             if (!oClassCurrent.equals(oClass))
                 setObjectClass(oClass);
@@ -160,6 +208,30 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
         return (old == null) ? NSOFNil.NIL : old;
     }
 
+    /**
+     * Put the slot value, adding the slot if necessary.
+     *
+     * @param name  the slot name.
+     * @param value the slot value.
+     * @return the replaced object - {@code null} otherwise.
+     */
+    private NSOFObject putSlot(NSOFSymbol name, NSOFObject value) {
+        int index = map.indexOf(name);
+        if (index >= 0) {
+            NSOFObject old = values[index];
+            if (old != value) {
+                own(index + 1);
+                values[index] = value;
+            }
+            return old;
+        }
+        index = map.size();
+        own(index + 1);
+        map = map.add(name);
+        values[index] = value;
+        return null;
+    }
+
     /**
      * Associates the specified slot value with the specified symbol.
      *
@@ -168,7 +240,7 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @see #put(NSOFSymbol, NSOFObject)
      */
     public void put(String slotName, NSOFObject value) {
-        put(new NSOFSymbol(slotName), value);
+        put(NSOFSymbol.valueOf(slotName), value);
     }
 
     /**
@@ -178,8 +250,8 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return the slot value - {@code NIL} otherwise.
      */
     public NSOFObject get(NSOFSymbol slotName) {
-        NSOFObject value = slots.get(slotName);
-        return (value == null) ? NSOFNil.NIL : value;
+        int index = map.indexOf(slotName);
+        return (index < 0) ? NSOFNil.NIL : values[index];
     }
 
     /**
@@ -190,7 +262,7 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @see #get(NSOFSymbol)
      */
     public NSOFObject get(String slotName) {
-        return get(new NSOFSymbol(slotName));
+        return get(NSOFSymbol.valueOf(slotName));
     }
 
     /**
@@ -204,9 +276,33 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return the slot value - {@code NIL} otherwise.
      */
     public NSOFObject get(int pos) {
-        List<NSOFSymbol> names = new ArrayList<NSOFSymbol>(slots.keySet());
-        NSOFSymbol key = names.get(pos);
-        return get(key);
+        return getSlotValue(pos);
+    }
+
+    /**
+     * Get the slot name at the specified index.
+     *
+     * @param pos an index into the frame.
+     * @return the slot name.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public NSOFSymbol getSlotName(int pos) {
+        if ((pos < 0) || (pos >= map.size()))
+            throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + map.size());
+        return map.get(pos);
+    }
+
+    /**
+     * Get the slot value at the specified index.
+     *
+     * @param pos an index into the frame.
+     * @return the slot value.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public NSOFObject getSlotValue(int pos) {
+        if ((pos < 0) || (pos >= map.size()))
+            throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + map.size());
+        return values[pos];
     }
 
     /**
@@ -216,8 +312,16 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return the removed slot value - {@code NIL} otherwise.
      */
     public NSOFObject remove(NSOFSymbol slotName) {
-        NSOFObject value = slots.remove(slotName);
-        return (value == null) ? NSOFNil.NIL : value;
+        final int index = map.indexOf(slotName);
+        if (index < 0)
+            return NSOFNil.NIL;
+        final int size = map.size();
+        NSOFObject value = values[index];
+        own(size);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        values[size - 1] = null;
+        map = map.remove(index);
+        return value;
     }
 
     @Override
@@ -226,12 +330,12 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
         sb.append('{');
 
         NSOFObject value;
-        int i = 0;
-        for (NSOFSymbol key : slots.keySet()) {
+        final int count = map.size();
+        for (int i = 0; i < count; i++) {
             if (i > 0)
                 sb.append(", ");
-            value = slots.get(key);
-            sb.append(key.getValue());
+            value = values[i];
+            sb.append(map.get(i).getValue());
             sb.append('=');
             if (value instanceof NSOFArray) {
                 int size = ((NSOFArray) value).length();
@@ -243,7 +347,6 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
                     sb.append("[" + size + " Elements]");
             } else
                 sb.append(value.toString());
-            i++;
         }
         sb.append('}');
 
@@ -256,16 +359,17 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return the size.
      */
     public int size() {
-        return slots.size();
+        return map.size();
     }
 
     /**
-     * Get the set of slot names for traversal.
+     * Get the set of slot names for traversal.<br>
+     * The set is not changed when slots are later added or removed.
      *
      * @return the names.
      */
     public Set<NSOFSymbol> getNames() {
-        return slots.keySet();
+        return map.keySet();
     }
 
     /**
@@ -275,7 +379,7 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @return true if slot found.
      */
     public boolean hasSlot(NSOFSymbol slotName) {
-        return slots.containsKey(slotName);
+        return map.indexOf(slotName) >= 0;
     }
 
     /**
@@ -286,42 +390,78 @@ public class NSOFFrame extends NSOFPointer implements NSOFCollection {
      * @see #hasSlot(NSOFSymbol)
      */
     public boolean hasSlot(String slotName) {
-        return hasSlot(new NSOFSymbol(slotName));
+        return hasSlot(NSOFSymbol.valueOf(slotName));
     }
 
     @Override
     public Object clone() throws CloneNotSupportedException {
+        return snapshot();
+    }
+
+    /**
+     * Get a copy of the frame, in constant time.<br>
+     * The copy shares the slots until either frame is changed.
+     *
+     * @return the copy.
+     */
+    public NSOFFrame snapshot() {
         NSOFFrame copy = new NSOFFrame();
-        copy.slots.putAll(this.slots);
+        copy.share(this);
         return copy;
     }
 
+    /**
+     * Share the slots of another frame.
+     *
+     * @param frame the source frame.
+     */
+    private void share(NSOFFrame frame) {
+        this.map = frame.map;
+        this.values = frame.values;
+        this.shared = true;
+        frame.shared = true;
+        super.setObjectClass(frame.getObjectClass());
+    }
+
     @Override
     public NSOFObject deepClone() throws CloneNotSupportedException {
         NSOFFrame copy = new NSOFFrame();
-        for (NSOFSymbol name : this.slots.keySet()) {
-            copy.slots.put(name, this.slots.get(name).deepClone());
+        final int size = map.size();
+        copy.map = this.map;
+        copy.values = new NSOFObject[size];
+        for (int i = 0; i < size; i++) {
+            copy.values[i] = this.values[i].deepClone();
         }
         return copy;
     }
 
     /**
-     * Add all the slots.
+     * Add all the slots.<br>
+     * An empty frame shares the slots of the source frame until either frame
+     * is changed.
      *
      * @param frame the source frame.
      */
     public void putAll(NSOFFrame frame) {
-        for (NSOFSymbol key : frame.getKeys())
-            put(key, frame.get(key));
+        if ((this.map == FrameMap.EMPTY) && (frame != this)) {
+            share(frame);
+            return;
+        }
+        final FrameMap map = frame.map;
+        final NSOFObject[] values = frame.values;
+        final int size = map.size();
+        for (int i = 0; i < size; i++)
+            put(map.get(i), values[i]);
     }
 
     /**
-     * Get the slots keys.
+     * Get the slots keys.<br>
+     * The set is not changed when slots are later added or removed.
      *
      * @return the set of keys.
      */
     public Set<NSOFSymbol> getKeys() {
-        return slots.keySet();
+        return map.keySet();
     }
 
     @Override
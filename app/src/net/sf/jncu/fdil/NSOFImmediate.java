@@ -16,7 +16,6 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -80,8 +79,7 @@ public class NSOFImmediate extends NSOFObject {
     }
 
     /**
-     * Constructs a new immediate. The value must be set later in
-     * {@link #inflate(InputStream, NSOFDecoder)}
+     * Constructs a new immediate. The value must be set later.
      *
      * @param type the type.
      */
@@ -91,16 +89,25 @@ public class NSOFImmediate extends NSOFObject {
         setType(type);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Already decoded.
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_IMMEDIATE);
 
         // Immediate Ref (xlong)
+        XLong.encode(toRef(), out);
+    }
+
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return 1 + XLong.getEncodedSize(toRef());
+    }
+
+    /**
+     * Get the immediate reference.
+     *
+     * @return the reference.
+     */
+    private int toRef() {
         int val = getValue();
         int ref = val;
         switch (type) {
@@ -123,7 +130,7 @@ public class NSOFImmediate extends NSOFObject {
                 ref = (val << 2) | 0x2;
                 break;
         }
-        XLong.encode(ref, out);
+        return ref;
     }
 
     /**
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Newton Streamed Object Format - input.<br>
+ * Unsynchronized buffered input with bulk primitives for decoding NSOF.
+ * <p>
+ * The input only reads ahead of the decoded bytes when the underlying stream
+ * supports {@link InputStream#mark(int)}, and {@link #release()} gives back
+ * the unread bytes, so that the underlying stream can continue to be read
+ * after the decoded object.
+ *
+ * @author moshew
+ */
+public class NSOFInput extends InputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Read ahead a little at first, since most objects are small.
+     */
+    private static final int FILL_INITIAL = 256;
+
+    private InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    /**
+     * Read ahead of the decoded bytes?
+     */
+    private boolean readAhead;
+    /**
+     * Number of bytes to read ahead next time.
+     */
+    private int fillSize = FILL_INITIAL;
+    private final byte[] own = new byte[BUFFER_SIZE];
+
+    /**
+     * Creates a new input.
+     */
+    public NSOFInput() {
+        super();
+        this.buf = own;
+    }
+
+    /**
+     * Creates a new input.
+     *
+     * @param in the underlying input.
+     */
+    public NSOFInput(InputStream in) {
+        this();
+        this.in = in;
+        this.readAhead = (in != null) && in.markSupported();
+    }
+
+    /**
+     * Creates a new input.
+     *
+     * @param b the bytes to read.
+     */
+    public NSOFInput(byte[] b) {
+        this();
+        setInput(b, 0, b.length);
+    }
+
+    /**
+     * Continue reading from another input.<br>
+     * Bytes that were read ahead of the previous input are discarded - call
+     * {@link #release()} first to give them back.
+     *
+     * @param in the underlying input.
+     */
+    public void setInput(InputStream in) {
+        this.buf = own;
+        this.pos = 0;
+        this.limit = 0;
+        this.in = in;
+        this.readAhead = (in != null) && in.markSupported();
+        this.fillSize = FILL_INITIAL;
+    }
+
+    /**
+     * Continue reading from the bytes, without copying them.
+     *
+     * @param b   the bytes to read.
+     * @param off the offset.
+     * @param len the number of bytes.
+     */
+    public void setInput(byte[] b, int off, int len) {
+        this.in = null;
+        this.readAhead = false;
+        this.buf = b;
+        this.pos = off;
+        this.limit = off + len;
+    }
+
+    /**
+     * Give back the bytes that were read ahead to the underlying input, and
+     * detach from it.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void release() throws IOException {
+        if (readAhead && (pos < limit)) {
+            // Return to the mark, and skip the bytes that were decoded.
+            in.reset();
+            long n = pos;
+            long count;
+            while (n > 0) {
+                count = in.skip(n);
+                if (count <= 0)
+                    throw new EOFException();
+                n -= count;
+            }
+        }
+        this.in = null;
+        this.readAhead = false;
+        this.buf = own;
+        this.pos = 0;
+        this.limit = 0;
+        this.fillSize = FILL_INITIAL;
+    }
+
+    /**
+     * Read ahead from the underlying input.
+     *
+     * @return {@code false} if no more bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean fill() throws IOException {
+        if (!readAhead)
+            return false;
+        final int size = fillSize;
+        if (size < buf.length)
+            fillSize = size << 1;
+        in.mark(size);
+        int count = in.read(buf, 0, size);
+        pos = 0;
+        limit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos < limit)
+            return buf[pos++] & 0xFF;
+        if (in == null)
+            return -1;
+        if (!readAhead)
+            return in.read();
+        return fill() ? (buf[pos++] & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        int n = limit - pos;
+        if (n <= 0) {
+            if (in == null)
+                return -1;
+            if (!readAhead || (len >= buf.length))
+                return in.read(b, off, len);
+            if (!fill())
+                return -1;
+            n = limit - pos;
+        }
+        n = Math.min(n, len);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+        int available = limit - pos;
+        if (available > 0) {
+            int count = (int) Math.min(available, n);
+            pos += count;
+            return count;
+        }
+        return (in == null) ? 0 : in.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        int available = limit - pos;
+        if (in != null)
+            available += in.available();
+        return available;
+    }
+
+    /**
+     * Read a byte.
+     *
+     * @return the unsigned byte.
+     * @throws IOException if an I/O error occurs.
+     */
+    public int readByte() throws IOException {
+        int b = read();
+        if (b == -1)
+            throw new EOFException();
+        return b;
+    }
+
+    /**
+     * Read 4 bytes as an integer in network byte order (Big Endian).
+     *
+     * @return the number.
+     * @throws IOException if an I/O error occurs.
+     */
+    public int readInt() throws IOException {
+        if (limit - pos >= 4) {
+            final byte[] buf = this.buf;
+            int pos = this.pos;
+            int n = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+            this.pos = pos + 4;
+            return n;
+        }
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    /**
+     * Read an <tt>XLong</tt>.
+     *
+     * @return the xlong value.
+     * @throws IOException if an I/O error occurs.
+     * @see XLong
+     */
+    public int readXLong() throws IOException {
+        // 0 <= value <= 254: unsigned byte
+        // else: byte 0xFF followed by signed long
+        int l = readByte();
+        if (l >= 0xFF) {
+            l = readInt();
+        }
+        return l;
+    }
+
+    /**
+     * Read all the bytes.
+     *
+     * @param b the destination buffer.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void readAll(byte[] b) throws IOException {
+        readAll(b, 0, b.length);
+    }
+
+    /**
+     * Read all the bytes.
+     *
+     * @param b   the destination buffer.
+     * @param off the offset.
+     * @param len the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void readAll(byte[] b, int off, int len) throws IOException {
+        int count;
+        while (len > 0) {
+            count = read(b, off, len);
+            if (count == -1)
+                throw new EOFException();
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Read characters as UTF-16 in network byte order (Big Endian), and trim
+     * the trailing null characters.
+     *
+     * @param numBytes the number of bytes.
+     * @return the string.
+     * @throws IOException if an I/O error occurs.
+     */
+    public String readUTF16BE(int numBytes) throws IOException {
+        if (numBytes == 0)
+            return "";
+        final char[] chars = new char[numBytes >> 1];
+        final int length = chars.length;
+        int i = 0;
+        int n;
+        while (i < length) {
+            if (limit - pos < 2) {
+                chars[i++] = (char) ((readByte() << 8) | readByte());
+                continue;
+            }
+            n = Math.min(length - i, (limit - pos) >> 1);
+            final byte[] buf = this.buf;
+            int pos = this.pos;
+            for (int j = 0; j < n; j++, pos += 2) {
+                chars[i++] = (char) (((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF));
+            }
+            this.pos = pos;
+        }
+        if ((numBytes & 1) != 0)
+            readByte();
+        // Trim?
+        n = length;
+        while ((n > 0) && (chars[n - 1] == 0))
+            n--;
+        return new String(chars, 0, n);
+    }
+}
@@ -16,17 +16,24 @@
 package net.sf.jncu.fdil;
 
 import net.sf.jncu.dil.InvalidParameterException;
+import net.sf.jncu.fdil.zip.Compander;
 import net.sf.jncu.fdil.zip.CompanderFactory;
+import net.sf.jncu.fdil.zip.Compressor;
+import net.sf.jncu.fdil.zip.Decompressor;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.sql.Blob;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import javax.sql.rowset.serial.SerialBlob;
-import javax.sql.rowset.serial.SerialException;
 
 /**
  * Newton Streamed Object Format - Large Binary Object.<br>
@@ -38,6 +45,10 @@ import javax.sql.rowset.serial.SerialException;
  * <p>
  * A compandor/compander (compressor-expander) is an object that transparently
  * compresses data as it is stored and expands data as it is read.
+ * <p>
+ * The data is kept in pages by a {@link FDLargeBinaryProcs store}, by default
+ * one that spills large binaries to disk, and is read and written a page at a
+ * time.
  *
  * @author Moshe
  */
@@ -50,6 +61,14 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
 
     public static final String COMPANDER_LZ = CompanderFactory.COMPANDER_LZ_STORE;
     public static final String COMPANDER_PIXELMAP = CompanderFactory.COMPANDER_PIXELMAP;
+    public static final String COMPANDER_UNICODE = CompanderFactory.COMPANDER_UNICODE;
+    public static final String COMPANDER_JNCU_LZ = CompanderFactory.COMPANDER_JNCU_LZ;
+    public static final String COMPANDER_JNCU_PIXELMAP = CompanderFactory.COMPANDER_JNCU_PIXELMAP;
+
+    /**
+     * Size of a page of data.
+     */
+    public static final int PAGE_SIZE = 4096;
 
     /**
      * Data is not compressed.
@@ -81,7 +100,22 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
      */
     private byte[] companderArgs;
 
-    private Blob blob;
+    private static FDLargeBinaryProcs defaultProcs = new FDSpillStoreProcs();
+
+    private FDLargeBinaryProcs procs;
+    private Object cookie;
+    private int length;
+    /**
+     * The current page.
+     */
+    private byte[] page;
+    private int pageNum = -1;
+    private boolean pageDirty;
+    /**
+     * The compressed copy that was measured for encoding, kept until it is
+     * encoded or the data changes.
+     */
+    private NSOFLargeBinary packed;
 
     /**
      * Constructs a new large binary object.<br>
@@ -90,68 +124,29 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
     public NSOFLargeBinary() {
         super();
         setObjectClass(CLASS_LARGE_BINARY);
-    }
-
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Class (object)
-        NSOFSymbol symbol = (NSOFSymbol) decoder.inflate(in);
-        setObjectClass(symbol);
-        // compressed? (non-zero means compressed) (byte)
-        int compressed = in.read();
-        if (compressed == -1) {
-            throw new EOFException();
-        }
-        setCompressed(compressed != UNCOMPRESSED);
-        // Number of bytes of data (long)
-        int numBytesData = ntohl(in);
-        // Number of characters in compander name (long)
-        int numBytesCompanderName = ntohl(in);
-        // Number of bytes of compander parameters (long)
-        int numBytesCompanderArgs = ntohl(in);
-        // Reserved (encode zero, ignore when decoding) (long)
-        ntohl(in);
-        // Compander name (bytes)
-        if (numBytesCompanderName == 0) {
-            setCompanderName(null);
-        } else {
-            byte[] companderName = new byte[numBytesCompanderName];
-            readAll(in, companderName);
-            setCompanderName(new String(companderName));
-        }
-        // Compander parameters (bytes)
-        if (numBytesCompanderArgs == 0) {
-            setCompanderArguments(null);
-        } else {
-            byte[] companderArgs = new byte[numBytesCompanderArgs];
-            readAll(in, companderArgs);
-            setCompanderArguments(companderArgs);
-        }
-        // Data (bytes)
-        if (numBytesData == 0) {
-            setValue((Blob) null);
-        } else {
-            byte[] data = new byte[numBytesData];
-            readAll(in, data);
-            setValue(data);
-        }
+        this.procs = defaultProcs;
     }
 
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
+        if (isCompressible(encoder)) {
+            NSOFLargeBinary packed = getPacked(encoder.getCompanderName());
+            this.packed = null;
+            try {
+                // Send the smaller of the two.
+                if (packed.getLength() < getLength()) {
+                    packed.flatten(out, encoder);
+                    return;
+                }
+            } finally {
+                packed.dispose();
+            }
+        }
         out.write(NSOF_LARGE_BINARY);
         String companderName = getCompanderName();
         byte[] companderNameBytes = (companderName == null) ? null : companderName.getBytes();
         byte[] args = getCompanderArguments();
-        Blob data = getBlob();
-        int numBytesData = 0;
-        if (data != null) {
-            try {
-                numBytesData = (int) data.length();
-            } catch (SQLException se) {
-                throw new IOException(se);
-            }
-        }
+        int numBytesData = getLength();
         // Class (object)
         encoder.flatten(getObjectClass(), out);
         // compressed? (non-zero means compressed) (byte)
@@ -173,16 +168,123 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
             out.write(args);
         }
         // Data (bytes)
-        if (data != null) {
-            InputStream in;
-            try {
-                in = data.getBinaryStream();
-            } catch (SQLException se) {
-                throw new IOException(se);
+        for (int offset = 0, p = 0; offset < numBytesData; offset += PAGE_SIZE, p++) {
+            loadPage(p);
+            out.write(page, 0, Math.min(PAGE_SIZE, numBytesData - offset));
+        }
+    }
+
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        String companderName = getCompanderName();
+        byte[] args = getCompanderArguments();
+        int numBytesData = getLength();
+        if (isCompressible(encoder)) {
+            NSOFLargeBinary packed = getPacked(encoder.getCompanderName());
+            if (packed.getLength() < numBytesData) {
+                companderName = packed.getCompanderName();
+                numBytesData = packed.getLength();
             }
-            for (int i = 0; i < numBytesData; i++)
-                out.write(in.read());
         }
+        int size = 1 + encoder.getFlattenedSize(getObjectClass()) + 1 + 16;
+        if (companderName != null)
+            size += companderName.getBytes().length;
+        if (args != null)
+            size += args.length;
+        size += numBytesData;
+        return size;
+    }
+
+    /**
+     * Should the data be compressed while encoding?<br>
+     * The data is still sent uncompressed if it does not shrink.
+     *
+     * @param encoder the encoder.
+     * @return {@code true} to compress.
+     */
+    private boolean isCompressible(NSOFEncoder encoder) {
+        return (encoder.getCompanderName() != null) && !isCompressed() && (getLength() > 0);
+    }
+
+    /**
+     * Get the compressed copy to encode, compressing the data only once for
+     * both measuring and encoding.
+     *
+     * @param companderName the compander name.
+     * @return the compressed copy.
+     * @throws IOException if an I/O error occurs.
+     */
+    private NSOFLargeBinary getPacked(String companderName) throws IOException {
+        NSOFLargeBinary packed = this.packed;
+        if ((packed == null) || !companderName.equals(packed.getCompanderName())) {
+            releasePacked();
+            packed = compress(companderName);
+            this.packed = packed;
+        }
+        return packed;
+    }
+
+    /**
+     * Release the compressed copy, when the data changes.
+     */
+    private void releasePacked() {
+        if (packed != null) {
+            packed.dispose();
+            packed = null;
+        }
+    }
+
+    /**
+     * Creates a compressor.
+     *
+     * @param companderName the compander name.
+     * @return the compressor.
+     * @throws UnsupportedCompressionException if the compander cannot compress.
+     */
+    private static Compressor createCompressor(String companderName) throws UnsupportedCompressionException {
+        Compander compander = CompanderFactory.getInstance().createCompander(companderName);
+        Compressor compressor = (compander == null) ? null : compander.createCompressor();
+        if (compressor == null)
+            throw new UnsupportedCompressionException(companderName);
+        return compressor;
+    }
+
+    /**
+     * Compress the data, a page at a time.
+     *
+     * @param compressor the compressor.
+     * @param out        the output for the compressed data.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void compress(Compressor compressor, OutputStream out) throws IOException {
+        compressor.setLength(length);
+        OutputStream deflater = compressor.compress(out);
+        for (int offset = 0, p = 0; offset < length; offset += PAGE_SIZE, p++) {
+            loadPage(p);
+            deflater.write(page, 0, Math.min(PAGE_SIZE, length - offset));
+        }
+        deflater.close();
+    }
+
+    /**
+     * Creates a compressed copy of the data.
+     *
+     * @param companderName the compander name, e.g. {@link #COMPANDER_JNCU_LZ}.
+     * @return the compressed binary.
+     * @throws IOException if an I/O error occurs.
+     */
+    public NSOFLargeBinary compress(String companderName) throws IOException {
+        if (isCompressed())
+            throw new IllegalStateException("already compressed");
+        Compressor compressor = createCompressor(companderName);
+        NSOFLargeBinary packed = new NSOFLargeBinary();
+        packed.setObjectClass(getObjectClass());
+        packed.setCompressed(true);
+        packed.setCompanderName(companderName);
+        packed.setCompanderArguments(getCompanderArguments());
+        packed.setLargeBinaryProcs(getLargeBinaryProcs());
+        compress(compressor, packed.getOutputStream());
+        return packed;
     }
 
     /**
@@ -240,21 +342,450 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
     }
 
     /**
-     * Get the BLOB value.
+     * Get the default store for new large binaries.
+     *
+     * @return the store procedures.
+     */
+    public static FDLargeBinaryProcs getDefaultProcs() {
+        return defaultProcs;
+    }
+
+    /**
+     * Set the default store for new large binaries.
+     *
+     * @param procs the store procedures.
+     */
+    public static void setDefaultProcs(FDLargeBinaryProcs procs) {
+        if (procs == null)
+            throw new IllegalArgumentException("non-null procs required");
+        defaultProcs = procs;
+    }
+
+    /**
+     * Get the store.
+     *
+     * @return the store procedures.
+     */
+    public FDLargeBinaryProcs getLargeBinaryProcs() {
+        return procs;
+    }
+
+    /**
+     * Set the store, and move any data to it.
+     *
+     * @param procs the store procedures.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void setLargeBinaryProcs(FDLargeBinaryProcs procs) throws IOException {
+        if (procs == null)
+            throw new IllegalArgumentException("non-null procs required");
+        if (procs == this.procs)
+            return;
+        if (cookie == null) {
+            this.procs = procs;
+            return;
+        }
+        NSOFLargeBinary copy = new NSOFLargeBinary();
+        copy.procs = procs;
+        copyTo(copy);
+        dispose();
+        this.procs = procs;
+        this.cookie = copy.cookie;
+        this.length = copy.length;
+    }
+
+    /**
+     * Get the store cookie, creating the store if necessary.
+     *
+     * @return the cookie.
+     * @throws CreatingStoreException if the store cannot be created.
+     */
+    private Object getCookie() throws CreatingStoreException {
+        if (cookie == null)
+            cookie = procs.create();
+        return cookie;
+    }
+
+    /**
+     * Load the page into the page buffer.
+     *
+     * @param pageNum the page number.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void loadPage(int pageNum) throws IOException {
+        if (pageNum == this.pageNum)
+            return;
+        flushPage();
+        if (page == null)
+            page = new byte[PAGE_SIZE];
+        int count = procs.readPage(getCookie(), pageNum, page);
+        Arrays.fill(page, count, PAGE_SIZE, (byte) 0);
+        this.pageNum = pageNum;
+    }
+
+    /**
+     * Write the page buffer to the store, if modified.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void flushPage() throws IOException {
+        if (pageDirty) {
+            int offset = pageNum * PAGE_SIZE;
+            procs.writePage(getCookie(), pageNum, page, Math.min(PAGE_SIZE, length - offset));
+            pageDirty = false;
+        }
+    }
+
+    /**
+     * Get the number of bytes of data.
+     *
+     * @return the length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Set the number of bytes of data. New bytes are zero.
+     *
+     * @param length the length.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void setLength(int length) throws IOException {
+        if (length < 0)
+            throw new IllegalArgumentException("negative length");
+        if (length == this.length)
+            return;
+        releasePacked();
+        if (length < this.length) {
+            int tail = length % PAGE_SIZE;
+            if (tail > 0) {
+                // Clear the end of the last page.
+                loadPage(length / PAGE_SIZE);
+                Arrays.fill(page, tail, PAGE_SIZE, (byte) 0);
+                pageDirty = true;
+            }
+        }
+        int numPages = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (pageNum >= numPages) {
+            pageNum = -1;
+            pageDirty = false;
+        }
+        this.length = length;
+        flushPage();
+        if ((numPages > 0) || (cookie != null))
+            procs.setNumPages(getCookie(), numPages);
+    }
+
+    /**
+     * Read bytes of data.
+     *
+     * @param offset the offset within the data.
+     * @param b      the destination buffer.
+     * @param off    the offset within the buffer.
+     * @param len    the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void read(int offset, byte[] b, int off, int len) throws IOException {
+        if ((offset < 0) || (len < 0) || (offset + len > length))
+            throw new EOFException();
+        int p = offset / PAGE_SIZE;
+        int pageOffset = offset % PAGE_SIZE;
+        int count;
+        while (len > 0) {
+            loadPage(p++);
+            count = Math.min(len, PAGE_SIZE - pageOffset);
+            System.arraycopy(page, pageOffset, b, off, count);
+            pageOffset = 0;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Write bytes of data, growing the data if necessary.
+     *
+     * @param offset the offset within the data.
+     * @param b      the source buffer.
+     * @param off    the offset within the buffer.
+     * @param len    the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(int offset, byte[] b, int off, int len) throws IOException {
+        if ((offset < 0) || (len < 0))
+            throw new IllegalArgumentException("negative offset or length");
+        releasePacked();
+        if (offset + len > length)
+            setLength(offset + len);
+        int p = offset / PAGE_SIZE;
+        int pageOffset = offset % PAGE_SIZE;
+        int count;
+        while (len > 0) {
+            count = Math.min(len, PAGE_SIZE - pageOffset);
+            if (count == PAGE_SIZE) {
+                // Overwrite the whole page.
+                flushPage();
+                if (page == null)
+                    page = new byte[PAGE_SIZE];
+                pageNum = p;
+            } else {
+                loadPage(p);
+            }
+            System.arraycopy(b, off, page, pageOffset, count);
+            pageDirty = true;
+            pageOffset = 0;
+            off += count;
+            len -= count;
+            p++;
+        }
+    }
+
+    /**
+     * Get a stream of the data, read a page at a time.
+     *
+     * @return the input.
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            private int offset;
+
+            @Override
+            public int read() throws IOException {
+                if (offset >= length)
+                    return -1;
+                loadPage(offset / PAGE_SIZE);
+                return page[offset++ % PAGE_SIZE] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (offset >= length)
+                    return -1;
+                len = Math.min(len, Math.min(length - offset, PAGE_SIZE - (offset % PAGE_SIZE)));
+                NSOFLargeBinary.this.read(offset, b, off, len);
+                offset += len;
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return Math.max(0, length - offset);
+            }
+        };
+    }
+
+    /**
+     * Get a stream that appends to the data, a page at a time.
+     *
+     * @return the output.
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            private final byte[] one = new byte[1];
+
+            @Override
+            public void write(int b) throws IOException {
+                one[0] = (byte) b;
+                write(one, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                NSOFLargeBinary.this.write(length, b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Get a stream of the data, expanded by the compander if compressed.
+     *
+     * @return the input.
+     * @throws IOException if the data cannot be expanded.
+     */
+    public InputStream getExpandedInputStream() throws IOException {
+        if (!isCompressed())
+            return getInputStream();
+        Compander compander = CompanderFactory.getInstance().createCompander(this);
+        Decompressor decompressor = (compander == null) ? null : compander.createDecompressor();
+        if (decompressor == null)
+            throw new UnsupportedCompressionException(getCompanderName());
+        return decompressor.decompress(this);
+    }
+
+    /**
+     * Get a reader of the text, expanded by the compander if compressed.<br>
+     * The data is UTF-16 characters in network byte order (Big Endian), like
+     * {@link NSOFString}, including any trailing <tt>null</tt> characters.
+     *
+     * @return the reader.
+     * @throws IOException if the data cannot be expanded.
+     */
+    public Reader getReader() throws IOException {
+        return new InputStreamReader(getExpandedInputStream(), StandardCharsets.UTF_16BE);
+    }
+
+    /**
+     * Get the text, expanded by the compander if compressed.
+     *
+     * @return the text, without the trailing <tt>null</tt> characters.
+     * @throws IOException if the data cannot be expanded.
+     * @see #getReader()
+     */
+    public String getText() throws IOException {
+        InputStream in = getExpandedInputStream();
+        byte[] b = new byte[Math.max(length, 2)];
+        int numBytes = 0;
+        int count;
+        try {
+            while ((count = in.read(b, numBytes, b.length - numBytes)) != -1) {
+                numBytes += count;
+                if (numBytes == b.length)
+                    b = Arrays.copyOf(b, b.length << 1);
+            }
+        } finally {
+            in.close();
+        }
+        return NSOFString.decode(b, numBytes);
+    }
+
+    /**
+     * Set the text, as uncompressed null-terminated UTF-16 characters.
+     *
+     * @param text the text.
+     */
+    public void setText(String text) {
+        final int numChars = text.length();
+        byte[] b = new byte[(numChars + 1) << 1];
+        char c;
+        for (int i = 0, j = 0; i < numChars; i++) {
+            c = text.charAt(i);
+            b[j++] = (byte) (c >> 8);
+            b[j++] = (byte) c;
+        }
+        setCompressed(false);
+        setCompanderName(null);
+        setValue(b);
+    }
+
+    /**
+     * Set the value, read a page at a time.
+     *
+     * @param in     the input.
+     * @param length the number of bytes to read.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void setValue(InputStream in, int length) throws IOException {
+        setLength(0);
+        setLength(length);
+        int count;
+        if (page == null)
+            page = new byte[PAGE_SIZE];
+        for (int offset = 0, p = 0; offset < length; offset += count, p++) {
+            count = Math.min(PAGE_SIZE, length - offset);
+            flushPage();
+            pageNum = p;
+            readAll(in, page, count);
+            Arrays.fill(page, count, PAGE_SIZE, (byte) 0);
+            pageDirty = true;
+        }
+        flushPage();
+    }
+
+    /**
+     * Read into the whole array.
+     *
+     * @param in  the input.
+     * @param b   the destination buffer.
+     * @param len the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void readAll(InputStream in, byte[] b, int len) throws IOException {
+        int count;
+        int off = 0;
+        while (off < len) {
+            count = in.read(b, off, len - off);
+            if (count == -1)
+                throw new EOFException();
+            off += count;
+        }
+    }
+
+    /**
+     * Release the store.
+     */
+    public void dispose() {
+        releasePacked();
+        if (cookie != null) {
+            procs.destroy(cookie);
+            cookie = null;
+        }
+        length = 0;
+        pageNum = -1;
+        pageDirty = false;
+    }
+
+    /**
+     * Copy the data to another large binary.
+     *
+     * @param copy the other large binary.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void copyTo(NSOFLargeBinary copy) throws IOException {
+        copy.setLength(length);
+        for (int offset = 0, p = 0; offset < length; offset += PAGE_SIZE, p++) {
+            loadPage(p);
+            copy.write(offset, page, 0, Math.min(PAGE_SIZE, length - offset));
+        }
+        copy.flushPage();
+    }
+
+    /**
+     * Get the value.<br>
+     * The whole value is read into memory.
+     *
+     * @return the value.
+     * @throws UncheckedIOException if the store cannot be read.
+     */
+    @Override
+    public byte[] getValue() {
+        byte[] value = new byte[length];
+        try {
+            read(0, value, 0, length);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return value;
+    }
+
+    @Override
+    public void setValue(byte[] value) {
+        if (value == null)
+            throw new IllegalArgumentException("non-null value required");
+        if ((procs == null) && (value.length == 0))
+            // Called by the super constructor.
+            return;
+        try {
+            setLength(0);
+            write(0, value, 0, value.length);
+            flushPage();
+        } catch (IOException ioe) {
+            throw new InvalidParameterException(ioe);
+        }
+    }
+
+    /**
+     * Get the BLOB value.<br>
+     * The whole value is read into memory.
      *
      * @return the BLOB.
      */
     public Blob getBlob() {
-        if (blob == null) {
-            try {
-                this.blob = new SerialBlob(getValue());
-            } catch (SerialException se) {
-                se.printStackTrace();
-            } catch (SQLException se) {
-                se.printStackTrace();
-            }
+        try {
+            return new SerialBlob(getValue());
+        } catch (SQLException se) {
+            se.printStackTrace();
         }
-        return blob;
+        return null;
     }
 
     /**
@@ -263,20 +794,23 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
      * @param value the BLOB.
      */
     public void setBlob(Blob value) {
-        this.blob = value;
-        byte[] buf;
         try {
-            buf = value.getBytes(1, (int) value.length());
+            if (value == null) {
+                setLength(0);
+            } else {
+                setValue(value.getBinaryStream(), (int) value.length());
+            }
         } catch (SQLException se) {
             throw new InvalidParameterException(se);
+        } catch (IOException ioe) {
+            throw new InvalidParameterException(ioe);
         }
-        setValue(buf);
     }
 
     /**
      * Set the value.
      *
-     * @param value the value.
+     * @param value the BLOB.
      */
     public void setValue(Blob value) {
         setBlob(value);
@@ -286,7 +820,12 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
     public Object clone() throws CloneNotSupportedException {
         NSOFLargeBinary copy = new NSOFLargeBinary();
         copy.setObjectClass(this.getObjectClass());
-        copy.setValue(this.getValue());
+        copy.procs = this.procs;
+        try {
+            copyTo(copy);
+        } catch (IOException ioe) {
+            throw new CloneNotSupportedException(ioe.getMessage());
+        }
         copy.companderArgs = this.companderArgs;
         copy.companderName = this.companderName;
         copy.compressed = this.compressed;
@@ -295,17 +834,10 @@ public class NSOFLargeBinary extends NSOFBinaryObject {
 
     @Override
     public NSOFObject deepClone() throws CloneNotSupportedException {
-        NSOFLargeBinary copy = new NSOFLargeBinary();
-        copy.setObjectClass(this.getObjectClass());
-        byte[] value = this.getValue();
-        if (value != null) {
-            byte[] value2 = new byte[value.length];
-            System.arraycopy(value, 0, value2, 0, value.length);
-            copy.setValue(value2);
-        }
-        copy.companderArgs = this.companderArgs;
-        copy.companderName = this.companderName;
-        copy.compressed = this.compressed;
+        NSOFLargeBinary copy = (NSOFLargeBinary) clone();
+        byte[] args = this.companderArgs;
+        if (args != null)
+            copy.companderArgs = Arrays.copyOf(args, args.length);
         return copy;
     }
 }
@@ -53,6 +53,11 @@ public class NSOFNil extends NSOFImmediate {
         out.write(NSOF_NIL);
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return 1;
+    }
+
     @Override
     public String toString() {
         return "nil";
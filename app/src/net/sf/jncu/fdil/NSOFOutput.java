@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Newton Streamed Object Format - output.<br>
+ * Unsynchronized buffered output with bulk primitives for encoding NSOF.
+ * <p>
+ * Without an underlying stream, the bytes are collected in memory like a
+ * {@link java.io.ByteArrayOutputStream}.
+ *
+ * @author moshew
+ */
+public class NSOFOutput extends OutputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private OutputStream out;
+    private byte[] buf;
+    private int count;
+    private final char[] chars = new char[BUFFER_SIZE >> 1];
+
+    /**
+     * Creates a new output in memory.
+     */
+    public NSOFOutput() {
+        this(null);
+    }
+
+    /**
+     * Creates a new output.
+     *
+     * @param out the underlying output.
+     */
+    public NSOFOutput(OutputStream out) {
+        super();
+        this.out = out;
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Write the buffered bytes to the underlying output, and continue writing
+     * to another output.
+     *
+     * @param out the underlying output - {@code null} to write to memory.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void setOutput(OutputStream out) throws IOException {
+        release();
+        this.out = out;
+    }
+
+    /**
+     * Write the buffered bytes to the underlying output, and detach from it.
+     * The underlying output is not flushed.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void release() throws IOException {
+        if (out != null) {
+            drain();
+            out = null;
+        }
+    }
+
+    /**
+     * Make room for more bytes.
+     *
+     * @param length the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void ensure(int length) throws IOException {
+        if (count + length > buf.length) {
+            if (out == null) {
+                buf = Arrays.copyOf(buf, Math.max(count + length, buf.length << 1));
+            } else {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the underlying output.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void drain() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length)
+            ensure(1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if ((out != null) && (len >= buf.length)) {
+            drain();
+            out.write(b, off, len);
+            return;
+        }
+        ensure(len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Write 4 bytes as an integer in network byte order (Big Endian).
+     *
+     * @param n the number.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeInt(int n) throws IOException {
+        ensure(4);
+        final byte[] buf = this.buf;
+        int count = this.count;
+        buf[count++] = (byte) (n >> 24);
+        buf[count++] = (byte) (n >> 16);
+        buf[count++] = (byte) (n >> 8);
+        buf[count++] = (byte) n;
+        this.count = count;
+    }
+
+    /**
+     * Write an <tt>XLong</tt>.
+     *
+     * @param value the xlong value.
+     * @throws IOException if an I/O error occurs.
+     * @see XLong
+     */
+    public void writeXLong(int value) throws IOException {
+        if ((value >= 0) && (value < 0xFF)) {
+            write(value);
+        } else {
+            ensure(5);
+            buf[count++] = (byte) 0xFF;
+            writeInt(value);
+        }
+    }
+
+    /**
+     * Write the characters as UTF-16 in network byte order (Big Endian),
+     * without a byte order mark.
+     *
+     * @param s the string.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeUTF16BE(String s) throws IOException {
+        final int length = s.length();
+        char[] chars = this.chars;
+        int offset = 0;
+        int n;
+        char c;
+        while (offset < length) {
+            n = Math.min(length - offset, chars.length);
+            s.getChars(offset, offset + n, chars, 0);
+            offset += n;
+            ensure(n << 1);
+            final byte[] buf = this.buf;
+            int count = this.count;
+            for (int i = 0; i < n; i++) {
+                c = chars[i];
+                buf[count++] = (byte) (c >> 8);
+                buf[count++] = (byte) c;
+            }
+            this.count = count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            drain();
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            drain();
+            out.close();
+        }
+    }
+
+    /**
+     * Get the number of bytes in memory.
+     *
+     * @return the size.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get a copy of the bytes in memory.
+     *
+     * @return the bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Discard the bytes in memory, so that the output can be reused.
+     */
+    public void reset() {
+        count = 0;
+    }
+}
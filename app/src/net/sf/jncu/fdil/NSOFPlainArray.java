@@ -16,7 +16,6 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -59,20 +58,6 @@ public class NSOFPlainArray extends NSOFArray {
         setObjectClass(CLASS_PLAIN_ARRAY);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        setValue((NSOFObject[]) null);
-
-        // Number of slots (xlong)
-        int length = XLong.decodeValue(in);
-        NSOFObject[] entries = new NSOFObject[length];
-        // Slot values in ascending order (objects)
-        for (int i = 0; i < length; i++) {
-            entries[i] = decoder.inflate(in);
-        }
-        setValue(entries);
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_PLAIN_ARRAY);
@@ -92,10 +77,26 @@ public class NSOFPlainArray extends NSOFArray {
         }
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        NSOFObject[] slots = getValue();
+        int length = (slots == null) ? 0 : slots.length;
+        int size = 1 + XLong.getEncodedSize(length);
+        for (int i = 0; i < length; i++) {
+            size += encoder.getFlattenedSize(slots[i]);
+        }
+        return size;
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException {
+        return snapshot();
+    }
+
+    @Override
+    public NSOFPlainArray snapshot() {
         NSOFPlainArray copy = new NSOFPlainArray();
-        copy.setValue(this.getValue());
+        copy.share(this);
         return copy;
     }
 
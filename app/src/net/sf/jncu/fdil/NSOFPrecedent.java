@@ -16,7 +16,6 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -78,12 +77,6 @@ public class NSOFPrecedent extends NSOFObject implements Comparable<NSOFPreceden
         this.referent = referent;
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Precedent ID (xlong)
-        setId(XLong.decodeValue(in));
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_PRECEDENT);
@@ -91,6 +84,11 @@ public class NSOFPrecedent extends NSOFObject implements Comparable<NSOFPreceden
         XLong.encode(getId(), out);
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return 1 + XLong.getEncodedSize(getId());
+    }
+
     /**
      * Get the id.
      *
@@ -0,0 +1,770 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Newton Streamed Object Format pull reader.<br>
+ * Reads the stream one event at a time, without building any objects. The
+ * bytes of strings and binaries are only read when asked for, and whole
+ * frames and arrays can be skipped.
+ * <p>
+ * Typical use:
+ * <pre>
+ * NSOFReader reader = new NSOFReader(in);
+ * while (reader.next() != NSOFReader.END_DOCUMENT) {
+ *     if ((reader.getEventType() == NSOFReader.SLOT) &amp;&amp; "name".equals(reader.getSlotName())) {
+ *         reader.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author moshew
+ * @see NSOFDecoder
+ */
+public class NSOFReader {
+
+    /**
+     * Start of a frame.<br>
+     * The frame is followed by a {@link #SLOT} and a value for each slot, and
+     * then {@link #END_FRAME}.
+     */
+    public static final int START_FRAME = 1;
+    /**
+     * The name of the next slot in a frame.
+     */
+    public static final int SLOT = 2;
+    /**
+     * End of a frame.
+     */
+    public static final int END_FRAME = 3;
+    /**
+     * Start of an array or plain array.<br>
+     * The array is followed by its values, and then {@link #END_ARRAY}.
+     */
+    public static final int START_ARRAY = 4;
+    /**
+     * End of an array.
+     */
+    public static final int END_ARRAY = 5;
+    /**
+     * A value that is neither frame nor array.
+     */
+    public static final int VALUE = 6;
+    /**
+     * End of the object.
+     */
+    public static final int END_DOCUMENT = 7;
+
+    /**
+     * An open frame or array.
+     */
+    private static class Context {
+        /**
+         * The data type.
+         */
+        int dataType;
+        /**
+         * Number of values.
+         */
+        int length;
+        /**
+         * Number of values read.
+         */
+        int index;
+        /**
+         * The slot name IDs, for frames. The buffer is kept when the context
+         * is pooled, and reused by the next frame.
+         */
+        int[] tags;
+        /**
+         * Was the slot name of the current value reported?
+         */
+        boolean slot;
+    }
+
+    private NSOFInput in;
+    /**
+     * Buffer for reading raw streams.
+     */
+    private final NSOFInput input = new NSOFInput();
+    /**
+     * Read version header?
+     */
+    private boolean versioned;
+    /**
+     * Was the version read before the first object?
+     */
+    private final boolean versionedInitial;
+    /**
+     * Symbol names, and string slot names, by ID.
+     */
+    private final List<String> names = new ArrayList<String>();
+    /**
+     * {@code 0} is a legal ID.
+     */
+    private int idMax = 0;
+    private final List<Context> stack = new ArrayList<Context>();
+    private final List<Context> pool = new ArrayList<Context>();
+    private boolean started;
+
+    private int eventType;
+    private int dataType;
+    private int id;
+    private int length;
+    private int classId;
+    private int slotId;
+    private int immediate;
+    private final int[] rect = new int[4];
+    private boolean compressed;
+    private String companderName;
+    private byte[] companderArgs;
+    /**
+     * Number of unread data bytes of the current value.
+     */
+    private int pending;
+    private byte[] bytes;
+    private String string;
+
+    /**
+     * Creates a new reader.
+     */
+    public NSOFReader() {
+        this(false);
+    }
+
+    /**
+     * Creates a new reader.
+     *
+     * @param versioned was the version already read?
+     */
+    public NSOFReader(boolean versioned) {
+        super();
+        this.versioned = versioned;
+        this.versionedInitial = versioned;
+    }
+
+    /**
+     * Creates a new reader.
+     *
+     * @param in the input.
+     */
+    public NSOFReader(InputStream in) {
+        this(false);
+        setInput(in);
+    }
+
+    /**
+     * Start reading the next object.<br>
+     * The precedents of previous objects are kept, so that several objects
+     * can be read from the same stream.
+     *
+     * @param in the input.
+     */
+    public void setInput(InputStream in) {
+        if ((in == null) || (in instanceof NSOFInput)) {
+            this.in = (NSOFInput) in;
+            input.setInput((InputStream) null);
+        } else {
+            input.setInput(in);
+            this.in = input;
+        }
+        while (!stack.isEmpty())
+            pop();
+        this.started = false;
+        this.eventType = 0;
+        this.pending = 0;
+        this.bytes = null;
+        this.string = null;
+    }
+
+    /**
+     * Forget all the precedents, so that the reader can be reused for another
+     * stream.
+     */
+    public void reset() {
+        setInput(null);
+        names.clear();
+        idMax = 0;
+        versioned = versionedInitial;
+    }
+
+    /**
+     * Read the next event.
+     *
+     * @return the event type.
+     * @throws IOException                   if a decoding error occurs.
+     * @throws UnknownStreamVersionException if the stream version is unknown.
+     */
+    public int next() throws IOException, UnknownStreamVersionException {
+        if (pending > 0)
+            skipBytes(pending);
+        this.pending = 0;
+        this.bytes = null;
+        this.string = null;
+
+        if (!started) {
+            started = true;
+            if (!versioned) {
+                int version = in.read();
+                if (version == -1)
+                    throw new EOFException();
+                if (version != NewtonStreamedObjectFormat.VERSION)
+                    throw new UnknownStreamVersionException("unknown protocol version: " + version);
+                versioned = true;
+            }
+            return readObject();
+        }
+        if (stack.isEmpty()) {
+            // Give back the bytes after the object.
+            if (in == input)
+                input.release();
+            return eventType = END_DOCUMENT;
+        }
+
+        Context context = stack.get(stack.size() - 1);
+        if (context.index >= context.length) {
+            pop();
+            this.dataType = context.dataType;
+            this.id = -1;
+            return eventType = (context.dataType == NewtonStreamedObjectFormat.NSOF_FRAME) ? END_FRAME : END_ARRAY;
+        }
+        if ((context.dataType == NewtonStreamedObjectFormat.NSOF_FRAME) && !context.slot) {
+            context.slot = true;
+            this.slotId = context.tags[context.index];
+            return eventType = SLOT;
+        }
+        context.slot = false;
+        context.index++;
+        return readObject();
+    }
+
+    /**
+     * Is there another event?
+     *
+     * @return {@code true} if not at the end.
+     */
+    public boolean hasNext() {
+        return eventType != END_DOCUMENT;
+    }
+
+    /**
+     * Skip the current frame or array, or the value of the current slot.<br>
+     * The next event is the one after the skipped value.
+     *
+     * @throws IOException if a decoding error occurs.
+     */
+    public void skip() throws IOException {
+        int depth;
+        switch (eventType) {
+            case SLOT:
+                next();
+                if ((eventType == START_FRAME) || (eventType == START_ARRAY))
+                    skip();
+                break;
+            case START_FRAME:
+            case START_ARRAY:
+                depth = stack.size();
+                while (stack.size() >= depth)
+                    next();
+                break;
+        }
+    }
+
+    /**
+     * Get the current event type.
+     *
+     * @return the event type.
+     */
+    public int getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Get the data type of the current value, frame, or array.
+     *
+     * @return the data type.
+     * @see NewtonStreamedObjectFormat#NSOF_FRAME
+     */
+    public int getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Get the number of nested frames and arrays.
+     *
+     * @return the depth.
+     */
+    public int getDepth() {
+        return stack.size();
+    }
+
+    /**
+     * Get the precedent ID of the current object.
+     *
+     * @return the ID, or {@code -1} if the object cannot be referenced.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the length of the current object - the number of slots of a
+     * frame, values of an array, or bytes of a string or binary.
+     *
+     * @return the length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the name of the current slot.
+     *
+     * @return the name.
+     */
+    public String getSlotName() {
+        return getSymbol(slotId);
+    }
+
+    /**
+     * Get the precedent ID of the name of the current slot.
+     *
+     * @return the ID.
+     */
+    public int getSlotNameId() {
+        return slotId;
+    }
+
+    /**
+     * Get the class of the current array, binary, or large binary.
+     *
+     * @return the class name, or {@code null} if none.
+     */
+    public String getObjectClass() {
+        return (classId < 0) ? null : getSymbol(classId);
+    }
+
+    /**
+     * Get the precedent ID of the class of the current array, binary, or
+     * large binary.
+     *
+     * @return the ID, or {@code -1} if none.
+     */
+    public int getObjectClassId() {
+        return classId;
+    }
+
+    /**
+     * Get the symbol.
+     *
+     * @param id the precedent ID.
+     * @return the symbol name, or {@code null} if no symbol has the ID.
+     */
+    public String getSymbol(int id) {
+        return (id < names.size()) ? names.get(id) : null;
+    }
+
+    /**
+     * Get the current symbol.
+     *
+     * @return the symbol name.
+     */
+    public String getSymbol() {
+        return getSymbol(id);
+    }
+
+    /**
+     * Get the reference of the current immediate.
+     *
+     * @return the immediate reference.
+     * @see NSOFImmediate
+     */
+    public int getImmediate() {
+        return immediate;
+    }
+
+    /**
+     * Get the current character.
+     *
+     * @return the character.
+     */
+    public char getCharacter() {
+        return (char) immediate;
+    }
+
+    /**
+     * Get the ID referenced by the current precedent.
+     *
+     * @return the referenced ID.
+     */
+    public int getPrecedent() {
+        return immediate;
+    }
+
+    /**
+     * Get the current small rectangle.
+     *
+     * @return the top, left, bottom, and right values.
+     */
+    public int[] getSmallRect() {
+        return new int[]{rect[0], rect[1], rect[2], rect[3]};
+    }
+
+    /**
+     * Is the current large binary compressed?
+     *
+     * @return {@code true} if compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Get the compander name of the current large binary.
+     *
+     * @return the name.
+     */
+    public String getCompanderName() {
+        return companderName;
+    }
+
+    /**
+     * Get the compander parameters of the current large binary.
+     *
+     * @return the parameters.
+     */
+    public byte[] getCompanderArguments() {
+        return companderArgs;
+    }
+
+    /**
+     * Get the data of the current string, binary, or large binary.
+     *
+     * @return the data.
+     * @throws IOException if a decoding error occurs.
+     */
+    public byte[] getBytes() throws IOException {
+        if (bytes == null) {
+            if (string != null) {
+                // Already read as characters.
+                bytes = new byte[length];
+                char c;
+                for (int i = 0, j = 0; i < string.length(); i++) {
+                    c = string.charAt(i);
+                    bytes[j++] = (byte) (c >> 8);
+                    bytes[j++] = (byte) c;
+                }
+            } else {
+                bytes = new byte[pending];
+                in.readAll(bytes);
+                pending = 0;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Read some of the data of the current string, binary, or large binary,
+     * without keeping it.
+     *
+     * @param b   the destination buffer.
+     * @param off the offset.
+     * @param len the maximum number of bytes.
+     * @return the number of bytes read - {@code -1} if no more data.
+     * @throws IOException if a decoding error occurs.
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (pending <= 0)
+            return -1;
+        int count = in.read(b, off, Math.min(len, pending));
+        if (count < 0)
+            throw new EOFException();
+        pending -= count;
+        return count;
+    }
+
+    /**
+     * Get the current string.
+     *
+     * @return the string.
+     * @throws IOException if a decoding error occurs.
+     */
+    public String getString() throws IOException {
+        if (dataType == NewtonStreamedObjectFormat.NSOF_SYMBOL)
+            return getSymbol();
+        if (string == null) {
+            if (bytes == null) {
+                string = in.readUTF16BE(pending);
+                pending = 0;
+            } else {
+                string = toString(bytes);
+            }
+        }
+        return string;
+    }
+
+    /**
+     * Read an object, and its header if a frame or array.
+     *
+     * @return the event type.
+     * @throws IOException if a decoding error occurs.
+     */
+    private int readObject() throws IOException {
+        final int dataType = in.readByte();
+        this.dataType = dataType;
+        this.id = -1;
+        this.classId = -1;
+        this.length = 0;
+
+        switch (dataType) {
+            case NewtonStreamedObjectFormat.NSOF_ARRAY:
+                this.id = nextId();
+                this.length = in.readXLong();
+                this.classId = readClass();
+                push(dataType, length);
+                return eventType = START_ARRAY;
+            case NewtonStreamedObjectFormat.NSOF_BINARY:
+                this.id = nextId();
+                this.length = in.readXLong();
+                this.classId = readClass();
+                this.pending = length;
+                break;
+            case NewtonStreamedObjectFormat.NSOF_CHARACTER:
+                this.immediate = in.readByte();
+                break;
+            case NewtonStreamedObjectFormat.NSOF_FRAME:
+                this.id = nextId();
+                this.length = in.readXLong();
+                Context context = push(dataType, length);
+                if ((context.tags == null) || (context.tags.length < length))
+                    context.tags = new int[Math.max(length, 16)];
+                final int[] tags = context.tags;
+                for (int i = 0; i < length; i++)
+                    tags[i] = readTag();
+                return eventType = START_FRAME;
+            case NewtonStreamedObjectFormat.NSOF_IMMEDIATE:
+                this.immediate = in.readXLong();
+                break;
+            case NewtonStreamedObjectFormat.NSOF_LARGE_BINARY:
+                readLargeBinary();
+                break;
+            case NewtonStreamedObjectFormat.NSOF_NIL:
+                break;
+            case NewtonStreamedObjectFormat.NSOF_PLAIN_ARRAY:
+                this.id = nextId();
+                this.length = in.readXLong();
+                push(dataType, length);
+                return eventType = START_ARRAY;
+            case NewtonStreamedObjectFormat.NSOF_PRECEDENT:
+                this.immediate = in.readXLong();
+                break;
+            case NewtonStreamedObjectFormat.NSOF_SMALL_RECT:
+                this.id = nextId();
+                for (int i = 0; i < 4; i++)
+                    rect[i] = in.readByte();
+                break;
+            case NewtonStreamedObjectFormat.NSOF_STRING:
+                this.id = nextId();
+                this.length = in.readXLong();
+                this.pending = length;
+                break;
+            case NewtonStreamedObjectFormat.NSOF_SYMBOL:
+                this.id = readSymbol();
+                this.length = names.get(id).length();
+                break;
+            case NewtonStreamedObjectFormat.NSOF_UNICODE_CHARACTER:
+                int hi = in.readByte();
+                int lo = in.readByte();
+                this.immediate = (hi << 8) | lo;
+                break;
+            default:
+                throw new InvalidObjectException("unknown data type " + dataType);
+        }
+        return eventType = VALUE;
+    }
+
+    /**
+     * Read the header of a large binary.
+     *
+     * @throws IOException if a decoding error occurs.
+     */
+    private void readLargeBinary() throws IOException {
+        this.id = nextId();
+        // Class (object)
+        this.classId = readClass();
+        // compressed? (non-zero means compressed) (byte)
+        this.compressed = in.readByte() != NSOFLargeBinary.UNCOMPRESSED;
+        // Number of bytes of data (long)
+        this.length = in.readInt();
+        // Number of characters in compander name (long)
+        int numBytesCompanderName = in.readInt();
+        // Number of bytes of compander parameters (long)
+        int numBytesCompanderArgs = in.readInt();
+        // Reserved (encode zero, ignore when decoding) (long)
+        in.readInt();
+        // Compander name (bytes)
+        if (numBytesCompanderName == 0) {
+            this.companderName = null;
+        } else {
+            byte[] name = new byte[numBytesCompanderName];
+            in.readAll(name);
+            this.companderName = new String(name);
+        }
+        // Compander parameters (bytes)
+        if (numBytesCompanderArgs == 0) {
+            this.companderArgs = null;
+        } else {
+            this.companderArgs = new byte[numBytesCompanderArgs];
+            in.readAll(companderArgs);
+        }
+        this.pending = length;
+    }
+
+    /**
+     * Read the class of an array or binary.
+     *
+     * @return the symbol ID, or {@code -1} if nil.
+     * @throws IOException if a decoding error occurs.
+     */
+    private int readClass() throws IOException {
+        int dataType = in.readByte();
+        switch (dataType) {
+            case NewtonStreamedObjectFormat.NSOF_SYMBOL:
+                return readSymbol();
+            case NewtonStreamedObjectFormat.NSOF_PRECEDENT:
+                return in.readXLong();
+            case NewtonStreamedObjectFormat.NSOF_NIL:
+                return -1;
+        }
+        throw new InvalidObjectException("expected class symbol, but found data type " + dataType);
+    }
+
+    /**
+     * Read the tag of a frame slot.
+     *
+     * @return the symbol ID.
+     * @throws IOException if a decoding error occurs.
+     */
+    private int readTag() throws IOException {
+        int dataType = in.readByte();
+        switch (dataType) {
+            case NewtonStreamedObjectFormat.NSOF_SYMBOL:
+                return readSymbol();
+            case NewtonStreamedObjectFormat.NSOF_PRECEDENT:
+                return in.readXLong();
+            case NewtonStreamedObjectFormat.NSOF_STRING:
+                int id = nextId();
+                names.set(id, in.readUTF16BE(in.readXLong()));
+                return id;
+        }
+        throw new InvalidObjectException("expected slot symbol, but found data type " + dataType);
+    }
+
+    /**
+     * Read a symbol.
+     *
+     * @return the symbol ID.
+     * @throws IOException if a decoding error occurs.
+     */
+    private int readSymbol() throws IOException {
+        int id = nextId();
+        // Number of characters in name (xlong)
+        int numChars = in.readXLong();
+        // Name (bytes)
+        if (numChars == 0) {
+            names.set(id, "");
+        } else {
+            byte[] name = new byte[numChars];
+            in.readAll(name);
+            names.set(id, new String(name, NSOFString.CHARSET_MAC));
+        }
+        return id;
+    }
+
+    /**
+     * Allocate the next precedent ID.
+     *
+     * @return the ID.
+     */
+    private int nextId() {
+        int id = idMax++;
+        while (names.size() <= id)
+            names.add(null);
+        names.set(id, null);
+        return id;
+    }
+
+    /**
+     * Open a frame or array.
+     *
+     * @param dataType the data type.
+     * @param length   the number of values.
+     * @return the context.
+     */
+    private Context push(int dataType, int length) {
+        Context context = pool.isEmpty() ? new Context() : pool.remove(pool.size() - 1);
+        context.dataType = dataType;
+        context.length = length;
+        context.index = 0;
+        context.slot = false;
+        stack.add(context);
+        return context;
+    }
+
+    /**
+     * Close the current frame or array.
+     */
+    private void pop() {
+        pool.add(stack.remove(stack.size() - 1));
+    }
+
+    /**
+     * Decode a string.
+     *
+     * @param b the UTF-16 bytes.
+     * @return the string.
+     */
+    private static String toString(byte[] b) {
+        return NSOFString.decode(b, b.length);
+    }
+
+    /**
+     * Skip the bytes.
+     *
+     * @param n the number of bytes.
+     * @throws IOException if a decoding error occurs.
+     */
+    private void skipBytes(long n) throws IOException {
+        long count;
+        while (n > 0) {
+            count = in.skip(n);
+            if (count <= 0) {
+                if (in.read() == -1)
+                    throw new EOFException();
+                count = 1;
+            }
+            n -= count;
+        }
+    }
+}
@@ -15,9 +15,7 @@
  */
 package net.sf.jncu.fdil;
 
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -78,37 +76,6 @@ public class NSOFSmallRect extends NSOFFrame {
         setRight(right);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Top value (byte)
-        int top = in.read();
-        if (top == -1) {
-            throw new EOFException();
-        }
-        setTop(top);
-
-        // Left value (byte)
-        int left = in.read();
-        if (left == -1) {
-            throw new EOFException();
-        }
-        setLeft(left);
-
-        // Bottom value (byte)
-        int bottom = in.read();
-        if (bottom == -1) {
-            throw new EOFException();
-        }
-        setBottom(bottom);
-
-        // Right value (byte)
-        int right = in.read();
-        if (right == -1) {
-            throw new EOFException();
-        }
-        setRight(right);
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_SMALL_RECT);
@@ -122,6 +89,11 @@ public class NSOFSmallRect extends NSOFFrame {
         out.write(getRight());
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return 5;
+    }
+
     /**
      * Get the bottom.
      *
@@ -270,4 +242,10 @@ public class NSOFSmallRect extends NSOFFrame {
             return super.put(name, value);
         throw new UnsupportedOperationException("invalid slot: " + name);
     }
+
+    @Override
+    public void putAll(NSOFFrame frame) {
+        for (NSOFSymbol name : frame.getKeys())
+            put(name, frame.get(name));
+    }
 }
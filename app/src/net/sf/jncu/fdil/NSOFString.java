@@ -18,7 +18,6 @@ package net.sf.jncu.fdil;
 import net.sf.lang.ControlCharacter;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -109,6 +108,10 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
     }
 
     private String value;
+    /**
+     * The UTF-16 bytes that were decoded, in network byte order.
+     */
+    private byte[] utf16;
     protected boolean valueSet;
     protected String toString;
 
@@ -133,26 +136,23 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
         setValue(value);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Number of bytes in string (xlong)
-        int numBytes = XLong.decodeValue(in);
-        if (numBytes == 0) {
-            setValue("");
-        } else {
-            // String (halfwords)
-            byte[] buf = new byte[numBytes];
-            readAll(in, buf);
-            // Trim?
-            while ((numBytes >= 2) && (buf[numBytes - 2] == 0) && (buf[numBytes - 1] == 0))
-                numBytes -= 2;
-            setValue(new String(buf, 0, numBytes, CHARSET_UTF16));
-        }
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         NSOFSymbol nsClass = getObjectClass();
+        final byte[] utf16 = this.utf16;
+        if (utf16 != null) {
+            // Write back the bytes as they were decoded.
+            if (CLASS_STRING.equals(nsClass)) {
+                out.write(NSOF_STRING);
+                XLong.encode(utf16.length, out);
+            } else {
+                out.write(NSOF_BINARY);
+                XLong.encode(utf16.length, out);
+                encoder.flatten(nsClass, out);
+            }
+            out.write(utf16);
+            return;
+        }
         String s = getValue();
         int numBytes = s.length() << 1;
         if (CLASS_STRING.equals(nsClass)) {
@@ -161,16 +161,12 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
                 // Number of bytes in string (xlong)
                 XLong.encode(0, out);
             } else {
-                byte[] buf = s.getBytes(CHARSET_UTF16);
                 // Number of bytes in string (xlong)
                 // 2-bytes per character + null-terminated
                 XLong.encode(numBytes + 2, out);
 
                 // String (halfwords)
-                // Bytes [0] and [1] are 0xFE and 0xFF
-                out.write(buf, 2, numBytes);
-                out.write(0);
-                out.write(0);
+                writeChars(s, out);
             }
         } else {
             out.write(NSOF_BINARY);
@@ -181,7 +177,6 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
                 // Class (object)
                 encoder.flatten(nsClass, out);
             } else {
-                byte[] buf = s.getBytes(CHARSET_UTF16);
                 // Number of bytes of data (xlong)
                 // 2-bytes per character + null-terminated
                 XLong.encode(numBytes + 2, out);
@@ -190,20 +185,57 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
                 encoder.flatten(nsClass, out);
 
                 // Data
-                // Bytes [0] and [1] are 0xFE and 0xFF
-                out.write(buf, 2, numBytes);
-                out.write(0);
-                out.write(0);
+                writeChars(s, out);
             }
         }
     }
 
+    /**
+     * Write the null-terminated characters.
+     *
+     * @param s   the string.
+     * @param out the output.
+     * @throws IOException if an encoding error occurs.
+     */
+    private static void writeChars(String s, OutputStream out) throws IOException {
+        if (out instanceof NSOFOutput) {
+            ((NSOFOutput) out).writeUTF16BE(s);
+        } else {
+            byte[] buf = s.getBytes(CHARSET_UTF16);
+            // Bytes [0] and [1] are 0xFE and 0xFF
+            out.write(buf, 2, buf.length - 2);
+        }
+        out.write(0);
+        out.write(0);
+    }
+
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        NSOFSymbol nsClass = getObjectClass();
+        int size;
+        if (utf16 != null) {
+            size = 1 + XLong.getEncodedSize(utf16.length) + utf16.length;
+        } else {
+            int numBytes = getValue().length() << 1;
+            // 2-bytes per character + null-terminated
+            size = (numBytes == 0) ? 2 : 1 + XLong.getEncodedSize(numBytes + 2) + numBytes + 2;
+        }
+        if (!CLASS_STRING.equals(nsClass))
+            size += encoder.getFlattenedSize(nsClass);
+        return size;
+    }
+
     /**
      * Get the value.
      *
      * @return the value
      */
     public String getValue() {
+        String value = this.value;
+        if (value == null) {
+            value = decode(utf16, utf16.length);
+            this.value = value;
+        }
         return value;
     }
 
@@ -218,10 +250,47 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
         if (valueSet)
             throw new IllegalArgumentException("value already set");
         this.value = value;
+        this.utf16 = null;
+        this.valueSet = true;
+        this.toString = null;
+    }
+
+    /**
+     * Set the value, which is only decoded when needed.
+     *
+     * @param utf16 the UTF-16 bytes in network byte order (Big Endian), with
+     *              any trailing <tt>null</tt> characters.
+     */
+    void setUTF16(byte[] utf16) {
+        if (utf16 == null)
+            throw new IllegalArgumentException("non-null value required");
+        if (valueSet)
+            throw new IllegalArgumentException("value already set");
+        this.value = null;
+        this.utf16 = utf16;
         this.valueSet = true;
         this.toString = null;
     }
 
+    /**
+     * Decode the UTF-16 characters, without the trailing <tt>null</tt>
+     * characters.
+     *
+     * @param b        the bytes in network byte order (Big Endian).
+     * @param numBytes the number of bytes.
+     * @return the string.
+     */
+    static String decode(byte[] b, int numBytes) {
+        int length = numBytes >> 1;
+        // Trim?
+        while ((length > 0) && (b[(length << 1) - 2] == 0) && (b[(length << 1) - 1] == 0))
+            length--;
+        char[] chars = new char[length];
+        for (int i = 0, j = 0; i < length; i++, j += 2)
+            chars[i] = (char) (((b[j] & 0xFF) << 8) | (b[j + 1] & 0xFF));
+        return new String(chars);
+    }
+
     /**
      * Set the value.
      *
@@ -251,7 +320,7 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return getValue().hashCode();
     }
 
     /**
@@ -272,6 +341,7 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
     @Override
     public String toString() {
         if (toString == null) {
+            String value = getValue();
             StringBuffer buf = new StringBuffer();
             int len = value.length();
             char c;
@@ -335,27 +405,32 @@ public class NSOFString extends NSOFPointer implements Comparable<NSOFString>, C
      * @return true if rich string.
      */
     public boolean isRich() {
-        return (value != null) && (value.indexOf(INK) >= 0);
+        return getValue().indexOf(INK) >= 0;
     }
 
     @Override
     public NSOFObject deepClone() throws CloneNotSupportedException {
+        if (utf16 != null) {
+            NSOFString clone = new NSOFString();
+            clone.setUTF16(utf16);
+            return clone;
+        }
         return new NSOFString(getValue());
     }
 
     @Override
     public int length() {
-        return value.length();
+        return getValue().length();
     }
 
     @Override
     public char charAt(int index) {
-        return value.charAt(index);
+        return getValue().charAt(index);
     }
 
     @Override
     public CharSequence subSequence(int start, int end) {
-        return value.subSequence(start, end);
+        return getValue().subSequence(start, end);
     }
 
     /**
@@ -16,9 +16,13 @@
 package net.sf.jncu.fdil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Newton Streamed Object Format - Symbol.
@@ -29,6 +33,8 @@ import java.util.Locale;
  * excluding the vertical bar (<tt>|</tt>) and backslash (<tt>\</tt>)
  * characters. A symbol must be shorter than 254 characters. When symbols are
  * compared to each other, a case-insensitive comparison is performed.
+ * <p>
+ * Use {@link #valueOf(String)} to get the canonical symbol for a name.
  *
  * @author Moshe
  */
@@ -45,7 +51,132 @@ public class NSOFSymbol extends NSOFString {
      */
     public static final NSOFSymbol CLASS_SYMBOL = new NSOFSymbol("symbol");
 
+    /**
+     * The pool of canonical symbols.<br>
+     * Separate from the symbol class, which is initialised in the middle of
+     * the string class initialisation.<br>
+     * The symbols and names are held weakly, so that names decoded from
+     * device data are forgotten once no longer used.
+     */
+    private static class Pool {
+        /**
+         * Canonical symbols, by name.
+         */
+        static final ConcurrentMap<String, Entry<NSOFSymbol>> symbols = new ConcurrentHashMap<String, Entry<NSOFSymbol>>();
+        /**
+         * Canonical lower-case names.
+         */
+        static final ConcurrentMap<String, Entry<String>> names = new ConcurrentHashMap<String, Entry<String>>();
+        /**
+         * Entries whose values were garbage collected.
+         */
+        static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+        /**
+         * Weak pool entry that remembers its key, so that it can be removed
+         * once cleared.
+         *
+         * @param <T> the value type.
+         */
+        static class Entry<T> extends WeakReference<T> {
+            final ConcurrentMap<String, Entry<T>> map;
+            final String key;
+
+            Entry(ConcurrentMap<String, Entry<T>> map, String key, T value) {
+                super(value, queue);
+                this.map = map;
+                this.key = key;
+            }
+        }
+
+        /**
+         * Get the pooled value.
+         *
+         * @param map the pool.
+         * @param key the key.
+         * @return the value - {@code null} otherwise.
+         */
+        static <T> T get(ConcurrentMap<String, Entry<T>> map, String key) {
+            Entry<T> entry = map.get(key);
+            return (entry == null) ? null : entry.get();
+        }
+
+        /**
+         * Pool the value, unless another value is already pooled.
+         *
+         * @param map   the pool.
+         * @param key   the key.
+         * @param value the value.
+         * @return the pooled value.
+         */
+        static <T> T putIfAbsent(ConcurrentMap<String, Entry<T>> map, String key, T value) {
+            expunge();
+            Entry<T> entry = new Entry<T>(map, key, value);
+            Entry<T> old;
+            T oldValue;
+            while ((old = map.putIfAbsent(key, entry)) != null) {
+                oldValue = old.get();
+                if (oldValue != null)
+                    return oldValue;
+                if (map.replace(key, old, entry))
+                    break;
+            }
+            return value;
+        }
+
+        /**
+         * Remove the entries whose values were garbage collected.
+         */
+        @SuppressWarnings("unchecked")
+        static void expunge() {
+            Reference<?> ref;
+            Entry<Object> entry;
+            while ((ref = queue.poll()) != null) {
+                entry = (Entry<Object>) ref;
+                entry.map.remove(entry.key, entry);
+            }
+        }
+
+        /**
+         * Get the canonical lower-case name.
+         *
+         * @param name the lower-case name.
+         * @return the canonical name.
+         */
+        static String intern(String name) {
+            String canonical = get(names, name);
+            return (canonical == null) ? putIfAbsent(names, name, name) : canonical;
+        }
+
+        /**
+         * Queue the entry, as if its value was garbage collected.
+         *
+         * @param map the pool.
+         * @param key the key.
+         */
+        static <T> void enqueue(ConcurrentMap<String, Entry<T>> map, String key) {
+            Entry<T> entry = map.get(key);
+            if (entry != null)
+                entry.enqueue();
+        }
+
+        /**
+         * Get the number of pooled symbols.
+         *
+         * @return the number of symbols.
+         */
+        static int size() {
+            expunge();
+            return symbols.size();
+        }
+    }
+
+    /**
+     * The lower-case name, which is canonical so that symbols can be compared
+     * by reference.
+     */
     private String valueLower;
+    private int hash;
 
     /**
      * Constructs a new symbol.<br>
@@ -54,7 +185,8 @@ public class NSOFSymbol extends NSOFString {
     public NSOFSymbol() {
         super();
         setObjectClass(CLASS_SYMBOL);
-        this.valueLower = "";
+        this.valueLower = Pool.intern("");
+        this.hash = valueLower.hashCode();
     }
 
     /**
@@ -68,18 +200,40 @@ public class NSOFSymbol extends NSOFString {
         setValue(name);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // Number of characters in name (xlong)
-        int numChars = XLong.decodeValue(in);
-        // Name (bytes)
-        if (numChars == 0) {
-            setValue("");
-        } else {
-            byte[] name = new byte[numChars];
-            readAll(in, name);
-            setValue(new String(name, CHARSET_MAC));
+    /**
+     * Get the canonical symbol.<br>
+     * Symbols are pooled, so that the same instance is returned for the
+     * same name while the symbol is in use. Symbols with the same name in
+     * different case are equal, but not the same instance.
+     *
+     * @param name the symbol name.
+     * @return the symbol.
+     */
+    public static NSOFSymbol valueOf(String name) {
+        NSOFSymbol symbol = Pool.get(Pool.symbols, name);
+        if (symbol == null) {
+            symbol = Pool.putIfAbsent(Pool.symbols, name, new NSOFSymbol(name));
         }
+        return symbol;
+    }
+
+    /**
+     * Get the number of canonical symbols that are still in use.
+     *
+     * @return the number of symbols.
+     */
+    static int getPoolSize() {
+        return Pool.size();
+    }
+
+    /**
+     * Queue the canonical symbol to be removed from the pool, as if it was
+     * garbage collected.
+     *
+     * @param name the symbol name.
+     */
+    static void enqueue(String name) {
+        Pool.enqueue(Pool.symbols, name);
     }
 
     @Override
@@ -96,10 +250,25 @@ public class NSOFSymbol extends NSOFString {
         }
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        String name = getValue();
+        int numChars = (name == null) ? 0 : name.length();
+        return 1 + XLong.getEncodedSize(numChars) + numChars;
+    }
+
     @Override
     protected void setValue(String value) {
         if (value == null)
             throw new IllegalArgumentException("non-null value required");
+        NSOFSymbol symbol = Pool.get(Pool.symbols, value);
+        if ((symbol != null) && (symbol != this)) {
+            // Already validated.
+            super.setValue(symbol.getValue());
+            this.valueLower = symbol.valueLower;
+            this.hash = symbol.hash;
+            return;
+        }
         int len = value.length();
         if (len > MAX_LENGTH)
             throw new SymbolTooLongException();
@@ -112,12 +281,24 @@ public class NSOFSymbol extends NSOFString {
                 throw new IllegalCharInSymbolException(c);
         }
         super.setValue(value);
-        this.valueLower = value.toLowerCase(Locale.ENGLISH);
+        this.valueLower = Pool.intern(value.toLowerCase(Locale.ENGLISH));
+        this.hash = valueLower.hashCode();
     }
 
     @Override
     public int hashCode() {
-        return valueLower.hashCode();
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj instanceof NSOFSymbol) {
+            NSOFSymbol that = (NSOFSymbol) obj;
+            return (this.valueLower == that.valueLower) || ((this.hash == that.hash) && this.valueLower.equals(that.valueLower));
+        }
+        return super.equals(obj);
     }
 
     @Override
@@ -15,9 +15,7 @@
  */
 package net.sf.jncu.fdil;
 
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -63,20 +61,6 @@ public class NSOFUnicodeCharacter extends NSOFCharacter {
         setValue(value);
     }
 
-    @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        // High byte of character code (byte)
-        int hi = in.read();
-        if (hi == -1)
-            throw new EOFException();
-        // Low byte of character code (byte)
-        int lo = in.read();
-        if (lo == -1)
-            throw new EOFException();
-        int c = ((hi & 0xFF) << 8) | ((lo & 0xFF) << 0);
-        setValue((char) c);
-    }
-
     @Override
     public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
         out.write(NSOF_UNICODE_CHARACTER);
@@ -87,6 +71,11 @@ public class NSOFUnicodeCharacter extends NSOFCharacter {
         out.write((val >> 0) & 0xFF);
     }
 
+    @Override
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return 3;
+    }
+
     @Override
     public NSOFObject deepClone() throws CloneNotSupportedException {
         return new NSOFUnicodeCharacter(this.getChar());
@@ -121,6 +121,33 @@ public abstract class NewtonStreamedObjectFormat {
      */
     public abstract void flatten(OutputStream out, NSOFEncoder encoder) throws IOException;
 
+    /**
+     * Get the number of bytes that {@link #flatten(OutputStream, NSOFEncoder)}
+     * would write, without writing them.<br>
+     * Assigns precedents in the encoder just like flattening does.
+     * <p>
+     * The default implementation flattens the object and counts the bytes.
+     *
+     * @param encoder the encoder.
+     * @return the size in bytes.
+     * @throws IOException if an encoding error occurs.
+     */
+    public int getFlattenedSize(NSOFEncoder encoder) throws IOException {
+        final int[] count = {0};
+        flatten(new OutputStream() {
+            @Override
+            public void write(int b) {
+                count[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                count[0] += len;
+            }
+        }, encoder);
+        return count[0];
+    }
+
     /**
      * Decode the object.<br>
      * Converts a flat stream of bytes in Newton Stream Object Format (NSOF)
@@ -129,8 +156,14 @@ public abstract class NewtonStreamedObjectFormat {
      * @param in      the input.
      * @param decoder the decoder.
      * @throws IOException if a decoding error occurs.
+     * @deprecated {@link NSOFDecoder} builds the objects from the events of a
+     * {@link NSOFReader}, and never calls this method. To decode into other
+     * classes, override {@link NSOFDecoder#postInflate(NSOFObject, int)}.
      */
-    public abstract void inflate(InputStream in, NSOFDecoder decoder) throws IOException;
+    @Deprecated
+    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
+        throw new UnsupportedOperationException("decode with " + NSOFDecoder.class.getSimpleName());
+    }
 
     /**
      * Network to host - long.<br>
@@ -141,6 +174,8 @@ public abstract class NewtonStreamedObjectFormat {
      * @throws IOException if read past buffer.
      */
     public static int ntohl(InputStream in) throws IOException {
+        if (in instanceof NSOFInput)
+            return ((NSOFInput) in).readInt();
         int n24 = (in.read() & 0xFF) << 24;
         int n16 = (in.read() & 0xFF) << 16;
         int n08 = (in.read() & 0xFF) << 8;
@@ -158,6 +193,10 @@ public abstract class NewtonStreamedObjectFormat {
      * @throws IOException if an I/O error occurs.
      */
     public static void htonl(int n, OutputStream out) throws IOException {
+        if (out instanceof NSOFOutput) {
+            ((NSOFOutput) out).writeInt(n);
+            return;
+        }
         out.write((n >> 24) & 0xFF);
         out.write((n >> 16) & 0xFF);
         out.write((n >> 8) & 0xFF);
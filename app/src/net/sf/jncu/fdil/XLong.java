@@ -47,13 +47,13 @@ public class XLong extends NewtonStreamedObjectFormat {
     }
 
     @Override
-    public void inflate(InputStream in, NSOFDecoder decoder) throws IOException {
-        setValue(decodeValue(in));
+    public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
+        encode(getValue(), out);
     }
 
     @Override
-    public void flatten(OutputStream out, NSOFEncoder encoder) throws IOException {
-        encode(getValue(), out);
+    public int getFlattenedSize(NSOFEncoder encoder) {
+        return getEncodedSize(getValue());
     }
 
     /**
@@ -87,6 +87,16 @@ public class XLong extends NewtonStreamedObjectFormat {
         return super.equals(obj);
     }
 
+    /**
+     * Get the number of bytes to encode the XLong.
+     *
+     * @param value the xlong value.
+     * @return the size in bytes.
+     */
+    public static int getEncodedSize(int value) {
+        return ((value >= 0) && (value < 0xFF)) ? 1 : 5;
+    }
+
     /**
      * Encode the XLong.
      *
@@ -95,7 +105,9 @@ public class XLong extends NewtonStreamedObjectFormat {
      * @throws IOException if an encoding error occurs.
      */
     public static void encode(int value, OutputStream out) throws IOException {
-        if ((value >= 0) && (value < 0xFF)) {
+        if (out instanceof NSOFOutput) {
+            ((NSOFOutput) out).writeXLong(value);
+        } else if ((value >= 0) && (value < 0xFF)) {
             out.write(value & 0xFF);
         } else {
             out.write(0xFF);
@@ -122,6 +134,8 @@ public class XLong extends NewtonStreamedObjectFormat {
      * @throws IOException if an I/O error occurs.
      */
     public static int decodeValue(InputStream in) throws IOException {
+        if (in instanceof NSOFInput)
+            return ((NSOFInput) in).readXLong();
         // 0 <= value <= 254: unsigned byte
         // else: byte 0xFF followed by signed long
         int l = in.read();
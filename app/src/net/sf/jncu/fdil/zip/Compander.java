@@ -28,4 +28,22 @@ public abstract class Compander {
     public Compander() {
     }
 
+    /**
+     * Creates a decompressor that expands the data.
+     *
+     * @return the decompressor - {@code null} if not supported.
+     */
+    public Decompressor createDecompressor() {
+        return null;
+    }
+
+    /**
+     * Creates a compressor that compacts the data.
+     *
+     * @return the compressor - {@code null} if not supported.
+     */
+    public Compressor createCompressor() {
+        return null;
+    }
+
 }
@@ -39,6 +39,25 @@ public class CompanderFactory {
      * even multiple of 4 bytes.
      */
     public static final String COMPANDER_PIXELMAP = "TPixelMapCompander";
+    /**
+     * Specifies the use of a compander specialized for UTF-16 text.<br>
+     * The format is private to this library, and is not known to the Newton,
+     * so the name is not a Newton class name.
+     */
+    public static final String COMPANDER_UNICODE = "jncu.UnicodeCompander";
+    /**
+     * Specifies the use of the Lempel-Ziv compander of this library.<br>
+     * The page format has not been verified against the
+     * {@link #COMPANDER_LZ_STORE} of the Newton, so the name is not a Newton
+     * class name.
+     */
+    public static final String COMPANDER_JNCU_LZ = "jncu.LZStoreCompander";
+    /**
+     * Specifies the use of the pixel map compander of this library.<br>
+     * The format is not that of the {@link #COMPANDER_PIXELMAP} of the
+     * Newton, so the name is not a Newton class name.
+     */
+    public static final String COMPANDER_JNCU_PIXELMAP = "jncu.PixelMapCompander";
 
     private static CompanderFactory instance;
     private static final Map<String, Class<? extends Compander>> registryCompanders = new HashMap<String, Class<? extends Compander>>();
@@ -65,8 +84,9 @@ public class CompanderFactory {
      * Register the companders.
      */
     private void registerCompanders() {
-        registryCompanders.put(COMPANDER_LZ_STORE, LZStoreCompander.class);
-        registryCompanders.put(COMPANDER_PIXELMAP, PixelMapCompander.class);
+        registryCompanders.put(COMPANDER_JNCU_LZ, LZStoreCompander.class);
+        registryCompanders.put(COMPANDER_JNCU_PIXELMAP, PixelMapCompander.class);
+        registryCompanders.put(COMPANDER_UNICODE, UnicodeCompander.class);
         registryCompanders.put("TSimpleStoreCompander", SimpleStoreCompander.class);
         registryCompanders.put("TStoreCompanderWrapper", StoreCompanderWrapper.class);
     }
@@ -76,8 +96,8 @@ public class CompanderFactory {
      */
     private void registerCompressors() {
         registryCompressors.put("TCallbackCompressor", CallbackCompressor.class);
-        registryCompressors.put("TLZCompressor", LZCompressor.class);
-        registryCompressors.put("TUnicodeCompressor", UnicodeCompressor.class);
+        registryCompressors.put("jncu.LZCompressor", LZCompressor.class);
+        registryCompressors.put("jncu.UnicodeCompressor", UnicodeCompressor.class);
     }
 
     /**
@@ -86,16 +106,16 @@ public class CompanderFactory {
     private void registerDecompressors() {
         registryDecompressors.put("TArithmeticDecompressor", ArithmeticDecompressor.class);
         registryDecompressors.put("TCallbackDecompressor", CallbackDecompressor.class);
-        registryDecompressors.put("TLZDecompressor", LZDecompressor.class);
         registryDecompressors.put("TLZRelocStoreDecompressor", LZRelocStoreDecompressor.class);
-        registryDecompressors.put("TLZStoreDecompressor", LZStoreDecompressor.class);
         registryDecompressors.put("TObjTextDecompressor", ObjTextDecompressor.class);
         registryDecompressors.put("TSimpleRelocStoreDecompressor", SimpleRelocStoreDecompressor.class);
         registryDecompressors.put("TSimpleStoreDecompressor", SimpleStoreDecompressor.class);
-        registryDecompressors.put("TUnicodeDecompressor", UnicodeDecompressor.class);
         registryDecompressors.put("TZippyDecompressor", ZippyDecompressor.class);
         registryDecompressors.put("TZippyRelocStoreDecompressor", ZippyRelocStoreDecompressor.class);
         registryDecompressors.put("TZippyStoreDecompressor", ZippyStoreDecompressor.class);
+        registryDecompressors.put("jncu.LZDecompressor", LZDecompressor.class);
+        registryDecompressors.put("jncu.LZStoreDecompressor", LZStoreDecompressor.class);
+        registryDecompressors.put("jncu.UnicodeDecompressor", UnicodeDecompressor.class);
     }
 
     /**
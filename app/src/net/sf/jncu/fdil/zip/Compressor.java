@@ -28,6 +28,8 @@ import java.io.OutputStream;
  */
 public abstract class Compressor {
 
+    private int length = 0;
+
     /**
      * Creates a new compressor.
      */
@@ -77,4 +79,21 @@ public abstract class Compressor {
         return compress(blob.getValue());
     }
 
+    /**
+     * Set the uncompressed length, that is written in the header.
+     *
+     * @param length the length.
+     */
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Get the uncompressed length.
+     *
+     * @return the length.
+     */
+    public int getLength() {
+        return length;
+    }
 }
@@ -87,7 +87,7 @@ public abstract class Decompressor {
      * @throws IOException if an I/O error occurs.
      */
     public InputStream decompress(NSOFLargeBinary blob) throws IOException {
-        return decompress(blob.getValue());
+        return decompress(blob.getInputStream());
     }
 
     /**
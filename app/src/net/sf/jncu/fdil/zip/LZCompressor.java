@@ -15,48 +15,230 @@
  */
 package net.sf.jncu.fdil.zip;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
+ * Lempel-Ziv compressor.<br>
+ * Writes the page format that is read by {@link LZDecompressor}, which is
+ * private to this library, so the Newton cannot read it.
+ * <p>
+ * Matches are found with hash chains of the 3-byte prefixes. The chains hold
+ * running positions, so that the same arrays are reused for every page
+ * without clearing them.
+ *
  * @author mwaisberg
  */
 public class LZCompressor extends Compressor {
 
-    private class Node {
-        short start; // +00
-        short level; // +02
-        short length; // +04
-        Node child; // +08
-        Node parent; // +0C
-        Node sibling; // +10
-    }
+    private static final int PAGE_SIZE = LZDecompressor.PAGE_SIZE;
+    private static final int MIN_MATCH = LZDecompressor.MIN_MATCH;
+    private static final int MAX_MATCH = LZDecompressor.MAX_MATCH;
+    private static final int HASH_BITS = 12;
+    private static final int HASH_SIZE = 1 << HASH_BITS;
+    /**
+     * Maximum number of candidates to compare for each match.
+     */
+    private static final int MAX_CHAIN = 32;
+    /**
+     * Version of the compressed format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Latest running position of each hash.
+     */
+    private final int[] head = new int[HASH_SIZE];
+    /**
+     * Previous running position with the same hash, by page position.
+     */
+    private final int[] prev = new int[PAGE_SIZE];
+    /**
+     * Running position of the start of the current page.
+     */
+    private int base = PAGE_SIZE;
+    /**
+     * The compressed page, reused for every page.
+     */
+    private final byte[] packed = new byte[PAGE_SIZE + (PAGE_SIZE >> 3) + 1];
+    private final byte[] header = new byte[LZDecompressor.PAGE_HEADER_SIZE];
 
     /**
      * Creates new compressor.
      */
     public LZCompressor() {
-        // TODO Auto-generated constructor stub
     }
 
     @Override
     protected OutputStream createDeflaterStream(OutputStream out) {
-        // TODO Auto-generated method stub
-        return null;
+        return new LZStoreOutputStream(out, getLength(), this);
     }
 
-    private void setHeader() {
+    /**
+     * Write the header - the version, and the uncompressed length.
+     *
+     * @param out    the output.
+     * @param length the uncompressed length.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void setHeader(OutputStream out, int length) throws IOException {
+        final byte[] header = this.header;
+        toBytes(VERSION, header, 0);
+        toBytes(length, header, 4);
+        out.write(header, 0, headerSize());
     }
 
-    private int headerSize() {
-        return 0;
+    /**
+     * Get the size of the header.
+     *
+     * @return the size in bytes.
+     */
+    protected int headerSize() {
+        return 8;
     }
 
-    private void compressChunk() {
+    /**
+     * Compress a page, and write it.<br>
+     * The page is stored as is if it cannot be compressed.
+     *
+     * @param page   the page.
+     * @param length the page length.
+     * @param out    the output.
+     * @return the number of bytes written.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected int compressChunk(byte[] page, int length, OutputStream out) throws IOException {
+        int packedLength = compressBlock(page, 0, length, packed);
+        final byte[] header = this.header;
+        if ((packedLength < 0) || (packedLength >= length)) {
+            toBytes(length, header, 0);
+            toBytes(length, header, 4);
+            out.write(header, 0, header.length);
+            out.write(page, 0, length);
+            return header.length + length;
+        }
+        toBytes(packedLength, header, 0);
+        toBytes(length, header, 4);
+        out.write(header, 0, header.length);
+        out.write(packed, 0, packedLength);
+        return header.length + packedLength;
     }
 
-    private void compressBlock() {
+    /**
+     * Compress a page.
+     *
+     * @param src    the page.
+     * @param srcOff the page offset.
+     * @param srcLen the page length.
+     * @param dst    the destination buffer, with room for at least
+     *               {@code srcLen + (srcLen / 8) + 1} bytes.
+     * @return the compressed length.
+     */
+    protected int compressBlock(byte[] src, int srcOff, int srcLen, byte[] dst) {
+        if (srcLen > PAGE_SIZE)
+            throw new IllegalArgumentException("page too long: " + srcLen);
+        final int[] head = this.head;
+        final int[] prev = this.prev;
+        if (base > Integer.MAX_VALUE - (PAGE_SIZE << 1)) {
+            Arrays.fill(head, 0);
+            base = PAGE_SIZE;
+        }
+        final int base = this.base;
+        this.base += PAGE_SIZE;
+
+        int s = 0;
+        int d = 0;
+        int flagsPos = 0;
+        int flagBit = 8;
+        int h;
+        int candidate;
+        int chain;
+        int bestLength;
+        int bestPos;
+        int maxLength;
+        int length;
+        int p;
+        int distance;
+        while (s < srcLen) {
+            if (flagBit == 8) {
+                flagsPos = d++;
+                dst[flagsPos] = 0;
+                flagBit = 0;
+            }
+            bestLength = 0;
+            bestPos = 0;
+            maxLength = Math.min(MAX_MATCH, srcLen - s);
+            if (maxLength >= MIN_MATCH) {
+                p = srcOff + s;
+                h = hash(src[p], src[p + 1], src[p + 2]);
+                candidate = head[h];
+                chain = MAX_CHAIN;
+                while ((candidate >= base) && (chain-- > 0)) {
+                    int q = srcOff + candidate - base;
+                    if (src[q + bestLength] == src[p + bestLength]) {
+                        length = 0;
+                        while ((length < maxLength) && (src[q + length] == src[p + length]))
+                            length++;
+                        if (length > bestLength) {
+                            bestLength = length;
+                            bestPos = candidate - base;
+                            if (length == maxLength)
+                                break;
+                        }
+                    }
+                    candidate = prev[candidate - base];
+                }
+                prev[s] = head[h];
+                head[h] = base + s;
+            }
+
+            if (bestLength >= MIN_MATCH) {
+                distance = s - bestPos - 1;
+                dst[d++] = (byte) (distance >> 4);
+                dst[d++] = (byte) (((distance & 0x0F) << 4) | (bestLength - MIN_MATCH));
+                // Chain the positions inside the match.
+                for (int i = s + 1, end = Math.min(s + bestLength, srcLen - MIN_MATCH + 1); i < end; i++) {
+                    p = srcOff + i;
+                    h = hash(src[p], src[p + 1], src[p + 2]);
+                    prev[i] = head[h];
+                    head[h] = base + i;
+                }
+                s += bestLength;
+            } else {
+                dst[flagsPos] |= (byte) (1 << flagBit);
+                dst[d++] = src[srcOff + s];
+                s++;
+            }
+            flagBit++;
+        }
+        return d;
     }
 
-    private void finish() {
+    /**
+     * Hash a 3-byte prefix.
+     *
+     * @param b0 the first byte.
+     * @param b1 the second byte.
+     * @param b2 the third byte.
+     * @return the hash.
+     */
+    private static int hash(byte b0, byte b1, byte b2) {
+        int h = ((b0 & 0xFF) << 16) | ((b1 & 0xFF) << 8) | (b2 & 0xFF);
+        return (h * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Put an integer in network byte order (Big Endian).
+     *
+     * @param n   the integer.
+     * @param b   the bytes.
+     * @param off the offset.
+     */
+    private static void toBytes(int n, byte[] b, int off) {
+        b[off] = (byte) (n >> 24);
+        b[off + 1] = (byte) (n >> 16);
+        b[off + 2] = (byte) (n >> 8);
+        b[off + 3] = (byte) n;
     }
 }
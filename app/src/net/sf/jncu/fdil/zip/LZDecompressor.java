@@ -15,29 +15,199 @@
  */
 package net.sf.jncu.fdil.zip;
 
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
+ * Lempel-Ziv decompressor.
+ * <p>
+ * The data is divided into pages of up to {@link #PAGE_SIZE} bytes, and each
+ * page is compressed independently. Each page starts with a header of the
+ * compressed length (4 bytes) and the uncompressed length (4 bytes). A page
+ * whose lengths are equal is stored as is.
+ * <p>
+ * A compressed page is a series of groups. Each group starts with a flags
+ * byte, whose bits, from the least significant bit, tell whether each of the
+ * next 8 items is a literal byte ({@code 1}) or a match ({@code 0}). A match
+ * is 2 bytes - 12 bits for the distance back minus {@code 1}, and 4 bits for
+ * the length minus {@link #MIN_MATCH}.
+ * <p>
+ * This layout is private to this library. It has not been verified against a
+ * dump of a real device store, so it is not registered under the Newton class
+ * names, and real device data cannot be decompressed.
+ *
  * @author mwaisberg
  */
 public class LZDecompressor extends Decompressor {
 
+    /**
+     * Size of an uncompressed page.
+     */
+    public static final int PAGE_SIZE = 1024;
+    /**
+     * Size of a page header.
+     */
+    public static final int PAGE_HEADER_SIZE = 8;
+    /**
+     * Shortest match.
+     */
+    public static final int MIN_MATCH = 3;
+    /**
+     * Longest match.
+     */
+    public static final int MAX_MATCH = MIN_MATCH + 0x0F;
+
+    /**
+     * The compressed page, reused for every page.
+     */
+    private final byte[] packed = new byte[PAGE_SIZE];
+    private final byte[] header = new byte[PAGE_HEADER_SIZE];
+
     /**
      * Creates new decompressor.
      */
     public LZDecompressor() {
-        // TODO Auto-generated constructor stub
     }
 
     @Override
     protected InputStream createInflaterStream(InputStream in) {
-        // TODO Auto-generated method stub
-        return null;
+        return new LZStoreInputStream(in, getLength(), this);
+    }
+
+    /**
+     * Read and decompress the next page.
+     *
+     * @param in   the input.
+     * @param page the destination page.
+     * @return the page length - {@code -1} if no more pages.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected int decompressChunk(InputStream in, byte[] page) throws IOException {
+        final byte[] header = this.header;
+        int count = in.read(header, 0, 1);
+        if (count <= 0)
+            return -1;
+        readFully(in, header, 1, PAGE_HEADER_SIZE - 1);
+        int packedLength = toInt(header, 0);
+        int length = toInt(header, 4);
+        if ((packedLength < 0) || (packedLength > PAGE_SIZE) || (length < packedLength) || (length > page.length))
+            throw new CouldNotDecompressDataException("bad page header");
+        if (packedLength == length) {
+            readFully(in, page, 0, length);
+            return length;
+        }
+        readFully(in, packed, 0, packedLength);
+        return decompressPage(packed, 0, packedLength, page, 0, length);
     }
 
-    protected void decompressChunk() {
+    /**
+     * Decompress a page whose header was already read.
+     *
+     * @param src          the page data.
+     * @param srcOff       the page data offset.
+     * @param packedLength the compressed length.
+     * @param dst          the destination buffer.
+     * @param dstOff       the destination offset.
+     * @param length       the uncompressed length.
+     * @return the page length.
+     * @throws CouldNotDecompressDataException if the data is corrupt.
+     */
+    int decompressPage(byte[] src, int srcOff, int packedLength, byte[] dst, int dstOff, int length) throws CouldNotDecompressDataException {
+        if (packedLength == length) {
+            System.arraycopy(src, srcOff, dst, dstOff, length);
+            return length;
+        }
+        if (decompressBlock(src, srcOff, packedLength, dst, dstOff, length) != length)
+            throw new CouldNotDecompressDataException("short page");
+        return length;
     }
 
-    protected void decompressBlock() {
+    /**
+     * Decompress a page.
+     *
+     * @param src    the compressed data.
+     * @param srcOff the compressed offset.
+     * @param srcLen the compressed length.
+     * @param dst    the destination buffer.
+     * @param dstOff the destination offset.
+     * @param dstLen the maximum number of bytes to decompress.
+     * @return the number of decompressed bytes.
+     * @throws CouldNotDecompressDataException if the data is corrupt.
+     */
+    protected int decompressBlock(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws CouldNotDecompressDataException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int s = srcOff;
+        int d = dstOff;
+        int flags = 0;
+        int b;
+        int distance;
+        int length;
+        int from;
+        while (s < srcEnd) {
+            flags >>= 1;
+            if ((flags & 0x100) == 0) {
+                flags = (src[s++] & 0xFF) | 0xFF00;
+                if (s >= srcEnd)
+                    break;
+            }
+            if ((flags & 1) != 0) {
+                if (d >= dstEnd)
+                    throw new CouldNotDecompressDataException("overflow");
+                dst[d++] = src[s++];
+            } else {
+                if (s + 1 >= srcEnd)
+                    throw new CouldNotDecompressDataException("truncated match");
+                b = src[s++] & 0xFF;
+                distance = ((b << 4) | ((src[s] & 0xFF) >> 4)) + 1;
+                length = (src[s++] & 0x0F) + MIN_MATCH;
+                from = d - distance;
+                if ((from < dstOff) || (d + length > dstEnd))
+                    throw new CouldNotDecompressDataException("bad match");
+                if (distance >= length) {
+                    System.arraycopy(dst, from, dst, d, length);
+                    d += length;
+                } else {
+                    // Overlapping run.
+                    while (length-- > 0)
+                        dst[d++] = dst[from++];
+                }
+            }
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Read exactly the number of bytes.
+     *
+     * @param in  the input.
+     * @param b   the buffer.
+     * @param off the offset.
+     * @param len the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int count;
+        while (len > 0) {
+            count = in.read(b, off, len);
+            if (count < 0)
+                throw new EOFException();
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Get an integer in network byte order (Big Endian).
+     *
+     * @param b   the bytes.
+     * @param off the offset.
+     * @return the integer.
+     */
+    static int toInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
     }
 }
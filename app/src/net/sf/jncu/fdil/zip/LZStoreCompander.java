@@ -40,4 +40,14 @@ public class LZStoreCompander extends StoreCompander {
     public LZStoreCompander() {
     }
 
+    @Override
+    public Decompressor createDecompressor() {
+        return new LZStoreDecompressor();
+    }
+
+    @Override
+    public Compressor createCompressor() {
+        return new LZCompressor();
+    }
+
 }
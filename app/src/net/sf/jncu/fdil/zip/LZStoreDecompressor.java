@@ -15,6 +15,7 @@
  */
 package net.sf.jncu.fdil.zip;
 
+import net.sf.jncu.fdil.UnsupportedCompressionException;
 import net.sf.jncu.newton.os.Store;
 
 import java.io.File;
@@ -42,28 +43,31 @@ public class LZStoreDecompressor extends StoreDecompressor {
 
     @Override
     protected InputStream createInflaterStream(InputStream in) {
-        return new LZStoreInputStream(in);
+        if (decompressor == null)
+            decompressor = new LZDecompressor();
+        return new LZStoreInputStream(in, getLength(), decompressor);
     }
 
     public static void main(String[] args) throws Exception {
         Decompressor decomp = CompanderFactory.getInstance().createDecompressor("TLZStoreDecompressor");
+        if (decomp == null)
+            throw new UnsupportedCompressionException("TLZStoreDecompressor");
 
         File f = new File("Packages/Hebrew Font:Prism(48).TLZStoreDecompressor");
         File f2 = new File("Packages/Decompressor/Hebrew.pkg");
         InputStream fin = null;
         InputStream de = null;
         OutputStream fout = null;
-        int b;
+        byte[] buf = new byte[LZDecompressor.PAGE_SIZE];
+        int count;
 
         try {
             fin = new FileInputStream(f);
             de = decomp.decompress(fin);
             f2.getParentFile().mkdirs();
             fout = new FileOutputStream(f2);
-            b = de.read();
-            while (b != -1) {
-                fout.write(b);
-                b = de.read();
+            while ((count = de.read(buf)) != -1) {
+                fout.write(buf, 0, count);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -15,23 +15,136 @@
  */
 package net.sf.jncu.fdil.zip;
 
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+
 import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * This class implements an input stream filter for reading files in the
- * Lempel-Ziv Store file format.
+ * Lempel-Ziv Store file format.<br>
+ * The pages are decompressed one at a time, as they are read.
  *
  * @author mwaisberg
+ * @see LZDecompressor
  */
 public class LZStoreInputStream extends FilterInputStream {
 
+    private final LZDecompressor decompressor;
+    /**
+     * The current uncompressed page.
+     */
+    private final byte[] page = new byte[LZDecompressor.PAGE_SIZE];
+    private int pos;
+    private int count;
+    /**
+     * Number of uncompressed bytes in the following pages.
+     */
+    private int remaining;
+
+    /**
+     * Creates a new input stream.
+     *
+     * @param in     the compressed pages.
+     * @param length the uncompressed length.
+     */
+    public LZStoreInputStream(InputStream in, int length) {
+        this(in, length, new LZDecompressor());
+    }
+
     /**
      * Creates a new input stream.
      *
-     * @param in
+     * @param in           the compressed pages.
+     * @param length       the uncompressed length.
+     * @param decompressor the page decompressor.
      */
-    public LZStoreInputStream(InputStream in) {
+    public LZStoreInputStream(InputStream in, int length, LZDecompressor decompressor) {
         super(in);
+        this.remaining = length;
+        this.decompressor = decompressor;
+    }
+
+    /**
+     * Decompress the next page.
+     *
+     * @return {@code false} if no more pages.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean fill() throws IOException {
+        if (remaining <= 0)
+            return false;
+        int length = decompressor.decompressChunk(in, page);
+        if (length < 0)
+            throw new CouldNotDecompressDataException("missing page");
+        // An empty page would leave nothing to read while data remains.
+        if (length == 0)
+            throw new CouldNotDecompressDataException("empty page");
+        if (length > remaining)
+            throw new CouldNotDecompressDataException("page too long");
+        remaining -= length;
+        pos = 0;
+        count = length;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((pos >= count) && !fill())
+            return -1;
+        return page[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        int total = 0;
+        int n;
+        while (len > 0) {
+            if ((pos >= count) && !fill())
+                break;
+            n = Math.min(len, count - pos);
+            System.arraycopy(page, pos, b, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+            total += n;
+        }
+        return (total == 0) ? -1 : total;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        int k;
+        while (skipped < n) {
+            if ((pos >= count) && !fill())
+                break;
+            k = (int) Math.min(n - skipped, count - pos);
+            pos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return count - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
     }
 }
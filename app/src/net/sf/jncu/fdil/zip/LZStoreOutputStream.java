@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class implements an output stream filter for writing files in the
+ * Lempel-Ziv Store file format.<br>
+ * The pages are compressed one at a time, as they are filled.
+ *
+ * @author mwaisberg
+ * @see LZCompressor
+ */
+public class LZStoreOutputStream extends FilterOutputStream {
+
+    private final LZCompressor compressor;
+    /**
+     * The current uncompressed page.
+     */
+    private final byte[] page = new byte[LZDecompressor.PAGE_SIZE];
+    private int count;
+    /**
+     * The uncompressed length.
+     */
+    private final int length;
+    /**
+     * Number of uncompressed bytes written.
+     */
+    private int written;
+    /**
+     * Number of compressed bytes written.
+     */
+    private long packed;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Creates a new output stream.
+     *
+     * @param out    the compressed pages.
+     * @param length the uncompressed length.
+     */
+    public LZStoreOutputStream(OutputStream out, int length) {
+        this(out, length, new LZCompressor());
+    }
+
+    /**
+     * Creates a new output stream.
+     *
+     * @param out        the compressed pages.
+     * @param length     the uncompressed length.
+     * @param compressor the page compressor.
+     */
+    public LZStoreOutputStream(OutputStream out, int length, LZCompressor compressor) {
+        super(out);
+        this.length = length;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Write the header, if not yet written.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            compressor.setHeader(out, length);
+            packed += compressor.headerSize();
+        }
+    }
+
+    /**
+     * Compress the current page.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void flushPage() throws IOException {
+        if (count > 0) {
+            start();
+            packed += compressor.compressChunk(page, count, out);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (written >= length)
+            throw new IOException("too long");
+        page[count++] = (byte) b;
+        written++;
+        if (count == page.length)
+            flushPage();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > length - written)
+            throw new IOException("too long");
+        int n;
+        while (len > 0) {
+            n = Math.min(len, page.length - count);
+            System.arraycopy(b, off, page, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            written += n;
+            if (count == page.length)
+                flushPage();
+        }
+    }
+
+    /**
+     * Finishes writing the compressed data without closing the underlying
+     * stream.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        if (written != length)
+            throw new IOException("expected " + length + " bytes but was " + written);
+        start();
+        flushPage();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get the number of compressed bytes written so far, including the
+     * header.
+     *
+     * @return the number of bytes.
+     */
+    public long getCompressedSize() {
+        return packed;
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.jncu.fdil.UnsupportedCompressionException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Index of the pages of a large binary that was compressed by the Lempel-Ziv
+ * Store compander.<br>
+ * Each page is compressed independently, so any page can be decompressed
+ * without the earlier pages, and many pages can be decompressed in parallel.
+ *
+ * @author mwaisberg
+ * @see LZDecompressor
+ */
+public class LZStorePageIndex {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int PAGE_HEADER_SIZE = LZDecompressor.PAGE_HEADER_SIZE;
+    /**
+     * Number of pages that each task decompresses.
+     */
+    private static final int TASK_PAGES = 16;
+
+    /**
+     * Task that decompresses a range of pages.
+     */
+    private static class PagesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient LZStorePageIndex index;
+        private final int pageFirst;
+        private final int pageEnd;
+        private final byte[] dst;
+        private final int dstBase;
+
+        /**
+         * Creates a new task.
+         *
+         * @param index     the index.
+         * @param pageFirst the first page.
+         * @param pageEnd   the page after the last page.
+         * @param dst       the destination buffer.
+         * @param dstBase   the destination offset of uncompressed offset
+         *                  {@code 0}.
+         */
+        public PagesTask(LZStorePageIndex index, int pageFirst, int pageEnd, byte[] dst, int dstBase) {
+            super();
+            this.index = index;
+            this.pageFirst = pageFirst;
+            this.pageEnd = pageEnd;
+            this.dst = dst;
+            this.dstBase = dstBase;
+        }
+
+        @Override
+        protected void compute() {
+            int count = pageEnd - pageFirst;
+            if (count <= TASK_PAGES) {
+                try {
+                    index.decompressPages(pageFirst, pageEnd, dst, dstBase);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int pageMid = pageFirst + (count >> 1);
+            invokeAll(new PagesTask(index, pageFirst, pageMid, dst, dstBase), new PagesTask(index, pageMid, pageEnd, dst, dstBase));
+        }
+    }
+
+    private final NSOFLargeBinary blob;
+    private final int length;
+    private int pageCount;
+    /**
+     * Offset of each page's compressed data within the large binary.
+     */
+    private int[] packedOffsets;
+    /**
+     * Compressed length of each page.
+     */
+    private int[] packedLengths;
+    /**
+     * Uncompressed offset of each page, and the total length at the end.
+     */
+    private int[] offsets;
+    /**
+     * Decompressor for reading single pages.
+     */
+    private final LZDecompressor decompressor = new LZDecompressor();
+    private byte[] packed;
+
+    /**
+     * Creates a new index, by reading the page headers.
+     *
+     * @param blob the compressed large binary.
+     * @throws IOException if an I/O error occurs.
+     */
+    public LZStorePageIndex(NSOFLargeBinary blob) throws IOException {
+        super();
+        if (!blob.isCompressed() || !NSOFLargeBinary.COMPANDER_JNCU_LZ.equals(blob.getCompanderName()))
+            throw new UnsupportedCompressionException(blob.getCompanderName());
+        this.blob = blob;
+        byte[] header = new byte[PAGE_HEADER_SIZE];
+        synchronized (blob) {
+            int size = blob.getLength();
+            if (size < HEADER_SIZE)
+                throw new CouldNotDecompressDataException("missing header");
+            blob.read(0, header, 0, HEADER_SIZE);
+            this.length = LZDecompressor.toInt(header, 4);
+            if (length < 0)
+                throw new CouldNotDecompressDataException("bad header");
+            int capacity = (length + LZDecompressor.PAGE_SIZE - 1) / LZDecompressor.PAGE_SIZE;
+            packedOffsets = new int[capacity];
+            packedLengths = new int[capacity];
+            offsets = new int[capacity + 1];
+            int offset = HEADER_SIZE;
+            int uncompressed = 0;
+            int packedLength;
+            int pageLength;
+            while (uncompressed < length) {
+                if (offset + PAGE_HEADER_SIZE > size)
+                    throw new CouldNotDecompressDataException("missing page");
+                blob.read(offset, header, 0, PAGE_HEADER_SIZE);
+                offset += PAGE_HEADER_SIZE;
+                packedLength = LZDecompressor.toInt(header, 0);
+                pageLength = LZDecompressor.toInt(header, 4);
+                if ((packedLength < 0) || (packedLength > LZDecompressor.PAGE_SIZE) || (pageLength < packedLength) || (pageLength == 0) || (pageLength > LZDecompressor.PAGE_SIZE) || (pageLength > length - uncompressed) || (offset + packedLength > size))
+                    throw new CouldNotDecompressDataException("bad page header");
+                if (pageCount == packedOffsets.length) {
+                    capacity = pageCount + (pageCount >> 1) + 1;
+                    packedOffsets = Arrays.copyOf(packedOffsets, capacity);
+                    packedLengths = Arrays.copyOf(packedLengths, capacity);
+                    offsets = Arrays.copyOf(offsets, capacity + 1);
+                }
+                packedOffsets[pageCount] = offset;
+                packedLengths[pageCount] = packedLength;
+                offsets[pageCount] = uncompressed;
+                pageCount++;
+                offset += packedLength;
+                uncompressed += pageLength;
+            }
+            offsets[pageCount] = uncompressed;
+        }
+    }
+
+    /**
+     * Get the uncompressed length.
+     *
+     * @return the length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the number of pages.
+     *
+     * @return the number of pages.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Get the uncompressed offset of the page.
+     *
+     * @param page the page number.
+     * @return the offset.
+     */
+    public int getPageOffset(int page) {
+        if ((page < 0) || (page > pageCount))
+            throw new IndexOutOfBoundsException(String.valueOf(page));
+        return offsets[page];
+    }
+
+    /**
+     * Get the uncompressed length of the page.
+     *
+     * @param page the page number.
+     * @return the length.
+     */
+    public int getPageLength(int page) {
+        if ((page < 0) || (page >= pageCount))
+            throw new IndexOutOfBoundsException(String.valueOf(page));
+        return offsets[page + 1] - offsets[page];
+    }
+
+    /**
+     * Decompress a single page, without decompressing any other page.
+     *
+     * @param page the page number.
+     * @param b    the destination buffer.
+     * @param off  the destination offset.
+     * @return the page length.
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized int readPage(int page, byte[] b, int off) throws IOException {
+        int pageLength = getPageLength(page);
+        int packedLength = packedLengths[page];
+        if (packed == null)
+            packed = new byte[LZDecompressor.PAGE_SIZE];
+        synchronized (blob) {
+            blob.read(packedOffsets[page], packed, 0, packedLength);
+        }
+        return decompressor.decompressPage(packed, 0, packedLength, b, off, pageLength);
+    }
+
+    /**
+     * Decompress a range of pages.
+     *
+     * @param pageFirst the first page.
+     * @param pageEnd   the page after the last page.
+     * @param dst       the destination buffer.
+     * @param dstBase   the destination offset of uncompressed offset
+     *                  {@code 0}.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void decompressPages(int pageFirst, int pageEnd, byte[] dst, int dstBase) throws IOException {
+        int from = packedOffsets[pageFirst];
+        int to = packedOffsets[pageEnd - 1] + packedLengths[pageEnd - 1];
+        byte[] src = new byte[to - from];
+        synchronized (blob) {
+            blob.read(from, src, 0, src.length);
+        }
+        LZDecompressor decompressor = new LZDecompressor();
+        for (int page = pageFirst; page < pageEnd; page++) {
+            decompressor.decompressPage(src, packedOffsets[page] - from, packedLengths[page], dst, dstBase + offsets[page], offsets[page + 1] - offsets[page]);
+        }
+    }
+
+    /**
+     * Decompress a range of pages in parallel.
+     *
+     * @param pageFirst the first page.
+     * @param pageEnd   the page after the last page.
+     * @param dst       the destination buffer.
+     * @param dstBase   the destination offset of uncompressed offset
+     *                  {@code 0}.
+     * @param pool      the pool.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void decompressPages(int pageFirst, int pageEnd, byte[] dst, int dstBase, ForkJoinPool pool) throws IOException {
+        if (pageFirst >= pageEnd)
+            return;
+        try {
+            pool.invoke(new PagesTask(this, pageFirst, pageEnd, dst, dstBase));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Decompress all the pages in parallel.
+     *
+     * @param pool the pool.
+     * @return the uncompressed data.
+     * @throws IOException if an I/O error occurs.
+     */
+    public byte[] decompress(ForkJoinPool pool) throws IOException {
+        byte[] b = new byte[length];
+        decompressPages(0, pageCount, b, 0, pool);
+        return b;
+    }
+
+    /**
+     * Decompress all the pages in parallel, and write them in order.<br>
+     * Only a few pages for each worker are held in memory at a time.
+     *
+     * @param out  the output.
+     * @param pool the pool.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void decompress(OutputStream out, ForkJoinPool pool) throws IOException {
+        final int batchPages = TASK_PAGES * pool.getParallelism() * 2;
+        byte[] batch = null;
+        int pageEnd;
+        int batchLength;
+        for (int page = 0; page < pageCount; page = pageEnd) {
+            pageEnd = Math.min(pageCount, page + batchPages);
+            batchLength = offsets[pageEnd] - offsets[page];
+            if ((batch == null) || (batch.length < batchLength))
+                batch = new byte[batchLength];
+            decompressPages(page, pageEnd, batch, -offsets[page], pool);
+            out.write(batch, 0, batchLength);
+        }
+    }
+}
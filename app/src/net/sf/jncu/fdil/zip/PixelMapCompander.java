@@ -20,6 +20,11 @@ package net.sf.jncu.fdil.zip;
  * is a pixel map having a bit depth of 1.) This compander assumes that the data
  * in the VBO is a pixel map and that the pixel map data is 32-bit aligned; that
  * is, the length of the rows in the pixel map is an even multiple of 4 bytes.
+ * <p>
+ * The pixel map is stored in plain Lempel-Ziv pages, and not in the format of
+ * the Newton <tt>TPixelMapCompander</tt>, so the compander is registered only
+ * as {@link CompanderFactory#COMPANDER_JNCU_PIXELMAP}, and pixel maps that
+ * were compressed by a device cannot be expanded.
  *
  * @author mwaisberg
  */
@@ -31,4 +36,14 @@ public class PixelMapCompander extends StoreCompander {
     public PixelMapCompander() {
     }
 
+    @Override
+    public Decompressor createDecompressor() {
+        return new PixelMapDecompressor();
+    }
+
+    @Override
+    public Compressor createCompressor() {
+        return new LZCompressor();
+    }
+
 }
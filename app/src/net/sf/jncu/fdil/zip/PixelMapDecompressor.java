@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+import net.sf.jncu.fdil.NSOFLargeBinary;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pixel map decompressor.<br>
+ * The pixel map is compressed in Lempel-Ziv pages, and can be expanded
+ * straight into the raster of an image without copying.
+ * <p>
+ * This is not the format of the Newton <tt>TPixelMapCompander</tt>, which is
+ * not known, so pixel maps that were compressed by a device cannot be
+ * expanded.
+ *
+ * @author mwaisberg
+ */
+public class PixelMapDecompressor extends LZDecompressor {
+
+    /**
+     * Size of the pixel map header.
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Black and white - {@code 0} is white, {@code 1} is black.
+     */
+    private static final IndexColorModel COLORS_1 = createGrays(1);
+    /**
+     * 16 shades of gray - {@code 0} is white, {@code 15} is black.
+     */
+    private static final IndexColorModel COLORS_4 = createGrays(4);
+
+    private final byte[] header = new byte[HEADER_SIZE];
+
+    /**
+     * Creates new decompressor.
+     */
+    public PixelMapDecompressor() {
+    }
+
+    /**
+     * Create the gray scale, from white to black.
+     *
+     * @param bitDepth the bit depth.
+     * @return the colours.
+     */
+    private static IndexColorModel createGrays(int bitDepth) {
+        final int size = 1 << bitDepth;
+        final int step = 255 / (size - 1);
+        byte[] grays = new byte[size];
+        for (int i = 0; i < size; i++)
+            grays[i] = (byte) (255 - (i * step));
+        return new IndexColorModel(bitDepth, size, grays, grays, grays);
+    }
+
+    /**
+     * Expand the pixel map into an image.<br>
+     * Each image has its own raster.
+     *
+     * @param blob the compressed pixel map.
+     * @return the image.
+     * @throws IOException if an I/O error occurs.
+     */
+    public BufferedImage expand(NSOFLargeBinary blob) throws IOException {
+        InputStream in = decompress(blob);
+        try {
+            return expand(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Expand the pixel map into an image.
+     *
+     * @param in the uncompressed pixel map.
+     * @return the image.
+     * @throws IOException if an I/O error occurs.
+     * @see #expand(NSOFLargeBinary)
+     */
+    protected BufferedImage expand(InputStream in) throws IOException {
+        final byte[] header = this.header;
+        readFully(in, header, 0, header.length);
+        final int rowBytes = toShort(header, 4) & 0xFFFF;
+        final int top = toShort(header, 8);
+        final int left = toShort(header, 10);
+        final int bottom = toShort(header, 12);
+        final int right = toShort(header, 14);
+        final int width = right - left;
+        final int height = bottom - top;
+        if ((width <= 0) || (height <= 0) || ((rowBytes & 0x03) != 0) || (rowBytes << 3 < width))
+            throw new CouldNotDecompressDataException("bad pixel map header");
+        // Same guess as NSOFRawBitmap.
+        final int bitDepth = ((rowBytes > 4) && ((rowBytes << 3) / width >= 4)) ? 4 : 1;
+
+        final int size = rowBytes * height;
+        byte[] raster = new byte[size];
+        readFully(in, raster, 0, size);
+
+        DataBuffer buffer = new DataBufferByte(raster, size);
+        MultiPixelPackedSampleModel model = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, width, height, bitDepth, rowBytes, 0);
+        WritableRaster pixels = Raster.createWritableRaster(model, buffer, null);
+        return new BufferedImage((bitDepth == 1) ? COLORS_1 : COLORS_4, pixels, false, null);
+    }
+
+    /**
+     * Get a signed short in network byte order (Big Endian).
+     *
+     * @param b   the bytes.
+     * @param off the offset.
+     * @return the short.
+     */
+    private static int toShort(byte[] b, int off) {
+        return (short) (((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF));
+    }
+}
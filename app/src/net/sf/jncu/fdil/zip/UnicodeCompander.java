@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+/**
+ * A compressor-expander (compander) specialized for text. This compander
+ * assumes that the data in the VBO is UTF-16 characters in network byte order
+ * (Big Endian).
+ *
+ * @author mwaisberg
+ */
+public class UnicodeCompander extends Compander {
+
+    /**
+     * Creates a new compander.
+     */
+    public UnicodeCompander() {
+    }
+
+    @Override
+    public Decompressor createDecompressor() {
+        return new UnicodeDecompressor();
+    }
+
+    @Override
+    public Compressor createCompressor() {
+        return new UnicodeCompressor();
+    }
+}
@@ -19,21 +19,55 @@ import java.io.OutputStream;
 
 /**
  * Unicode text compressor.
+ * <p>
+ * The text is UTF-16 in network byte order (Big Endian). Each character is
+ * usually compressed to a single byte:
+ * <ul>
+ * <li>{@code 0x00} and {@code 0x04}-{@code 0x7F} - the ASCII character.</li>
+ * <li>{@code 0x80}-{@code 0xFF} - a character in the current window of 128
+ * characters, which starts at {@link #WINDOW_DEFAULT}.</li>
+ * <li>{@link #TAG_WINDOW} and 2 bytes - move the window.</li>
+ * <li>{@link #TAG_QUOTE} and 2 bytes - a character outside the window.</li>
+ * </ul>
+ * An odd last byte is compressed as the high byte of a character.
+ * <p>
+ * This format is private to this library, and is not the format of the Newton
+ * <tt>TUnicodeCompressor</tt>, so it is registered only under private names.
  *
  * @author mwaisberg
+ * @see UnicodeDecompressor
  */
 public class UnicodeCompressor extends Compressor {
 
+    /**
+     * Version of the compressed format.
+     */
+    static final byte VERSION = 1;
+    /**
+     * Move the window.
+     */
+    static final byte TAG_WINDOW = 0x01;
+    /**
+     * Quote a character.
+     */
+    static final byte TAG_QUOTE = 0x02;
+    /**
+     * Reserved.
+     */
+    static final byte TAG_RESERVED = 0x03;
+    /**
+     * The first window - Latin-1.
+     */
+    static final int WINDOW_DEFAULT = 0x0080;
+
     /**
      * Creates new compressor.
      */
     public UnicodeCompressor() {
-        // TODO Auto-generated constructor stub
     }
 
     @Override
     protected OutputStream createDeflaterStream(OutputStream out) {
-        // TODO Auto-generated method stub
-        return null;
+        return new UnicodeOutputStream(out, getLength());
     }
 }
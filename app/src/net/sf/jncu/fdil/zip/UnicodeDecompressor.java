@@ -19,6 +19,10 @@ import java.io.InputStream;
 
 /**
  * Unicode text decompressor.
+ * <p>
+ * Expands the text into UTF-16 in network byte order (Big Endian), from the
+ * private format of {@link UnicodeCompressor}, and not the format of the
+ * Newton <tt>TUnicodeDecompressor</tt>.
  *
  * @author mwaisberg
  */
@@ -32,8 +36,7 @@ public class UnicodeDecompressor extends Decompressor {
 
     @Override
     protected InputStream createInflaterStream(InputStream in) {
-        // TODO Auto-generated method stub
-        return null;
+        return new UnicodeInputStream(in, getLength());
     }
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class implements an input stream filter that expands compressed
+ * Unicode text into UTF-16 characters in network byte order (Big Endian).
+ *
+ * @author mwaisberg
+ * @see UnicodeDecompressor
+ */
+public class UnicodeInputStream extends FilterInputStream {
+
+    /**
+     * The compressed bytes.
+     */
+    private final byte[] src = new byte[1024];
+    private int srcPos;
+    private int srcCount;
+    /**
+     * The first character for each half of the byte values - the ASCII
+     * characters, and then the characters of the current window.
+     */
+    private final int[] windows = {0, UnicodeCompressor.WINDOW_DEFAULT};
+    /**
+     * The low byte of a character that was only half read, or {@code -1}.
+     */
+    private int pendingLow = -1;
+    /**
+     * Number of uncompressed bytes left.
+     */
+    private int remaining;
+    private byte[] skipped;
+
+    /**
+     * Creates a new input stream.
+     *
+     * @param in     the compressed text.
+     * @param length the uncompressed length in bytes.
+     */
+    public UnicodeInputStream(InputStream in, int length) {
+        super(in);
+        this.remaining = length;
+    }
+
+    /**
+     * Make sure that there are enough compressed bytes in the buffer.
+     *
+     * @param n the number of bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void ensure(int n) throws IOException {
+        if (srcCount - srcPos >= n)
+            return;
+        if (srcPos > 0) {
+            System.arraycopy(src, srcPos, src, 0, srcCount - srcPos);
+            srcCount -= srcPos;
+            srcPos = 0;
+        }
+        int count;
+        while (srcCount < n) {
+            count = in.read(src, srcCount, src.length - srcCount);
+            if (count < 0)
+                throw new CouldNotDecompressDataException("truncated text");
+            srcCount += count;
+        }
+    }
+
+    /**
+     * Decode the next character.
+     *
+     * @return the character.
+     * @throws IOException if an I/O error occurs.
+     */
+    private int decode() throws IOException {
+        final byte[] src = this.src;
+        int t;
+        while (true) {
+            if (srcPos >= srcCount)
+                ensure(1);
+            t = src[srcPos] & 0xFF;
+            switch (t) {
+                case UnicodeCompressor.TAG_WINDOW:
+                    ensure(3);
+                    windows[1] = (((src[srcPos + 1] & 0xFF) << 8) | (src[srcPos + 2] & 0xFF)) & 0xFF80;
+                    srcPos += 3;
+                    break;
+                case UnicodeCompressor.TAG_QUOTE:
+                    ensure(3);
+                    t = ((src[srcPos + 1] & 0xFF) << 8) | (src[srcPos + 2] & 0xFF);
+                    srcPos += 3;
+                    return t;
+                case UnicodeCompressor.TAG_RESERVED:
+                    throw new CouldNotDecompressDataException("bad tag");
+                default:
+                    srcPos++;
+                    return windows[t >> 7] + (t & 0x7F);
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pendingLow >= 0) {
+            int b = pendingLow;
+            pendingLow = -1;
+            return b;
+        }
+        if (remaining <= 0)
+            return -1;
+        int c = decode();
+        if (remaining == 1) {
+            // Odd length, so the last byte is half of a character.
+            remaining = 0;
+            return c >> 8;
+        }
+        remaining -= 2;
+        pendingLow = c & 0xFF;
+        return c >> 8;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        final int start = off;
+        if (pendingLow >= 0) {
+            b[off++] = (byte) pendingLow;
+            pendingLow = -1;
+            len--;
+        }
+        final byte[] src = this.src;
+        final int[] windows = this.windows;
+        final int n = Math.min(len, remaining) & ~1;
+        final int end = off + n;
+        int t;
+        int c;
+        while (off < end) {
+            // Fast path for the bytes that are characters.
+            if (srcPos < srcCount) {
+                t = src[srcPos] & 0xFF;
+                if (t > UnicodeCompressor.TAG_RESERVED) {
+                    srcPos++;
+                    c = windows[t >> 7] + (t & 0x7F);
+                    b[off++] = (byte) (c >> 8);
+                    b[off++] = (byte) c;
+                    continue;
+                }
+            }
+            c = decode();
+            b[off++] = (byte) (c >> 8);
+            b[off++] = (byte) c;
+        }
+        remaining -= n;
+        if ((len > n) && (remaining > 0)) {
+            // Odd length, so keep half of a character.
+            b[off++] = (byte) read();
+        }
+        return (off == start) ? -1 : off - start;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (skipped == null)
+            skipped = new byte[1024];
+        long total = 0;
+        int count;
+        while (total < n) {
+            count = read(skipped, 0, (int) Math.min(n - total, skipped.length));
+            if (count <= 0)
+                break;
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (pendingLow >= 0) ? 1 : 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class implements an output stream filter that compresses UTF-16
+ * characters in network byte order (Big Endian).
+ *
+ * @author mwaisberg
+ * @see UnicodeCompressor
+ */
+public class UnicodeOutputStream extends FilterOutputStream {
+
+    private final byte[] buf = new byte[1024];
+    private int count;
+    /**
+     * The first character of the current window.
+     */
+    private int window = UnicodeCompressor.WINDOW_DEFAULT;
+    /**
+     * The window of the last quoted character.
+     */
+    private int windowQuoted = -1;
+    /**
+     * The high byte of a character that was only half written, or
+     * {@code -1}.
+     */
+    private int pendingHigh = -1;
+    /**
+     * The uncompressed length.
+     */
+    private final int length;
+    /**
+     * Number of uncompressed bytes written.
+     */
+    private int written;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Creates a new output stream.
+     *
+     * @param out    the output for the compressed text.
+     * @param length the uncompressed length in bytes.
+     */
+    public UnicodeOutputStream(OutputStream out, int length) {
+        super(out);
+        this.length = length;
+    }
+
+    /**
+     * Write the buffer, and the header before the first buffer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void flushBuffer() throws IOException {
+        if (!started) {
+            started = true;
+            byte[] header = new byte[8];
+            header[3] = UnicodeCompressor.VERSION;
+            header[4] = (byte) (length >> 24);
+            header[5] = (byte) (length >> 16);
+            header[6] = (byte) (length >> 8);
+            header[7] = (byte) length;
+            out.write(header);
+        }
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Encode a character.
+     *
+     * @param c the character.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void encode(int c) throws IOException {
+        if (count > buf.length - 4)
+            flushBuffer();
+        final byte[] buf = this.buf;
+        if (c < 0x80) {
+            if ((c >= UnicodeCompressor.TAG_WINDOW) && (c <= UnicodeCompressor.TAG_RESERVED)) {
+                buf[count++] = UnicodeCompressor.TAG_QUOTE;
+                buf[count++] = 0;
+                buf[count++] = (byte) c;
+            } else {
+                buf[count++] = (byte) c;
+            }
+            return;
+        }
+        int w = c & 0xFF80;
+        if (w != window) {
+            if (w != windowQuoted) {
+                // Quote the first character of another script.
+                buf[count++] = UnicodeCompressor.TAG_QUOTE;
+                buf[count++] = (byte) (c >> 8);
+                buf[count++] = (byte) c;
+                windowQuoted = w;
+                return;
+            }
+            buf[count++] = UnicodeCompressor.TAG_WINDOW;
+            buf[count++] = (byte) (w >> 8);
+            buf[count++] = (byte) w;
+            window = w;
+        }
+        buf[count++] = (byte) (0x80 | (c - w));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (written >= length)
+            throw new IOException("too long");
+        written++;
+        if (pendingHigh < 0) {
+            pendingHigh = b & 0xFF;
+        } else {
+            encode((pendingHigh << 8) | (b & 0xFF));
+            pendingHigh = -1;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > length - written)
+            throw new IOException("too long");
+        final int end = off + len;
+        if ((pendingHigh >= 0) && (off < end)) {
+            encode((pendingHigh << 8) | (b[off++] & 0xFF));
+            pendingHigh = -1;
+        }
+        final byte[] buf = this.buf;
+        int window = this.window;
+        int c;
+        while (off + 1 < end) {
+            c = ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+            off += 2;
+            // Fast path for ASCII and the current window.
+            if ((count < buf.length) && ((c > UnicodeCompressor.TAG_RESERVED) || (c == 0))) {
+                if (c < 0x80) {
+                    buf[count++] = (byte) c;
+                    continue;
+                }
+                if ((c - window) >>> 7 == 0) {
+                    buf[count++] = (byte) (0x80 | (c - window));
+                    continue;
+                }
+            }
+            encode(c);
+            window = this.window;
+        }
+        if (off < end)
+            pendingHigh = b[off] & 0xFF;
+        written += len;
+    }
+
+    /**
+     * Finishes writing the compressed text without closing the underlying
+     * stream.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        if (written != length)
+            throw new IOException("expected " + length + " bytes but was " + written);
+        if (pendingHigh >= 0) {
+            // Odd length, so the last byte is half of a character.
+            encode(pendingHigh << 8);
+            pendingHigh = -1;
+        }
+        flushBuffer();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
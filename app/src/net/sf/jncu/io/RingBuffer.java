@@ -0,0 +1,460 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free byte ring buffer for a single producer thread and a single consumer
+ * thread. Behaves like a pipe, but without polling: a blocked reader (or
+ * writer) is parked, and woken as soon as the other side makes progress.
+ *
+ * @author moshew
+ */
+public class RingBuffer {
+
+    /**
+     * Default capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final byte[] buffer;
+    private final int mask;
+    /**
+     * Total number of bytes read. Only modified by the consumer.
+     */
+    private volatile long readIndex;
+    /**
+     * Total number of bytes written. Only modified by the producer.
+     */
+    private volatile long writeIndex;
+    private volatile Thread readerWaiting;
+    private volatile Thread writerWaiting;
+    /**
+     * The producer will not write any more.
+     */
+    private volatile boolean writeClosed;
+    /**
+     * The consumer will not read any more.
+     */
+    private volatile boolean readClosed;
+    private InputStream in;
+    private OutputStream out;
+
+    /**
+     * Creates a new buffer with default capacity.
+     */
+    public RingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param capacity the minimum capacity, rounded up to a power of 2.
+     */
+    public RingBuffer(int capacity) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the capacity.
+     *
+     * @return the number of bytes.
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Get the number of bytes that can be read without blocking.
+     *
+     * @return the number of bytes.
+     */
+    public int available() {
+        return (int) (writeIndex - readIndex);
+    }
+
+    /**
+     * Get the number of bytes that can be written without blocking.
+     *
+     * @return the number of bytes.
+     */
+    public int remaining() {
+        return buffer.length - available();
+    }
+
+    /**
+     * Is the buffer closed for writing?
+     *
+     * @return {@code true} if no more data will arrive.
+     */
+    public boolean isWriteClosed() {
+        return writeClosed;
+    }
+
+    /**
+     * Is the buffer closed for reading?
+     *
+     * @return {@code true} if the data will never be read.
+     */
+    public boolean isClosed() {
+        return readClosed;
+    }
+
+    /**
+     * Signal that no more data will be written. The reader can still read the
+     * remaining data before reaching the end of stream.
+     */
+    public void closeWrite() {
+        writeClosed = true;
+        LockSupport.unpark(readerWaiting);
+    }
+
+    /**
+     * Close the buffer. Pending and future writes fail.
+     */
+    public void close() {
+        readClosed = true;
+        writeClosed = true;
+        LockSupport.unpark(readerWaiting);
+        LockSupport.unpark(writerWaiting);
+    }
+
+    /**
+     * Write bytes without blocking.
+     *
+     * @param b      the data.
+     * @param offset the array offset.
+     * @param length the number of bytes.
+     * @return the number of bytes written.
+     * @throws IOException if the buffer is closed.
+     */
+    public int offer(byte[] b, int offset, int length) throws IOException {
+        if (readClosed || writeClosed) {
+            throw new IOException("Pipe closed");
+        }
+        final long w = writeIndex;
+        final int count = Math.min(length, buffer.length - (int) (w - readIndex));
+        if (count <= 0) {
+            return 0;
+        }
+        final int index = (int) w & mask;
+        final int first = Math.min(count, buffer.length - index);
+        System.arraycopy(b, offset, buffer, index, first);
+        if (first < count) {
+            System.arraycopy(b, offset + first, buffer, 0, count - first);
+        }
+        writeIndex = w + count;
+        LockSupport.unpark(readerWaiting);
+        return count;
+    }
+
+    /**
+     * Write bytes, blocking while the buffer is full.
+     *
+     * @param b      the data.
+     * @param offset the array offset.
+     * @param length the number of bytes.
+     * @throws IOException if the buffer is closed, or the thread is
+     *                     interrupted.
+     */
+    public void write(byte[] b, int offset, int length) throws IOException {
+        int count;
+        while (length > 0) {
+            count = offer(b, offset, length);
+            if (count > 0) {
+                offset += count;
+                length -= count;
+                continue;
+            }
+            writerWaiting = Thread.currentThread();
+            if ((remaining() == 0) && !readClosed) {
+                LockSupport.park(this);
+            }
+            writerWaiting = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Read bytes without blocking.
+     *
+     * @param b      the destination buffer.
+     * @param offset the array offset.
+     * @param length the maximum number of bytes.
+     * @return the number of bytes read, possibly {@code 0} - or {@code -1} if
+     * the end of stream has been reached.
+     */
+    public int poll(byte[] b, int offset, int length) {
+        final long r = readIndex;
+        final int count = Math.min(length, (int) (writeIndex - r));
+        if (count <= 0) {
+            if (writeClosed && (writeIndex == r)) {
+                return -1;
+            }
+            return 0;
+        }
+        final int index = (int) r & mask;
+        final int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, b, offset, first);
+        if (first < count) {
+            System.arraycopy(buffer, 0, b, offset + first, count - first);
+        }
+        readIndex = r + count;
+        LockSupport.unpark(writerWaiting);
+        return count;
+    }
+
+    /**
+     * Read a byte without blocking.
+     *
+     * @return the byte value, or {@code -1} if no data is available.
+     */
+    public int poll() {
+        final long r = readIndex;
+        if (writeIndex == r) {
+            return -1;
+        }
+        final int b = buffer[(int) r & mask] & 0xFF;
+        readIndex = r + 1;
+        LockSupport.unpark(writerWaiting);
+        return b;
+    }
+
+    /**
+     * Read bytes, blocking until at least one byte is available.
+     *
+     * @param b      the destination buffer.
+     * @param offset the array offset.
+     * @param length the maximum number of bytes.
+     * @return the number of bytes read - or {@code -1} if the end of stream
+     * has been reached.
+     * @throws IOException if the thread is interrupted.
+     */
+    public int read(byte[] b, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!awaitAvailable()) {
+            return -1;
+        }
+        return poll(b, offset, length);
+    }
+
+    /**
+     * Read bytes, blocking until at least one byte is available or the timeout
+     * elapses.
+     *
+     * @param b       the destination buffer.
+     * @param offset  the array offset.
+     * @param length  the maximum number of bytes.
+     * @param timeout the maximum time to wait.
+     * @param unit    the time unit.
+     * @return the number of bytes read, possibly {@code 0} - or {@code -1} if
+     * the end of stream has been reached.
+     * @throws IOException if the thread is interrupted.
+     */
+    public int read(byte[] b, int offset, int length, long timeout, TimeUnit unit) throws IOException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long delay;
+        int count;
+        while ((count = poll(b, offset, length)) == 0) {
+            delay = deadline - System.nanoTime();
+            if ((delay <= 0L) || (length == 0)) {
+                break;
+            }
+            readerWaiting = Thread.currentThread();
+            if ((available() == 0) && !writeClosed) {
+                LockSupport.parkNanos(this, delay);
+            }
+            readerWaiting = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Wait until data is available, or the end of stream is reached.
+     *
+     * @return {@code true} if data is available.
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    public boolean awaitAvailable() throws InterruptedIOException {
+        while (available() == 0) {
+            if (writeClosed) {
+                return available() > 0;
+            }
+            readerWaiting = Thread.currentThread();
+            if ((available() == 0) && !writeClosed) {
+                LockSupport.park(this);
+            }
+            readerWaiting = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read exactly the requested number of bytes.
+     *
+     * @param b      the destination buffer.
+     * @param offset the array offset.
+     * @param length the number of bytes.
+     * @throws EOFException if end of stream is reached first.
+     * @throws IOException  if the thread is interrupted.
+     */
+    public void readFully(byte[] b, int offset, int length) throws IOException {
+        int count;
+        while (length > 0) {
+            count = read(b, offset, length);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Get the stream for reading from the buffer. Blocks while empty.
+     *
+     * @return the stream.
+     */
+    public InputStream getInputStream() {
+        if (in == null) {
+            in = new RingInputStream();
+        }
+        return in;
+    }
+
+    /**
+     * Get the stream for writing to the buffer. Blocks while full.
+     *
+     * @return the stream.
+     */
+    public OutputStream getOutputStream() {
+        if (out == null) {
+            out = new RingOutputStream();
+        }
+        return out;
+    }
+
+    /**
+     * Input stream that reads from the ring buffer.
+     *
+     * @author moshew
+     */
+    private class RingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            int b = poll();
+            if (b >= 0) {
+                return b;
+            }
+            if (!awaitAvailable()) {
+                return -1;
+            }
+            return poll();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return RingBuffer.this.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0L;
+            int count;
+            while (skipped < n) {
+                count = (int) Math.min(n - skipped, available());
+                if (count <= 0) {
+                    if (!awaitAvailable()) {
+                        break;
+                    }
+                    continue;
+                }
+                readIndex += count;
+                LockSupport.unpark(writerWaiting);
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return RingBuffer.this.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            RingBuffer.this.close();
+        }
+    }
+
+    /**
+     * Output stream that writes to the ring buffer.
+     *
+     * @author moshew
+     */
+    private class RingOutputStream extends OutputStream {
+
+        private final byte[] one = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            one[0] = (byte) b;
+            RingBuffer.this.write(one, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            RingBuffer.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (readClosed) {
+                return;
+            }
+            closeWrite();
+        }
+    }
+
+}
@@ -18,11 +18,14 @@ package net.sf.jncu.newton.os;
 import net.sf.jncu.fdil.NSOFFrame;
 import net.sf.jncu.fdil.NSOFInteger;
 import net.sf.jncu.fdil.NSOFReal;
+import net.sf.jncu.fdil.NSOFSlot;
 import net.sf.jncu.fdil.NSOFString;
 import net.sf.jncu.fdil.NSOFSymbol;
 
 /**
- * Newton device information.
+ * Newton device information.<br>
+ * The fields are bound to the frame slots, so that backup archives decode and
+ * encode the information with {@link net.sf.jncu.fdil.NSOFBinding}.
  *
  * @author moshew
  */
@@ -59,66 +62,83 @@ public class NewtonInfo {
     public static final NSOFSymbol SLOT_SERIAL = new NSOFSymbol("serialNumber");
     public static final NSOFSymbol SLOT_PROTOCOL = new NSOFSymbol("targetProtocol");
 
+    @NSOFSlot("name")
     private String name;
     /**
      * A unique id to identify a particular newton.
      */
+    @NSOFSlot("newtonId")
     private int newtonId;
     /**
      * A decimal integer indicating the manufacturer of the device.
      */
+    @NSOFSlot("manufacturerId")
     private int manufacturer;
     /**
      * A decimal integer indicating the hardware type of the device.
      */
+    @NSOFSlot("machineType")
     private int machineType;
     /**
      * A decimal number indicating the major and minor ROM version numbers. The
      * major number is in front of the decimal, the minor number after
      */
+    @NSOFSlot("romVersion")
     private int romVersion;
     /**
      * A decimal integer indicating the language (English, German, French) and
      * the stage of the ROM (alpha, beta, final).
      */
+    @NSOFSlot("romStage")
     private int romStage;
+    @NSOFSlot("ramSize")
     private int ramSize;
     /**
      * An integer representing the height of the screen in pixels.
      */
+    @NSOFSlot("screenHeight")
     private int screenHeight;
     /**
      * An integer representing the width of the screen in pixels.
      */
+    @NSOFSlot("screenWidth")
     private int screenWidth;
     /**
      * 0 on an unpatched Newton and non-zero on a patched Newton.
      */
+    @NSOFSlot("patchVersion")
     private int patchVersion;
+    @NSOFSlot("objectSystemVersion")
     private int objectSystemVersion;
     /**
      * Signature of the internal store.
      */
+    @NSOFSlot("internalStoreSignature")
     private int internalStoreSignature;
     /**
      * An integer representing the number of vertical pixels per inch.
      */
+    @NSOFSlot("screenResolutionVertical")
     private int screenResolutionVertical;
     /**
      * An integer representing the number of horizontal pixels per inch.
      */
+    @NSOFSlot("screenResolutionHorizontal")
     private int screenResolutionHorizontal;
     /**
      * The bit depth of the LCD screen.
      */
+    @NSOFSlot("screenDepth")
     private int screenDepth;
     /**
      * Serial number.
      */
+    @NSOFSlot("serialNumber")
     private long serialNumber;
     /**
      * Target protocol.
      */
+    @NSOFSlot("targetProtocol")
     private int targetProtocol;
 
     /**
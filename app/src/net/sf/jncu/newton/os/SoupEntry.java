@@ -47,13 +47,15 @@ public class SoupEntry extends NSOFFrame implements Comparable<SoupEntry> {
      */
     public SoupEntry(NSOFFrame frame) {
         super();
-        init();
         this.putAll(frame);
+        init();
     }
 
     private void init() {
-        put(SLOT_ID, NSOFNil.NIL);
-        put(SLOT_MODIFIED, NewtonDateUtils.toMinutes(System.currentTimeMillis()));
+        if (!hasSlot(SLOT_ID))
+            put(SLOT_ID, NSOFNil.NIL);
+        if (!hasSlot(SLOT_MODIFIED))
+            put(SLOT_MODIFIED, NewtonDateUtils.toMinutes(System.currentTimeMillis()));
     }
 
     /**
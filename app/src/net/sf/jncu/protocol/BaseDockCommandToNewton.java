@@ -67,9 +67,54 @@ public abstract class BaseDockCommandToNewton extends BaseDockCommand implements
 
     @Override
     public int getCommandPayloadLength() throws IOException {
+        if (getLength() == 0) {
+            int length = getCommandDataLength();
+            if (length > 0)
+                setLength(length);
+        }
         return COMMAND_HEADER_LENGTH + getLength() + getCommandPayloadFooter().available();
     }
 
+    @Override
+    public void writeCommandPayload(OutputStream out) throws IOException {
+        final int length = getCommandDataLength();
+        if (length < 0) {
+            // Buffer the data to find its length.
+            InputStream payload = getCommandPayload();
+            if (payload == null)
+                return;
+            try {
+                byte[] buf = new byte[1024];
+                int count;
+                while ((count = payload.read(buf)) >= 0) {
+                    out.write(buf, 0, count);
+                }
+            } finally {
+                payload.close();
+            }
+            return;
+        }
+        if (getLength() == 0)
+            setLength(length);
+        copy(getCommandPayloadHeader(), out);
+        writeCommandData(out);
+        copy(getCommandPayloadFooter(), out);
+    }
+
+    /**
+     * Copy the buffer.
+     *
+     * @param in  the input.
+     * @param out the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void copy(ByteArrayInputStream in, OutputStream out) throws IOException {
+        int count = in.available();
+        byte[] buf = new byte[count];
+        in.read(buf, 0, count);
+        out.write(buf, 0, count);
+    }
+
     /**
      * Encode the command data to write.
      *
@@ -79,6 +124,18 @@ public abstract class BaseDockCommandToNewton extends BaseDockCommand implements
     protected void writeCommandData(OutputStream data) throws IOException {
     }
 
+    /**
+     * Get the length of the command data to write, without encoding it.
+     *
+     * @return the data length - {@code -1} if the data must be encoded to
+     * know its length.
+     * @throws IOException if an I/O error occurs.
+     * @see #writeCommandData(OutputStream)
+     */
+    protected int getCommandDataLength() throws IOException {
+        return -1;
+    }
+
     /**
      * Get the command data to write.<br>
      * <em>The stream should be non-blocking.</em>
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.protocol;
+
+import net.sf.jncu.protocol.v1_0.DockCommandFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Incremental dock command decoder.<br>
+ * Feed it chunks of bytes as they arrive, and it notifies the listener of
+ * every command as soon as the command is complete. The length word and the
+ * data are collected into a single buffer, so the data is copied only once.
+ * <p>
+ * Large commands can be streamed to a {@link DockCommandPayloadListener}
+ * instead of being buffered and decoded.
+ *
+ * @author moshew
+ */
+public class DockCommandDecoder {
+
+    private static final byte[] PREFIX = DockCommand.COMMAND_PREFIX.getBytes();
+    /**
+     * The length word when the previous command was cut short, and the prefix
+     * of the next command started instead.
+     */
+    private static final int LENGTH_PREFIX = 0x6e657774; // 'newt'
+
+    /**
+     * Decoder state.
+     */
+    private enum State {
+        /**
+         * Matching the 'newtdock' prefix.
+         */
+        PREFIX,
+        /**
+         * Reading the command name.
+         */
+        NAME,
+        /**
+         * Reading the data length.
+         */
+        LENGTH,
+        /**
+         * Reading the data and padding.
+         */
+        DATA
+    }
+
+    private final DockCommandFactory factory;
+    private final DockCommandListener listener;
+    private DockCommandPayloadListener payloadListener;
+    private int streamThreshold = Integer.MAX_VALUE;
+
+    private State state = State.PREFIX;
+    /**
+     * Number of bytes read in the current state.
+     */
+    private int offset;
+    private final byte[] name = new byte[DockCommand.COMMAND_NAME_LENGTH];
+    private int length;
+    /**
+     * Number of data bytes, including padding.
+     */
+    private int lengthPadded;
+    private DockCommand command;
+    /**
+     * The length word followed by the data.
+     */
+    private byte[] data;
+    private boolean streamed;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param listener the listener for complete commands.
+     */
+    public DockCommandDecoder(DockCommandListener listener) {
+        this(net.sf.jncu.protocol.v2_0.DockCommandFactory.getInstance(), listener);
+    }
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param factory  the command factory.
+     * @param listener the listener for complete commands.
+     */
+    public DockCommandDecoder(DockCommandFactory factory, DockCommandListener listener) {
+        super();
+        this.factory = factory;
+        this.listener = listener;
+    }
+
+    /**
+     * Set the listener for streamed commands.
+     *
+     * @param payloadListener the listener.
+     */
+    public void setPayloadListener(DockCommandPayloadListener payloadListener) {
+        this.payloadListener = payloadListener;
+    }
+
+    /**
+     * Set the minimum data length of commands that may be streamed.
+     *
+     * @param streamThreshold the length in bytes.
+     */
+    public void setStreamThreshold(int streamThreshold) {
+        this.streamThreshold = streamThreshold;
+    }
+
+    /**
+     * Decode the bytes.
+     *
+     * @param b      the buffer.
+     * @param offset the buffer offset.
+     * @param length the number of bytes.
+     * @throws IOException if a command cannot be decoded.
+     */
+    public void decode(byte[] b, int offset, int length) throws IOException {
+        final int end = offset + length;
+        int i = offset;
+        int count;
+
+        while (i < end) {
+            switch (state) {
+                case PREFIX:
+                    if (b[i] == PREFIX[this.offset]) {
+                        this.offset++;
+                        if (this.offset == PREFIX.length)
+                            setState(State.NAME);
+                    } else {
+                        // Skip garbage until the next command.
+                        this.offset = (b[i] == PREFIX[0]) ? 1 : 0;
+                    }
+                    i++;
+                    break;
+                case NAME:
+                    name[this.offset++] = b[i++];
+                    if (this.offset == name.length) {
+                        this.command = factory.create(name);
+                        setState(State.LENGTH);
+                    }
+                    break;
+                case LENGTH:
+                    this.length = (this.length << 8) | (b[i++] & 0xFF);
+                    this.offset++;
+                    if (this.offset == DockCommand.LENGTH_WORD) {
+                        if (this.length == LENGTH_PREFIX) {
+                            // This command was not sent properly, and instead
+                            // we started receiving the next command.
+                            setState(State.PREFIX);
+                            this.offset = DockCommand.LENGTH_WORD;
+                            break;
+                        }
+                        startData();
+                    }
+                    break;
+                case DATA:
+                    count = Math.min(end - i, lengthPadded - this.offset);
+                    data(b, i, count);
+                    i += count;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Move to the next state.
+     *
+     * @param state the state.
+     */
+    private void setState(State state) {
+        this.state = state;
+        this.offset = 0;
+        if (state == State.LENGTH)
+            this.length = 0;
+    }
+
+    /**
+     * Start reading the command data.
+     *
+     * @throws IOException if the command cannot be decoded.
+     */
+    private void startData() throws IOException {
+        final int length = this.length;
+        if (length < 0)
+            throw new IOException("bad length " + length + " for command " + command.getCommand());
+        this.lengthPadded = (length + 3) & ~3;
+        this.streamed = (payloadListener != null) && (length >= streamThreshold) && (command instanceof DockCommandFromNewton)
+                && payloadListener.isStreamed((DockCommandFromNewton) command, length);
+        if (streamed || !(command instanceof DockCommandFromNewton)) {
+            this.data = null;
+        } else {
+            this.data = new byte[DockCommand.LENGTH_WORD + lengthPadded];
+            data[0] = (byte) (length >> 24);
+            data[1] = (byte) (length >> 16);
+            data[2] = (byte) (length >> 8);
+            data[3] = (byte) length;
+        }
+        setState(State.DATA);
+        if (lengthPadded == 0)
+            commandDone();
+    }
+
+    /**
+     * Read a chunk of command data.
+     *
+     * @param b      the buffer.
+     * @param offset the buffer offset.
+     * @param count  the number of bytes.
+     * @throws IOException if the command cannot be decoded.
+     */
+    private void data(byte[] b, int offset, int count) throws IOException {
+        final int progress = Math.min(this.offset + count, length);
+        if (data != null) {
+            System.arraycopy(b, offset, data, DockCommand.LENGTH_WORD + this.offset, count);
+        } else if (streamed) {
+            // Do not stream the padding.
+            int payload = Math.min(count, length - this.offset);
+            if (payload > 0)
+                payloadListener.commandPayload((DockCommandFromNewton) command, b, offset, payload);
+        }
+        this.offset += count;
+
+        if (this.offset < lengthPadded) {
+            if (command instanceof DockCommandFromNewton)
+                listener.commandReceiving((DockCommandFromNewton) command, progress, length);
+            else
+                listener.commandSending((DockCommandToNewton) command, progress, length);
+        } else {
+            commandDone();
+        }
+    }
+
+    /**
+     * The command is complete.
+     *
+     * @throws IOException if the command cannot be decoded.
+     */
+    private void commandDone() throws IOException {
+        final DockCommand command = this.command;
+        final byte[] data = this.data;
+        this.command = null;
+        this.data = null;
+        setState(State.PREFIX);
+
+        if (command instanceof DockCommandFromNewton) {
+            DockCommandFromNewton cmdFromNewton = (DockCommandFromNewton) command;
+            if (data != null)
+                cmdFromNewton.decode(new ByteArrayInputStream(data));
+            if (length > 0)
+                listener.commandReceiving(cmdFromNewton, length, length);
+            listener.commandReceived(cmdFromNewton);
+        } else if (command instanceof DockCommandToNewton) {
+            DockCommandToNewton cmdToNewton = (DockCommandToNewton) command;
+            if (length > 0)
+                listener.commandSending(cmdToNewton, length, length);
+            listener.commandSent(cmdToNewton);
+        }
+    }
+
+    /**
+     * Discard any partial command.
+     */
+    public void reset() {
+        this.command = null;
+        this.data = null;
+        setState(State.PREFIX);
+    }
+}
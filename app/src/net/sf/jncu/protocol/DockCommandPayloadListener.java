@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.protocol;
+
+/**
+ * Listener for the raw data of large commands that are streamed instead of
+ * being decoded.
+ *
+ * @author moshew
+ * @see DockCommandDecoder#setStreamThreshold(int)
+ */
+public interface DockCommandPayloadListener {
+
+    /**
+     * Should the command data be streamed?
+     *
+     * @param command the command.
+     * @param length  the data length.
+     * @return {@code true} to stream the data to this listener, or
+     * {@code false} to decode the command as usual.
+     */
+    boolean isStreamed(DockCommandFromNewton command, int length);
+
+    /**
+     * Received a chunk of command data.
+     *
+     * @param command the command.
+     * @param b       the buffer. Only valid until this method returns.
+     * @param offset  the data offset.
+     * @param length  the chunk length.
+     */
+    void commandPayload(DockCommandFromNewton command, byte[] b, int offset, int length);
+}
@@ -19,6 +19,7 @@ import net.sf.jncu.protocol.v1_0.app.DLoadPackage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Docking command interface from Newton to desktop.
@@ -45,4 +46,15 @@ public interface DockCommandToNewton extends DockCommand {
      * @throws IOException if an I/O error occurs.
      */
     int getCommandPayloadLength() throws IOException;
+
+    /**
+     * Write the command payload.
+     * <p>
+     * Useful for large commands whose length is known before writing, where
+     * the payload can be written straight into the transport buffers.
+     *
+     * @param out the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeCommandPayload(OutputStream out) throws IOException;
 }
@@ -23,6 +23,7 @@ import net.sf.jncu.protocol.v2_0.DockCommandToNewtonScript;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * This command is used to send a soup info frame. When received the info for
@@ -86,16 +87,30 @@ public class DSoupInfo extends DockCommandFromNewtonScript<NSOFFrame> implements
 
     @Override
     public InputStream getCommandPayload() throws IOException {
-        if (to == null) {
-            to = new DockCommandToNewtonScript<NSOFFrame>(COMMAND) {
-            };
-        }
-        return to.getCommandPayload();
+        return getCommandToNewton().getCommandPayload();
     }
 
     @Override
     public int getCommandPayloadLength() throws IOException {
-        return to.getCommandPayloadLength();
+        return getCommandToNewton().getCommandPayloadLength();
+    }
+
+    @Override
+    public void writeCommandPayload(OutputStream out) throws IOException {
+        getCommandToNewton().writeCommandPayload(out);
+    }
+
+    /**
+     * Get the command to send to the Newton.
+     *
+     * @return the command.
+     */
+    private DockCommandToNewtonScript<NSOFFrame> getCommandToNewton() {
+        if (to == null) {
+            to = new DockCommandToNewtonScript<NSOFFrame>(COMMAND) {
+            };
+        }
+        return to;
     }
 
 }
@@ -23,6 +23,7 @@ import net.sf.jncu.protocol.DockCommandToNewtonLong;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * This command is sent in response to any of the commands from the desktop that
@@ -68,6 +69,25 @@ public class DResult extends BaseDockCommandFromNewton implements DockCommandBid
 
     @Override
     public InputStream getCommandPayload() throws IOException {
+        return getCommandToNewton().getCommandPayload();
+    }
+
+    @Override
+    public int getCommandPayloadLength() throws IOException {
+        return getCommandToNewton().getCommandPayloadLength();
+    }
+
+    @Override
+    public void writeCommandPayload(OutputStream out) throws IOException {
+        getCommandToNewton().writeCommandPayload(out);
+    }
+
+    /**
+     * Get the command to send to the Newton.
+     *
+     * @return the command.
+     */
+    private DockCommandToNewton getCommandToNewton() {
         if (to == null) {
             to = new DockCommandToNewtonLong(COMMAND) {
                 @Override
@@ -76,12 +96,7 @@ public class DResult extends BaseDockCommandFromNewton implements DockCommandBid
                 }
             };
         }
-        return to.getCommandPayload();
-    }
-
-    @Override
-    public int getCommandPayloadLength() throws IOException {
-        return to.getCommandPayloadLength();
+        return to;
     }
 
     /**
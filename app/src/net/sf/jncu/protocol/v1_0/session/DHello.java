@@ -22,6 +22,7 @@ import net.sf.jncu.protocol.DockCommandToNewtonBlank;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * This command is sent during long operations to let the Newton or desktop know
@@ -50,14 +51,28 @@ public class DHello extends DockCommandFromNewtonBlank implements DockCommandBid
 
     @Override
     public InputStream getCommandPayload() throws IOException {
-        if (to == null) {
-            to = new DockCommandToNewtonBlank(COMMAND);
-        }
-        return to.getCommandPayload();
+        return getCommandToNewton().getCommandPayload();
     }
 
     @Override
     public int getCommandPayloadLength() throws IOException {
-        return to.getCommandPayloadLength();
+        return getCommandToNewton().getCommandPayloadLength();
+    }
+
+    @Override
+    public void writeCommandPayload(OutputStream out) throws IOException {
+        getCommandToNewton().writeCommandPayload(out);
+    }
+
+    /**
+     * Get the command to send to the Newton.
+     *
+     * @return the command.
+     */
+    private DockCommandToNewton getCommandToNewton() {
+        if (to == null) {
+            to = new DockCommandToNewtonBlank(COMMAND);
+        }
+        return to;
     }
 }
@@ -23,6 +23,7 @@ import net.sf.jncu.protocol.v2_0.DockCommandToNewtonScript;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * This command is sent by the Newton in response to a
@@ -53,15 +54,29 @@ public class DChangedEntry extends DockCommandFromNewtonScript<NSOFObject> imple
 
     @Override
     public InputStream getCommandPayload() throws IOException {
-        if (to == null) {
-            to = new DockCommandToNewtonScript<NSOFObject>(COMMAND) {
-            };
-        }
-        return to.getCommandPayload();
+        return getCommandToNewton().getCommandPayload();
     }
 
     @Override
     public int getCommandPayloadLength() throws IOException {
-        return to.getCommandPayloadLength();
+        return getCommandToNewton().getCommandPayloadLength();
+    }
+
+    @Override
+    public void writeCommandPayload(OutputStream out) throws IOException {
+        getCommandToNewton().writeCommandPayload(out);
+    }
+
+    /**
+     * Get the command to send to the Newton.
+     *
+     * @return the command.
+     */
+    private DockCommandToNewton getCommandToNewton() {
+        if (to == null) {
+            to = new DockCommandToNewtonScript<NSOFObject>(COMMAND) {
+            };
+        }
+        return to;
     }
 }
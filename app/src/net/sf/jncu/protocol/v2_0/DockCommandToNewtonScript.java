@@ -58,6 +58,12 @@ public abstract class DockCommandToNewtonScript<T extends NSOFObject> extends Ba
         return object;
     }
 
+    @Override
+    protected int getCommandDataLength() throws IOException {
+        NSOFEncoder encoder = new NSOFEncoder();
+        return encoder.getFlattenedSize(getObject());
+    }
+
     @Override
     protected void writeCommandData(OutputStream data) throws IOException {
         NSOFEncoder encoder = new NSOFEncoder();
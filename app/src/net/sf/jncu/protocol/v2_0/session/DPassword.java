@@ -88,6 +88,25 @@ public class DPassword extends BaseDockCommandFromNewton implements DockCommandT
 
     @Override
     public InputStream getCommandPayload() throws IOException {
+        return getCommandToNewton().getCommandPayload();
+    }
+
+    @Override
+    public int getCommandPayloadLength() throws IOException {
+        return getCommandToNewton().getCommandPayloadLength();
+    }
+
+    @Override
+    public void writeCommandPayload(OutputStream out) throws IOException {
+        getCommandToNewton().writeCommandPayload(out);
+    }
+
+    /**
+     * Get the command to send to the Newton.
+     *
+     * @return the command.
+     */
+    private DockCommandToNewton getCommandToNewton() {
         if (to == null) {
             to = new BaseDockCommandToNewton(COMMAND) {
 
@@ -102,11 +121,6 @@ public class DPassword extends BaseDockCommandFromNewton implements DockCommandT
                 }
             };
         }
-        return to.getCommandPayload();
-    }
-
-    @Override
-    public int getCommandPayloadLength() throws IOException {
-        return to.getCommandPayloadLength();
+        return to;
     }
 }
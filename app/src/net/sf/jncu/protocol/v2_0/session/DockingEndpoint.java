@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.protocol.v2_0.session;
+
+import net.sf.jncu.cdil.BadPipeStateException;
+import net.sf.jncu.cdil.CDILNotInitializedException;
+import net.sf.jncu.cdil.PipeDisconnectedException;
+import net.sf.jncu.cdil.PlatformException;
+import net.sf.jncu.protocol.DockCommandListener;
+import net.sf.jncu.protocol.DockCommandToNewton;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connection that the docking protocol talks through.
+ *
+ * @author moshew
+ */
+public interface DockingEndpoint {
+
+    /**
+     * Add a command listener.
+     *
+     * @param listener the listener to add.
+     */
+    void addCommandListener(DockCommandListener listener);
+
+    /**
+     * Remove a command listener.
+     *
+     * @param listener the listener to remove.
+     */
+    void removeCommandListener(DockCommandListener listener);
+
+    /**
+     * Sends the given command to the Newton device.
+     *
+     * @param cmd the command.
+     * @throws CDILNotInitializedException if CDIL is not initialised.
+     * @throws PlatformException           if a platform error occurs.
+     * @throws BadPipeStateException       if pipe is in an incorrect state.
+     * @throws PipeDisconnectedException   if the pipe is disconnected.
+     * @throws TimeoutException            if timeout occurs.
+     */
+    void write(DockCommandToNewton cmd) throws CDILNotInitializedException, PlatformException, BadPipeStateException, PipeDisconnectedException, TimeoutException;
+
+    /**
+     * Get the timeout period.
+     *
+     * @return the timeout in seconds.
+     */
+    int getTimeout();
+
+    /**
+     * Newton device connected.
+     *
+     * @throws BadPipeStateException if pipe is in an incorrect state.
+     */
+    void notifyConnected() throws BadPipeStateException;
+
+    /**
+     * Disconnect from the Newton device.
+     *
+     * @throws CDILNotInitializedException if CDIL is not initialised.
+     * @throws PlatformException           if a platform error occurs.
+     * @throws BadPipeStateException       if pipe is in an incorrect state.
+     * @throws PipeDisconnectedException   if the pipe is already disconnected.
+     * @throws TimeoutException            if timeout occurs.
+     */
+    void disconnect() throws CDILNotInitializedException, PlatformException, BadPipeStateException, PipeDisconnectedException, TimeoutException;
+}
@@ -43,7 +43,7 @@ public class DockingProtocol<P extends CDPacket, L extends CDPacketLayer<P>> imp
     protected static final int ERROR_COMM_TIMEDOUT = -10021;
     protected static final int ERROR_DISCONNECTED = -16005;
 
-    private final CDPipe<P, L> pipe;
+    private final DockingEndpoint pipe;
     /**
      * Internal state.
      */
@@ -86,6 +86,15 @@ public class DockingProtocol<P extends CDPacket, L extends CDPacketLayer<P>> imp
      * @param pipe the pipe.
      */
     public DockingProtocol(CDPipe<P, L> pipe) {
+        this((DockingEndpoint) pipe);
+    }
+
+    /**
+     * Creates a new docker.
+     *
+     * @param pipe the connection.
+     */
+    public DockingProtocol(DockingEndpoint pipe) {
         super();
         if (pipe == null)
             throw new NullPointerException("pipe required");
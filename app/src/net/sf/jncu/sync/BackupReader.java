@@ -16,6 +16,7 @@
 package net.sf.jncu.sync;
 
 import net.sf.jncu.fdil.NSOFArray;
+import net.sf.jncu.fdil.NSOFBinding;
 import net.sf.jncu.fdil.NSOFDecoder;
 import net.sf.jncu.fdil.NSOFFrame;
 import net.sf.jncu.fdil.NewtonStreamedObjectFormat;
@@ -85,6 +86,11 @@ public class BackupReader {
      */
     protected static final int ENTRIES = 4;
 
+    /**
+     * The decoder, reused for every entry.
+     */
+    private final NSOFDecoder decoder = new NSOFDecoder();
+
     /**
      * Creates a new reader.
      */
@@ -294,17 +300,13 @@ public class BackupReader {
      * @throws BackupException if an I/O error occurs.
      */
     protected void readDevice(BackupHandler handler, ZipInputStream in) throws BackupException {
-        NSOFDecoder decoder = new NSOFDecoder();
-        NSOFFrame frame;
+        NewtonInfo info;
         try {
-            frame = (NSOFFrame) decoder.inflate(in);
+            info = NSOFBinding.forClass(NewtonInfo.class).inflate(in);
         } catch (IOException e) {
             throw new BackupException(e);
         }
 
-        NewtonInfo info = new NewtonInfo();
-        info.fromFrame(frame);
-
         handler.deviceInformation(info);
     }
 
@@ -317,7 +319,7 @@ public class BackupReader {
      * @throws BackupException if an I/O error occurs.
      */
     protected void readStore(BackupHandler handler, ZipInputStream in, Store store) throws BackupException {
-        NSOFDecoder decoder = new NSOFDecoder();
+        decoder.reset();
         NSOFFrame frame;
         try {
             frame = (NSOFFrame) decoder.inflate(in);
@@ -338,7 +340,7 @@ public class BackupReader {
      * @throws BackupException if an I/O error occurs.
      */
     protected void readSoup(BackupHandler handler, ZipInputStream in, Store store, Soup soup) throws BackupException {
-        NSOFDecoder decoder = new NSOFDecoder();
+        decoder.reset();
         NSOFFrame frame;
         try {
             frame = (NSOFFrame) decoder.inflate(in);
@@ -360,7 +362,7 @@ public class BackupReader {
      */
     protected void readSoupEntries(BackupHandler handler, ZipInputStream in, Store store, Soup soup) throws BackupException {
         final String storeName = store.getName();
-        NSOFDecoder decoder = new NSOFDecoder();
+        decoder.reset();
         NSOFArray arr;
         try {
             arr = (NSOFArray) decoder.inflate(in);
@@ -389,7 +391,7 @@ public class BackupReader {
      */
     protected void readSoupEntry(BackupHandler handler, ZipInputStream in, Store store, Soup soup) throws BackupException {
         final String storeName = store.getName();
-        NSOFDecoder decoder = new NSOFDecoder();
+        decoder.reset();
         NSOFFrame frame;
         try {
             frame = (NSOFFrame) decoder.inflate(in);
@@ -15,6 +15,7 @@
  */
 package net.sf.jncu.sync;
 
+import net.sf.jncu.fdil.NSOFBinding;
 import net.sf.jncu.fdil.NSOFEncoder;
 import net.sf.jncu.fdil.NSOFObject;
 import net.sf.jncu.fdil.NewtonStreamedObjectFormat;
@@ -160,7 +161,12 @@ public class BackupWriter implements BackupHandler {
         if (info == null)
             return;
         putEntry(Archive.ENTRY_DEVICE);
-        flatten(info.toFrame());
+        try {
+            NSOFBinding.forClass(NewtonInfo.class).flatten(info, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new BackupException(e);
+        }
     }
 
     @Override
@@ -15,6 +15,7 @@
  */
 package net.sf.util.zip;
 
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 /**
@@ -68,8 +69,31 @@ public class CRC16 implements Checksum {
 
     @Override
     public void update(byte[] b, int off, int len) {
-        for (int i = 0, o = off; i < len; i++, o++) {
-            update(b[o] & 0xFF);
+        int v = value;
+        for (int o = off, end = off + len; o < end; o++) {
+            v = (((v >> 8) & 0xFF) ^ TABLE[(v ^ b[o]) & 0xFF]);
+        }
+        value = v;
+    }
+
+    /**
+     * Updates the checksum with the remaining bytes of the buffer. The
+     * buffer's position is moved to its limit.
+     *
+     * @param buffer the buffer.
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            final int pos = buffer.position();
+            final int len = buffer.remaining();
+            update(buffer.array(), buffer.arrayOffset() + pos, len);
+            buffer.position(pos + len);
+        } else {
+            int v = value;
+            while (buffer.hasRemaining()) {
+                v = (((v >> 8) & 0xFF) ^ TABLE[(v ^ buffer.get()) & 0xFF]);
+            }
+            value = v;
         }
     }
 
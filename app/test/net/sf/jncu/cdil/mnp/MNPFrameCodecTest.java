@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+import net.sf.junit.SFTestCase;
+import net.sf.util.zip.ChecksumException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class MNPFrameCodecTest extends SFTestCase {
+
+    private static final byte[] FRAME_LR = {0x16, 0x10, 0x02, 0x26, 0x01, 0x02, 0x01, 0x06, 0x01, 0x00, 0x00, 0x00, 0x00, (byte) 0xFF, 0x02, 0x01, 0x02, 0x03, 0x01, 0x08, 0x04,
+            0x02, 0x40, 0x00, 0x08, 0x01, 0x03, 0x09, 0x01, 0x01, 0x0E, 0x04, 0x03, 0x04, 0x00, (byte) 0xFA, (byte) 0xC5, 0x06, 0x01, 0x04, 0x00, 0x00, (byte) 0xE1, 0x00,
+            0x10, 0x03, (byte) 0xB9, (byte) 0xBF};
+    private static final int FRAME_LR_DATA_LENGTH = 41;
+
+    /**
+     * Stream that returns one byte per read.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+
+        public TrickleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(1, len));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] b = new byte[buf.remaining()];
+        buf.get(b);
+        return b;
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        MNPFrameEncoder encoder = new MNPFrameEncoder();
+        ByteBuffer frame = encoder.encode(FRAME_LR, MNPPacketLayer.PACKET_HEAD.length, FRAME_LR_DATA_LENGTH);
+        assertEquals(FRAME_LR, toArray(frame));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        MNPFrameDecoder decoder = new MNPFrameDecoder(new ByteArrayInputStream(FRAME_LR));
+        byte[] payload = toArray(decoder.decode());
+        assertEquals(FRAME_LR_DATA_LENGTH, payload.length);
+        assertEquals(MNPPacket.LR, payload[1]);
+    }
+
+    /**
+     * Payload with escape characters split across many reads.
+     */
+    @Test
+    public void testEscapeRoundTrip() throws Exception {
+        byte[] data = new byte[600];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i % 3 == 0) ? MNPPacketLayer.DELIMITER_ESCAPE : i);
+        }
+        MNPFrameEncoder encoder = new MNPFrameEncoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer frame = encoder.encode(data, 0, data.length);
+        out.write(frame.array(), 0, frame.limit());
+        frame = encoder.encode(data, 1, 7);
+        out.write(frame.array(), 0, frame.limit());
+
+        MNPFrameDecoder decoder = new MNPFrameDecoder(new TrickleInputStream(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(data, toArray(decoder.decode()));
+        byte[] expected = new byte[7];
+        System.arraycopy(data, 1, expected, 0, expected.length);
+        assertEquals(expected, toArray(decoder.decode()));
+        try {
+            decoder.decode();
+            fail("expected EOF");
+        } catch (EOFException eofe) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        byte[] frame = FRAME_LR.clone();
+        frame[frame.length - 1]++;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(frame);
+        out.write(FRAME_LR);
+
+        MNPFrameDecoder decoder = new MNPFrameDecoder(new ByteArrayInputStream(out.toByteArray()));
+        try {
+            decoder.decode();
+            fail("expected checksum error");
+        } catch (ChecksumException ce) {
+            // expected.
+        }
+        assertEquals(FRAME_LR_DATA_LENGTH, decoder.decode().remaining());
+    }
+}
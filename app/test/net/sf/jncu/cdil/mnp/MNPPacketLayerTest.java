@@ -30,6 +30,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MNPPacketLayerTest extends SFTestCase {
@@ -148,4 +149,56 @@ public class MNPPacketLayerTest extends SFTestCase {
         assertEquals(128, count);
         payload.close();
     }
+
+    /**
+     * Command that writes less data than its length.
+     */
+    private static class ShortCommand extends BaseDockCommandToNewton {
+
+        private final int length;
+        private final int written;
+
+        public ShortCommand(int length, int written) {
+            super("shrt");
+            this.length = length;
+            this.written = written;
+        }
+
+        @Override
+        protected int getCommandDataLength() {
+            return length;
+        }
+
+        @Override
+        protected void writeCommandData(OutputStream data) throws IOException {
+            data.write(new byte[written]);
+        }
+    }
+
+    /**
+     * A command that writes less than its payload length is not sent.
+     */
+    @Test
+    public void testShortPayload() throws Exception {
+        final List<MNPPacket> sent = new ArrayList<MNPPacket>();
+        MNPPacketLayer packetLayer = new MNPPacketLayer(null) {
+            @Override
+            public void sendQueued(MNPPacket packet) {
+                sent.add(packet);
+            }
+        };
+        MNPCommandLayer commandLayer = new MNPCommandLayer(packetLayer);
+        commandLayer.write(new ShortCommand(100, 100));
+        assertEquals(1, sent.size());
+
+        sent.clear();
+        try {
+            commandLayer.write(new ShortCommand(100, 99));
+            fail();
+        } catch (IOException ioe) {
+            // expected
+        }
+        assertTrue(sent.isEmpty());
+        packetLayer.close();
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measure the sliding window of the packet sender over a loopback "Newton" -
+ * stop-and-wait against the full window, and the CPU time that the sender
+ * spends on a 1 MB transfer before and after the acknowledgement tracker.
+ */
+public class MNPPacketSenderBenchmark {
+
+    /**
+     * Sender that waits for each acknowledgement by yielding, like it used to.
+     */
+    private static class LegacyPacketSender extends MNPPacketSender {
+
+        private volatile int acknowledged;
+
+        public LegacyPacketSender(MNPPacketLayer packetLayer) {
+            super(null, packetLayer);
+        }
+
+        @Override
+        public void run() {
+            running = true;
+            MNPPacket next;
+            long timeout;
+            int sent = 0;
+            int retry;
+            try {
+                while (running && !isInterrupted()) {
+                    next = queueSend.take();
+                    retry = 5;
+                    do {
+                        timeout = System.currentTimeMillis() + 5000L;
+                        packetLayer.send(next);
+                        if (next.getType() != MNPPacket.LT) {
+                            break;
+                        }
+                        // Wait for acknowledgement.
+                        while ((acknowledged <= sent) && running && (System.currentTimeMillis() < timeout)) {
+                            yield();
+                        }
+                    } while ((acknowledged <= sent) && running && (--retry >= 0));
+                    sent++;
+                }
+            } catch (Exception e) {
+                // Cancelled.
+            }
+            running = false;
+        }
+
+        @Override
+        public void packetReceived(MNPPacket packet) {
+            if (packet.getType() == MNPPacket.LA) {
+                acknowledged++;
+            }
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        MNPPacketSenderTest.LoopbackPacketLayer packetLayer = new MNPPacketSenderTest.LoopbackPacketLayer();
+        packetLayer.sender.setMaxOutstanding(1);
+        long elapsedStopAndWait = MNPPacketSenderTest.transfer(packetLayer, MNPPacketSenderTest.PACKETS);
+        packetLayer.close();
+
+        packetLayer = new MNPPacketSenderTest.LoopbackPacketLayer();
+        packetLayer.sender.setMaxOutstanding(MNPLinkAcknowledgementPacket.CREDIT);
+        long elapsedWindow = MNPPacketSenderTest.transfer(packetLayer, MNPPacketSenderTest.PACKETS);
+        MNPWindowStatistics stats = packetLayer.sender.getStatistics();
+        packetLayer.close();
+        System.out.println("stop-and-wait: " + elapsedStopAndWait + "ms, window: " + elapsedWindow + "ms, " + stats);
+        if (elapsedWindow * 2 >= elapsedStopAndWait)
+            throw new IllegalStateException("window is less than twice as fast as stop-and-wait");
+
+        final int count = (1024 * 1024) / MNPLinkTransferPacket.MAX_DATA_LENGTH;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadCpuTimeSupported()) {
+            return;
+        }
+        threads.setThreadCpuTimeEnabled(true);
+
+        packetLayer = new MNPPacketSenderTest.LoopbackPacketLayer();
+        packetLayer.roundTrip = 1L;
+        packetLayer.sender.cancel();
+        LegacyPacketSender legacy = new LegacyPacketSender(packetLayer);
+        packetLayer.sender = legacy;
+        legacy.start();
+        long cpuStart = threads.getThreadCpuTime(legacy.getId());
+        long start = System.currentTimeMillis();
+        MNPPacketFactory.getInstance().resetSequence();
+        for (int i = 0; i < count; i++) {
+            MNPLinkTransferPacket packet = (MNPLinkTransferPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LT);
+            packet.setData(new byte[MNPLinkTransferPacket.MAX_DATA_LENGTH]);
+            legacy.sendQueued(packet);
+        }
+        while (legacy.acknowledged < count) {
+            if (!legacy.isAlive())
+                throw new IllegalStateException("legacy transfer failed");
+            Thread.sleep(1);
+        }
+        long elapsedBefore = System.currentTimeMillis() - start;
+        long cpuBefore = (threads.getThreadCpuTime(legacy.getId()) - cpuStart) / 1000000L;
+        legacy.cancel();
+        packetLayer.close();
+
+        packetLayer = new MNPPacketSenderTest.LoopbackPacketLayer();
+        packetLayer.roundTrip = 1L;
+        packetLayer.sender.setMaxOutstanding(1);
+        cpuStart = threads.getThreadCpuTime(packetLayer.sender.getId());
+        long elapsedAfter = MNPPacketSenderTest.transfer(packetLayer, count);
+        long cpuAfter = (threads.getThreadCpuTime(packetLayer.sender.getId()) - cpuStart) / 1000000L;
+        packetLayer.close();
+
+        packetLayer = new MNPPacketSenderTest.LoopbackPacketLayer();
+        packetLayer.roundTrip = 1L;
+        packetLayer.sender.setMaxOutstanding(MNPLinkAcknowledgementPacket.CREDIT);
+        cpuStart = threads.getThreadCpuTime(packetLayer.sender.getId());
+        long elapsedWindowed = MNPPacketSenderTest.transfer(packetLayer, count);
+        long cpuWindowed = (threads.getThreadCpuTime(packetLayer.sender.getId()) - cpuStart) / 1000000L;
+        packetLayer.close();
+
+        System.out.println("1 MB transfer, before: " + elapsedBefore + "ms elapsed, " + cpuBefore + "ms sender CPU");
+        System.out.println("1 MB transfer, after (stop-and-wait): " + elapsedAfter + "ms elapsed, " + cpuAfter + "ms sender CPU");
+        System.out.println("1 MB transfer, after (window): " + elapsedWindowed + "ms elapsed, " + cpuWindowed + "ms sender CPU");
+    }
+}
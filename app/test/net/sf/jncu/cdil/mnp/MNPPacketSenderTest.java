@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.mnp;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Test the sliding window of the packet sender over a loopback "Newton" that
+ * acknowledges link transfers after a round-trip delay.
+ */
+public class MNPPacketSenderTest extends SFTestCase {
+
+    static final int PACKETS = 64;
+    private static final long ROUND_TRIP = 10L;
+
+    /**
+     * Packet layer that pretends to be a Newton receiving our packets.
+     */
+    static class LoopbackPacketLayer extends MNPPacketLayer {
+
+        private final ScheduledExecutorService newton = Executors.newSingleThreadScheduledExecutor();
+        private int sequenceReceived;
+        private int dropSequence = -1;
+        long roundTrip = ROUND_TRIP;
+
+        public LoopbackPacketLayer() {
+            super(null);
+            setName("LoopbackPacketLayer-" + getId());
+        }
+
+        @Override
+        public void send(final MNPPacket packet) throws IOException, TimeoutException {
+            if (packet.getType() != MNPPacket.LT) {
+                return;
+            }
+            final int seq = ((MNPLinkTransferPacket) packet).getSequence();
+            if (seq == dropSequence) {
+                // Lose the packet only once.
+                dropSequence = -1;
+                return;
+            }
+            newton.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // Out of order packets are ignored, so repeat the last acknowledgement.
+                    if (seq == ((sequenceReceived + 1) & 0xFF)) {
+                        sequenceReceived = seq;
+                    }
+                    MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LA);
+                    ack.setSequence(sequenceReceived);
+                    sender.packetReceived(ack);
+                }
+            }, roundTrip, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() {
+            newton.shutdownNow();
+            super.close();
+        }
+    }
+
+    static long transfer(LoopbackPacketLayer packetLayer, int count) throws Exception {
+        MNPPacketFactory.getInstance().resetSequence();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            MNPLinkTransferPacket packet = (MNPLinkTransferPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LT);
+            packet.setData(new byte[MNPLinkTransferPacket.MAX_DATA_LENGTH]);
+            packetLayer.sendQueued(packet);
+        }
+        long timeout = start + 30000L;
+        while (packetLayer.sender.getStatistics().getPacketsAcknowledged() < count) {
+            assertTrue("transfer timed out", System.currentTimeMillis() < timeout);
+            Thread.sleep(1);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Keep more than one packet in flight, up to the full window.
+     */
+    @Test
+    public void testWindow() throws Exception {
+        LoopbackPacketLayer packetLayer = new LoopbackPacketLayer();
+        packetLayer.sender.setMaxOutstanding(MNPLinkAcknowledgementPacket.CREDIT);
+        transfer(packetLayer, PACKETS);
+        MNPWindowStatistics stats = packetLayer.sender.getStatistics();
+        packetLayer.close();
+
+        assertEquals(PACKETS, stats.getPacketsSent());
+        assertEquals(0, stats.getPacketsResent());
+        assertTrue(stats.getPeakOutstanding() > 1);
+        assertTrue(stats.getPeakOutstanding() <= MNPLinkAcknowledgementPacket.CREDIT);
+    }
+
+    /**
+     * Lost packet is re-sent after a duplicate acknowledgement.
+     */
+    @Test
+    public void testSelectiveResend() throws Exception {
+        LoopbackPacketLayer packetLayer = new LoopbackPacketLayer();
+        packetLayer.sender.setMaxOutstanding(MNPLinkAcknowledgementPacket.CREDIT);
+        packetLayer.sender.setAcknowledgeTimeout(500L);
+        packetLayer.dropSequence = 3;
+        transfer(packetLayer, 16);
+        MNPWindowStatistics stats = packetLayer.sender.getStatistics();
+        packetLayer.close();
+
+        assertEquals(16, stats.getPacketsSent());
+        assertEquals(16, stats.getPacketsAcknowledged());
+        assertTrue(stats.getDuplicateAcknowledgements() > 0);
+        assertTrue(stats.getPacketsResent() > 0);
+    }
+
+    /**
+     * Waiting returns immediately when a duplicate acknowledgement asks for a
+     * re-send.
+     */
+    @Test
+    public void testAwaitResend() throws Exception {
+        MNPAcknowledgementTracker tracker = new MNPAcknowledgementTracker();
+        tracker.setAcknowledgeTimeout(60000L);
+        MNPLinkTransferPacket packet = (MNPLinkTransferPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LT);
+        tracker.add(packet, 1);
+        MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LA);
+        ack.setSequence(0);
+        tracker.acknowledge(ack);
+        tracker.acknowledge(ack);
+
+        long start = System.nanoTime();
+        tracker.lock();
+        try {
+            tracker.await();
+        } finally {
+            tracker.unlock();
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5L));
+        assertNotNull(tracker.takeResend());
+    }
+
+    /**
+     * Repeated acknowledgement with a new credit only updates the window.
+     */
+    @Test
+    public void testWindowUpdate() throws Exception {
+        MNPAcknowledgementTracker tracker = new MNPAcknowledgementTracker();
+        tracker.setAcknowledgeTimeout(60000L);
+        MNPLinkTransferPacket packet = (MNPLinkTransferPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LT);
+        tracker.add(packet, 1);
+        MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LA);
+        ack.setSequence(0);
+        ack.setCredit((byte) 2);
+        tracker.acknowledge(ack);
+        ack.setCredit((byte) 4);
+        tracker.acknowledge(ack);
+        assertEquals(4, tracker.getWindow());
+        assertNull(tracker.takeResend());
+        assertEquals(0, tracker.getStatistics().getDuplicateAcknowledgements());
+
+        tracker.acknowledge(ack);
+        assertNotNull(tracker.takeResend());
+        assertEquals(1, tracker.getStatistics().getDuplicateAcknowledgements());
+    }
+
+    /**
+     * Zero credit blocks link transfers until a later acknowledgement opens the
+     * window.
+     */
+    @Test
+    public void testZeroCredit() throws Exception {
+        MNPAcknowledgementTracker tracker = new MNPAcknowledgementTracker();
+        MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LA);
+        ack.setSequence(0);
+        ack.setCredit((byte) 0);
+        tracker.acknowledge(ack);
+        assertEquals(0, tracker.getWindow());
+        assertFalse(tracker.isOpen(MNPPacket.LT));
+        assertTrue(tracker.isOpen(MNPPacket.LA));
+
+        ack.setCredit((byte) 1);
+        tracker.acknowledge(ack);
+        assertTrue(tracker.isOpen(MNPPacket.LT));
+        MNPLinkTransferPacket packet = (MNPLinkTransferPacket) MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LT);
+        tracker.add(packet, 1);
+        assertFalse(tracker.isOpen(MNPPacket.LT));
+
+        // The sender waits for the window to open.
+        final LoopbackPacketLayer packetLayer = new LoopbackPacketLayer();
+        ack.setCredit((byte) 0);
+        packetLayer.sender.packetReceived(ack);
+        packetLayer.sendQueued(MNPPacketFactory.getInstance().createLinkPacket(MNPPacket.LT));
+        Thread.sleep(100L);
+        assertEquals(0, packetLayer.sender.getStatistics().getPacketsSent());
+        ack.setCredit(MNPLinkAcknowledgementPacket.CREDIT);
+        packetLayer.sender.packetReceived(ack);
+        long timeout = System.currentTimeMillis() + 5000L;
+        while (packetLayer.sender.getStatistics().getPacketsSent() == 0) {
+            assertTrue("window did not open", System.currentTimeMillis() < timeout);
+            Thread.sleep(1);
+        }
+        packetLayer.close();
+    }
+
+    /**
+     * Sequence numbers wrap around after 255.
+     */
+    @Test
+    public void testSequenceWrap() throws Exception {
+        LoopbackPacketLayer packetLayer = new LoopbackPacketLayer();
+        packetLayer.sender.setMaxOutstanding(MNPLinkAcknowledgementPacket.CREDIT);
+        transfer(packetLayer, 300);
+        MNPWindowStatistics stats = packetLayer.sender.getStatistics();
+        packetLayer.close();
+
+        assertEquals(300, stats.getPacketsAcknowledged());
+        assertEquals(0, stats.getPacketsResent());
+    }
+}
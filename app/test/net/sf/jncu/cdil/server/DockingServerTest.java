@@ -0,0 +1,469 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.server;
+
+import net.sf.jncu.cdil.PipeDisconnectedException;
+import net.sf.jncu.cdil.mnp.MNPFrameDecoder;
+import net.sf.jncu.cdil.mnp.MNPFrameEncoder;
+import net.sf.jncu.cdil.mnp.MNPLinkAcknowledgementPacket;
+import net.sf.jncu.cdil.mnp.MNPLinkTransferPacket;
+import net.sf.jncu.cdil.mnp.MNPPacket;
+import net.sf.jncu.cdil.mnp.MNPPacketFactory;
+import net.sf.jncu.crypto.DESNewton;
+import net.sf.jncu.protocol.BaseDockCommandToNewton;
+import net.sf.jncu.protocol.DockCommandFromNewton;
+import net.sf.jncu.protocol.DockCommandListener;
+import net.sf.jncu.protocol.DockCommandToNewton;
+import net.sf.jncu.protocol.v1_0.app.DPackage;
+import net.sf.jncu.protocol.v1_0.session.DDisconnect;
+import net.sf.jncu.protocol.v1_0.session.DInitiateDocking;
+import net.sf.jncu.protocol.v1_0.query.DResult;
+import net.sf.jncu.protocol.v2_0.session.DDesktopInfo;
+import net.sf.jncu.protocol.v2_0.session.DNewtonInfo;
+import net.sf.jncu.protocol.v2_0.session.DNewtonName;
+import net.sf.jncu.protocol.v2_0.session.DPassword;
+import net.sf.jncu.protocol.v2_0.session.DRequestToDock;
+import net.sf.jncu.protocol.v2_0.session.DSetTimeout;
+import net.sf.jncu.protocol.v2_0.session.DWhichIcons;
+import net.sf.jncu.protocol.v2_0.session.DockingState;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+public class DockingServerTest extends SFTestCase {
+
+    /**
+     * Newton device that docks with the server over a local socket.
+     */
+    private static class FakeNewton {
+
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private byte[] data;
+
+        public FakeNewton(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(socket.getOutputStream());
+            in = new DataInputStream(socket.getInputStream());
+        }
+
+        public void write(String cmd, byte[] data) throws IOException {
+            out.write(encode(cmd, data));
+            out.flush();
+        }
+
+        public String read() throws IOException {
+            byte[] header = new byte[8];
+            in.readFully(header);
+            assertEquals("newtdock", new String(header, "US-ASCII"));
+            byte[] cmd = new byte[4];
+            in.readFully(cmd);
+            data = new byte[in.readInt()];
+            in.readFully(data);
+            in.skipBytes((4 - (data.length & 3)) & 3);
+            return new String(cmd, "US-ASCII");
+        }
+
+        /**
+         * Do the whole docking handshake, including the password exchange.
+         */
+        public void dock(int id) throws IOException {
+            write(DRequestToDock.COMMAND, new byte[]{0, 0, 0, DRequestToDock.DANTE_PROTOCOL_VERSION});
+            assertEquals(DInitiateDocking.COMMAND, read());
+
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream name = new DataOutputStream(buf);
+            name.writeInt(14 * 4);
+            name.writeInt(id);
+            for (int i = 1; i < 14; i++)
+                name.writeInt(0);
+            name.writeChars("Newton " + id);
+            name.writeChar(0);
+            write(DNewtonName.COMMAND, buf.toByteArray());
+            assertEquals(DDesktopInfo.COMMAND, read());
+            long keyDesktop = ByteBuffer.wrap(data).getLong(8);
+
+            DESNewton crypto = new DESNewton();
+            crypto.init(Cipher.ENCRYPT_MODE);
+            ByteBuffer info = ByteBuffer.allocate(12);
+            info.putInt(DRequestToDock.DANTE_PROTOCOL_VERSION);
+            info.putLong(id * 0x0101010101L);
+            write(DNewtonInfo.COMMAND, info.array());
+            assertEquals(DWhichIcons.COMMAND, read());
+
+            write(DResult.COMMAND, new byte[4]);
+            assertEquals(DSetTimeout.COMMAND, read());
+
+            ByteBuffer pass = ByteBuffer.allocate(8);
+            pass.putLong(crypto.cipher(keyDesktop));
+            write(DPassword.COMMAND, pass.array());
+            assertEquals(DPassword.COMMAND, read());
+        }
+
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Encode a command the way a Newton sends it.
+     */
+    private static byte[] encode(String cmd, byte[] data) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeBytes("newtdock");
+        out.writeBytes(cmd);
+        out.writeInt(data.length);
+        out.write(data);
+        out.write(new byte[(4 - (data.length & 3)) & 3]);
+        return buf.toByteArray();
+    }
+
+    /**
+     * MNP transport that keeps the frames it writes.
+     */
+    private static class LoopbackTransport extends MNPTransport {
+
+        private final MNPFrameEncoder encoder = new MNPFrameEncoder();
+        private final BlockingQueue<MNPPacket> written = new LinkedBlockingQueue<MNPPacket>();
+
+        @Override
+        protected void writeFrame(ByteBuffer frame) throws IOException {
+            MNPFrameDecoder decoder = new MNPFrameDecoder();
+            ByteBuffer payload = decoder.decode(frame);
+            byte[] b = new byte[payload.remaining()];
+            payload.get(b);
+            written.add(MNPPacketFactory.getInstance().createLinkPacket(b));
+        }
+
+        public MNPPacket take() throws InterruptedException {
+            return written.poll(5, TimeUnit.SECONDS);
+        }
+
+        public ByteBuffer frame(MNPPacket packet) {
+            byte[] payload = packet.serialize();
+            return encoder.encode(payload, 0, payload.length);
+        }
+    }
+
+    /**
+     * Many Newtons dock at once, back up some packages, and disconnect, all
+     * served by a fixed number of threads.
+     */
+    @Test
+    public void testManyNewtons() throws Exception {
+        final int newtons = 32;
+        final int packages = 4;
+        final DockingServer server = new DockingServer(4);
+        final CountDownLatch connected = new CountDownLatch(newtons);
+        final CountDownLatch disconnected = new CountDownLatch(newtons);
+        final AtomicInteger received = new AtomicInteger();
+        server.addListener(new DockingServerListener() {
+            @Override
+            public void sessionOpened(DockingSession session) {
+                session.addCommandListener(new DockCommandListener() {
+                    @Override
+                    public void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+                    }
+
+                    @Override
+                    public void commandReceived(DockCommandFromNewton command) {
+                        if (command instanceof DPackage)
+                            received.incrementAndGet();
+                    }
+
+                    @Override
+                    public void commandSending(DockCommandToNewton command, int progress, int total) {
+                    }
+
+                    @Override
+                    public void commandSent(DockCommandToNewton command) {
+                    }
+
+                    @Override
+                    public void commandEOF() {
+                    }
+                });
+            }
+
+            @Override
+            public void sessionConnected(DockingSession session) {
+                connected.countDown();
+            }
+
+            @Override
+            public void sessionDisconnected(DockingSession session) {
+                disconnected.countDown();
+            }
+        });
+        final int port = server.listen(0);
+        server.start();
+
+        final AtomicInteger docked = new AtomicInteger();
+        Thread[] clients = new Thread[newtons];
+        for (int i = 0; i < newtons; i++) {
+            final int id = i;
+            clients[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        FakeNewton newton = new FakeNewton(port);
+                        newton.dock(id);
+                        docked.incrementAndGet();
+                        byte[] data = new byte[4 + 4096];
+                        for (int p = 0; p < packages; p++) {
+                            data[3] = (byte) p;
+                            newton.write(DPackage.COMMAND, data);
+                        }
+                        newton.write(DDisconnect.COMMAND, new byte[0]);
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+            };
+            clients[i].start();
+        }
+        assertTrue(connected.await(30, TimeUnit.SECONDS));
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(server.getName()))
+                threads++;
+        }
+        assertTrue(threads <= server.getWorkersCount() + 1);
+
+        assertTrue(disconnected.await(30, TimeUnit.SECONDS));
+        for (Thread client : clients)
+            client.join();
+        assertEquals(newtons, docked.get());
+        assertEquals(newtons * packages, received.get());
+        assertTrue(server.getSessions().isEmpty());
+
+        server.close();
+        server.join();
+    }
+
+    /**
+     * Pass frames to the transport on the server thread.
+     */
+    private static void receive(DockingServer server, final MNPTransport transport, final ByteBuffer frames) {
+        server.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.receive(frames);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Newton disconnects the link, or stops talking.
+     */
+    @Test
+    public void testMNPDisconnect() throws Exception {
+        DockingServer server = new DockingServer(1);
+        server.start();
+        final MNPPacketFactory newton = new MNPPacketFactory();
+        MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) newton.createLinkPacket(MNPPacket.LA);
+        ack.setSequence(0);
+
+        // Newton sends LD, so don't reply with LD.
+        LoopbackTransport transport = new LoopbackTransport();
+        server.open(transport);
+        receive(server, transport, transport.frame(newton.createLinkPacket(MNPPacket.LR)));
+        assertEquals(MNPPacket.LR, transport.take().getType());
+        receive(server, transport, transport.frame(ack));
+        receive(server, transport, transport.frame(newton.createLinkPacket(MNPPacket.LD)));
+        final CountDownLatch handled = new CountDownLatch(1);
+        server.execute(new Runnable() {
+            @Override
+            public void run() {
+                handled.countDown();
+            }
+        });
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertTrue(server.getSessions().isEmpty());
+        MNPPacket packet;
+        while ((packet = transport.written.poll()) != null)
+            assertTrue(packet.getType() != MNPPacket.LD);
+
+        // Newton is silent for longer than the timeout, so disconnect.
+        transport = new LoopbackTransport();
+        server.open(transport);
+        receive(server, transport, transport.frame(newton.createLinkPacket(MNPPacket.LR)));
+        assertEquals(MNPPacket.LR, transport.take().getType());
+        transport.getSession().setTimeout(1);
+        receive(server, transport, transport.frame(ack));
+        do {
+            packet = transport.take();
+            assertNotNull(packet);
+        } while (packet.getType() != MNPPacket.LD);
+        assertTrue(server.getSessions().isEmpty());
+
+        server.close();
+        server.join();
+    }
+
+    /**
+     * Newton links with MNP, and then requests to dock.
+     */
+    @Test
+    public void testMNP() throws Exception {
+        DockingServer server = new DockingServer(1);
+        server.start();
+        final LoopbackTransport transport = new LoopbackTransport();
+        server.open(transport);
+
+        final MNPPacketFactory newton = new MNPPacketFactory();
+        final ByteBuffer request = transport.frame(newton.createLinkPacket(MNPPacket.LR));
+        server.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.receive(request);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        });
+        assertEquals(MNPPacket.LR, transport.take().getType());
+
+        MNPLinkAcknowledgementPacket ack = (MNPLinkAcknowledgementPacket) newton.createLinkPacket(MNPPacket.LA);
+        ack.setSequence(0);
+        MNPLinkTransferPacket transfer = (MNPLinkTransferPacket) newton.createLinkPacket(MNPPacket.LT);
+        transfer.setData(encode(DRequestToDock.COMMAND, new byte[]{0, 0, 0, DRequestToDock.DANTE_PROTOCOL_VERSION}));
+        final ByteBuffer frames = ByteBuffer.allocate(1024);
+        frames.put(transport.frame(ack));
+        frames.put(transport.frame(transfer));
+        frames.flip();
+        server.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.receive(frames);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        });
+
+        MNPPacket packet = transport.take();
+        assertEquals(MNPPacket.LA, packet.getType());
+        assertEquals(transfer.getSequence(), ((MNPLinkAcknowledgementPacket) packet).getSequence());
+        packet = transport.take();
+        assertNotNull(packet);
+        assertEquals(MNPPacket.LT, packet.getType());
+        byte[] data = ((MNPLinkTransferPacket) packet).getData();
+        assertEquals(DInitiateDocking.COMMAND, new String(data, 8, 4, "US-ASCII"));
+        assertTrue(DockingState.HANDSHAKE_DOCK.compareTo(transport.getSession().getDockingState()) <= 0);
+
+        server.close();
+        server.join();
+    }
+
+    /**
+     * Command that writes less data than its length.
+     */
+    private static class ShortCommand extends BaseDockCommandToNewton {
+
+        private final int length;
+        private final int written;
+
+        public ShortCommand(int length, int written) {
+            super("shrt");
+            this.length = length;
+            this.written = written;
+            setLength(length);
+        }
+
+        @Override
+        protected int getCommandDataLength() {
+            return length;
+        }
+
+        @Override
+        protected void writeCommandData(OutputStream data) throws IOException {
+            data.write(new byte[written]);
+        }
+    }
+
+    /**
+     * A command that writes less than its payload length is not sent.
+     */
+    @Test
+    public void testShortPayload() throws Exception {
+        DockingServer server = new DockingServer(1);
+        server.start();
+        LoopbackTransport transport = new LoopbackTransport();
+        DockingSession session = new DockingSession(server, transport);
+        final AtomicInteger sent = new AtomicInteger();
+        session.addCommandListener(new DockCommandListener() {
+            @Override
+            public void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+            }
+
+            @Override
+            public void commandReceived(DockCommandFromNewton command) {
+            }
+
+            @Override
+            public void commandSending(DockCommandToNewton command, int progress, int total) {
+            }
+
+            @Override
+            public void commandSent(DockCommandToNewton command) {
+                sent.incrementAndGet();
+            }
+
+            @Override
+            public void commandEOF() {
+            }
+        });
+        session.write(new ShortCommand(100, 100));
+        assertEquals(1, sent.get());
+
+        try {
+            session.write(new ShortCommand(100, 99));
+            fail();
+        } catch (PipeDisconnectedException e) {
+            // expected
+        }
+        assertEquals(1, sent.get());
+
+        server.close();
+        server.join();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.tcp;
+
+import net.sf.jncu.cdil.mnp.MNPFrameEncoder;
+import net.sf.jncu.cdil.mnp.MNPLinkTransferPacket;
+import net.sf.jncu.cdil.mnp.MNPPacketFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare backing up packages over TCP with the time the same data would take
+ * over MNP serial.
+ */
+public class TCPPipeBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int packages = 64;
+        final int size = 32 * 1024;
+        byte[] commands = TCPPipeTest.createBackup(packages, size);
+        long elapsed = TCPPipeTest.backup(commands, packages, size);
+
+        // MNP sends the same stream in escaped LT frames at 38400 baud.
+        MNPFrameEncoder encoder = new MNPFrameEncoder();
+        long wire = 0L;
+        for (MNPLinkTransferPacket packet : MNPPacketFactory.getInstance().createTransferPackets(new ByteArrayInputStream(commands), commands.length)) {
+            byte[] payload = packet.serialize();
+            wire += encoder.encode(payload, 0, payload.length).limit();
+        }
+        long serial = TimeUnit.SECONDS.toNanos(wire * 10L) / 38400L;
+        System.out.println("backup " + commands.length + " bytes: TCP " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, MNP serial at least "
+                + TimeUnit.NANOSECONDS.toMillis(serial) + "ms");
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.cdil.tcp;
+
+import net.sf.jncu.cdil.CDLayer;
+import net.sf.jncu.cdil.ServiceNotSupportedException;
+import net.sf.jncu.protocol.BaseDockCommandToNewton;
+import net.sf.jncu.protocol.DockCommand;
+import net.sf.jncu.protocol.DockCommandFromNewton;
+import net.sf.jncu.protocol.DockCommandListener;
+import net.sf.jncu.protocol.DockCommandToNewton;
+import net.sf.jncu.protocol.v1_0.app.DPackage;
+import net.sf.jncu.protocol.v1_0.session.DInitiateDocking;
+import net.sf.jncu.protocol.v2_0.session.DRequestToDock;
+import net.sf.jncu.protocol.v2_0.session.DockingProtocol;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TCPPipeTest extends SFTestCase {
+
+    /**
+     * Layer without serial ports.
+     */
+    private static class TCPLayer extends CDLayer {
+
+        @Override
+        protected void initMNP() {
+        }
+    }
+
+    /**
+     * Pipe that skips the docking handshake.
+     */
+    private static class UndockedPipe extends TCPPipe {
+
+        public UndockedPipe(CDLayer layer) throws ServiceNotSupportedException {
+            super(layer, 0);
+        }
+
+        @Override
+        protected DockingProtocol<TCPPacket, TCPPacketLayer> createDockingProtocol() {
+            return new DockingProtocol<TCPPacket, TCPPacketLayer>(this) {
+                @Override
+                public void commandReceived(DockCommandFromNewton command) {
+                }
+
+                @Override
+                public void commandSent(DockCommandToNewton command) {
+                }
+            };
+        }
+    }
+
+    /**
+     * Newton device that talks to the pipe over a local socket.
+     */
+    private static class FakeNewton {
+
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private byte[] data;
+
+        public FakeNewton(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(socket.getOutputStream());
+            in = new DataInputStream(socket.getInputStream());
+        }
+
+        public void write(String cmd, byte[] data) throws IOException {
+            out.write(encode(cmd, data));
+            out.flush();
+        }
+
+        public String read() throws IOException {
+            byte[] header = new byte[8];
+            in.readFully(header);
+            assertEquals("newtdock", new String(header, "US-ASCII"));
+            byte[] cmd = new byte[4];
+            in.readFully(cmd);
+            data = new byte[in.readInt()];
+            in.readFully(data);
+            in.skipBytes((4 - (data.length & 3)) & 3);
+            return new String(cmd, "US-ASCII");
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Encode a command the way a Newton sends it.
+     */
+    private static byte[] encode(String cmd, byte[] data) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeBytes("newtdock");
+        out.writeBytes(cmd);
+        out.writeInt(data.length);
+        out.write(data);
+        out.write(new byte[(4 - (data.length & 3)) & 3]);
+        return buf.toByteArray();
+    }
+
+    /**
+     * Command that writes less data than its length.
+     */
+    private static class ShortCommand extends BaseDockCommandToNewton {
+
+        private final int length;
+        private final int written;
+
+        public ShortCommand(int length, int written) {
+            super("shrt");
+            this.length = length;
+            this.written = written;
+        }
+
+        @Override
+        protected int getCommandDataLength() {
+            return length;
+        }
+
+        @Override
+        protected void writeCommandData(OutputStream data) throws IOException {
+            data.write(new byte[written]);
+        }
+    }
+
+    @Test
+    public void testCheckTCP() throws Exception {
+        CDLayer layer = new TCPLayer();
+        layer.startUp();
+        layer.checkTCP();
+        layer.shutDown();
+    }
+
+    /**
+     * A command that writes less than its payload length fails, even if it
+     * ends on a chunk boundary.
+     */
+    @Test
+    public void testShortPayload() throws Exception {
+        final List<TCPPacket> sent = new ArrayList<TCPPacket>();
+        TCPPacketLayer packetLayer = new TCPPacketLayer(null) {
+            @Override
+            public void send(TCPPacket packet) {
+                sent.add(packet);
+            }
+        };
+        TCPCommandLayer commandLayer = new TCPCommandLayer(packetLayer);
+        final int header = DockCommand.COMMAND_HEADER_LENGTH;
+        commandLayer.write(new ShortCommand(TCPPacketLayer.MAX_DATA_LENGTH * 2 - header, TCPPacketLayer.MAX_DATA_LENGTH * 2 - header));
+        assertEquals(2, sent.size());
+
+        sent.clear();
+        try {
+            commandLayer.write(new ShortCommand(TCPPacketLayer.MAX_DATA_LENGTH * 2 - header, TCPPacketLayer.MAX_DATA_LENGTH - header));
+            fail();
+        } catch (IOException ioe) {
+            // expected
+        }
+        assertTrue(sent.isEmpty());
+    }
+
+    /**
+     * Newton requests to dock, and the desktop replies over the socket.
+     */
+    @Test
+    public void testDocking() throws Exception {
+        CDLayer layer = new TCPLayer();
+        layer.startUp();
+        TCPPipe pipe = layer.createTCP(0);
+        pipe.startListening();
+
+        FakeNewton newton = new FakeNewton(pipe.getPort());
+        newton.write(DRequestToDock.COMMAND, new byte[]{0, 0, 0, DRequestToDock.DANTE_PROTOCOL_VERSION});
+        assertEquals(DInitiateDocking.COMMAND, newton.read());
+        assertEquals(4, newton.getData().length);
+
+        newton.close();
+        pipe.disconnect();
+        pipe.dispose();
+    }
+
+    /**
+     * Create the commands of a backup of packages, as a Newton sends them.
+     */
+    static byte[] createBackup(int packages, int size) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] data = new byte[4 + size];
+        for (int i = 0; i < packages; i++) {
+            data[3] = (byte) i;
+            data[4 + i] = (byte) i;
+            stream.write(encode(DPackage.COMMAND, data));
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Send the backup from a Newton, and wait for the pipe to receive all the
+     * packages.
+     *
+     * @return the elapsed time, in nanoseconds.
+     */
+    static long backup(byte[] commands, int packages, int size) throws Exception {
+        CDLayer layer = new TCPLayer();
+        layer.startUp();
+        TCPPipe pipe = new UndockedPipe(layer);
+
+        final CountDownLatch received = new CountDownLatch(packages);
+        final long[] bytes = new long[1];
+        pipe.addCommandListener(new DockCommandListener() {
+            @Override
+            public void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+            }
+
+            @Override
+            public void commandReceived(DockCommandFromNewton command) {
+                if (command instanceof DPackage) {
+                    bytes[0] += ((DPackage) command).getData().length;
+                    received.countDown();
+                }
+            }
+
+            @Override
+            public void commandSending(DockCommandToNewton command, int progress, int total) {
+            }
+
+            @Override
+            public void commandSent(DockCommandToNewton command) {
+            }
+
+            @Override
+            public void commandEOF() {
+            }
+        });
+        pipe.startListening();
+
+        FakeNewton newton = new FakeNewton(pipe.getPort());
+        long start = System.nanoTime();
+        newton.out.write(commands);
+        newton.out.flush();
+        assertTrue(received.await(30, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        assertEquals((long) packages * size, bytes[0]);
+
+        newton.close();
+        pipe.disconnect();
+        pipe.dispose();
+        return elapsed;
+    }
+
+    /**
+     * Back up packages over TCP.
+     */
+    @Test
+    public void testBackup() throws Exception {
+        backup(createBackup(64, 32 * 1024), 64, 32 * 1024);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+/**
+ * Measure making and disposing handles.
+ */
+public class FDHandlesBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 1000000;
+        FDILibrary.startup();
+        try {
+            FDHandle[] objs = new FDHandle[1000];
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i += objs.length) {
+                for (int j = 0; j < objs.length; j++)
+                    objs[j] = FDILibrary.makeString("String " + j);
+                for (int j = 0; j < objs.length; j++)
+                    FDILibrary.dispose(objs[j]);
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("make and dispose " + count + " handles: " + (time / count) + "ns/handle");
+        } finally {
+            FDILibrary.shutdown();
+        }
+    }
+}
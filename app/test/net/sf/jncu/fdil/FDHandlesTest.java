@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+public class FDHandlesTest extends SFTestCase {
+
+    /**
+     * Disposed handles are stale, even after their entry is reused.
+     */
+    @Test
+    public void testStale() throws Exception {
+        FDHandles handles = new FDHandles();
+        NSOFString a = new NSOFString("a");
+        NSOFFrame b = new NSOFFrame();
+        FDHandle ha = handles.create(a);
+        FDHandle hb = handles.create(b);
+        assertSame(a, handles.get(ha));
+        assertSame(b, handles.get(hb));
+        assertSame(ha, handles.find(a));
+        assertFalse(ha.equals(hb));
+
+        handles.dispose(ha);
+        assertNull(handles.get(ha));
+        assertNull(handles.find(a));
+        try {
+            handles.dispose(ha);
+            fail();
+        } catch (PointerObjectIsFreeException e) {
+            // expected
+        }
+
+        NSOFString c = new NSOFString("c");
+        FDHandle hc = handles.create(c);
+        assertEquals(ha.getIndex(), hc.getIndex());
+        assertNull(handles.get(ha));
+        assertSame(c, handles.get(hc));
+
+        long allocated = handles.getAllocatedMemory();
+        handles.clear();
+        assertNull(handles.get(hb));
+        assertNull(handles.get(hc));
+        assertTrue(handles.getAllocatedMemory() < allocated);
+    }
+
+    /**
+     * Making and disposing handles reuses their entries.
+     */
+    @Test
+    public void testReuse() throws Exception {
+        FDILibrary.startup();
+        try {
+            FDHandle[] objs = new FDHandle[1000];
+            long before = 0;
+            for (int round = 0; round < 10; round++) {
+                if (round == 1)
+                    before = FDILibrary.allocatedMemory();
+                for (int j = 0; j < objs.length; j++)
+                    objs[j] = FDILibrary.makeString("String " + j);
+                for (int j = 0; j < objs.length; j++)
+                    FDILibrary.dispose(objs[j]);
+            }
+            assertEquals(before, FDILibrary.allocatedMemory());
+        } finally {
+            FDILibrary.shutdown();
+        }
+    }
+
+    /**
+     * Disposing the last handle of an object finds its older handle.
+     */
+    @Test
+    public void testOlder() throws Exception {
+        FDHandles handles = new FDHandles();
+        NSOFString a = new NSOFString("a");
+        FDHandle h1 = handles.create(a);
+        FDHandle h2 = handles.create(a);
+        FDHandle h3 = handles.create(a);
+        assertSame(h3, handles.find(a));
+
+        handles.dispose(h1);
+        assertSame(h3, handles.find(a));
+        handles.dispose(h3);
+        assertSame(h2, handles.find(a));
+        assertSame(a, handles.get(h2));
+        handles.dispose(h2);
+        assertNull(handles.find(a));
+
+        FDHandle h4 = handles.create(a);
+        assertSame(h4, handles.find(a));
+    }
+
+    /**
+     * Deep dispose the items of an array after disposing a slot handle.
+     */
+    @Test
+    public void testDeepDispose() throws Exception {
+        FDILibrary.startup();
+        try {
+            FDHandle array = FDILibrary.makeArray(0, null);
+            FDHandle item = FDILibrary.makeString("item");
+            FDILibrary.appendArraySlot(array, item);
+            FDILibrary.dispose(FDILibrary.getArraySlot(array, 0));
+            assertEquals("item", FDILibrary.getString(item));
+
+            FDILibrary.deepDispose(array);
+            try {
+                FDILibrary.dispose(item);
+                fail();
+            } catch (PointerObjectIsFreeException e) {
+                // expected
+            }
+        } finally {
+            FDILibrary.shutdown();
+        }
+    }
+}
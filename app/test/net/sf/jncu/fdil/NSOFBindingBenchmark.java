@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.jncu.protocol.v2_0.app.PackageInfo;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Measure decoding package information, with the binding and with the frame.
+ */
+public class NSOFBindingBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 10000;
+        byte[][] entries = new byte[count][];
+        for (int i = 0; i < count; i++)
+            entries[i] = NSOFBindingTest.flatten(NSOFBindingTest.createPackage(i));
+
+        NSOFBinding<NSOFBindingTest.Package> binding = NSOFBinding.forClass(NSOFBindingTest.Package.class);
+        NSOFReader reader = new NSOFReader();
+        NSOFDecoder decoder = new NSOFDecoder();
+        long bound = Long.MAX_VALUE;
+        long framed = Long.MAX_VALUE;
+        long sum = 0;
+        NSOFBindingTest.Package p;
+        PackageInfo info;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                reader.reset();
+                reader.setInput(new ByteArrayInputStream(entries[i]));
+                p = binding.inflate(reader, new NSOFBindingTest.Package());
+                sum += p.size + p.id + p.name.length();
+            }
+            bound = Math.min(bound, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                decoder.reset();
+                info = new PackageInfo((NSOFFrame) decoder.inflate(new ByteArrayInputStream(entries[i])));
+                sum -= info.getPackageSize() + info.getPackageId() + info.getName().length();
+            }
+            framed = Math.min(framed, System.nanoTime() - start);
+        }
+        System.out.println("decode " + count + " packages: bound " + (bound / count) + "ns/package, frame " + (framed / count) + "ns/package (checksum " + sum + ")");
+    }
+}
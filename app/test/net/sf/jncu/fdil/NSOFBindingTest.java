@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.jncu.newton.os.NewtonInfo;
+import net.sf.jncu.protocol.v2_0.app.PackageInfo;
+import net.sf.jncu.sync.ArchiveReader;
+import net.sf.jncu.sync.BackupWriter;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class NSOFBindingTest extends SFTestCase {
+
+    /**
+     * The package information, bound to the slots of {@link PackageInfo}.
+     */
+    static class Package {
+        @NSOFSlot("name")
+        String name;
+        @NSOFSlot("packageSize")
+        int size;
+        @NSOFSlot("packageId")
+        int id;
+        @NSOFSlot("packageVersion")
+        int version;
+        @NSOFSlot("format")
+        int format;
+        @NSOFSlot("deviceKind")
+        int deviceKind;
+        @NSOFSlot("deviceNumber")
+        int deviceNumber;
+        @NSOFSlot("deviceId")
+        int deviceId;
+        @NSOFSlot("modTime")
+        int modTime;
+        @NSOFSlot("isCopyProtected")
+        boolean copyProtected;
+        @NSOFSlot("safeToRemove")
+        boolean safeToRemove;
+    }
+
+    static byte[] flatten(NSOFObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NSOFEncoder().flatten(object, out);
+        return out.toByteArray();
+    }
+
+    static PackageInfo createPackage(int i) {
+        PackageInfo info = new PackageInfo();
+        info.setName("Package " + i);
+        info.setPackageSize(1000 + i);
+        info.setPackageId(i);
+        info.setPackageVersion(2);
+        info.setFormat(1);
+        info.setDeviceKind(3);
+        info.setDeviceNumber(4);
+        info.setDeviceId(5);
+        info.setModifyDate(60000 + i);
+        info.setCopyProtected(false);
+        info.setSafeToRemove(true);
+        return info;
+    }
+
+    /**
+     * Encode exactly like the equivalent frame, and decode it back.
+     */
+    @Test
+    public void testNewtonInfo() throws Exception {
+        NewtonInfo info = new NewtonInfo();
+        info.setName("Newton");
+        info.setNewtonId(123456);
+        info.setManufacturerId(0x01000000);
+        info.setROMVersion(0x00020002);
+        info.setRAMSize(-1);
+        info.setScreenWidth(320);
+        info.setScreenHeight(480);
+        info.setSerialNumber(987654321L);
+        info.setTargetProtocol(10);
+
+        NSOFBinding<NewtonInfo> binding = NSOFBinding.forClass(NewtonInfo.class);
+        assertSame(binding, NSOFBinding.forClass(NewtonInfo.class));
+        assertEquals(17, binding.getSlotNames().length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        binding.flatten(info, out);
+        byte[] b = flatten(info.toFrame());
+        assertEquals(b, out.toByteArray());
+
+        NewtonInfo decoded = binding.inflate(new ByteArrayInputStream(b));
+        assertEquals("Newton", decoded.getName());
+        assertEquals(123456, decoded.getNewtonId());
+        assertEquals(0x01000000, decoded.getManufacturerId());
+        assertEquals(0x00020002, decoded.getROMVersion());
+        assertEquals(-1, decoded.getRAMSize());
+        assertEquals(480, decoded.getScreenHeight());
+        assertEquals(987654321L, decoded.getSerialNumber());
+        assertEquals(10, decoded.getTargetProtocol());
+
+        // Backup archives keep the device information with the binding.
+        out.reset();
+        BackupWriter writer = new BackupWriter(out);
+        writer.startBackup();
+        writer.deviceInformation(info);
+        writer.endBackup();
+        decoded = new ArchiveReader(new ByteArrayInputStream(out.toByteArray())).read().getDeviceInfo();
+        assertEquals("Newton", decoded.getName());
+        assertEquals(123456, decoded.getNewtonId());
+        assertEquals(987654321L, decoded.getSerialNumber());
+    }
+
+    /**
+     * Integers that do not fit in an immediate are not truncated.
+     */
+    @Test
+    public void testOutOfRange() throws Exception {
+        NewtonInfo info = new NewtonInfo();
+        info.setName("Newton");
+        info.setNewtonId(0x30000001);
+        NSOFBinding<NewtonInfo> binding = NSOFBinding.forClass(NewtonInfo.class);
+        try {
+            binding.flatten(info, new ByteArrayOutputStream());
+            fail();
+        } catch (ValueOutOfRangeException e) {
+            // expected
+        }
+        try {
+            info.toFrame();
+            fail();
+        } catch (ValueOutOfRangeException e) {
+            // expected
+        }
+
+        info.setNewtonId(NSOFInteger.MIN_VALUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        binding.flatten(info, out);
+        NewtonInfo decoded = binding.inflate(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(NSOFInteger.MIN_VALUE, decoded.getNewtonId());
+    }
+
+    /**
+     * Skip unbound slots, and resolve precedents to skipped strings.
+     */
+    @Test
+    public void testSkip() throws Exception {
+        NSOFString name = new NSOFString("Shared");
+        NSOFFrame frame = new NSOFFrame();
+        frame.put("notes", new NSOFArray(new NSOFObject[]{name, new NSOFFrame()}));
+        frame.put("Name", name);
+        frame.put("packageSize", new NSOFInteger(42));
+        frame.put("safeToRemove", NSOFBoolean.TRUE);
+        frame.put("isCopyProtected", NSOFNil.NIL);
+        byte[] b = flatten(frame);
+
+        NSOFBinding<Package> binding = NSOFBinding.forClass(Package.class);
+        Package p = binding.inflate(new ByteArrayInputStream(b));
+        assertEquals("Shared", p.name);
+        assertEquals(42, p.size);
+        assertTrue(p.safeToRemove);
+        assertFalse(p.copyProtected);
+        assertEquals(0, p.id);
+
+        frame.put("packageId", new NSOFString("1"));
+        try {
+            binding.inflate(new ByteArrayInputStream(flatten(frame)));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measure the bytes allocated to decode each soup entry, with a new decoder
+ * and with a reset decoder.
+ */
+public class NSOFDecoderBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("thread allocation not supported");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mx;
+        final long thread = Thread.currentThread().getId();
+        final int count = 5000;
+        final byte[][] entries = NSOFDecoderTest.createEntries(count);
+
+        long fresh = Long.MAX_VALUE;
+        long reused = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = threads.getThreadAllocatedBytes(thread);
+            for (byte[] entry : entries) {
+                new NSOFDecoder().inflate(new ByteArrayInputStream(entry));
+            }
+            fresh = Math.min(fresh, threads.getThreadAllocatedBytes(thread) - start);
+
+            NSOFDecoder decoder = new NSOFDecoder();
+            start = threads.getThreadAllocatedBytes(thread);
+            for (byte[] entry : entries) {
+                decoder.reset();
+                decoder.inflate(new ByteArrayInputStream(entry));
+            }
+            reused = Math.min(reused, threads.getThreadAllocatedBytes(thread) - start);
+        }
+        System.out.println("decode " + count + " entries: new decoder " + (fresh / count) + " bytes/entry, reset decoder " + (reused / count) + " bytes/entry");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class NSOFDecoderTest extends SFTestCase {
+
+    /**
+     * Encode soup entries, each in its own stream like in a backup archive.
+     */
+    static byte[][] createEntries(int count) throws IOException {
+        byte[][] entries = new byte[count][];
+        NSOFFrame name;
+        NSOFFrame entry;
+        ByteArrayOutputStream out;
+        for (int i = 0; i < count; i++) {
+            name = new NSOFFrame();
+            name.put("first", new NSOFString("First" + i));
+            name.put("last", new NSOFString("Last" + i));
+            name.put("class", new NSOFSymbol("person"));
+
+            entry = new NSOFFrame();
+            entry.put("name", name);
+            entry.put("cardType", new NSOFInteger(0));
+            entry.put("company", new NSOFString("Company " + (i % 100)));
+            entry.put("phones", new NSOFPlainArray(new NSOFObject[]{new NSOFString("555-" + i)}));
+            entry.put("notes", new NSOFBinaryObject(new byte[64]));
+            entry.put("_uniqueID", new NSOFInteger(i));
+            entry.put("_modTime", new NSOFInteger(i));
+
+            out = new ByteArrayOutputStream();
+            new NSOFEncoder().flatten(entry, out);
+            entries[i] = out.toByteArray();
+        }
+        return entries;
+    }
+
+    /**
+     * Reuse the decoder for separate streams.
+     */
+    @Test
+    public void testReset() throws Exception {
+        byte[][] entries = createEntries(3);
+        NSOFDecoder decoder = new NSOFDecoder();
+        for (int i = 0; i < entries.length; i++) {
+            decoder.reset();
+            NSOFFrame frame = (NSOFFrame) decoder.inflate(new ByteArrayInputStream(entries[i]));
+            assertEquals(i, ((NSOFInteger) frame.get("_uniqueID")).getValue());
+            assertEquals("person", ((NSOFSymbol) ((NSOFFrame) frame.get("name")).get("class")).getValue());
+            assertTrue(decoder.getPrecedent(0) instanceof NSOFFrame);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compare the encoder with the previous encoding, which hashed every frame
+ * recursively.
+ */
+public class NSOFEncoderBenchmark {
+
+    /**
+     * Encoder that keeps its precedents by equality, like it used to.
+     */
+    private static class LegacyEncoder extends NSOFEncoder {
+
+        private final Map<Precedent, NSOFPrecedent> precedents = new HashMap<Precedent, NSOFPrecedent>();
+        private int idMax = 0;
+
+        @Override
+        protected void flattenImpl(NSOFObject object, OutputStream out) throws IOException {
+            if (object instanceof Precedent) {
+                Precedent p = (Precedent) object;
+                NSOFPrecedent id = precedents.get(p);
+                if (id == null) {
+                    id = new NSOFPrecedent(this.idMax++);
+                    precedents.put(p, id);
+                } else {
+                    object = id;
+                }
+            }
+            object.flatten(out, this);
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 5000;
+        NSOFObject[] entries = new NSOFObject[count];
+        for (int i = 0; i < count; i++)
+            entries[i] = NSOFEncoderTest.createEntry(i << 4, 4);
+        NSOFArray soup = new NSOFArray(entries);
+
+        long legacy = Long.MAX_VALUE;
+        long identity = Long.MAX_VALUE;
+        long structural = Long.MAX_VALUE;
+        int size = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            NSOFEncoderTest.flatten(new LegacyEncoder(), soup);
+            legacy = Math.min(legacy, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            size = NSOFEncoderTest.flatten(new NSOFEncoder(), soup).length;
+            identity = Math.min(identity, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            NSOFEncoder encoder = new NSOFEncoder();
+            encoder.setStructuralPrecedents(true);
+            NSOFEncoderTest.flatten(encoder, soup);
+            structural = Math.min(structural, System.nanoTime() - start);
+        }
+        System.out.println("flatten " + count + " entries (" + size + " bytes): legacy " + (legacy / 1000L) + "us, identity " + (identity / 1000L) + "us, structural " + (structural / 1000L) + "us");
+    }
+}
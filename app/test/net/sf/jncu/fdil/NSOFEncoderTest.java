@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class NSOFEncoderTest extends SFTestCase {
+
+    /**
+     * Create a soup entry with nested frames.
+     */
+    static NSOFFrame createEntry(int i, int depth) {
+        NSOFFrame entry = new NSOFFrame();
+        entry.put("_uniqueID", new NSOFInteger(i));
+        entry.put("title", new NSOFString("Entry " + i + "." + depth));
+        entry.put("tags", new NSOFArray(new NSOFObject[]{new NSOFSymbol("tag" + (i % 10)), new NSOFInteger(i)}));
+        if (depth > 0) {
+            entry.put("child", createEntry(i * 2, depth - 1));
+            entry.put("sibling", createEntry(i * 2 + 1, depth - 1));
+        }
+        return entry;
+    }
+
+    static byte[] flatten(NSOFEncoder encoder, NSOFObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.flatten(object, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * The sizing pass counts exactly the bytes that are flattened.
+     */
+    @Test
+    public void testFlattenedSize() throws Exception {
+        NSOFFrame entry = createEntry(7, 3);
+        NSOFString shared = new NSOFString("shared");
+        entry.put("empty", new NSOFString(""));
+        entry.put("shared", shared);
+        entry.put("again", shared);
+        entry.put("negative", new NSOFInteger(-1));
+        entry.put("real", new NSOFReal(3.14));
+        entry.put("nil", NSOFNil.NIL);
+        entry.put("true", NSOFBoolean.TRUE);
+        entry.put("ascii", new NSOFAsciiCharacter('a'));
+        entry.put("unicode", new NSOFUnicodeCharacter('\u05D0'));
+        entry.put("bounds", new NSOFSmallRect(1, 2, 3, 4));
+        entry.put("plain", new NSOFPlainArray(new NSOFObject[]{shared, new NSOFBinaryObject(new byte[300])}));
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'x');
+        entry.put("long", new NSOFString(new String(chars)));
+
+        assertEquals(flatten(new NSOFEncoder(), entry).length, new NSOFEncoder().getFlattenedSize(entry));
+
+        NSOFEncoder encoder = new NSOFEncoder();
+        encoder.setPrecedents(false);
+        NSOFEncoder sizer = new NSOFEncoder();
+        sizer.setPrecedents(false);
+        assertEquals(flatten(encoder, entry).length, sizer.getFlattenedSize(entry));
+    }
+
+    /**
+     * Equal frames are distinct objects, unless they are the same object.
+     */
+    @Test
+    public void testIdentity() throws Exception {
+        NSOFFrame a = createEntry(1, 0);
+        NSOFFrame b = createEntry(1, 0);
+        NSOFArray arr = new NSOFArray(new NSOFObject[]{a, b, a});
+        byte[] encoded = flatten(new NSOFEncoder(), arr);
+
+        NSOFObject[] entries = ((NSOFArray) new NSOFDecoder().inflate(new ByteArrayInputStream(encoded))).getValue();
+        assertEquals(3, entries.length);
+        assertEquals(entries[0], entries[1]);
+        assertNotSame(entries[0], entries[1]);
+        assertTrue(entries[2] instanceof NSOFPrecedent);
+        assertSame(entries[0], ((NSOFPrecedent) entries[2]).getReferent());
+    }
+
+    /**
+     * Equal frames share a precedent when asked to.
+     */
+    @Test
+    public void testStructural() throws Exception {
+        NSOFFrame a = createEntry(1, 2);
+        NSOFFrame b = createEntry(1, 2);
+        NSOFArray arr = new NSOFArray(new NSOFObject[]{a, b});
+        NSOFEncoder encoder = new NSOFEncoder();
+        encoder.setStructuralPrecedents(true);
+        byte[] structural = flatten(encoder, arr);
+        byte[] identity = flatten(new NSOFEncoder(), arr);
+        assertTrue(structural.length < identity.length);
+
+        NSOFObject[] entries = ((NSOFArray) new NSOFDecoder().inflate(new ByteArrayInputStream(structural))).getValue();
+        assertTrue(entries[1] instanceof NSOFPrecedent);
+        assertSame(entries[0], ((NSOFPrecedent) entries[1]).getReferent());
+    }
+}
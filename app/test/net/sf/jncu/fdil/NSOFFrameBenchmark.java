@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measure frames of soup entries.
+ */
+public class NSOFFrameBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        footprint();
+        iterate();
+        snapshot();
+    }
+
+    /**
+     * Measure the heap used by a fully loaded soup.
+     */
+    private static void footprint() throws Exception {
+        final int count = 10000;
+        byte[][] entries = new byte[count][];
+        for (int i = 0; i < count; i++)
+            entries[i] = NSOFFrameTest.flatten(NSOFFrameTest.createEntry(i));
+
+        NSOFDecoder decoder = new NSOFDecoder();
+        NSOFObject[] loaded = new NSOFObject[count];
+        long before = usedMemory();
+        for (int i = 0; i < count; i++) {
+            decoder.reset();
+            loaded[i] = decoder.inflate(new ByteArrayInputStream(entries[i]));
+        }
+        long after = usedMemory();
+        System.out.println("load " + loaded.length + " entries: " + ((after - before) / count) + " bytes/entry");
+    }
+
+    /**
+     * Walk a large frame by slot index, and compare with copying the names
+     * for each slot.
+     */
+    private static void iterate() {
+        final int size = 2000;
+        NSOFFrame frame = new NSOFFrame();
+        for (int i = 0; i < size; i++)
+            frame.put("slot" + i, new NSOFInteger(i));
+
+        long indexed = Long.MAX_VALUE;
+        long copied = Long.MAX_VALUE;
+        long sum = 0;
+        List<NSOFSymbol> names;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                sum += frame.getSlotName(i).hashCode();
+                sum += ((NSOFInteger) frame.getSlotValue(i)).getValue();
+            }
+            indexed = Math.min(indexed, System.nanoTime() - start);
+
+            // What each call used to do.
+            start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                names = new ArrayList<NSOFSymbol>(frame.getNames());
+                sum += names.get(i).hashCode();
+                sum += ((NSOFInteger) frame.get(names.get(i))).getValue();
+            }
+            copied = Math.min(copied, System.nanoTime() - start);
+        }
+        System.out.println("iterate " + size + " slots: indexed " + (indexed / size) + "ns/slot, copied " + (copied / size) + "ns/slot (checksum " + sum + ")");
+    }
+
+    /**
+     * Compare snapshots of a soup entry with copying each slot.
+     */
+    private static void snapshot() {
+        NSOFFrame entry = NSOFFrameTest.createEntry(4);
+        final int count = 100000;
+        NSOFFrame[] copies = new NSOFFrame[count];
+        long shared = Long.MAX_VALUE;
+        long copied = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++)
+                copies[i] = entry.snapshot();
+            shared = Math.min(shared, System.nanoTime() - start);
+
+            // What each copy used to do.
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                copies[i] = new NSOFFrame();
+                for (int j = 0; j < entry.size(); j++)
+                    copies[i].put(entry.getSlotName(j), entry.getSlotValue(j));
+            }
+            copied = Math.min(copied, System.nanoTime() - start);
+        }
+        System.out.println("copy " + count + " entries: shared " + (shared / count) + "ns/entry, copied " + (copied / count) + "ns/entry");
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
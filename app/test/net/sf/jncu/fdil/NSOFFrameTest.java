@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+public class NSOFFrameTest extends SFTestCase {
+
+    /**
+     * Create a Names soup entry.
+     */
+    static NSOFFrame createEntry(int i) {
+        NSOFFrame name = new NSOFFrame();
+        name.put("first", new NSOFString("First" + i));
+        name.put("last", new NSOFString("Last" + i));
+        name.put("class", new NSOFSymbol("person"));
+
+        NSOFFrame entry = new NSOFFrame();
+        entry.put("name", name);
+        entry.put("cardType", new NSOFInteger(0));
+        entry.put("company", new NSOFString("Company " + (i % 100)));
+        entry.put("address", new NSOFString(i + " Infinite Loop"));
+        entry.put("city", new NSOFString("Cupertino"));
+        entry.put("country", new NSOFString("USA"));
+        entry.put("phones", new NSOFPlainArray(new NSOFObject[]{new NSOFString("555-" + i)}));
+        entry.put("sorton", new NSOFString("Last" + i));
+        entry.put("_uniqueID", new NSOFInteger(i));
+        entry.put("_modTime", new NSOFInteger(i));
+        entry.put("_modified", new NSOFInteger(i));
+        return entry;
+    }
+
+    static byte[] flatten(NSOFObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NSOFEncoder().flatten(object, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Frames with the same slots share their map.
+     */
+    @Test
+    public void testSharedMap() throws Exception {
+        NSOFFrame a = createEntry(1);
+        // The maps leading to the map of a frame are kept by the frame.
+        System.gc();
+        NSOFFrame b = createEntry(2);
+        assertSame(a.getKeys(), b.getKeys());
+        NSOFFrame c = (NSOFFrame) new NSOFDecoder().inflate(new ByteArrayInputStream(flatten(a)));
+        assertSame(a.getKeys(), c.getKeys());
+        assertEquals(a, c);
+        assertEquals(a.hashCode(), c.hashCode());
+        assertEquals(flatten(a), flatten(c));
+
+        b.put("notes", new NSOFString("Notes"));
+        assertNotSame(a.getKeys(), b.getKeys());
+        assertEquals(12, b.size());
+        assertEquals("Notes", ((NSOFString) b.get(11)).getValue());
+    }
+
+    /**
+     * Remove slots, and keep the order of the others.
+     */
+    @Test
+    public void testRemove() throws Exception {
+        NSOFFrame frame = createEntry(3);
+        assertEquals(new NSOFString("Cupertino"), frame.remove(NSOFSymbol.valueOf("city")));
+        assertEquals(NSOFNil.NIL, frame.remove(NSOFSymbol.valueOf("city")));
+        assertEquals(10, frame.size());
+        assertFalse(frame.hasSlot("city"));
+        assertEquals(new NSOFString("USA"), frame.get(4));
+
+        Iterator<NSOFSymbol> names = frame.getNames().iterator();
+        assertEquals("name", names.next().getValue());
+        assertEquals("cardType", names.next().getValue());
+
+        frame.clear();
+        assertTrue(frame.isEmpty());
+        assertEquals(NSOFNil.NIL, frame.get("name"));
+    }
+
+    /**
+     * Maps are shared for the same spelling, and the transitions are removed
+     * once their maps are not used.
+     */
+    @Test
+    public void testTransitions() throws Exception {
+        NSOFFrame lower = new NSOFFrame();
+        lower.put("transition", NSOFNil.NIL);
+        NSOFFrame upper = new NSOFFrame();
+        upper.put("TRANSITION", NSOFNil.NIL);
+        assertNotSame(lower.getKeys(), upper.getKeys());
+        assertEquals("TRANSITION", upper.getSlotName(0).getValue());
+        assertEquals(lower, upper);
+
+        NSOFFrame frame;
+        NSOFFrame[] frames = new NSOFFrame[128];
+        for (int i = 0; i < frames.length; i++) {
+            frame = new NSOFFrame();
+            frame.put("transition", NSOFNil.NIL);
+            frame.put("slot" + i, new NSOFInteger(i));
+            frames[i] = frame;
+        }
+        FrameMap map = FrameMap.EMPTY.add(NSOFSymbol.valueOf("transition"));
+        assertSame(lower.getKeys(), map.keySet());
+        assertEquals(frames.length, map.getTransitionsCount());
+        assertEquals(new NSOFInteger(100), frames[100].get("slot100"));
+
+        frames = null;
+        collect(map, 0);
+        assertEquals(0, map.getTransitionsCount());
+    }
+
+    /**
+     * Collect garbage until the map has few enough transitions.
+     */
+    private static void collect(FrameMap map, int count) throws InterruptedException {
+        for (int i = 0; (i < 20) && (map.getTransitionsCount() > count); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Walk large frames by slot index.
+     */
+    @Test
+    public void testIterate() throws Exception {
+        final int size = 2000;
+        NSOFFrame frame = new NSOFFrame();
+        for (int i = 0; i < size; i++)
+            frame.put("slot" + i, new NSOFInteger(i));
+        assertEquals("slot1234", frame.getSlotName(1234).getValue());
+        assertEquals(new NSOFInteger(1234), frame.getSlotValue(1234));
+        try {
+            frame.getSlotValue(size);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+
+        NSOFFrame copy = new NSOFFrame();
+        copy.putAll(frame);
+        assertEquals(frame, copy);
+    }
+
+    /**
+     * Copies share the slots until either copy is changed.
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        NSOFFrame entry = createEntry(4);
+        byte[] b = flatten(entry);
+        NSOFFrame copy = entry.snapshot();
+        assertEquals(entry, copy);
+        assertEquals(b, flatten(copy));
+
+        copy.put("city", new NSOFString("Palo Alto"));
+        copy.remove(NSOFSymbol.valueOf("country"));
+        assertEquals(new NSOFString("Cupertino"), entry.get("city"));
+        assertEquals(new NSOFString("USA"), entry.get("country"));
+        assertEquals(b, flatten(entry));
+        entry.put("notes", new NSOFString("Notes"));
+        assertFalse(copy.hasSlot("notes"));
+        assertEquals(10, copy.size());
+
+        NSOFFrame name = (NSOFFrame) entry.get("name");
+        NSOFFrame filled = new NSOFFrame();
+        filled.putAll(name);
+        assertEquals("person", filled.getObjectClass().getValue());
+        filled.clear();
+        assertEquals(3, name.size());
+
+        NSOFArray phones = (NSOFArray) entry.get("phones");
+        NSOFArray phonesCopy = phones.snapshot();
+        assertTrue(phonesCopy instanceof NSOFPlainArray);
+        phonesCopy.add(new NSOFString("555-1234"));
+        phonesCopy.toList().set(0, NSOFNil.NIL);
+        assertEquals(1, phones.length());
+        assertEquals(new NSOFString("555-4"), phones.get(0));
+    }
+}
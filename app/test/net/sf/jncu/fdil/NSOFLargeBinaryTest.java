@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class NSOFLargeBinaryTest extends SFTestCase {
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (i * 31 + (i >> 8));
+        return data;
+    }
+
+    /**
+     * Random access across pages.
+     */
+    @Test
+    public void testPages() throws Exception {
+        final int pageSize = NSOFLargeBinary.PAGE_SIZE;
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        assertEquals(0, lbin.getLength());
+        byte[] data = createData(pageSize * 3 + 100);
+        lbin.write(10, data, 0, data.length);
+        assertEquals(data.length + 10, lbin.getLength());
+
+        byte[] b = new byte[pageSize + 2];
+        lbin.read(pageSize - 1 + 10, b, 0, b.length);
+        assertEquals(Arrays.copyOfRange(data, pageSize - 1, pageSize * 2 + 1), b);
+
+        // Shrink, and grow with zeros.
+        lbin.setLength(pageSize + 5);
+        lbin.setLength(pageSize * 2);
+        b = new byte[pageSize - 5];
+        lbin.read(pageSize + 5, b, 0, b.length);
+        assertEquals(new byte[b.length], b);
+        try {
+            lbin.read(pageSize, b, 0, pageSize + 1);
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+        lbin.dispose();
+        assertEquals(0, lbin.getLength());
+    }
+
+    /**
+     * Decode and encode a large binary that is spilled to disk.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        FDLargeBinaryProcs procs = NSOFLargeBinary.getDefaultProcs();
+        NSOFLargeBinary.setDefaultProcs(new FDSpillStoreProcs(64 * 1024));
+        try {
+            byte[] data = createData(3 * 1000 * 1000);
+            NSOFLargeBinary lbin = new NSOFLargeBinary();
+            lbin.setObjectClass("sound");
+            lbin.setValue(new ByteArrayInputStream(data), data.length);
+            NSOFLargeBinary copy = (NSOFLargeBinary) lbin.deepClone();
+            lbin.dispose();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new NSOFEncoder().flatten(copy, out);
+            byte[] b = out.toByteArray();
+            assertEquals(new NSOFEncoder().getFlattenedSize(copy), b.length);
+
+            InputStream in = new BufferedInputStream(new ByteArrayInputStream(b));
+            NSOFLargeBinary decoded = (NSOFLargeBinary) new NSOFDecoder().inflate(in);
+            assertEquals("sound", decoded.getObjectClass().getValue());
+            assertEquals(data.length, decoded.getLength());
+            assertEquals(data, decoded.getValue());
+
+            out.reset();
+            new NSOFEncoder().flatten(decoded, out);
+            assertEquals(b, out.toByteArray());
+            copy.dispose();
+            decoded.dispose();
+        } finally {
+            NSOFLargeBinary.setDefaultProcs(procs);
+        }
+    }
+
+    /**
+     * Spilled binaries that are never disposed don't keep their files.
+     */
+    @Test
+    public void testSpillFiles() throws Exception {
+        if (System.getProperty("os.name").startsWith("Windows"))
+            // Mapped files cannot be deleted until garbage collected.
+            return;
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        FilenameFilter filter = new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("jncu") && name.endsWith(".vbo");
+            }
+        };
+        int before = tmp.list(filter).length;
+
+        FDLargeBinaryProcs procs = NSOFLargeBinary.getDefaultProcs();
+        NSOFLargeBinary.setDefaultProcs(new FDSpillStoreProcs(64 * 1024));
+        try {
+            byte[] data = createData(200 * 1000);
+            NSOFLargeBinary[] lbins = new NSOFLargeBinary[10];
+            for (int i = 0; i < lbins.length; i++) {
+                lbins[i] = new NSOFLargeBinary();
+                lbins[i].setValue(data);
+                // Grow past the first mapping.
+                lbins[i].write(data.length, data, 0, data.length);
+            }
+            assertEquals(before, tmp.list(filter).length);
+            byte[] b = new byte[data.length];
+            lbins[9].read(data.length, b, 0, b.length);
+            assertEquals(data, b);
+            assertEquals(data.length * 2, lbins[9].getValue().length);
+        } finally {
+            NSOFLargeBinary.setDefaultProcs(procs);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Measure the encoding and decoding rates of frames, arrays and strings.
+ */
+public class NSOFOutputBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 2000;
+        NSOFObject[] frames = new NSOFObject[count];
+        NSOFObject[] arrays = new NSOFObject[count];
+        NSOFObject[] strings = new NSOFObject[count];
+        NSOFFrame frame;
+        for (int i = 0; i < count; i++) {
+            frame = new NSOFFrame();
+            frame.put("_uniqueID", new NSOFInteger(i));
+            frame.put("_modTime", new NSOFInteger(i * 1000));
+            frame.put("company", new NSOFString("Company " + i));
+            frame.put("title", new NSOFSymbol("title"));
+            frames[i] = frame;
+            NSOFObject[] items = new NSOFObject[32];
+            for (int j = 0; j < items.length; j++)
+                items[j] = new NSOFInteger(i * j * 1000);
+            arrays[i] = new NSOFPlainArray(items);
+            strings[i] = new NSOFString("The quick brown fox jumps over the lazy dog, " + i + " times.");
+        }
+        System.out.println("frames: " + measure(frames));
+        System.out.println("arrays: " + measure(arrays));
+        System.out.println("strings: " + measure(strings));
+    }
+
+    private static String measure(NSOFObject[] objects) throws IOException {
+        long encode = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        byte[] b = null;
+        for (int round = 0; round < 20; round++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = new BufferedOutputStream(bytes);
+            long start = System.nanoTime();
+            NSOFEncoder encoder = new NSOFEncoder();
+            for (NSOFObject object : objects)
+                encoder.flatten(object, out);
+            out.flush();
+            encode = Math.min(encode, System.nanoTime() - start);
+            b = bytes.toByteArray();
+
+            InputStream in = new BufferedInputStream(new ByteArrayInputStream(b));
+            start = System.nanoTime();
+            NSOFDecoder decoder = new NSOFDecoder();
+            for (int i = 0; i < objects.length; i++) {
+                if (decoder.inflate(in) == null)
+                    throw new IOException("missing object");
+            }
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        return "encode " + (b.length * 1000L / encode) + "MB/s, decode " + (b.length * 1000L / decode) + "MB/s";
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+public class NSOFOutputTest extends SFTestCase {
+
+    /**
+     * The bulk primitives match the stream helpers.
+     */
+    @Test
+    public void testPrimitives() throws Exception {
+        NSOFOutput out = new NSOFOutput();
+        out.writeXLong(12);
+        out.writeXLong(1000);
+        out.writeXLong(-1);
+        out.writeInt(0x12345678);
+        out.writeUTF16BE("Newton א");
+        byte[] b = out.toByteArray();
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        XLong.encode(12, raw);
+        XLong.encode(1000, raw);
+        XLong.encode(-1, raw);
+        NewtonStreamedObjectFormat.htonl(0x12345678, raw);
+        raw.write("Newton א".getBytes("UTF-16BE"));
+        assertEquals(raw.toByteArray(), b);
+
+        NSOFInput in = new NSOFInput(b);
+        assertEquals(12, in.readXLong());
+        assertEquals(1000, in.readXLong());
+        assertEquals(-1, in.readXLong());
+        assertEquals(0x12345678, in.readInt());
+        assertEquals("Newton א", in.readUTF16BE(16));
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * The bytes after the object are left in the stream.
+     */
+    @Test
+    public void testRelease() throws Exception {
+        NSOFFrame frame = new NSOFFrame();
+        frame.put("name", new NSOFString("Newton"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NSOFEncoder().flatten(frame, out);
+        out.write(0x55);
+
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(frame, new NSOFDecoder().inflate(in));
+        assertEquals(0x55, in.read());
+        assertEquals(-1, in.read());
+    }
+}
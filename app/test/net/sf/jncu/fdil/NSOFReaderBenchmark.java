@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Compare building the whole Names soup with pulling only the IDs and
+ * modification times.
+ */
+public class NSOFReaderBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 10000;
+        final byte[] b = NSOFReaderTest.flatten(NSOFReaderTest.createNames(count));
+
+        long tree = Long.MAX_VALUE;
+        long pull = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            NSOFArray arr = (NSOFArray) new NSOFDecoder().inflate(new ByteArrayInputStream(b));
+            tree = Math.min(tree, System.nanoTime() - start);
+            if (arr.getValue().length != count)
+                throw new IOException("tree lost cards");
+
+            start = System.nanoTime();
+            NSOFReader reader = new NSOFReader(new ByteArrayInputStream(b));
+            long sum = 0;
+            int event;
+            while ((event = reader.next()) != NSOFReader.END_DOCUMENT) {
+                if (event == NSOFReader.SLOT) {
+                    String slot = reader.getSlotName();
+                    if ("_uniqueID".equals(slot) || "_modTime".equals(slot)) {
+                        reader.next();
+                        sum += reader.getImmediate() >> 2;
+                    } else {
+                        reader.skip();
+                    }
+                }
+            }
+            pull = Math.min(pull, System.nanoTime() - start);
+            if (sum != (long) count * (count - 1) + (long) count * 0x3000000)
+                throw new IOException("pull lost cards");
+        }
+        System.out.println("decode " + count + " names (" + b.length + " bytes): tree " + (tree / 1000L) + "us, pull " + (pull / 1000L) + "us");
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class NSOFReaderTest extends SFTestCase {
+
+    /**
+     * Create a Names soup with many cards.
+     */
+    static NSOFArray createNames(int count) {
+        NSOFObject[] entries = new NSOFObject[count];
+        NSOFFrame entry;
+        NSOFFrame name;
+        for (int i = 0; i < count; i++) {
+            name = new NSOFFrame();
+            name.put("first", new NSOFString("First" + i));
+            name.put("last", new NSOFString("Last" + i));
+            name.put("class", new NSOFSymbol("person"));
+
+            entry = new NSOFFrame();
+            entry.put("name", name);
+            entry.put("cardType", new NSOFInteger(0));
+            entry.put("company", new NSOFString("Company " + (i % 100)));
+            entry.put("address", new NSOFString(i + " Infinite Loop"));
+            entry.put("phones", new NSOFPlainArray(new NSOFObject[]{new NSOFString("555-" + i), new NSOFString("555-" + (i + 1))}));
+            entry.put("bounds", new NSOFSmallRect(1, 2, 3, 4));
+            entry.put("notes", new NSOFBinaryObject(new byte[256]));
+            entry.put("initial", new NSOFUnicodeCharacter('F'));
+            entry.put("_uniqueID", new NSOFInteger(i));
+            entry.put("_modTime", new NSOFInteger(0x3000000 + i));
+            entries[i] = entry;
+        }
+        return new NSOFArray(entries);
+    }
+
+    static byte[] flatten(NSOFObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NSOFEncoder encoder = new NSOFEncoder();
+        encoder.flatten(object, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decoding builds the same tree that was encoded.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] b = flatten(createNames(10));
+        NSOFDecoder decoder = new NSOFDecoder();
+        NSOFObject o = decoder.inflate(new ByteArrayInputStream(b));
+        assertTrue(o instanceof NSOFArray);
+        NSOFFrame entry = (NSOFFrame) ((NSOFArray) o).getValue()[3];
+        assertEquals("First3", ((NSOFString) ((NSOFFrame) entry.get("name")).get("first")).getValue());
+        assertEquals(3, ((NSOFInteger) entry.get("_uniqueID")).getValue());
+        assertEquals(256, ((NSOFBinaryObject) entry.get("notes")).getValue().length);
+        assertEquals('F', ((NSOFCharacter) entry.get("initial")).getChar());
+        assertEquals(b, flatten(o));
+    }
+
+    /**
+     * Read the events, and skip whole frames.
+     */
+    @Test
+    public void testSkip() throws Exception {
+        byte[] b = flatten(createNames(3));
+        NSOFReader reader = new NSOFReader(new ByteArrayInputStream(b));
+        assertEquals(NSOFReader.START_ARRAY, reader.next());
+        assertEquals(3, reader.getLength());
+        assertEquals("array", reader.getObjectClass());
+        assertEquals(NSOFReader.START_FRAME, reader.next());
+        reader.skip();
+        assertEquals(NSOFReader.START_FRAME, reader.next());
+        assertEquals(2, reader.getDepth());
+
+        int ids = 0;
+        while (reader.next() == NSOFReader.SLOT) {
+            if ("_uniqueID".equals(reader.getSlotName())) {
+                assertEquals(NSOFReader.VALUE, reader.next());
+                assertEquals(1, reader.getImmediate() >> 2);
+                ids++;
+            } else if ("company".equals(reader.getSlotName())) {
+                reader.next();
+                assertEquals("Company 1", reader.getString());
+            } else {
+                reader.skip();
+            }
+        }
+        assertEquals(NSOFReader.END_FRAME, reader.getEventType());
+        assertEquals(1, ids);
+        assertEquals(NSOFReader.START_FRAME, reader.next());
+        reader.skip();
+        assertEquals(NSOFReader.END_ARRAY, reader.next());
+        assertEquals(NSOFReader.END_DOCUMENT, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    /**
+     * Create a frame with numbered slots.
+     */
+    private static NSOFFrame createFrame(int size) {
+        NSOFFrame frame = new NSOFFrame();
+        for (int i = 0; i < size; i++)
+            frame.put("slot" + i, new NSOFInteger(i));
+        return frame;
+    }
+
+    /**
+     * Frames of different sizes and depths share the slot name buffers.
+     */
+    @Test
+    public void testFrameSizes() throws Exception {
+        NSOFFrame nested = new NSOFFrame();
+        nested.put("inner", createFrame(40));
+        nested.put("after", new NSOFInteger(-1));
+        NSOFObject[] frames = {createFrame(1), createFrame(40), nested, createFrame(1)};
+        NSOFArray arr = new NSOFArray(frames);
+        byte[] b = flatten(arr);
+
+        NSOFDecoder decoder = new NSOFDecoder();
+        NSOFArray decoded = (NSOFArray) decoder.inflate(new ByteArrayInputStream(b));
+        assertEquals(1, ((NSOFFrame) decoded.get(0)).size());
+        assertEquals(new NSOFInteger(39), ((NSOFFrame) decoded.get(1)).get("slot39"));
+        NSOFFrame inner = (NSOFFrame) ((NSOFFrame) decoded.get(2)).get("inner");
+        assertEquals(40, inner.size());
+        assertEquals(new NSOFInteger(-1), ((NSOFFrame) decoded.get(2)).get("after"));
+        assertEquals(b, flatten(decoded));
+    }
+
+    /**
+     * The decoder does not decode objects by themselves.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testInflateUnsupported() throws Exception {
+        try {
+            new NSOFFrame().inflate(new ByteArrayInputStream(new byte[]{0}), new NSOFDecoder());
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
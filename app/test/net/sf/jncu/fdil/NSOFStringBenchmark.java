@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Measure a backup, which decodes the entries and encodes them again without
+ * looking at the strings.
+ */
+public class NSOFStringBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 2000;
+        byte[][] entries = new byte[count][];
+        NSOFFrame entry;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            entry = new NSOFFrame();
+            entry.put("title", new NSOFString("Meeting with the Newton team, number " + i));
+            entry.put("notes", new NSOFString("The quick brown fox jumps over the lazy dog. " + i));
+            entry.put("place", new NSOFString("Infinite Loop " + i));
+            entry.put("_uniqueID", new NSOFInteger(i));
+            entries[i] = NSOFStringTest.flatten(entry);
+            total += entries[i].length;
+        }
+
+        long lazy = Long.MAX_VALUE;
+        long eager = Long.MAX_VALUE;
+        NSOFDecoder decoder = new NSOFDecoder();
+        NSOFEncoder encoder;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(total);
+        NSOFFrame frame;
+        for (int round = 0; round < 20; round++) {
+            out.reset();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                decoder.reset();
+                frame = (NSOFFrame) decoder.inflate(new ByteArrayInputStream(entries[i]));
+                encoder = new NSOFEncoder();
+                encoder.flatten(frame, out);
+            }
+            lazy = Math.min(lazy, System.nanoTime() - start);
+            if (out.size() != total)
+                throw new IOException("lazy backup changed the entries");
+
+            // Decode every string, as before.
+            out.reset();
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                decoder.reset();
+                frame = (NSOFFrame) decoder.inflate(new ByteArrayInputStream(entries[i]));
+                for (int j = 0; j < frame.size(); j++) {
+                    if (frame.getSlotValue(j) instanceof NSOFString)
+                        frame.put(frame.getSlotName(j), new NSOFString(((NSOFString) frame.getSlotValue(j)).getValue()));
+                }
+                encoder = new NSOFEncoder();
+                encoder.flatten(frame, out);
+            }
+            eager = Math.min(eager, System.nanoTime() - start);
+            if (out.size() != total)
+                throw new IOException("eager backup changed the entries");
+        }
+        System.out.println("backup " + count + " entries: lazy " + (total * 1000L / lazy) + "MB/s, eager " + (total * 1000L / eager) + "MB/s");
+    }
+}
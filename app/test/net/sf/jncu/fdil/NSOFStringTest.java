@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class NSOFStringTest extends SFTestCase {
+
+    static byte[] flatten(NSOFObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NSOFEncoder().flatten(object, out);
+        return out.toByteArray();
+    }
+
+    private static NSOFObject inflate(byte[] b) throws IOException {
+        return new NSOFDecoder().inflate(new ByteArrayInputStream(b));
+    }
+
+    /**
+     * Decoded strings are written back exactly as they were read.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        NSOFFrame frame = new NSOFFrame();
+        frame.put("name", new NSOFString("Newton"));
+        frame.put("empty", new NSOFString(""));
+        frame.put("hebrew", new NSOFString("שלום"));
+        NSOFString company = new NSOFString("Apple");
+        company.setObjectClass(NSOFString.CLASS_COMPANY);
+        frame.put("company", company);
+        byte[] b = flatten(frame);
+
+        NSOFFrame decoded = (NSOFFrame) inflate(b);
+        assertEquals(b, flatten(decoded));
+        assertEquals(frame, decoded);
+        assertEquals(NSOFString.CLASS_COMPANY, decoded.get("company").getObjectClass());
+        NSOFString hebrew = (NSOFString) decoded.get("hebrew");
+        assertEquals(4, hebrew.length());
+        assertEquals('ש', hebrew.charAt(0));
+        assertEquals("שלום", hebrew.getValue());
+        assertEquals(b, flatten(decoded));
+
+        // Without the null terminator, and with extra padding.
+        byte[] raw = {NewtonStreamedObjectFormat.VERSION, NewtonStreamedObjectFormat.NSOF_STRING, 6, 0, 'N', 0, 0, 0, 0};
+        NSOFString padded = (NSOFString) inflate(raw);
+        assertEquals("N", padded.getValue());
+        assertEquals(raw, flatten(padded));
+        raw = new byte[]{NewtonStreamedObjectFormat.VERSION, NewtonStreamedObjectFormat.NSOF_STRING, 2, 0, 'N'};
+        NSOFString unterminated = (NSOFString) inflate(raw);
+        assertEquals("N", unterminated.getValue());
+        assertEquals(raw, flatten(unterminated));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Measure slot lookups on decoded soup entries, by name and by symbol, and
+ * how many unused symbols the garbage collector removes from the pool.
+ */
+public class NSOFSymbolBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int count = 5000;
+        final NSOFFrame[] entries = new NSOFFrame[count];
+        NSOFFrame entry;
+        NSOFFrame name;
+        ByteArrayOutputStream out;
+        for (int i = 0; i < count; i++) {
+            name = new NSOFFrame();
+            name.put("first", new NSOFString("First" + i));
+            name.put("last", new NSOFString("Last" + i));
+            entry = new NSOFFrame();
+            entry.put("name", name);
+            entry.put("company", new NSOFString("Company " + (i % 100)));
+            entry.put("_uniqueID", new NSOFInteger(i));
+            entry.put("_modTime", new NSOFInteger(i));
+            out = new ByteArrayOutputStream();
+            new NSOFEncoder().flatten(entry, out);
+            entries[i] = (NSOFFrame) new NSOFDecoder().inflate(new ByteArrayInputStream(out.toByteArray()));
+        }
+
+        final NSOFSymbol uniqueId = NSOFSymbol.valueOf("_uniqueID");
+        final NSOFSymbol modTime = NSOFSymbol.valueOf("_modTime");
+        long byName = Long.MAX_VALUE;
+        long bySymbol = Long.MAX_VALUE;
+        long sum = 0;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            for (NSOFFrame frame : entries) {
+                sum += ((NSOFInteger) frame.get("_uniqueID")).getValue();
+                sum += ((NSOFInteger) frame.get("_modTime")).getValue();
+                if (frame.hasSlot("company"))
+                    sum++;
+                sum += ((NSOFFrame) frame.get("name")).get("first").hashCode();
+            }
+            byName = Math.min(byName, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (NSOFFrame frame : entries) {
+                sum += ((NSOFInteger) frame.get(uniqueId)).getValue();
+                sum += ((NSOFInteger) frame.get(modTime)).getValue();
+            }
+            bySymbol = Math.min(bySymbol, System.nanoTime() - start);
+        }
+        System.out.println("slot lookups: by name " + (byName / (count * 5)) + "ns, by symbol " + (bySymbol / (count * 2)) + "ns (checksum " + sum + ")");
+
+        final int unused = 10000;
+        int before = NSOFSymbol.getPoolSize();
+        for (int i = 0; i < unused; i++)
+            NSOFSymbol.valueOf("forget" + i);
+        int after = NSOFSymbol.getPoolSize();
+        for (int i = 0; (i < 20) && (NSOFSymbol.getPoolSize() > before); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        System.out.println("pool: " + before + " symbols, " + after + " after " + unused + " unused, " + NSOFSymbol.getPoolSize() + " after garbage collection");
+    }
+}
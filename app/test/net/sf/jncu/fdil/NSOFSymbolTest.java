@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+public class NSOFSymbolTest extends SFTestCase {
+
+    /**
+     * Symbols are pooled, and compared case-insensitively.
+     */
+    @Test
+    public void testIntern() throws Exception {
+        NSOFSymbol name = NSOFSymbol.valueOf("name");
+        assertSame(name, NSOFSymbol.valueOf("name"));
+        assertEquals(name, new NSOFSymbol("name"));
+        NSOFSymbol upper = NSOFSymbol.valueOf("NAME");
+        assertNotSame(name, upper);
+        assertEquals(name, upper);
+        assertEquals(name.hashCode(), upper.hashCode());
+        assertFalse(name.equals(NSOFSymbol.valueOf("names")));
+
+        NSOFFrame frame = new NSOFFrame();
+        frame.put("Name", new NSOFString("Newton"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NSOFEncoder().flatten(frame, out);
+        NSOFFrame decoded = (NSOFFrame) new NSOFDecoder().inflate(new ByteArrayInputStream(out.toByteArray()));
+        assertSame(NSOFSymbol.valueOf("Name"), decoded.getKeys().iterator().next());
+        assertEquals("Newton", ((NSOFString) decoded.get("name")).getValue());
+    }
+
+    /**
+     * Symbols that are no longer used are removed from the pool.
+     */
+    @Test
+    public void testForget() throws Exception {
+        NSOFSymbol kept = NSOFSymbol.valueOf("kept");
+        NSOFSymbol[] forgotten = new NSOFSymbol[100];
+        for (int i = 0; i < forgotten.length; i++)
+            forgotten[i] = NSOFSymbol.valueOf("forget" + i);
+        int before = NSOFSymbol.getPoolSize();
+        for (int i = 0; i < forgotten.length; i++)
+            NSOFSymbol.enqueue("forget" + i);
+        assertTrue(NSOFSymbol.getPoolSize() <= before - forgotten.length);
+        assertSame(kept, NSOFSymbol.valueOf("kept"));
+
+        // Forgotten symbols are pooled again when used.
+        NSOFSymbol again = NSOFSymbol.valueOf("forget1");
+        assertNotSame(forgotten[1], again);
+        assertEquals(forgotten[1], again);
+        assertSame(again, NSOFSymbol.valueOf("forget1"));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Measure the wire bytes saved, and the speed, for sound and bitmap data.
+ */
+public class LZCompressorBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        measure("sound", LZCompressorTest.createSound(256 * 1024));
+        measure("bitmap", LZCompressorTest.createBitmap(320, 480));
+    }
+
+    private static void measure(String name, byte[] b) throws IOException {
+        final int rounds = 100;
+        final double mb = 1024 * 1024;
+        long deflate = Long.MAX_VALUE;
+        long inflate = Long.MAX_VALUE;
+        byte[] packed = null;
+        byte[] result = null;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            packed = LZCompressorTest.compress(b);
+            deflate = Math.min(deflate, System.nanoTime() - start);
+            start = System.nanoTime();
+            result = LZCompressorTest.decompress(packed);
+            inflate = Math.min(inflate, System.nanoTime() - start);
+        }
+        if (!Arrays.equals(b, result))
+            throw new IOException(name + " did not round trip");
+        System.out.println(name + ": " + b.length + " bytes packed to " + packed.length
+                + ", saved " + (b.length - packed.length) + " bytes (" + ((b.length - packed.length) * 100 / b.length) + "%)"
+                + ", compress " + Math.round(b.length * 1e9 / deflate / mb) + "MB/s"
+                + ", decompress " + Math.round(b.length * 1e9 / inflate / mb) + "MB/s");
+    }
+}
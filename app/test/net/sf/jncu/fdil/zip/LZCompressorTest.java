@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.CreatingStoreException;
+import net.sf.jncu.fdil.FDSpillStoreProcs;
+import net.sf.jncu.fdil.NSOFDecoder;
+import net.sf.jncu.fdil.NSOFEncoder;
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.jncu.fdil.NSOFSymbol;
+import net.sf.jncu.fdil.ReadingFromStoreException;
+import net.sf.jncu.fdil.UnsupportedCompressionException;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class LZCompressorTest extends SFTestCase {
+
+    /**
+     * Create 8-bit sound samples - two tones with some noise.
+     */
+    private static byte[] createNoise(int length) {
+        Random random = new Random(22050);
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            double sample = 60 * Math.sin(i * 2 * Math.PI / 50) + 30 * Math.sin(i * 2 * Math.PI / 21);
+            b[i] = (byte) ((int) sample + random.nextInt(5) - 2);
+        }
+        return b;
+    }
+
+    /**
+     * Create 8-bit sound samples - beeps that fade out, and silences.
+     */
+    static byte[] createSound(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int t = i % 4000;
+            if (t < 2500) {
+                int volume = 100 - (t / 250) * 10;
+                b[i] = (byte) (volume * Math.sin(t * 2 * Math.PI / 40));
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Create a 1-bit bitmap of lines of glyphs.
+     */
+    static byte[] createBitmap(int width, int height) {
+        Random random = new Random(width * height);
+        int rowBytes = width / 8;
+        byte[] b = new byte[rowBytes * height];
+        byte[] glyphs = new byte[16 * 12];
+        random.nextBytes(glyphs);
+        for (int y = 0; y < height; y++) {
+            int line = y % 16;
+            if (line >= 12)
+                continue;
+            for (int x = 1; x < rowBytes - 1; x++) {
+                if (((y / 16) + x) % 7 == 0)
+                    continue;
+                b[y * rowBytes + x] = glyphs[(random.nextInt(4) << 4 | line) % glyphs.length];
+            }
+        }
+        return b;
+    }
+
+    static byte[] compress(byte[] b) throws IOException {
+        Compressor compressor = new LZStoreCompander().createCompressor();
+        compressor.setLength(b.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream deflater = compressor.compress(out);
+        deflater.write(b);
+        deflater.close();
+        return out.toByteArray();
+    }
+
+    static byte[] decompress(byte[] b) throws IOException {
+        Decompressor decompressor = new LZStoreCompander().createDecompressor();
+        InputStream in = decompressor.decompress(b);
+        byte[] result = new byte[decompressor.getLength()];
+        int offset = 0;
+        int count;
+        while ((offset < result.length) && ((count = in.read(result, offset, result.length - offset)) > 0))
+            offset += count;
+        assertEquals(result.length, offset);
+        assertEquals(-1, in.read());
+        return result;
+    }
+
+    /**
+     * Compress and decompress partial, whole, and stored pages.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(1024);
+        byte[] noise = new byte[3000];
+        random.nextBytes(noise);
+        byte[] text = "The quick brown fox jumps over the lazy dog. The quick brown fox jumps again.".getBytes();
+        byte[] zeros = new byte[LZDecompressor.PAGE_SIZE * 2];
+        byte[][] samples = {new byte[0], {'a'}, text, zeros, noise, createNoise(5000), createSound(5000), createBitmap(320, 48)};
+        for (byte[] sample : samples) {
+            byte[] packed = compress(sample);
+            assertEquals(sample, decompress(packed));
+        }
+        // 2 pages of 18-byte runs: 57 items each.
+        assertEquals(8 + 2 * (8 + 57 * 2 + 8 + 1), compress(zeros).length);
+        // Random pages are stored as is.
+        assertEquals(8 + 3 * 8 + noise.length, compress(noise).length);
+        assertTrue(compress(text).length < 8 + 8 + text.length);
+
+        Compressor compressor = new LZCompressor();
+        compressor.setLength(2);
+        OutputStream out = compressor.compress(new ByteArrayOutputStream());
+        out.write(1);
+        try {
+            out.close();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compress a large binary while encoding it.
+     */
+    @Test
+    public void testLargeBinary() throws Exception {
+        byte[] sound = createSound(20000);
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setObjectClass(new NSOFSymbol("sound"));
+        lbin.setValue(sound);
+
+        NSOFEncoder encoder = new NSOFEncoder();
+        encoder.setCompanderName(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.flatten(lbin, out);
+        byte[] b = out.toByteArray();
+        NSOFEncoder sizer = new NSOFEncoder();
+        sizer.setCompanderName(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+        assertEquals(b.length, sizer.getFlattenedSize(lbin));
+        assertTrue(b.length < sound.length);
+        assertFalse(lbin.isCompressed());
+
+        NSOFLargeBinary decoded = (NSOFLargeBinary) new NSOFDecoder().inflate(new ByteArrayInputStream(b));
+        assertTrue(decoded.isCompressed());
+        assertEquals(NSOFLargeBinary.COMPANDER_JNCU_LZ, decoded.getCompanderName());
+        assertEquals("sound", decoded.getObjectClass().getValue());
+        InputStream in = decoded.getExpandedInputStream();
+        byte[] expanded = new byte[sound.length];
+        int offset = 0;
+        int count;
+        while ((count = in.read(expanded, offset, expanded.length - offset)) > 0)
+            offset += count;
+        assertEquals(sound, expanded);
+        lbin.dispose();
+        decoded.dispose();
+
+        // Measuring and then encoding reads the data only once.
+        final Object[] source = new Object[1];
+        final int[] reads = new int[1];
+        lbin = new NSOFLargeBinary();
+        lbin.setLargeBinaryProcs(new FDSpillStoreProcs() {
+            @Override
+            public Object create() throws CreatingStoreException {
+                Object cookie = super.create();
+                if (source[0] == null)
+                    source[0] = cookie;
+                return cookie;
+            }
+
+            @Override
+            public int readPage(Object cookie, int pageNum, byte[] pageBuf) throws ReadingFromStoreException {
+                if (cookie == source[0])
+                    reads[0]++;
+                return super.readPage(cookie, pageNum, pageBuf);
+            }
+        });
+        lbin.setObjectClass(new NSOFSymbol("sound"));
+        lbin.setValue(sound);
+        reads[0] = 0;
+        out.reset();
+        sizer = new NSOFEncoder();
+        sizer.setCompanderName(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+        assertEquals(b.length, sizer.getFlattenedSize(lbin));
+        encoder = new NSOFEncoder();
+        encoder.setCompanderName(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+        encoder.flatten(lbin, out);
+        assertEquals(b, out.toByteArray());
+        assertEquals((sound.length + NSOFLargeBinary.PAGE_SIZE - 1) / NSOFLargeBinary.PAGE_SIZE, reads[0]);
+        lbin.dispose();
+
+        // Noise does not shrink, so is sent as is.
+        lbin.setValue(createNoise(5000));
+        out.reset();
+        encoder = new NSOFEncoder();
+        encoder.setCompanderName(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+        encoder.flatten(lbin, out);
+        assertEquals(out.size(), new NSOFEncoder().getFlattenedSize(lbin));
+        decoded = (NSOFLargeBinary) new NSOFDecoder().inflate(new ByteArrayInputStream(out.toByteArray()));
+        assertFalse(decoded.isCompressed());
+        assertEquals(lbin.getValue(), decoded.getValue());
+        lbin.dispose();
+        decoded.dispose();
+    }
+
+    /**
+     * Large binaries are not labelled with a Newton compander name.
+     */
+    @Test
+    public void testDeviceFormat() throws Exception {
+        assertNull(CompanderFactory.getInstance().createCompressor("TLZCompressor"));
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setValue(createSound(5000));
+        NSOFEncoder encoder = new NSOFEncoder();
+        encoder.setCompanderName(NSOFLargeBinary.COMPANDER_LZ);
+        try {
+            encoder.flatten(lbin, new ByteArrayOutputStream());
+            fail();
+        } catch (UnsupportedCompressionException e) {
+            // expected
+        }
+        lbin.dispose();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.jncu.fdil.UnsupportedCompressionException;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class LZStoreDecompressorTest extends SFTestCase {
+
+    /**
+     * "abc" and a match of 9, then "x" and an overlapping run of 18.
+     */
+    private static final byte[] PAGE = {0x17, 'a', 'b', 'c', 0x00, 0x26, 'x', 0x00, 0x0F};
+    private static final String PAGE_TEXT = "abcabcabcabcxxxxxxxxxxxxxxxxxxx";
+
+    private static void writeInt(ByteArrayOutputStream out, int n) {
+        out.write(n >> 24);
+        out.write(n >> 16);
+        out.write(n >> 8);
+        out.write(n);
+    }
+
+    /**
+     * Create a store with a stored page and then a compressed page.
+     */
+    private static byte[] createStore(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, 1);
+        writeInt(out, raw.length + PAGE_TEXT.length());
+        writeInt(out, raw.length);
+        writeInt(out, raw.length);
+        out.write(raw);
+        writeInt(out, PAGE.length);
+        writeInt(out, PAGE_TEXT.length());
+        out.write(PAGE);
+        return out.toByteArray();
+    }
+
+    private static byte[] createRaw() {
+        byte[] raw = new byte[LZDecompressor.PAGE_SIZE];
+        for (int i = 0; i < raw.length; i++)
+            raw[i] = (byte) (i * 7);
+        return raw;
+    }
+
+    private static byte[] expected(byte[] raw) {
+        byte[] text = PAGE_TEXT.getBytes();
+        byte[] b = Arrays.copyOf(raw, raw.length + text.length);
+        System.arraycopy(text, 0, b, raw.length, text.length);
+        return b;
+    }
+
+    /**
+     * Decompress a single page.
+     */
+    @Test
+    public void testPage() throws Exception {
+        byte[] page = new byte[LZDecompressor.PAGE_SIZE];
+        int length = new LZDecompressor().decompressBlock(PAGE, 0, PAGE.length, page, 0, page.length);
+        assertEquals(PAGE_TEXT, new String(page, 0, length));
+
+        // Distance before the start of the page.
+        byte[] bad = {0x07, 'a', 'b', 'c', 0x00, 0x36};
+        try {
+            new LZDecompressor().decompressBlock(bad, 0, bad.length, page, 0, page.length);
+            fail();
+        } catch (CouldNotDecompressDataException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Stream the pages with bulk and single reads.
+     */
+    @Test
+    public void testStream() throws Exception {
+        byte[] raw = createRaw();
+        byte[] expected = expected(raw);
+        Decompressor decompressor = CompanderFactory.getInstance().createDecompressor("jncu.LZStoreDecompressor");
+        InputStream in = decompressor.decompress(createStore(raw));
+        assertEquals(expected.length, decompressor.getLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(in.read());
+        byte[] b = new byte[333];
+        int count;
+        while ((count = in.read(b, 0, b.length)) != -1)
+            out.write(b, 0, count);
+        assertEquals(expected, out.toByteArray());
+
+        in = new LZStoreDecompressor().decompress(createStore(raw));
+        assertEquals(1020, in.skip(1020));
+        assertEquals(raw[1020] & 0xFF, in.read());
+        assertEquals(expected.length - 1021, in.skip(Integer.MAX_VALUE));
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * Reject an empty page while data remains.
+     */
+    @Test
+    public void testEmptyPage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, 1);
+        writeInt(out, PAGE_TEXT.length());
+        writeInt(out, 0);
+        writeInt(out, 0);
+        writeInt(out, PAGE.length);
+        writeInt(out, PAGE_TEXT.length());
+        out.write(PAGE);
+        byte[] store = out.toByteArray();
+
+        try {
+            new LZStoreDecompressor().decompress(store).read();
+            fail();
+        } catch (CouldNotDecompressDataException e) {
+            // expected
+        }
+        try {
+            new LZStoreDecompressor().decompress(store).read(new byte[10], 0, 10);
+            fail();
+        } catch (CouldNotDecompressDataException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Read a compressed large binary.
+     */
+    @Test
+    public void testLargeBinary() throws Exception {
+        byte[] raw = createRaw();
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setValue(createStore(raw));
+        lbin.setCompressed(true);
+        lbin.setCompanderName(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+
+        InputStream in = lbin.getExpandedInputStream();
+        byte[] b = new byte[raw.length + PAGE_TEXT.length()];
+        int offset = 0;
+        int count;
+        while ((count = in.read(b, offset, b.length - offset)) > 0)
+            offset += count;
+        assertEquals(expected(raw), b);
+        assertEquals(-1, in.read());
+        lbin.dispose();
+    }
+
+    /**
+     * Device data is not decompressed with the format of this library.
+     */
+    @Test
+    public void testDeviceFormat() throws Exception {
+        assertNull(CompanderFactory.getInstance().createDecompressor("TLZDecompressor"));
+        assertNull(CompanderFactory.getInstance().createDecompressor("TLZStoreDecompressor"));
+
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setValue(createStore(createRaw()));
+        lbin.setCompressed(true);
+        lbin.setCompanderName(NSOFLargeBinary.COMPANDER_LZ);
+        try {
+            lbin.getExpandedInputStream();
+            fail();
+        } catch (UnsupportedCompressionException e) {
+            // expected
+        }
+        lbin.dispose();
+    }
+}
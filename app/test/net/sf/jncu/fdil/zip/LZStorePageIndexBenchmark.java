@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.NSOFLargeBinary;
+
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measure decompressing with the stream, and in parallel.
+ */
+public class LZStorePageIndexBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments - the optional number of workers.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int rounds = 20;
+        final int workers = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        byte[] b = LZStorePageIndexTest.createData(4 * 1024 * 1024);
+        NSOFLargeBinary packed = LZStorePageIndexTest.createBlob(b);
+        LZStorePageIndex index = new LZStorePageIndex(packed);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        byte[] result = new byte[b.length];
+        long sequential = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                InputStream in = packed.getExpandedInputStream();
+                int offset = 0;
+                int count;
+                while ((count = in.read(result, offset, result.length - offset)) > 0)
+                    offset += count;
+                sequential = Math.min(sequential, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                index.decompress(pool);
+                parallel = Math.min(parallel, System.nanoTime() - start);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("decompress " + b.length + " bytes: stream " + (sequential / 1000000) + "ms, "
+                + workers + " workers " + (parallel / 1000000) + "ms");
+        packed.dispose();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.CouldNotDecompressDataException;
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class LZStorePageIndexTest extends SFTestCase {
+
+    /**
+     * Create data with short repeats, and a partial last page.
+     */
+    static byte[] createData(int length) {
+        Random random = new Random(length);
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            if ((i >= 8) && (random.nextInt(3) > 0))
+                b[i] = b[i - 1 - random.nextInt(8)];
+            else
+                b[i] = (byte) random.nextInt(16);
+        }
+        return b;
+    }
+
+    static NSOFLargeBinary createBlob(byte[] b) throws IOException {
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setValue(b);
+        NSOFLargeBinary packed = lbin.compress(NSOFLargeBinary.COMPANDER_JNCU_LZ);
+        lbin.dispose();
+        return packed;
+    }
+
+    /**
+     * Decompress single pages out of order.
+     */
+    @Test
+    public void testReadPage() throws Exception {
+        byte[] b = createData(LZDecompressor.PAGE_SIZE * 10 + 100);
+        NSOFLargeBinary packed = createBlob(b);
+        LZStorePageIndex index = new LZStorePageIndex(packed);
+        assertEquals(b.length, index.getLength());
+        assertEquals(11, index.getPageCount());
+        assertEquals(100, index.getPageLength(10));
+
+        byte[] page = new byte[LZDecompressor.PAGE_SIZE];
+        for (int n : new int[]{7, 10, 0, 3}) {
+            int length = index.readPage(n, page, 0);
+            int offset = index.getPageOffset(n);
+            assertEquals(Arrays.copyOfRange(b, offset, offset + length), Arrays.copyOf(page, length));
+        }
+
+        // Truncated store.
+        packed.setLength(packed.getLength() - 1);
+        try {
+            new LZStorePageIndex(packed);
+            fail();
+        } catch (CouldNotDecompressDataException e) {
+            // expected
+        }
+        packed.dispose();
+    }
+
+    /**
+     * Decompress all pages in parallel.
+     */
+    @Test
+    public void testParallel() throws Exception {
+        byte[] b = createData(LZDecompressor.PAGE_SIZE * 300 + 7);
+        NSOFLargeBinary packed = createBlob(b);
+        LZStorePageIndex index = new LZStorePageIndex(packed);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(b, index.decompress(pool));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            index.decompress(out, pool);
+            assertEquals(b, out.toByteArray());
+
+            index = new LZStorePageIndex(createBlob(new byte[0]));
+            assertEquals(0, index.getPageCount());
+            assertEquals(0, index.decompress(pool).length);
+        } finally {
+            pool.shutdown();
+        }
+        packed.dispose();
+    }
+
+    /**
+     * Decompress with the stream and with several workers, alike.
+     */
+    @Test
+    public void testStreamParity() throws Exception {
+        byte[] b = createData(LZDecompressor.PAGE_SIZE * 1000 + 33);
+        NSOFLargeBinary packed = createBlob(b);
+        LZStorePageIndex index = new LZStorePageIndex(packed);
+        byte[] result = new byte[b.length];
+        InputStream in = packed.getExpandedInputStream();
+        int offset = 0;
+        int count;
+        while ((count = in.read(result, offset, result.length - offset)) > 0)
+            offset += count;
+        assertEquals(b, result);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(result, index.decompress(pool));
+        } finally {
+            pool.shutdown();
+        }
+        packed.dispose();
+    }
+
+    /**
+     * Reject a corrupt header.
+     */
+    @Test
+    public void testCorrupt() throws Exception {
+        NSOFLargeBinary packed = createBlob(createData(100));
+        // Negative length.
+        packed.write(4, new byte[]{(byte) 0x80, 0, 0, 0}, 0, 4);
+        try {
+            new LZStorePageIndex(packed);
+            fail();
+        } catch (CouldNotDecompressDataException e) {
+            // expected
+        }
+        // Empty page.
+        packed.write(4, new byte[]{0, 0, 0, 100, 0, 0, 0, 0, 0, 0, 0, 0}, 0, 12);
+        try {
+            new LZStorePageIndex(packed);
+            fail();
+        } catch (CouldNotDecompressDataException e) {
+            // expected
+        }
+        packed.dispose();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.jncu.fdil.contrib.NSOFRawBitmap;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Measure expanding a full screen into an image, and compare with decoding a
+ * raw bitmap and setting the image pixels one at a time.
+ */
+public class PixelMapCompanderBenchmark {
+
+    private static final int WIDTH = PixelMapCompanderTest.WIDTH;
+    private static final int HEIGHT = PixelMapCompanderTest.HEIGHT;
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int rounds = 100;
+        byte[] value = PixelMapCompanderTest.toValue(PixelMapCompanderTest.createScreen(NSOFRawBitmap.BIT_DEPTH_1));
+        NSOFLargeBinary packed = PixelMapCompanderTest.compress(value, NSOFLargeBinary.COMPANDER_JNCU_PIXELMAP);
+
+        PixelMapDecompressor decompressor = new PixelMapDecompressor();
+        long expanded = Long.MAX_VALUE;
+        long drawn = Long.MAX_VALUE;
+        long sum = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            BufferedImage image = decompressor.expand(packed);
+            expanded = Math.min(expanded, System.nanoTime() - start);
+            sum += image.getRGB(round, round);
+
+            start = System.nanoTime();
+            NSOFLargeBinary bits = new NSOFLargeBinary();
+            bits.setValue(PixelMapCompanderTest.readAll(packed.getExpandedInputStream()));
+            NSOFRawBitmap bitmap = new NSOFRawBitmap(bits);
+            image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++)
+                    image.setRGB(x, y, bitmap.getRGB(x, y));
+            }
+            drawn = Math.min(drawn, System.nanoTime() - start);
+            sum -= image.getRGB(round, round);
+            bits.dispose();
+        }
+        System.out.println(WIDTH + "x" + HEIGHT + " bitmap: " + value.length + " bytes, compressed " + packed.getLength()
+                + " bytes; expand image " + (expanded / 1000) + "us, set each pixel of image " + (drawn / 1000) + "us (checksum " + sum + ")");
+        packed.dispose();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.jncu.fdil.contrib.NSOFRawBitmap;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+public class PixelMapCompanderTest extends SFTestCase {
+
+    static final int WIDTH = 320;
+    static final int HEIGHT = 480;
+
+    /**
+     * Create a screen of lines of glyphs.
+     */
+    static NSOFRawBitmap createScreen(int bitDepth) {
+        NSOFRawBitmap bitmap = new NSOFRawBitmap(bitDepth);
+        bitmap.setBottom(HEIGHT);
+        bitmap.setRight(WIDTH);
+        int rowBytes = bitmap.getRowBytes();
+        byte[] pixels = new byte[rowBytes * HEIGHT];
+        Random random = new Random(bitDepth);
+        byte[] glyphs = new byte[16 * 12];
+        random.nextBytes(glyphs);
+        for (int y = 0; y < HEIGHT; y++) {
+            int line = y % 16;
+            if ((line >= 12) || (y < 20))
+                continue;
+            for (int x = 1; x < rowBytes - 1; x++) {
+                if (((y / 16) + x) % 7 == 0)
+                    continue;
+                pixels[y * rowBytes + x] = glyphs[(random.nextInt(12) << 4 | line) % glyphs.length];
+            }
+            // Box borders.
+            pixels[y * rowBytes] = (byte) 0x01;
+            pixels[y * rowBytes + rowBytes - 1] = (byte) 0x80;
+        }
+        // Title bar.
+        for (int i = 0; i < rowBytes * 16; i++)
+            pixels[i] = (byte) 0xFF;
+        bitmap.setPixels(pixels);
+        return bitmap;
+    }
+
+    /**
+     * Get the raw bitmap data - the header, and the pixels.
+     */
+    static byte[] toValue(NSOFRawBitmap bitmap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0);
+        data.writeShort(bitmap.getRowBytes());
+        data.writeShort(0);
+        data.writeShort(bitmap.getTop());
+        data.writeShort(bitmap.getLeft());
+        data.writeShort(bitmap.getBottom());
+        data.writeShort(bitmap.getRight());
+        data.write(bitmap.getPixels());
+        return out.toByteArray();
+    }
+
+    static NSOFLargeBinary compress(byte[] b, String companderName) throws IOException {
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setValue(b);
+        NSOFLargeBinary packed = lbin.compress(companderName);
+        lbin.dispose();
+        return packed;
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[500];
+        int count;
+        while ((count = in.read(b)) != -1)
+            out.write(b, 0, count);
+        return out.toByteArray();
+    }
+
+    /**
+     * Compress and expand bitmaps, and compare the image with the bitmap.
+     */
+    @Test
+    public void testExpand() throws Exception {
+        PixelMapDecompressor decompressor = new PixelMapDecompressor();
+        NSOFRawBitmap first = null;
+        BufferedImage firstImage = null;
+        for (int bitDepth : new int[]{NSOFRawBitmap.BIT_DEPTH_4, NSOFRawBitmap.BIT_DEPTH_1}) {
+            NSOFRawBitmap bitmap = createScreen(bitDepth);
+            byte[] value = toValue(bitmap);
+            NSOFLargeBinary packed = compress(value, NSOFLargeBinary.COMPANDER_JNCU_PIXELMAP);
+            assertEquals(value, readAll(packed.getExpandedInputStream()));
+
+            BufferedImage image = decompressor.expand(packed);
+            assertEquals(WIDTH, image.getWidth());
+            assertEquals(HEIGHT, image.getHeight());
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++)
+                    assertEquals(bitmap.getRGB(x, y), image.getRGB(x, y));
+            }
+            packed.dispose();
+            if (first == null) {
+                first = bitmap;
+                firstImage = image;
+            }
+        }
+        // The next expansion does not change an earlier image.
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++)
+                assertEquals(first.getRGB(x, y), firstImage.getRGB(x, y));
+        }
+
+        // Pixel maps compressed by a device are not expanded.
+        assertNull(CompanderFactory.getInstance().createCompander(NSOFLargeBinary.COMPANDER_PIXELMAP));
+
+        // Not a pixel map.
+        byte[] text = "Hello, Newton!".getBytes();
+        NSOFLargeBinary packed = compress(text, NSOFLargeBinary.COMPANDER_JNCU_PIXELMAP);
+        assertEquals(text, readAll(packed.getExpandedInputStream()));
+        packed.dispose();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Measure compressing and expanding mostly Latin text.
+ */
+public class UnicodeCompressorBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final String[] texts = UnicodeCompressorTest.TEXTS;
+        final int rounds = 20;
+        final double mb = 1024 * 1024;
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < 512 * 1024)
+            buf.append(texts[1]).append(' ').append(texts[2]).append(' ').append(texts[3]).append('\n');
+        byte[] b = buf.toString().getBytes(StandardCharsets.UTF_16BE);
+        long deflate = Long.MAX_VALUE;
+        long inflate = Long.MAX_VALUE;
+        byte[] packed = null;
+        byte[] result = null;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            packed = UnicodeCompressorTest.compress(b, 4096);
+            deflate = Math.min(deflate, System.nanoTime() - start);
+            start = System.nanoTime();
+            result = UnicodeCompressorTest.decompress(packed, 4096);
+            inflate = Math.min(inflate, System.nanoTime() - start);
+        }
+        if (!Arrays.equals(b, result))
+            throw new IOException("text did not round trip");
+        System.out.println("text: " + b.length + " bytes packed to " + packed.length
+                + ", compress " + Math.round(b.length * 1e9 / deflate / mb) + "MB/s"
+                + ", decompress " + Math.round(b.length * 1e9 / inflate / mb) + "MB/s");
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.fdil.zip;
+
+import net.sf.jncu.fdil.NSOFDecoder;
+import net.sf.jncu.fdil.NSOFEncoder;
+import net.sf.jncu.fdil.NSOFLargeBinary;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class UnicodeCompressorTest extends SFTestCase {
+
+    static final String[] TEXTS = {
+            "",
+            "Meeting with Bob at 10:00\r\n\tBring the Newton.",
+            "Café crème brûlée, ¿qué tal?",
+            "שלום עולם - Hello עולם!",
+            "Привет é Мир € 5",
+            "tags \u0001\u0002\u0003 and \u0000 null",
+            "日本語のテキスト 😀",
+    };
+
+    static byte[] compress(byte[] b, int chunk) throws IOException {
+        Compressor compressor = new UnicodeCompressor();
+        compressor.setLength(b.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream deflater = compressor.compress(out);
+        for (int off = 0; off < b.length; off += chunk)
+            deflater.write(b, off, Math.min(chunk, b.length - off));
+        deflater.close();
+        return out.toByteArray();
+    }
+
+    static byte[] decompress(byte[] b, int chunk) throws IOException {
+        InputStream in = new UnicodeDecompressor().decompress(b);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[chunk];
+        int count;
+        while ((count = in.read(buf)) != -1)
+            out.write(buf, 0, count);
+        return out.toByteArray();
+    }
+
+    /**
+     * Compress and expand texts in various scripts, with odd chunks.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (String text : TEXTS) {
+            byte[] b = text.getBytes(StandardCharsets.UTF_16BE);
+            for (int chunk : new int[]{1, 3, 1000}) {
+                byte[] packed = compress(b, chunk);
+                assertEquals(b, decompress(packed, chunk));
+                assertEquals(b, decompress(packed, 1000));
+            }
+        }
+        // One byte per character, after the header.
+        assertEquals(8 + TEXTS[1].length(), compress(TEXTS[1].getBytes(StandardCharsets.UTF_16BE), 1000).length);
+        assertEquals(8 + TEXTS[2].length(), compress(TEXTS[2].getBytes(StandardCharsets.UTF_16BE), 1000).length);
+
+        InputStream in = new UnicodeDecompressor().decompress(compress(TEXTS[3].getBytes(StandardCharsets.UTF_16BE), 7));
+        assertEquals(0x05, in.read());
+        assertEquals(0xE9, in.read());
+        assertEquals(5, in.skip(5));
+        assertEquals(0xDD, in.read());
+        assertEquals(0x00, in.read());
+        assertEquals(0x20, in.read());
+    }
+
+    /**
+     * Keep the last byte of an odd length.
+     */
+    @Test
+    public void testOddLength() throws Exception {
+        for (String text : TEXTS) {
+            byte[] even = text.getBytes(StandardCharsets.UTF_16BE);
+            for (byte last : new byte[]{'A', (byte) 0xE9, 0x02}) {
+                byte[] b = Arrays.copyOf(even, even.length + 1);
+                b[even.length] = last;
+                for (int chunk : new int[]{1, 2, 3, 1000}) {
+                    byte[] packed = compress(b, chunk);
+                    assertEquals(b, decompress(packed, chunk));
+                }
+                InputStream in = new UnicodeDecompressor().decompress(compress(b, 1000));
+                for (byte expected : b)
+                    assertEquals(expected & 0xFF, in.read());
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    /**
+     * Access compressed text in a large binary.
+     */
+    @Test
+    public void testLargeBinary() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            buf.append(TEXTS[i % TEXTS.length]).append('\n');
+        String text = buf.toString().replace("\u0000", "");
+        NSOFLargeBinary lbin = new NSOFLargeBinary();
+        lbin.setText(text);
+        assertEquals(text, lbin.getText());
+
+        NSOFLargeBinary packed = lbin.compress(NSOFLargeBinary.COMPANDER_UNICODE);
+        assertTrue(packed.getLength() < lbin.getLength());
+        assertEquals(text, packed.getText());
+        Reader reader = packed.getReader();
+        char[] chars = new char[text.length() + 1];
+        int offset = 0;
+        int count;
+        while ((count = reader.read(chars, offset, chars.length - offset)) > 0)
+            offset += count;
+        assertEquals(text + '\u0000', new String(chars, 0, offset));
+        packed.dispose();
+
+        NSOFEncoder encoder = new NSOFEncoder();
+        encoder.setCompanderName(NSOFLargeBinary.COMPANDER_UNICODE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.flatten(lbin, out);
+        NSOFLargeBinary decoded = (NSOFLargeBinary) new NSOFDecoder().inflate(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(decoded.isCompressed());
+        assertEquals(NSOFLargeBinary.COMPANDER_UNICODE, decoded.getCompanderName());
+        assertEquals(text, decoded.getText());
+        decoded.dispose();
+        lbin.dispose();
+    }
+
+    /**
+     * Text compressed by a device is not read with the private format.
+     */
+    @Test
+    public void testDeviceFormat() throws Exception {
+        CompanderFactory factory = CompanderFactory.getInstance();
+        assertNull(factory.createCompressor("TUnicodeCompressor"));
+        assertNull(factory.createDecompressor("TUnicodeDecompressor"));
+        assertNotNull(factory.createCompressor("jncu.UnicodeCompressor"));
+        assertNotNull(factory.createDecompressor("jncu.UnicodeDecompressor"));
+    }
+}
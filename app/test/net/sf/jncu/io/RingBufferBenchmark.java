@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the time from write until the blocked reader wakes up.
+ */
+public class RingBufferBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final RingBuffer ring = new RingBuffer(16);
+        final int rounds = 1000;
+        final long[] written = new long[1];
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < rounds; i++) {
+                        while (ring.available() > 0)
+                            Thread.yield();
+                        Thread.sleep(0, 100000);
+                        written[0] = System.nanoTime();
+                        ring.getOutputStream().write(i);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+
+        InputStream in = ring.getInputStream();
+        long total = 0L;
+        for (int i = 0; i < rounds; i++) {
+            if (in.read() != (i & 0xFF))
+                throw new IOException("unexpected byte at " + i);
+            total += System.nanoTime() - written[0];
+        }
+        writer.join();
+        long average = total / rounds;
+        System.out.println("average read latency: " + TimeUnit.NANOSECONDS.toMicros(average) + "us");
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.io;
+
+import junit.framework.AssertionFailedError;
+
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+public class RingBufferTest extends SFTestCase {
+
+    @Test
+    public void testAvail() throws Exception {
+        RingBuffer ring = new RingBuffer(100);
+        assertEquals(128, ring.capacity());
+        assertEquals(0, ring.available());
+        assertEquals(0, ring.poll(new byte[10], 0, 10));
+        assertEquals(-1, ring.poll());
+
+        OutputStream out = ring.getOutputStream();
+        for (int i = 0; i < 100; i++)
+            out.write(i);
+        assertEquals(100, ring.available());
+        assertEquals(28, ring.remaining());
+        assertEquals(28, ring.offer(new byte[50], 0, 50));
+        assertEquals(0, ring.offer(new byte[50], 0, 50));
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        RingBuffer ring = new RingBuffer(16);
+        byte[] b = new byte[11];
+        byte[] r = new byte[11];
+        for (int n = 0; n < 100; n++) {
+            for (int i = 0; i < b.length; i++)
+                b[i] = (byte) (n + i);
+            assertEquals(b.length, ring.offer(b, 0, b.length));
+            assertEquals(b.length, ring.poll(r, 0, r.length));
+            assertEquals(b, r);
+        }
+    }
+
+    @Test
+    public void testEOF() throws Exception {
+        RingBuffer ring = new RingBuffer(16);
+        ring.getOutputStream().write(new byte[]{1, 2, 3});
+        ring.getOutputStream().close();
+        InputStream in = ring.getInputStream();
+        assertEquals(1, in.read());
+        byte[] b = new byte[10];
+        assertEquals(2, in.read(b));
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(b));
+        try {
+            ring.getOutputStream().write(4);
+            fail("expected closed");
+        } catch (IOException ioe) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        RingBuffer ring = new RingBuffer(16);
+        byte[] b = new byte[10];
+        long start = System.nanoTime();
+        assertEquals(0, ring.read(b, 0, b.length, 20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * Writer and reader threads with a small buffer, so both sides block.
+     */
+    @Test
+    public void testProducerConsumer() throws Exception {
+        final RingBuffer ring = new RingBuffer(64);
+        final int count = 1 << 20;
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = ring.getOutputStream();
+                    byte[] b = new byte[37];
+                    int n = 0;
+                    while (n < count) {
+                        int len = Math.min(b.length, count - n);
+                        for (int i = 0; i < len; i++)
+                            b[i] = (byte) (n + i);
+                        out.write(b, 0, len);
+                        n += len;
+                    }
+                    out.close();
+                } catch (IOException ioe) {
+                    throw new AssertionFailedError(ioe.getMessage());
+                }
+            }
+        };
+        writer.start();
+
+        InputStream in = ring.getInputStream();
+        byte[] b = new byte[50];
+        int n = 0;
+        int read;
+        while ((read = in.read(b)) >= 0) {
+            for (int i = 0; i < read; i++, n++)
+                assertEquals((byte) n, b[i]);
+        }
+        assertEquals(count, n);
+        writer.join();
+    }
+}
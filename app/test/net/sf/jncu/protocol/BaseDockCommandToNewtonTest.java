@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.protocol;
+
+import net.sf.jncu.fdil.NSOFBinaryObject;
+import net.sf.jncu.fdil.NSOFFrame;
+import net.sf.jncu.fdil.NSOFInteger;
+import net.sf.jncu.fdil.NSOFString;
+import net.sf.jncu.protocol.v1_0.data.DAddEntry;
+import net.sf.jncu.protocol.v1_0.query.DResult;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class BaseDockCommandToNewtonTest extends SFTestCase {
+
+    private static DAddEntry createAddEntry() {
+        NSOFFrame entry = new NSOFFrame();
+        entry.put("_uniqueID", new NSOFInteger(123));
+        entry.put("title", new NSOFString("Entry"));
+        entry.put("data", new NSOFBinaryObject(new byte[5000]));
+        DAddEntry cmd = new DAddEntry();
+        cmd.setObject(entry);
+        return cmd;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            out.write(buf, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * The length of NewtonScript commands is known before writing them.
+     */
+    @Test
+    public void testWritePayload() throws Exception {
+        byte[] expected = read(createAddEntry().getCommandPayload());
+        assertEquals(0, expected.length & 3);
+
+        DAddEntry cmd = createAddEntry();
+        int length = cmd.getCommandPayloadLength();
+        assertEquals(expected.length, length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cmd.writeCommandPayload(out);
+        assertEquals(expected, out.toByteArray());
+
+        // Commands that must be encoded to know their length.
+        DResult result = new DResult();
+        expected = read(result.getCommandPayload());
+        out.reset();
+        new DResult().writeCommandPayload(out);
+        assertEquals(expected, out.toByteArray());
+        assertEquals(expected.length, result.getCommandPayloadLength());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.protocol;
+
+import net.sf.jncu.protocol.v2_0.DockCommandFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Vector;
+
+/**
+ * Compare the command decoder with the previous decoding, which buffered the
+ * data and then joined the length word and data with a
+ * {@link SequenceInputStream}.
+ */
+public class DockCommandDecoderBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args the array of arguments.
+     * @throws Exception if an error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        final int packages = 256;
+        final int chunk = 4096;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < packages; i++)
+            stream.write(DockCommandDecoderTest.encodePackage(i, 32 * 1024));
+        final byte[] commands = stream.toByteArray();
+
+        long legacy = Long.MAX_VALUE;
+        long streaming = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            if (decodeLegacy(commands) != packages)
+                throw new IOException("legacy decoding lost commands");
+            legacy = Math.min(legacy, System.nanoTime() - start);
+
+            DockCommandDecoderTest.Collector collector = new DockCommandDecoderTest.Collector();
+            DockCommandDecoder decoder = new DockCommandDecoder(collector);
+            start = System.nanoTime();
+            for (int i = 0; i < commands.length; i += chunk)
+                decoder.decode(commands, i, Math.min(chunk, commands.length - i));
+            streaming = Math.min(streaming, System.nanoTime() - start);
+            if (collector.received.size() != packages)
+                throw new IOException("decoder lost commands");
+        }
+        System.out.println("decode " + commands.length + " bytes: legacy " + (legacy / 1000L) + "us, decoder " + (streaming / 1000L) + "us");
+    }
+
+    /**
+     * Decode the way the command layer used to.
+     */
+    private static int decodeLegacy(byte[] commands) throws IOException {
+        InputStream in = new ByteArrayInputStream(commands);
+        final byte[] lengthBytes = new byte[DockCommand.LENGTH_WORD];
+        final Vector<InputStream> v = new Vector<InputStream>();
+        int count = 0;
+        while ((in.available() > 0) && BaseDockCommand.isCommand(in)) {
+            DockCommandFromNewton cmd = (DockCommandFromNewton) DockCommandFactory.getInstance().create(in);
+            int length = BaseDockCommandFromNewton.ntohl(in);
+            lengthBytes[0] = (byte) ((length >> 24) & 0xFF);
+            lengthBytes[1] = (byte) ((length >> 16) & 0xFF);
+            lengthBytes[2] = (byte) ((length >> 8) & 0xFF);
+            lengthBytes[3] = (byte) ((length >> 0) & 0xFF);
+            byte[] data = new byte[length];
+            int offset = 0;
+            while (offset < length)
+                offset += in.read(data, offset, Math.min(4096, length - offset));
+            v.clear();
+            v.add(new ByteArrayInputStream(lengthBytes));
+            v.add(new ByteArrayInputStream(data));
+            v.add(in);
+            cmd.decode(new SequenceInputStream(v.elements()));
+            count++;
+        }
+        return count;
+    }
+}
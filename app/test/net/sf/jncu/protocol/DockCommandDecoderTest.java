@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010, Moshe Waisberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jncu.protocol;
+
+import net.sf.jncu.protocol.v1_0.app.DPackage;
+import net.sf.jncu.protocol.v2_0.session.DRequestToDock;
+import net.sf.junit.SFTestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DockCommandDecoderTest extends SFTestCase {
+
+    /**
+     * Listener that collects the received commands.
+     */
+    static class Collector implements DockCommandListener {
+
+        final List<DockCommandFromNewton> received = new ArrayList<DockCommandFromNewton>();
+
+        @Override
+        public void commandReceiving(DockCommandFromNewton command, int progress, int total) {
+        }
+
+        @Override
+        public void commandReceived(DockCommandFromNewton command) {
+            received.add(command);
+        }
+
+        @Override
+        public void commandSending(DockCommandToNewton command, int progress, int total) {
+        }
+
+        @Override
+        public void commandSent(DockCommandToNewton command) {
+        }
+
+        @Override
+        public void commandEOF() {
+        }
+    }
+
+    /**
+     * Encode a command the way a Newton sends it.
+     */
+    private static byte[] encode(String cmd, byte[] data) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeBytes("newtdock");
+        out.writeBytes(cmd);
+        out.writeInt(data.length);
+        out.write(data);
+        out.write(new byte[(4 - (data.length & 3)) & 3]);
+        return buf.toByteArray();
+    }
+
+    /**
+     * Package command with odd length.
+     */
+    static byte[] encodePackage(int id, int size) throws IOException {
+        byte[] data = new byte[4 + size];
+        data[3] = (byte) id;
+        for (int i = 4; i < data.length; i++)
+            data[i] = (byte) i;
+        return encode(DPackage.COMMAND, data);
+    }
+
+    /**
+     * Decode commands that arrive in chunks of any size.
+     */
+    @Test
+    public void testChunks() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(encode(DRequestToDock.COMMAND, new byte[]{0, 0, 0, DRequestToDock.DANTE_PROTOCOL_VERSION}));
+        stream.write(encodePackage(1, 1001));
+        stream.write(encode("disc", new byte[0]));
+        byte[] commands = stream.toByteArray();
+
+        for (int chunk : new int[]{1, 3, 7, 16, 1000, commands.length}) {
+            Collector collector = new Collector();
+            DockCommandDecoder decoder = new DockCommandDecoder(collector);
+            for (int i = 0; i < commands.length; i += chunk)
+                decoder.decode(commands, i, Math.min(chunk, commands.length - i));
+            assertEquals(3, collector.received.size());
+            assertEquals(DRequestToDock.COMMAND, collector.received.get(0).getCommand());
+            DPackage pkg = (DPackage) collector.received.get(1);
+            assertEquals(1, pkg.getId());
+            assertEquals(1001, pkg.getData().length);
+            assertEquals((byte) 1004, pkg.getData()[1000]);
+            assertEquals("disc", collector.received.get(2).getCommand());
+        }
+    }
+
+    /**
+     * Skip garbage, and a command that was cut short by the next command.
+     */
+    @Test
+    public void testResync() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write("garbage".getBytes());
+        stream.write("newtdockapkg".getBytes());
+        stream.write(encodePackage(2, 10));
+        byte[] commands = stream.toByteArray();
+
+        Collector collector = new Collector();
+        DockCommandDecoder decoder = new DockCommandDecoder(collector);
+        decoder.decode(commands, 0, commands.length);
+        assertEquals(1, collector.received.size());
+        assertEquals(2, ((DPackage) collector.received.get(0)).getId());
+    }
+
+    /**
+     * Stream large commands to the consumer without buffering them.
+     */
+    @Test
+    public void testStreaming() throws Exception {
+        final int size = 65 * 1024 + 1;
+        byte[] commands = encodePackage(3, size);
+        Collector collector = new Collector();
+        DockCommandDecoder decoder = new DockCommandDecoder(collector);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        decoder.setStreamThreshold(64 * 1024);
+        decoder.setPayloadListener(new DockCommandPayloadListener() {
+            @Override
+            public boolean isStreamed(DockCommandFromNewton command, int length) {
+                return command instanceof DPackage;
+            }
+
+            @Override
+            public void commandPayload(DockCommandFromNewton command, byte[] b, int offset, int length) {
+                payload.write(b, offset, length);
+            }
+        });
+        for (int i = 0; i < commands.length; i += 1500)
+            decoder.decode(commands, i, Math.min(1500, commands.length - i));
+
+        assertEquals(1, collector.received.size());
+        assertEquals(4 + size, payload.size());
+        assertEquals((byte) 100, payload.toByteArray()[100]);
+    }
+}